@@ -24,6 +24,12 @@
 
 package com.syswin.temail.usermail.core;
 
+import com.syswin.temail.usermail.core.dto.MqMessage;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.slf4j.LoggerFactory;
+
 public interface IMqAdapter {
 
   /**
@@ -46,4 +52,64 @@ public interface IMqAdapter {
    */
   boolean sendMessage(String topic, String tag, String message);
 
+  /**
+   * 发送mq消息，默认解码为字符串后发送；可直接发送字节的实现应覆盖此方法，省去编解码
+   *
+   * @param topic 队列topic
+   * @param tag 消息tag
+   * @param message UTF-8编码的消息体
+   * @return 是否发送成功
+   */
+  default boolean sendMessage(String topic, String tag, byte[] message) {
+    return sendMessage(topic, tag, new String(message, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * 是否原样投递任意字节的消息体；经字符串中转（如落库、libraryMessage）的实现不能发送二进制消息
+   *
+   * @return 可以发送二进制消息时为 true
+   */
+  default boolean supportsBinaryMessage() {
+    return false;
+  }
+
+  /**
+   * 异步发送mq消息，默认在调用线程中同步发送
+   *
+   * @param topic 队列topic
+   * @param tag 消息tag
+   * @param message 消息体
+   * @return 发送完成时得到是否发送成功，发送异常时异常结束
+   */
+  default CompletableFuture<Boolean> sendMessageAsync(String topic, String tag, String message) {
+    CompletableFuture<Boolean> future = new CompletableFuture<>();
+    try {
+      future.complete(sendMessage(topic, tag, message));
+    } catch (RuntimeException e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /**
+   * 批量发送mq消息，默认逐条发送，字节消息体的消息按字节发送；同一tag的消息按列表顺序发送
+   *
+   * @param messages 消息列表
+   * @return 与消息一一对应的发送结果
+   */
+  default boolean[] sendMessages(List<MqMessage> messages) {
+    boolean[] results = new boolean[messages.size()];
+    for (int i = 0; i < messages.size(); i++) {
+      MqMessage message = messages.get(i);
+      try {
+        results[i] = message.getBody() == null
+            ? sendMessage(message.getTopic(), message.getTag(), message.getMessage())
+            : sendMessage(message.getTopic(), message.getTag(), message.getBody());
+      } catch (RuntimeException e) {
+        LoggerFactory.getLogger(IMqAdapter.class).error("mq send message error,message=[{}]", message, e);
+      }
+    }
+    return results;
+  }
+
 }
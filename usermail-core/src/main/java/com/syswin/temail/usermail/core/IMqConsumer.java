@@ -24,6 +24,10 @@
 
 package com.syswin.temail.usermail.core;
 
+import com.syswin.temail.usermail.core.exception.UserMailException;
+import java.util.List;
+import org.slf4j.LoggerFactory;
+
 public interface IMqConsumer {
 
   /**
@@ -33,4 +37,37 @@ public interface IMqConsumer {
    */
   boolean consumer(String message);
 
+  /**
+   * 消费mq消息，默认按平台默认编码转为字符串后消费；能识别二进制消息的实现应覆盖此方法
+   * @param message mq消息体
+   * @return 消费成功 true，消费失败 false
+   */
+  default boolean consumer(byte[] message) {
+    return consumer(new String(message));
+  }
+
+  /**
+   * 批量消费mq消息，默认逐条调用{@link #consumer(byte[])}；实现可覆盖此方法合并同类操作（如同一owner的多次删除）。
+   * 参数错误（{@link UserMailException}）的消息视为已消费，重试也无法成功；其他异常视为消费失败，仅失败的消息会被重新投递。
+   *
+   * @param messages mq消息体列表
+   * @return 与messages一一对应的消费结果，true 消费成功，false 需要稍后重试
+   */
+  default boolean[] consumeBatch(List<byte[]> messages) {
+    boolean[] results = new boolean[messages.size()];
+    for (int i = 0; i < results.length; i++) {
+      try {
+        consumer(messages.get(i));
+        results[i] = true;
+      } catch (UserMailException e) {
+        LoggerFactory.getLogger(getClass()).error("MQ args execption", e);
+        results[i] = true;
+      } catch (Exception e) {
+        LoggerFactory.getLogger(getClass()).error("MQ consumer execption", e);
+        results[i] = false;
+      }
+    }
+    return results;
+  }
+
 }
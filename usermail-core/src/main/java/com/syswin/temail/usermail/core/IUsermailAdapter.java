@@ -24,6 +24,13 @@
 
 package com.syswin.temail.usermail.core;
 
+import com.syswin.temail.usermail.core.dto.ReplyCountDeltaDTO;
+import com.syswin.temail.usermail.core.dto.SeqNoAndPkID;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
 public interface IUsermailAdapter {
 
   /**
@@ -43,6 +50,16 @@ public interface IUsermailAdapter {
    */
   long getMsgSeqNo(String from, String to, String owner);
 
+  /**
+   * 一次往返同时获取单聊消息序列号和主键id
+   *
+   * @param from 发送者
+   * @param to 接收者
+   * @param owner 消息所属人
+   * @return 序列号和主键id
+   */
+  SeqNoAndPkID getMsgSeqNoAndPkID(String from, String to, String owner);
+
   /**
    * 获取回复消息PkId
    *
@@ -58,6 +75,15 @@ public interface IUsermailAdapter {
    */
   long getMsgReplySeqNo(String parentMsgid, String owner);
 
+  /**
+   * 一次往返同时获取回复消息序列号和主键id
+   *
+   * @param parentMsgid 父消息id
+   * @param owner 消息所属人
+   * @return 序列号和主键id
+   */
+  SeqNoAndPkID getMsgReplySeqNoAndPkID(String parentMsgid, String owner);
+
   /**
    * 获取黑名单PkID
    *
@@ -71,8 +97,9 @@ public interface IUsermailAdapter {
    * @param owner 消息所属人
    * @param to 接收者
    * @param lastMsgId 最新回复消息id
+   * @param seqNo 消息序列号，延迟合并写入时只保留序列号最大的消息id
    */
-  void setLastMsgId(String owner, String to, String lastMsgId);
+  void setLastMsgId(String owner, String to, String lastMsgId, long seqNo);
 
   /**
    * 获取单聊消息最新回复消息id
@@ -83,6 +110,15 @@ public interface IUsermailAdapter {
    */
   String getLastMsgId(String owner, String to);
 
+  /**
+   * 批量获取单聊会话最新消息id
+   *
+   * @param owner 消息所属人
+   * @param tos 收件人列表
+   * @return 收件人与最新消息id的映射，没有最新消息id的收件人不包含在内
+   */
+  Map<String, String> getLastMsgIds(String owner, Collection<String> tos);
+
   /**
    * 删除单聊消息最新回复消息id
    *
@@ -90,4 +126,103 @@ public interface IUsermailAdapter {
    * @param to 收件人
    */
   void deleteLastMsgId(String owner, String to);
+
+  /**
+   * 更新会话最新消息时间索引中指定会话的时间，索引尚未建立且未在重建中时不做处理
+   *
+   * @param owner 会话拥有者
+   * @param to 另一位聊天者
+   * @param lastMsgTime 最新消息时间（毫秒），没有消息时为0
+   */
+  void updateSessionRecency(String owner, String to, long lastMsgTime);
+
+  /**
+   * 使用全量会话重建会话最新消息时间索引。先标记重建开始，再加载全量会话：加载期间的更新会记录下来并与加载结果合并，
+   * 最后原子地替换索引，不会丢失重建期间的更新；没有会话的owner也会建立（空）索引，避免每次查询都重建
+   *
+   * @param owner 会话拥有者
+   * @param lastMsgTimesLoader 加载另一位聊天者与最新消息时间（毫秒）的映射
+   */
+  void rebuildSessionRecency(String owner, Supplier<Map<String, Long>> lastMsgTimesLoader);
+
+  /**
+   * 按最新消息时间倒序获取会话，对应 ZREVRANGE 的闭区间 [start, end]
+   *
+   * @param owner 会话拥有者
+   * @param start 起始下标
+   * @param end 结束下标
+   * @return 另一位聊天者列表，索引尚未建立时返回null
+   */
+  List<String> listRecentSessions(String owner, long start, long end);
+
+  /**
+   * 从会话最新消息时间索引中移除指定会话
+   *
+   * @param owner 会话拥有者
+   * @param to 另一位聊天者
+   */
+  void removeSessionRecency(String owner, String to);
+
+  /**
+   * 删除会话最新消息时间索引，下次查询时重建
+   *
+   * @param owner 会话拥有者
+   */
+  void deleteSessionRecency(String owner);
+
+  /**
+   * 查询mq事件是否已消费过
+   *
+   * @param eventKey 事件的幂等key
+   * @return 已消费过返回true
+   */
+  boolean isEventConsumed(String eventKey);
+
+  /**
+   * 记录mq事件已消费，对应 SET key NX EX ttl，已有记录时不覆盖
+   *
+   * @param eventKey 事件的幂等key
+   * @param ttlSeconds 记录的过期时间（秒）
+   */
+  void markEventConsumed(String eventKey, long ttlSeconds);
+
+  /**
+   * 累加源消息尚未写入数据库的回复数变化量，变化量存放在redis中，所有节点共享
+   *
+   * @param delta 变化量，最新回复消息id为null时不修改
+   */
+  void addReplyCountDelta(ReplyCountDeltaDTO delta);
+
+  /**
+   * 放回取出后未能写入数据库的变化量：回复数累加，取出之后新记录的最新回复消息id优先
+   *
+   * @param delta 变化量
+   */
+  void restoreReplyCountDelta(ReplyCountDeltaDTO delta);
+
+  /**
+   * 原子地取出并删除源消息尚未写入数据库的变化量，并发取出时只有一方能取到
+   *
+   * @param parentMsgid 源消息id
+   * @param owner 消息所属人
+   * @return 变化量，不存在时返回null
+   */
+  ReplyCountDeltaDTO takeReplyCountDelta(String parentMsgid, String owner);
+
+  /**
+   * 原子地取出并删除最多limit条尚未写入数据库的变化量
+   *
+   * @param limit 最大条数
+   * @return 变化量列表
+   */
+  List<ReplyCountDeltaDTO> takeReplyCountDeltas(int limit);
+
+  /**
+   * 批量查询尚未写入数据库的变化量，不取出
+   *
+   * @param owner 消息所属人
+   * @param parentMsgids 源消息id列表
+   * @return 源消息id与变化量的映射，没有变化量的源消息不包含在内
+   */
+  Map<String, ReplyCountDeltaDTO> getReplyCountDeltas(String owner, Collection<String> parentMsgids);
 }
@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * LZ4 块压缩，格式为：标识(1字节) + 原始长度(4字节，大端) + LZ4块。解压速度远高于gzip，适合读多写少的消息体。
+ */
+public class Lz4MsgCodec implements MsgCodec {
+
+  public static final byte TAG = 0x01;
+  public static final String NAME = "lz4";
+  private static final int HEADER_LENGTH = 5;
+
+  private final LZ4Compressor compressor;
+  private final LZ4SafeDecompressor decompressor;
+
+  public Lz4MsgCodec() {
+    LZ4Factory factory = LZ4Factory.fastestInstance();
+    this.compressor = factory.fastCompressor();
+    this.decompressor = factory.safeDecompressor();
+  }
+
+  @Override
+  public byte tag() {
+    return TAG;
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public byte[] compress(byte[] data) throws IOException {
+    byte[] out = new byte[HEADER_LENGTH + compressor.maxCompressedLength(data.length)];
+    out[0] = TAG;
+    MsgCodecs.writeInt(out, 1, data.length);
+    try {
+      int length = compressor.compress(data, 0, data.length, out, HEADER_LENGTH);
+      return Arrays.copyOf(out, HEADER_LENGTH + length);
+    } catch (LZ4Exception e) {
+      throw new IOException("lz4 compress failed", e);
+    }
+  }
+
+  @Override
+  public byte[] decompress(byte[] data) throws IOException {
+    if (data.length < HEADER_LENGTH || data[0] != TAG) {
+      throw new IOException("not lz4 codec data");
+    }
+    int originalLength = MsgCodecs.checkLength(MsgCodecs.readInt(data, 1));
+    byte[] out = new byte[originalLength];
+    try {
+      int length = decompressor.decompress(data, HEADER_LENGTH, data.length - HEADER_LENGTH, out, 0);
+      if (length != originalLength) {
+        throw new IOException("lz4 decompressed length mismatch");
+      }
+      return out;
+    } catch (LZ4Exception e) {
+      throw new IOException("lz4 decompress failed", e);
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.codec;
+
+import java.io.IOException;
+
+/**
+ * 消息压缩编解码器。
+ * <p>
+ * 压缩结果的第一个字节为编解码器标识 {@link #tag()}，读取时据此选择对应的编解码器，
+ * 不同编解码器写入的消息可以在同一张表中共存。
+ */
+public interface MsgCodec {
+
+  /**
+   * 压缩结果首字节的标识，不能与gzip魔数首字节 0x1f 冲突
+   *
+   * @return 标识
+   */
+  byte tag();
+
+  /**
+   * 配置中使用的名称
+   *
+   * @return 名称
+   */
+  String name();
+
+  /**
+   * 压缩数据，返回值以 {@link #tag()} 开头
+   *
+   * @param data 原始数据
+   * @return 带标识的压缩数据
+   * @throws IOException 压缩失败
+   */
+  byte[] compress(byte[] data) throws IOException;
+
+  /**
+   * 解压 {@link #compress(byte[])} 的结果
+   *
+   * @param data 带标识的压缩数据
+   * @return 原始数据
+   * @throws IOException 数据损坏或标识不匹配
+   */
+  byte[] decompress(byte[] data) throws IOException;
+}
@@ -0,0 +1,126 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.codec;
+
+import java.io.IOException;
+
+/**
+ * 消息编解码器注册表，按配置名称或数据首字节查找编解码器
+ */
+public final class MsgCodecs {
+
+  /**
+   * 不带标识的gzip旧格式，不对应任何 {@link MsgCodec}
+   */
+  public static final String GZIP = "gzip";
+  /**
+   * 单条消息解压后的长度上限，防止损坏的数据触发超大内存分配
+   */
+  static final int MAX_DECOMPRESSED_LENGTH = 64 * 1024 * 1024;
+
+  private static final byte GZIP_MAGIC_FIRST_BYTE = 0x1f;
+  private static final MsgCodec[] CODECS_BY_TAG = new MsgCodec[256];
+
+  static {
+    register(new StoredMsgCodec());
+    register(new Lz4MsgCodec());
+    register(new ZstdMsgCodec());
+  }
+
+  private MsgCodecs() {
+  }
+
+  /**
+   * 注册编解码器，需要外部配置的编解码器（如字典压缩）在启动时注册，同一标识后注册的生效
+   *
+   * @param codec 编解码器
+   */
+  public static synchronized void register(MsgCodec codec) {
+    if (codec.tag() == GZIP_MAGIC_FIRST_BYTE) {
+      throw new IllegalArgumentException("msg codec tag conflicts with gzip magic: " + codec.name());
+    }
+    CODECS_BY_TAG[codec.tag() & 0xff] = codec;
+  }
+
+  /**
+   * 根据配置名称查找编解码器
+   *
+   * @param name 名称，gzip 或空表示沿用不带标识的gzip格式
+   * @return 编解码器，gzip时返回null
+   */
+  public static MsgCodec forName(String name) {
+    if (name == null || name.isEmpty() || GZIP.equalsIgnoreCase(name)) {
+      return null;
+    }
+    for (MsgCodec codec : CODECS_BY_TAG) {
+      if (codec != null && codec.name().equalsIgnoreCase(name)) {
+        return codec;
+      }
+    }
+    throw new IllegalArgumentException("unknown msg codec: " + name);
+  }
+
+  /**
+   * 根据压缩数据的首字节查找编解码器
+   *
+   * @param data 压缩数据
+   * @return 编解码器，没有标识的旧数据返回null
+   */
+  public static MsgCodec forData(byte[] data) {
+    if (data == null || data.length == 0) {
+      return null;
+    }
+    return forTag(data[0]);
+  }
+
+  /**
+   * 根据压缩数据的首字节查找编解码器
+   *
+   * @param tag 压缩数据的首字节
+   * @return 编解码器，没有对应编解码器时返回null
+   */
+  public static MsgCodec forTag(byte tag) {
+    return CODECS_BY_TAG[tag & 0xff];
+  }
+
+  static void writeInt(byte[] out, int offset, int value) {
+    out[offset] = (byte) (value >>> 24);
+    out[offset + 1] = (byte) (value >>> 16);
+    out[offset + 2] = (byte) (value >>> 8);
+    out[offset + 3] = (byte) value;
+  }
+
+  static int readInt(byte[] data, int offset) {
+    return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+        | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+  }
+
+  static int checkLength(int length) throws IOException {
+    if (length < 0 || length > MAX_DECOMPRESSED_LENGTH) {
+      throw new IOException("illegal decompressed length: " + length);
+    }
+    return length;
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.codec;
+
+import com.github.luben.zstd.ZstdDictTrainer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 离线训练消息压缩字典。
+ * <p>
+ * 从 usermail、usermail_msg_reply 表中抽样最新的 zip_msg，解压后训练 zstd 字典，输出为
+ * {@code usermail-<字典ID>.dict}。dictDir 即 app.usermailagent.msg.dict.dir 目录，训练前先加载其中的历史字典，
+ * 以便解压已经使用字典压缩的样本，新字典也写入该目录，再将 app.usermailagent.msg.dict.current 改为新字典ID后重启即可生效。
+ * 无法解压的样本超过 {@value #MAX_SKIPPED_PERCENT}% 时说明字典目录不完整，直接失败而不输出字典。
+ * <p>
+ * 用法：java -cp usermail.jar:mysql-connector.jar com.syswin.temail.usermail.core.codec.MsgDictTrainer
+ * jdbcUrl user password dictDir [sampleCount] [dictSize]
+ */
+public class MsgDictTrainer {
+
+  private static final int DEFAULT_SAMPLE_COUNT = 100000;
+  private static final int DEFAULT_DICT_SIZE = 112640;
+  private static final int SAMPLE_BUFFER_SIZE = 128 * 1024 * 1024;
+  private static final int MAX_SKIPPED_PERCENT = 5;
+  private static final String[] SAMPLE_SQLS = {
+      "select `zip_msg` from `usermail` where `zip_msg` is not null order by `id` desc limit ?",
+      "select `zip_msg` from `usermail_msg_reply` where `zip_msg` is not null order by `id` desc limit ?"
+  };
+
+  private MsgDictTrainer() {
+  }
+
+  public static void main(String[] args) throws SQLException, IOException {
+    if (args.length < 4) {
+      System.err.println("usage: MsgDictTrainer jdbcUrl user password dictDir [sampleCount] [dictSize]");
+      System.exit(1);
+    }
+    Path dictDir = Paths.get(args[3]);
+    int sampleCount = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_SAMPLE_COUNT;
+    int dictSize = args.length > 5 ? Integer.parseInt(args[5]) : DEFAULT_DICT_SIZE;
+    registerDictionaries(dictDir);
+    List<byte[]> samples = new ArrayList<>();
+    int skipped = 0;
+    try (Connection connection = DriverManager.getConnection(args[0], args[1], args[2])) {
+      for (String sql : SAMPLE_SQLS) {
+        skipped += loadSamples(connection, sql, sampleCount, samples);
+      }
+    }
+    checkSkipped(samples.size(), skipped);
+    byte[] dict = train(samples, dictSize);
+    Path output = dictDir.resolve("usermail-" + Integer.toUnsignedString(ZstdDictMsgCodec.dictId(dict))
+        + ZstdDictMsgCodec.DICT_FILE_SUFFIX);
+    Files.write(output, dict);
+    System.out.println("trained dictionary from " + samples.size() + " samples, skipped " + skipped + ": " + output);
+  }
+
+  /**
+   * 注册字典目录中的历史字典，使已经使用字典压缩的样本可以解压，目录中没有字典时不注册
+   *
+   * @param dictDir 字典目录
+   * @throws IOException 读取字典失败
+   */
+  static void registerDictionaries(Path dictDir) throws IOException {
+    if (!Files.isDirectory(dictDir)) {
+      throw new IOException("dictionary directory not found: " + dictDir);
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dictDir, "*" + ZstdDictMsgCodec.DICT_FILE_SUFFIX)) {
+      if (!files.iterator().hasNext()) {
+        return;
+      }
+    }
+    Map<Integer, byte[]> dictionaries = ZstdDictMsgCodec.loadDictionaries(dictDir);
+    // 仅用于解压，写入字典任选其一即可
+    int anyDictId = dictionaries.keySet().iterator().next();
+    MsgCodecs.register(new ZstdDictMsgCodec(dictionaries, anyDictId, ZstdMsgCodec.DEFAULT_LEVEL));
+  }
+
+  /**
+   * 检查无法解压而跳过的样本比例
+   *
+   * @param loaded 解压成功的样本数
+   * @param skipped 跳过的样本数
+   * @throws IOException 没有可用样本或跳过比例过高
+   */
+  static void checkSkipped(int loaded, int skipped) throws IOException {
+    if (loaded == 0) {
+      throw new IOException("no sample loaded, skipped " + skipped);
+    }
+    if (skipped * 100L > (long) (loaded + skipped) * MAX_SKIPPED_PERCENT) {
+      throw new IOException("too many samples can not be decompressed, skipped " + skipped + " of "
+          + (loaded + skipped) + ", check that all dictionaries are in the dictionary directory");
+    }
+  }
+
+  /**
+   * 使用样本训练字典
+   *
+   * @param samples 解压后的消息
+   * @param dictSize 字典大小上限
+   * @return 字典内容
+   */
+  static byte[] train(List<byte[]> samples, int dictSize) {
+    ZstdDictTrainer trainer = new ZstdDictTrainer(SAMPLE_BUFFER_SIZE, dictSize);
+    for (byte[] sample : samples) {
+      if (!trainer.addSample(sample)) {
+        break;
+      }
+    }
+    return trainer.trainSamples();
+  }
+
+  private static int loadSamples(Connection connection, String sql, int sampleCount, List<byte[]> samples)
+      throws SQLException {
+    int skipped = 0;
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      statement.setInt(1, sampleCount);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          try {
+            samples.add(decompress(resultSet.getBytes(1)));
+          } catch (IOException e) {
+            skipped++;
+          }
+        }
+      }
+    }
+    return skipped;
+  }
+
+  private static byte[] decompress(byte[] data) throws IOException {
+    MsgCodec codec = MsgCodecs.forData(data);
+    if (codec != null) {
+      return codec.decompress(data);
+    }
+    try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data))) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length * 4);
+      byte[] buf = new byte[4096];
+      int num;
+      while ((num = gzip.read(buf)) != -1) {
+        bos.write(buf, 0, num);
+      }
+      return bos.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,393 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.codec;
+
+import com.syswin.temail.usermail.core.dto.SessionEvent;
+import com.syswin.temail.usermail.core.exception.UserMailException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 会话事件的紧凑二进制格式，用于内部 usermail agent topic。
+ * <p>
+ * 格式：魔数 {@link #MAGIC}、版本号，之后依次为已设置的字段，每个字段为 varint(字段号 &lt;&lt; 3 | 类型) 加字段值：
+ * 类型0为zigzag编码的varint（数字、布尔），类型2为varint长度加内容（UTF-8字符串、字符串列表）。
+ * 字段号只增不改，读取时跳过不认识的字段，新旧版本可以混跑。json消息以 { 或空白开头，消费端按首字节区分两种格式。
+ */
+public final class SessionEventCodec {
+
+  /**
+   * 二进制事件的首字节，不是合法的UTF-8首字节，不会与json消息冲突
+   */
+  public static final byte MAGIC = (byte) 0xF5;
+  public static final byte VERSION = 1;
+
+  private static final int WIRE_VARINT = 0;
+  private static final int WIRE_LENGTH_DELIMITED = 2;
+
+  private static final int CDTP_HEADER = 1;
+  private static final int X_PACKET_ID = 2;
+  private static final int TIMESTAMP = 3;
+  private static final int SESSION_MESSAGE_TYPE = 4;
+  private static final int FROM = 5;
+  private static final int TO = 6;
+  private static final int OWNER = 7;
+  private static final int MSGID = 8;
+  private static final int PARENT_MSGID = 9;
+  private static final int REPLY_MSG_PARENT_ID = 10;
+  private static final int TO_MSG = 11;
+  private static final int SEQ_NO = 12;
+  private static final int ATTACHMENT_SIZE = 13;
+  private static final int AUTHOR = 14;
+  private static final int FILTER = 15;
+  private static final int SESSION_EXT_DATA = 16;
+  private static final int DELETE_ALL_MSG = 17;
+  private static final int TRASH_MSG_INFO = 18;
+  private static final int GROUP_TEMAIL = 19;
+  private static final int TEMAIL = 20;
+  private static final int TEMAIL_DOMAIN = 21;
+
+  private SessionEventCodec() {
+  }
+
+  /**
+   * 是否为二进制格式的事件
+   *
+   * @param message mq消息体
+   * @return 首字节为 {@link #MAGIC} 时为 true
+   */
+  public static boolean isBinary(byte[] message) {
+    return message != null && message.length > 0 && message[0] == MAGIC;
+  }
+
+  /**
+   * 编码会话事件
+   *
+   * @param event 会话事件
+   * @return 二进制格式的事件
+   */
+  public static byte[] encode(SessionEvent event) {
+    Writer writer = new Writer();
+    writer.writeByte(MAGIC);
+    writer.writeByte(VERSION);
+    writer.writeString(CDTP_HEADER, event.getCdtpHeader());
+    writer.writeString(X_PACKET_ID, event.getxPacketId());
+    writer.writeNumber(TIMESTAMP, event.getTimestamp());
+    writer.writeNumber(SESSION_MESSAGE_TYPE, event.getSessionMessageType());
+    writer.writeString(FROM, event.getFrom());
+    writer.writeString(TO, event.getTo());
+    writer.writeString(OWNER, event.getOwner());
+    writer.writeString(MSGID, event.getMsgid());
+    writer.writeString(PARENT_MSGID, event.getParentMsgId());
+    writer.writeString(REPLY_MSG_PARENT_ID, event.getReplyMsgParentId());
+    writer.writeString(TO_MSG, event.getToMsg());
+    writer.writeNumber(SEQ_NO, event.getSeqNo());
+    writer.writeNumber(ATTACHMENT_SIZE, event.getAttachmentSize());
+    writer.writeString(AUTHOR, event.getAuthor());
+    writer.writeList(FILTER, event.getFilter());
+    writer.writeString(SESSION_EXT_DATA, event.getSessionExtData());
+    if (event.getDeleteAllMsg() != null) {
+      writer.writeNumber(DELETE_ALL_MSG, event.getDeleteAllMsg() ? 1L : 0L);
+    }
+    writer.writeString(TRASH_MSG_INFO, event.getTrashMsgInfo());
+    writer.writeString(GROUP_TEMAIL, event.getGroupTemail());
+    writer.writeString(TEMAIL, event.getTemail());
+    writer.writeString(TEMAIL_DOMAIN, event.getTemailDomain());
+    return writer.toByteArray();
+  }
+
+  /**
+   * 解码会话事件
+   *
+   * @param message 二进制格式的事件
+   * @return 会话事件
+   * @throws UserMailException 格式错误或版本不支持
+   */
+  public static SessionEvent decode(byte[] message) {
+    if (!isBinary(message) || message.length < 2) {
+      throw new UserMailException("not a binary session event");
+    }
+    if (message[1] != VERSION) {
+      throw new UserMailException("unsupported session event version: " + message[1]);
+    }
+    Reader reader = new Reader(message, 2);
+    SessionEvent event = new SessionEvent();
+    while (reader.hasRemaining()) {
+      long tag = reader.readVarint();
+      int field = (int) (tag >>> 3);
+      int wireType = (int) (tag & 7);
+      switch (field) {
+        case CDTP_HEADER:
+          event.setCdtpHeader(reader.readString(wireType));
+          break;
+        case X_PACKET_ID:
+          event.setxPacketId(reader.readString(wireType));
+          break;
+        case TIMESTAMP:
+          event.setTimestamp(reader.readNumber(wireType));
+          break;
+        case SESSION_MESSAGE_TYPE:
+          event.setSessionMessageType((int) reader.readNumber(wireType));
+          break;
+        case FROM:
+          event.setFrom(reader.readString(wireType));
+          break;
+        case TO:
+          event.setTo(reader.readString(wireType));
+          break;
+        case OWNER:
+          event.setOwner(reader.readString(wireType));
+          break;
+        case MSGID:
+          event.setMsgid(reader.readString(wireType));
+          break;
+        case PARENT_MSGID:
+          event.setParentMsgId(reader.readString(wireType));
+          break;
+        case REPLY_MSG_PARENT_ID:
+          event.setReplyMsgParentId(reader.readString(wireType));
+          break;
+        case TO_MSG:
+          event.setToMsg(reader.readString(wireType));
+          break;
+        case SEQ_NO:
+          event.setSeqNo(reader.readNumber(wireType));
+          break;
+        case ATTACHMENT_SIZE:
+          event.setAttachmentSize((int) reader.readNumber(wireType));
+          break;
+        case AUTHOR:
+          event.setAuthor(reader.readString(wireType));
+          break;
+        case FILTER:
+          event.setFilter(reader.readList(wireType));
+          break;
+        case SESSION_EXT_DATA:
+          event.setSessionExtData(reader.readString(wireType));
+          break;
+        case DELETE_ALL_MSG:
+          event.setDeleteAllMsg(reader.readNumber(wireType) != 0);
+          break;
+        case TRASH_MSG_INFO:
+          event.setTrashMsgInfo(reader.readString(wireType));
+          break;
+        case GROUP_TEMAIL:
+          event.setGroupTemail(reader.readString(wireType));
+          break;
+        case TEMAIL:
+          event.setTemail(reader.readString(wireType));
+          break;
+        case TEMAIL_DOMAIN:
+          event.setTemailDomain(reader.readString(wireType));
+          break;
+        default:
+          reader.skip(wireType);
+      }
+    }
+    return event;
+  }
+
+  private static final class Writer {
+
+    private byte[] buffer = new byte[256];
+    private int pos;
+
+    private void writeString(int field, String value) {
+      if (value != null) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(field << 3 | WIRE_LENGTH_DELIMITED);
+        writeBytes(bytes);
+      }
+    }
+
+    private void writeNumber(int field, Number value) {
+      if (value != null) {
+        writeNumber(field, value.longValue());
+      }
+    }
+
+    private void writeNumber(int field, long value) {
+      writeVarint(field << 3 | WIRE_VARINT);
+      writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * 列表编码为元素个数加各元素，元素为 长度+1 加内容，0表示null
+     */
+    private void writeList(int field, List<String> values) {
+      if (values == null) {
+        return;
+      }
+      Writer list = new Writer();
+      list.writeVarint(values.size());
+      for (String value : values) {
+        if (value == null) {
+          list.writeVarint(0);
+        } else {
+          byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+          list.writeVarint(bytes.length + 1L);
+          list.writeRaw(bytes, bytes.length);
+        }
+      }
+      writeVarint(field << 3 | WIRE_LENGTH_DELIMITED);
+      writeVarint(list.pos);
+      writeRaw(list.buffer, list.pos);
+    }
+
+    private void writeBytes(byte[] bytes) {
+      writeVarint(bytes.length);
+      writeRaw(bytes, bytes.length);
+    }
+
+    private void writeVarint(long value) {
+      ensureCapacity(10);
+      while ((value & ~0x7FL) != 0) {
+        buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[pos++] = (byte) value;
+    }
+
+    private void writeByte(byte value) {
+      ensureCapacity(1);
+      buffer[pos++] = value;
+    }
+
+    private void writeRaw(byte[] bytes, int length) {
+      ensureCapacity(length);
+      System.arraycopy(bytes, 0, buffer, pos, length);
+      pos += length;
+    }
+
+    private void ensureCapacity(int more) {
+      if (pos + more > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, pos + more));
+      }
+    }
+
+    private byte[] toByteArray() {
+      return Arrays.copyOf(buffer, pos);
+    }
+  }
+
+  private static final class Reader {
+
+    private final byte[] buffer;
+    private final int limit;
+    private int pos;
+
+    private Reader(byte[] buffer, int pos) {
+      this(buffer, pos, buffer.length);
+    }
+
+    private Reader(byte[] buffer, int pos, int limit) {
+      this.buffer = buffer;
+      this.pos = pos;
+      this.limit = limit;
+    }
+
+    private boolean hasRemaining() {
+      return pos < limit;
+    }
+
+    private long readVarint() {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        if (pos >= limit) {
+          throw new UserMailException("truncated session event");
+        }
+        byte b = buffer[pos++];
+        value |= (long) (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+      throw new UserMailException("malformed varint in session event");
+    }
+
+    private long readNumber(int wireType) {
+      checkWireType(wireType, WIRE_VARINT);
+      long value = readVarint();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    private int readLength() {
+      long length = readVarint();
+      if (length < 0 || length > limit - pos) {
+        throw new UserMailException("truncated session event");
+      }
+      return (int) length;
+    }
+
+    private String readString(int wireType) {
+      checkWireType(wireType, WIRE_LENGTH_DELIMITED);
+      int length = readLength();
+      String value = new String(buffer, pos, length, StandardCharsets.UTF_8);
+      pos += length;
+      return value;
+    }
+
+    private List<String> readList(int wireType) {
+      checkWireType(wireType, WIRE_LENGTH_DELIMITED);
+      int length = readLength();
+      Reader list = new Reader(buffer, pos, pos + length);
+      pos += length;
+      int size = (int) Math.min(list.readVarint(), length);
+      List<String> values = new ArrayList<>(size);
+      while (list.hasRemaining()) {
+        long elementLength = list.readVarint();
+        if (elementLength == 0) {
+          values.add(null);
+        } else {
+          if (elementLength - 1 > list.limit - list.pos) {
+            throw new UserMailException("truncated session event");
+          }
+          values.add(new String(buffer, list.pos, (int) elementLength - 1, StandardCharsets.UTF_8));
+          list.pos += (int) elementLength - 1;
+        }
+      }
+      return values;
+    }
+
+    private void skip(int wireType) {
+      if (wireType == WIRE_VARINT) {
+        readVarint();
+      } else if (wireType == WIRE_LENGTH_DELIMITED) {
+        int length = readLength();
+        pos += length;
+      } else {
+        throw new UserMailException("unknown wire type in session event: " + wireType);
+      }
+    }
+
+    private static void checkWireType(int wireType, int expected) {
+      if (wireType != expected) {
+        throw new UserMailException("unexpected wire type in session event: " + wireType);
+      }
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 不压缩直接存储，格式为：标识(1字节) + 原始数据。用于压缩后反而变大的短消息。
+ */
+public class StoredMsgCodec implements MsgCodec {
+
+  public static final byte TAG = 0x00;
+  public static final String NAME = "stored";
+
+  /**
+   * 按存储格式包装原始数据
+   *
+   * @param data 原始数据
+   * @return 带标识的数据
+   */
+  static byte[] store(byte[] data) {
+    byte[] out = new byte[data.length + 1];
+    out[0] = TAG;
+    System.arraycopy(data, 0, out, 1, data.length);
+    return out;
+  }
+
+  @Override
+  public byte tag() {
+    return TAG;
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public byte[] compress(byte[] data) {
+    return store(data);
+  }
+
+  @Override
+  public byte[] decompress(byte[] data) throws IOException {
+    if (data.length < 1 || data[0] != TAG) {
+      throw new IOException("not stored codec data");
+    }
+    return Arrays.copyOfRange(data, 1, data.length);
+  }
+}
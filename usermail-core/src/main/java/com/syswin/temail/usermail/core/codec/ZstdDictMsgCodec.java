@@ -0,0 +1,193 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.codec;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于训练字典的 Zstd 压缩，格式为：标识(1字节) + 字典ID(4字节，大端) + zstd帧。
+ * <p>
+ * 短消息没有足够的上下文，通用压缩算法效果很差，使用从历史消息中训练出的字典可以显著提高压缩率。
+ * 字典ID取自字典文件头，写入只使用当前字典，读取时按消息头中的字典ID选择字典，重新训练后旧数据仍可解压，
+ * 因此历史字典文件需要一直保留。压缩后没有变小的数据按 {@link StoredMsgCodec} 格式原样存储。
+ */
+public class ZstdDictMsgCodec implements MsgCodec {
+
+  public static final byte TAG = 0x03;
+  public static final String NAME = "zstd-dict";
+  /**
+   * 字典文件扩展名，字典ID从文件内容读取，与文件名无关
+   */
+  public static final String DICT_FILE_SUFFIX = ".dict";
+  private static final Logger LOGGER = LoggerFactory.getLogger(ZstdDictMsgCodec.class);
+  private static final int HEADER_LENGTH = 5;
+
+  private final Map<Integer, ZstdDictDecompress> decompressDicts;
+  private final int currentDictId;
+  private final ZstdDictCompress currentCompressDict;
+
+  /**
+   * @param dictionaries 字典ID与字典内容的映射，需包含所有历史字典
+   * @param currentDictId 写入使用的字典ID
+   * @param level 压缩级别
+   */
+  public ZstdDictMsgCodec(Map<Integer, byte[]> dictionaries, int currentDictId, int level) {
+    byte[] currentDict = dictionaries.get(currentDictId);
+    if (currentDict == null) {
+      throw new IllegalArgumentException("current zstd dictionary not found: " + currentDictId);
+    }
+    Map<Integer, ZstdDictDecompress> dicts = new HashMap<>(dictionaries.size() * 4 / 3 + 1);
+    for (Map.Entry<Integer, byte[]> entry : dictionaries.entrySet()) {
+      dicts.put(entry.getKey(), new ZstdDictDecompress(entry.getValue()));
+    }
+    this.decompressDicts = Collections.unmodifiableMap(dicts);
+    this.currentDictId = currentDictId;
+    this.currentCompressDict = new ZstdDictCompress(currentDict, level);
+  }
+
+  /**
+   * 加载目录下的全部字典文件，写入使用的字典必须显式指定
+   * <p>
+   * 字典ID是训练时生成的随机值，与训练先后无关，不能据此推断哪个字典最新。
+   *
+   * @param dir 字典目录
+   * @param currentDictId 写入使用的字典ID，按无符号数解析自 {@code usermail-<字典ID>.dict}，不能为0
+   * @param level 压缩级别
+   * @return 编解码器
+   * @throws IOException 读取字典失败或未指定写入使用的字典
+   */
+  public static ZstdDictMsgCodec fromDirectory(Path dir, int currentDictId, int level) throws IOException {
+    if (currentDictId == 0) {
+      throw new IOException("current zstd dictionary id is required when loading dictionaries from " + dir);
+    }
+    Map<Integer, byte[]> dictionaries = loadDictionaries(dir);
+    if (!dictionaries.containsKey(currentDictId)) {
+      throw new IOException(
+          "current zstd dictionary " + Integer.toUnsignedString(currentDictId) + " not found in " + dir);
+    }
+    return new ZstdDictMsgCodec(dictionaries, currentDictId, level);
+  }
+
+  /**
+   * 读取目录下的全部字典文件
+   *
+   * @param dir 字典目录
+   * @return 字典ID与字典内容的映射，不为空
+   * @throws IOException 读取字典失败或目录中没有字典
+   */
+  public static Map<Integer, byte[]> loadDictionaries(Path dir) throws IOException {
+    Map<Integer, byte[]> dictionaries = new HashMap<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + DICT_FILE_SUFFIX)) {
+      for (Path file : files) {
+        byte[] dict = Files.readAllBytes(file);
+        int dictId = dictId(dict);
+        if (dictId == 0) {
+          throw new IOException("zstd dictionary without id: " + file);
+        }
+        dictionaries.put(dictId, dict);
+        LOGGER.info("load zstd dictionary {}, id is {}, size is {}", file, Integer.toUnsignedString(dictId),
+            dict.length);
+      }
+    }
+    if (dictionaries.isEmpty()) {
+      throw new IOException("no zstd dictionary found in " + dir);
+    }
+    return dictionaries;
+  }
+
+  /**
+   * 读取字典文件头中的字典ID
+   *
+   * @param dict 字典内容
+   * @return 字典ID，原始内容字典返回0
+   */
+  public static int dictId(byte[] dict) {
+    return (int) Zstd.getDictIdFromDict(dict);
+  }
+
+  @Override
+  public byte tag() {
+    return TAG;
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public byte[] compress(byte[] data) throws IOException {
+    byte[] out = new byte[HEADER_LENGTH + (int) Zstd.compressBound(data.length)];
+    out[0] = TAG;
+    MsgCodecs.writeInt(out, 1, currentDictId);
+    long length = Zstd.compressFastDict(out, HEADER_LENGTH, data, 0, data.length, currentCompressDict);
+    if (Zstd.isError(length)) {
+      throw new IOException("zstd dict compress failed: " + Zstd.getErrorName(length));
+    }
+    if (HEADER_LENGTH + length > data.length) {
+      return StoredMsgCodec.store(data);
+    }
+    return Arrays.copyOf(out, HEADER_LENGTH + (int) length);
+  }
+
+  @Override
+  public byte[] decompress(byte[] data) throws IOException {
+    if (data.length <= HEADER_LENGTH || data[0] != TAG) {
+      throw new IOException("not zstd dict codec data");
+    }
+    int dictId = MsgCodecs.readInt(data, 1);
+    ZstdDictDecompress dict = decompressDicts.get(dictId);
+    if (dict == null) {
+      throw new IOException("zstd dictionary not loaded: " + dictId);
+    }
+    long contentSize = Zstd.getFrameContentSize(data, HEADER_LENGTH, data.length - HEADER_LENGTH);
+    if (contentSize < 0 || contentSize > Integer.MAX_VALUE) {
+      throw new IOException("zstd frame content size unknown");
+    }
+    byte[] out = new byte[MsgCodecs.checkLength((int) contentSize)];
+    long length = Zstd.decompressFastDict(out, 0, data, HEADER_LENGTH, data.length - HEADER_LENGTH, dict);
+    if (Zstd.isError(length) || length != out.length) {
+      throw new IOException(
+          "zstd dict decompress failed: " + (Zstd.isError(length) ? Zstd.getErrorName(length) : length));
+    }
+    return out;
+  }
+
+  int getCurrentDictId() {
+    return currentDictId;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.codec;
+
+import com.github.luben.zstd.Zstd;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Zstd 压缩，格式为：标识(1字节) + zstd帧，帧头中自带原始长度。压缩率接近或优于gzip，解压速度明显更快。
+ */
+public class ZstdMsgCodec implements MsgCodec {
+
+  public static final byte TAG = 0x02;
+  public static final String NAME = "zstd";
+  public static final int DEFAULT_LEVEL = 3;
+
+  private final int level;
+
+  public ZstdMsgCodec() {
+    this(DEFAULT_LEVEL);
+  }
+
+  public ZstdMsgCodec(int level) {
+    this.level = level;
+  }
+
+  @Override
+  public byte tag() {
+    return TAG;
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public byte[] compress(byte[] data) throws IOException {
+    byte[] out = new byte[1 + (int) Zstd.compressBound(data.length)];
+    out[0] = TAG;
+    long length = Zstd.compressByteArray(out, 1, out.length - 1, data, 0, data.length, level);
+    if (Zstd.isError(length)) {
+      throw new IOException("zstd compress failed: " + Zstd.getErrorName(length));
+    }
+    return Arrays.copyOf(out, 1 + (int) length);
+  }
+
+  @Override
+  public byte[] decompress(byte[] data) throws IOException {
+    if (data.length < 2 || data[0] != TAG) {
+      throw new IOException("not zstd codec data");
+    }
+    long contentSize = Zstd.getFrameContentSize(data, 1, data.length - 1);
+    if (contentSize < 0 || contentSize > Integer.MAX_VALUE) {
+      throw new IOException("zstd frame content size unknown");
+    }
+    byte[] out = new byte[MsgCodecs.checkLength((int) contentSize)];
+    long length = Zstd.decompressByteArray(out, 0, out.length, data, 1, data.length - 1);
+    if (Zstd.isError(length) || length != out.length) {
+      throw new IOException("zstd decompress failed: " + (Zstd.isError(length) ? Zstd.getErrorName(length) : length));
+    }
+    return out;
+  }
+}
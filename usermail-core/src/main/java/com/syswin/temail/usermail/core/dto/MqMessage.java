@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.dto;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 待发送的mq消息，消息体为字符串或UTF-8编码的字节之一
+ */
+public class MqMessage {
+
+  private final String topic;
+  private final String tag;
+  private final String message;
+  private final byte[] body;
+
+  public MqMessage(String topic, String tag, String message) {
+    this.topic = topic;
+    this.tag = tag;
+    this.message = message;
+    this.body = null;
+  }
+
+  public MqMessage(String topic, String tag, byte[] body) {
+    this.topic = topic;
+    this.tag = tag;
+    this.message = null;
+    this.body = body;
+  }
+
+  public String getTopic() {
+    return topic;
+  }
+
+  public String getTag() {
+    return tag;
+  }
+
+  /**
+   * 字符串消息体，字节消息体在此解码
+   */
+  public String getMessage() {
+    return body == null ? message : new String(body, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * 字节消息体，字符串消息体时为null
+   */
+  public byte[] getBody() {
+    return body;
+  }
+
+  @Override
+  public String toString() {
+    return "MqMessage{" +
+        "topic='" + topic + '\'' +
+        ", tag='" + tag + '\'' +
+        ", message='" + getMessage() + '\'' +
+        '}';
+  }
+}
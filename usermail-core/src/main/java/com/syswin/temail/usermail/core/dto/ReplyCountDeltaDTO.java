@@ -0,0 +1,79 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.dto;
+
+/**
+ * 单条源消息累计的回复数变化量和最新回复消息id
+ */
+public class ReplyCountDeltaDTO {
+
+  private final String msgid;
+  private final String owner;
+  private final int count;
+  private final String lastReplyMsgid;
+
+  public ReplyCountDeltaDTO(String msgid, String owner, int count, String lastReplyMsgid) {
+    this.msgid = msgid;
+    this.owner = owner;
+    this.count = count;
+    this.lastReplyMsgid = lastReplyMsgid;
+  }
+
+  /**
+   * 合并之后发生的变化量，回复数累加，最新回复消息id以之后的为准
+   *
+   * @param later 之后发生的变化量
+   * @return 合并后的变化量
+   */
+  public ReplyCountDeltaDTO plus(ReplyCountDeltaDTO later) {
+    return new ReplyCountDeltaDTO(msgid, owner, count + later.count, later.lastReplyMsgid);
+  }
+
+  public String getMsgid() {
+    return msgid;
+  }
+
+  public String getOwner() {
+    return owner;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public String getLastReplyMsgid() {
+    return lastReplyMsgid;
+  }
+
+  @Override
+  public String toString() {
+    return "ReplyCountDeltaDTO{" +
+        "msgid='" + msgid + '\'' +
+        ", owner='" + owner + '\'' +
+        ", count=" + count +
+        ", lastReplyMsgid='" + lastReplyMsgid + '\'' +
+        '}';
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.dto;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * seqId闭区间 [begin, end]
+ */
+public class SeqIdRange implements Serializable {
+
+  private final long begin;
+  private final long end;
+
+  public SeqIdRange(long begin, long end) {
+    this.begin = begin;
+    this.end = end;
+  }
+
+  public long getBegin() {
+    return begin;
+  }
+
+  public long getEnd() {
+    return end;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    SeqIdRange that = (SeqIdRange) o;
+    return begin == that.begin && end == that.end;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(begin, end);
+  }
+
+  @Override
+  public String toString() {
+    return "SeqIdRange{" +
+        "begin=" + begin +
+        ", end=" + end +
+        '}';
+  }
+}
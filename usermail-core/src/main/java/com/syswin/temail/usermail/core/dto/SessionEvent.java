@@ -0,0 +1,343 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.dto;
+
+import com.syswin.temail.usermail.common.ParamsKey.SessionEventKey;
+import com.syswin.temail.usermail.core.json.JsonBytesWriter;
+import java.util.List;
+
+/**
+ * 会话事件，发往notify和usermail agent的mq消息体。
+ * <p>
+ * 字段名见 {@link SessionEventKey}，未设置（null）的字段不输出；通过 {@link #toJson()} 流式写出，与原先Map经Gson序列化的结果字段一致。
+ */
+public class SessionEvent {
+
+  /**
+   * 头信息中的header
+   */
+  private String cdtpHeader;
+  /**
+   * 头信息中的xPacketId
+   */
+  private String xPacketId;
+  /**
+   * 事件时间
+   */
+  private Long timestamp;
+  /**
+   * 事件类型
+   */
+  private Integer sessionMessageType;
+  /**
+   * 发件人
+   */
+  private String from;
+  /**
+   * 收件人
+   */
+  private String to;
+  /**
+   * 消息所属人
+   */
+  private String owner;
+  /**
+   * 消息id，多条消息时为json数组字符串
+   */
+  private String msgid;
+  /**
+   * 父消息id
+   */
+  private String parentMsgId;
+  /**
+   * 回复消息的父消息id（usermail agent事件）
+   */
+  private String replyMsgParentId;
+  /**
+   * 消息内容
+   */
+  private String toMsg;
+  /**
+   * 会话序号
+   */
+  private Long seqNo;
+  /**
+   * 附件大小
+   */
+  private Integer attachmentSize;
+  /**
+   * 消息作者
+   */
+  private String author;
+  /**
+   * 能接收到此条消息的人
+   */
+  private List<String> filter;
+  /**
+   * 会话中另一方的头像和昵称
+   */
+  private String sessionExtData;
+  /**
+   * 删除会话时是否删除所有消息
+   */
+  private Boolean deleteAllMsg;
+  /**
+   * 废纸篓消息列表的json字符串
+   */
+  private String trashMsgInfo;
+  /**
+   * 群聊地址
+   */
+  private String groupTemail;
+  /**
+   * 被移除的群成员地址
+   */
+  private String temail;
+  /**
+   * 域
+   */
+  private String temailDomain;
+
+  public SessionEvent() {
+  }
+
+  /**
+   * 带公共字段的事件，时间为当前时间
+   *
+   * @param headerInfo 头信息（header和xPacketId），可以为null
+   * @param sessionMessageType 事件类型
+   * @param from 发件人
+   * @param to 收件人
+   */
+  public SessionEvent(CdtpHeaderDTO headerInfo, int sessionMessageType, String from, String to) {
+    if (headerInfo != null) {
+      this.cdtpHeader = headerInfo.getCdtpHeader();
+      this.xPacketId = headerInfo.getxPacketId();
+    }
+    this.timestamp = System.currentTimeMillis();
+    this.sessionMessageType = sessionMessageType;
+    this.from = from;
+    this.to = to;
+  }
+
+  /**
+   * 写出json
+   *
+   * @return UTF-8编码的json
+   */
+  public byte[] toJson() {
+    return JsonBytesWriter.beginObject()
+        .put(SessionEventKey.CDTP_HEADER, cdtpHeader)
+        .put(SessionEventKey.X_PACKET_ID, xPacketId)
+        .put(SessionEventKey.TIMESTAMP, timestamp)
+        .put(SessionEventKey.SESSION_MESSAGE_TYPE, sessionMessageType)
+        .put(SessionEventKey.FROM, from)
+        .put(SessionEventKey.TO, to)
+        .put(SessionEventKey.OWNER, owner)
+        .put(SessionEventKey.MSGID, msgid)
+        .put(SessionEventKey.PARENT_MSGID, parentMsgId)
+        .put(SessionEventKey.REPLY_MSG_PARENT_ID, replyMsgParentId)
+        .put(SessionEventKey.TO_MSG, toMsg)
+        .put(SessionEventKey.SEQ_NO, seqNo)
+        .put(SessionEventKey.ATTACHMENT_SIZE, attachmentSize)
+        .put(SessionEventKey.AUTHOR, author)
+        .put(SessionEventKey.FILTER, filter)
+        .put(SessionEventKey.SESSION_EXT_DATA, sessionExtData)
+        .put(SessionEventKey.DELETE_ALL_MSG, deleteAllMsg)
+        .put(SessionEventKey.TRASH_MSG_INFO, trashMsgInfo)
+        .put(SessionEventKey.GROUP_TEMAIL, groupTemail)
+        .put(SessionEventKey.TEMAIL, temail)
+        .put(SessionEventKey.TEMAIL_DOMAIN, temailDomain)
+        .endObject();
+  }
+
+  public String getCdtpHeader() {
+    return cdtpHeader;
+  }
+
+  public void setCdtpHeader(String cdtpHeader) {
+    this.cdtpHeader = cdtpHeader;
+  }
+
+  public String getxPacketId() {
+    return xPacketId;
+  }
+
+  public void setxPacketId(String xPacketId) {
+    this.xPacketId = xPacketId;
+  }
+
+  public Long getTimestamp() {
+    return timestamp;
+  }
+
+  public void setTimestamp(Long timestamp) {
+    this.timestamp = timestamp;
+  }
+
+  public Integer getSessionMessageType() {
+    return sessionMessageType;
+  }
+
+  public void setSessionMessageType(Integer sessionMessageType) {
+    this.sessionMessageType = sessionMessageType;
+  }
+
+  public String getFrom() {
+    return from;
+  }
+
+  public void setFrom(String from) {
+    this.from = from;
+  }
+
+  public String getTo() {
+    return to;
+  }
+
+  public void setTo(String to) {
+    this.to = to;
+  }
+
+  public String getOwner() {
+    return owner;
+  }
+
+  public void setOwner(String owner) {
+    this.owner = owner;
+  }
+
+  public String getMsgid() {
+    return msgid;
+  }
+
+  public void setMsgid(String msgid) {
+    this.msgid = msgid;
+  }
+
+  public String getParentMsgId() {
+    return parentMsgId;
+  }
+
+  public void setParentMsgId(String parentMsgId) {
+    this.parentMsgId = parentMsgId;
+  }
+
+  public String getReplyMsgParentId() {
+    return replyMsgParentId;
+  }
+
+  public void setReplyMsgParentId(String replyMsgParentId) {
+    this.replyMsgParentId = replyMsgParentId;
+  }
+
+  public String getToMsg() {
+    return toMsg;
+  }
+
+  public void setToMsg(String toMsg) {
+    this.toMsg = toMsg;
+  }
+
+  public Long getSeqNo() {
+    return seqNo;
+  }
+
+  public void setSeqNo(Long seqNo) {
+    this.seqNo = seqNo;
+  }
+
+  public Integer getAttachmentSize() {
+    return attachmentSize;
+  }
+
+  public void setAttachmentSize(Integer attachmentSize) {
+    this.attachmentSize = attachmentSize;
+  }
+
+  public String getAuthor() {
+    return author;
+  }
+
+  public void setAuthor(String author) {
+    this.author = author;
+  }
+
+  public List<String> getFilter() {
+    return filter;
+  }
+
+  public void setFilter(List<String> filter) {
+    this.filter = filter;
+  }
+
+  public String getSessionExtData() {
+    return sessionExtData;
+  }
+
+  public void setSessionExtData(String sessionExtData) {
+    this.sessionExtData = sessionExtData;
+  }
+
+  public Boolean getDeleteAllMsg() {
+    return deleteAllMsg;
+  }
+
+  public void setDeleteAllMsg(Boolean deleteAllMsg) {
+    this.deleteAllMsg = deleteAllMsg;
+  }
+
+  public String getTrashMsgInfo() {
+    return trashMsgInfo;
+  }
+
+  public void setTrashMsgInfo(String trashMsgInfo) {
+    this.trashMsgInfo = trashMsgInfo;
+  }
+
+  public String getGroupTemail() {
+    return groupTemail;
+  }
+
+  public void setGroupTemail(String groupTemail) {
+    this.groupTemail = groupTemail;
+  }
+
+  public String getTemail() {
+    return temail;
+  }
+
+  public void setTemail(String temail) {
+    this.temail = temail;
+  }
+
+  public String getTemailDomain() {
+    return temailDomain;
+  }
+
+  public void setTemailDomain(String temailDomain) {
+    this.temailDomain = temailDomain;
+  }
+}
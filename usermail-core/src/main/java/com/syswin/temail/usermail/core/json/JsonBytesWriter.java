@@ -0,0 +1,303 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.json;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 流式写出单层json对象，直接以UTF-8编码写入线程复用的字节缓冲区，不经过反射、中间Map和字符串。
+ * <p>
+ * 输出与默认配置的 {@link com.google.gson.Gson} 一致：值为null的字段不输出，字符串按html安全方式转义。
+ * 用法：{@code JsonBytesWriter.beginObject().put(...).put(...).endObject()}，同一线程内不可嵌套使用。
+ */
+public final class JsonBytesWriter {
+
+  private static final int INITIAL_BUFFER = 1024;
+  /**
+   * 超过该大小的线程缓冲区用完即丢弃，避免偶发的大消息长期占用内存
+   */
+  private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+  /**
+   * 单个字符转义后的最大字节数，控制字符和html字符转义为6个字节
+   */
+  private static final int MAX_ESCAPED_BYTES = 6;
+  private static final String[] REPLACEMENT_CHARS = new String[128];
+  private static final ThreadLocal<JsonBytesWriter> WRITER = ThreadLocal.withInitial(JsonBytesWriter::new);
+
+  static {
+    for (int i = 0; i < 0x20; i++) {
+      REPLACEMENT_CHARS[i] = String.format("\\u%04x", i);
+    }
+    REPLACEMENT_CHARS['"'] = "\\\"";
+    REPLACEMENT_CHARS['\\'] = "\\\\";
+    REPLACEMENT_CHARS['\t'] = "\\t";
+    REPLACEMENT_CHARS['\b'] = "\\b";
+    REPLACEMENT_CHARS['\n'] = "\\n";
+    REPLACEMENT_CHARS['\r'] = "\\r";
+    REPLACEMENT_CHARS['\f'] = "\\f";
+    REPLACEMENT_CHARS['<'] = "\\u003c";
+    REPLACEMENT_CHARS['>'] = "\\u003e";
+    REPLACEMENT_CHARS['&'] = "\\u0026";
+    REPLACEMENT_CHARS['='] = "\\u003d";
+    REPLACEMENT_CHARS['\''] = "\\u0027";
+  }
+
+  private byte[] buffer = new byte[INITIAL_BUFFER];
+  private int pos;
+  private boolean empty;
+
+  private JsonBytesWriter() {
+  }
+
+  /**
+   * 开始写出一个json对象
+   *
+   * @return 当前线程的writer
+   */
+  public static JsonBytesWriter beginObject() {
+    JsonBytesWriter writer = WRITER.get();
+    writer.pos = 0;
+    writer.empty = true;
+    writer.writeByte('{');
+    return writer;
+  }
+
+  /**
+   * 将字符串列表序列化为json数组字符串，null序列化为 "null"，与 Gson.toJson(List) 一致
+   *
+   * @param values 字符串列表
+   * @return json数组字符串
+   */
+  public static String toJsonArray(List<String> values) {
+    if (values == null) {
+      return "null";
+    }
+    StringBuilder json = new StringBuilder(values.size() * 24 + 2).append('[');
+    for (int i = 0; i < values.size(); i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      appendString(json, values.get(i));
+    }
+    return json.append(']').toString();
+  }
+
+  public JsonBytesWriter put(String name, String value) {
+    if (value != null) {
+      name(name);
+      writeString(value);
+    }
+    return this;
+  }
+
+  public JsonBytesWriter put(String name, Long value) {
+    if (value != null) {
+      name(name);
+      writeLong(value);
+    }
+    return this;
+  }
+
+  public JsonBytesWriter put(String name, Integer value) {
+    if (value != null) {
+      name(name);
+      writeLong(value);
+    }
+    return this;
+  }
+
+  public JsonBytesWriter put(String name, Boolean value) {
+    if (value != null) {
+      name(name);
+      writeAscii(value ? "true" : "false");
+    }
+    return this;
+  }
+
+  /**
+   * 写出字符串数组字段，列表中的null元素输出为null
+   */
+  public JsonBytesWriter put(String name, List<String> values) {
+    if (values != null) {
+      name(name);
+      writeByte('[');
+      for (int i = 0; i < values.size(); i++) {
+        if (i > 0) {
+          writeByte(',');
+        }
+        String value = values.get(i);
+        if (value == null) {
+          writeAscii("null");
+        } else {
+          writeString(value);
+        }
+      }
+      writeByte(']');
+    }
+    return this;
+  }
+
+  /**
+   * 结束json对象
+   *
+   * @return UTF-8编码的json
+   */
+  public byte[] endObject() {
+    writeByte('}');
+    byte[] json = Arrays.copyOf(buffer, pos);
+    if (buffer.length > MAX_RETAINED_BUFFER) {
+      buffer = new byte[INITIAL_BUFFER];
+    }
+    return json;
+  }
+
+  private static void appendString(StringBuilder json, String value) {
+    if (value == null) {
+      json.append("null");
+      return;
+    }
+    json.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      String replacement = replacement(c);
+      if (replacement == null) {
+        json.append(c);
+      } else {
+        json.append(replacement);
+      }
+    }
+    json.append('"');
+  }
+
+  private static String replacement(char c) {
+    if (c < 128) {
+      return REPLACEMENT_CHARS[c];
+    }
+    if (c == '\u2028') {
+      return "\\u2028";
+    }
+    if (c == '\u2029') {
+      return "\\u2029";
+    }
+    return null;
+  }
+
+  private void name(String name) {
+    if (empty) {
+      empty = false;
+    } else {
+      writeByte(',');
+    }
+    writeString(name);
+    writeByte(':');
+  }
+
+  private void writeString(String value) {
+    int length = value.length();
+    ensureCapacity(length * MAX_ESCAPED_BYTES + 2);
+    byte[] buf = buffer;
+    int p = pos;
+    buf[p++] = '"';
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 128) {
+        String replacement = REPLACEMENT_CHARS[c];
+        if (replacement == null) {
+          buf[p++] = (byte) c;
+        } else {
+          for (int j = 0; j < replacement.length(); j++) {
+            buf[p++] = (byte) replacement.charAt(j);
+          }
+        }
+      } else if (c < 0x800) {
+        buf[p++] = (byte) (0xc0 | (c >> 6));
+        buf[p++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+          int codePoint = Character.toCodePoint(c, value.charAt(++i));
+          buf[p++] = (byte) (0xf0 | (codePoint >> 18));
+          buf[p++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+          buf[p++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+          buf[p++] = (byte) (0x80 | (codePoint & 0x3f));
+        } else {
+          // 与 String.getBytes(UTF_8) 一致，不成对的代理字符编码为 ?
+          buf[p++] = '?';
+        }
+      } else if (c == '\u2028' || c == '\u2029') {
+        String replacement = replacement(c);
+        for (int j = 0; j < replacement.length(); j++) {
+          buf[p++] = (byte) replacement.charAt(j);
+        }
+      } else {
+        buf[p++] = (byte) (0xe0 | (c >> 12));
+        buf[p++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buf[p++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    buf[p++] = '"';
+    pos = p;
+  }
+
+  private void writeLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      writeAscii(Long.toString(value));
+      return;
+    }
+    ensureCapacity(20);
+    if (value < 0) {
+      buffer[pos++] = '-';
+      value = -value;
+    }
+    int digits = 1;
+    for (long v = value; v >= 10; v /= 10) {
+      digits++;
+    }
+    int p = pos + digits;
+    pos = p;
+    do {
+      buffer[--p] = (byte) ('0' + value % 10);
+      value /= 10;
+    } while (value > 0);
+  }
+
+  private void writeAscii(String value) {
+    ensureCapacity(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      buffer[pos++] = (byte) value.charAt(i);
+    }
+  }
+
+  private void writeByte(char c) {
+    ensureCapacity(1);
+    buffer[pos++] = (byte) c;
+  }
+
+  private void ensureCapacity(int more) {
+    if (pos + more > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, pos + more));
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.json;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.syswin.temail.usermail.core.exception.IllegalGmArgsException;
+import com.syswin.temail.usermail.core.util.ZipMsgSupplier;
+import java.io.IOException;
+import java.io.InputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 消息内容的序列化：开启流式输出的 {@link ZipMsgSupplier} 边解压边以Base64(URL安全)编码写入响应，其它值按字符串写出。
+ * <p>
+ * 压缩数据头部损坏时写出null；解压到中途才发现数据损坏时响应已写出部分内容，只能中断整个响应。
+ */
+public class ZipMsgJsonSerializer extends JsonSerializer<Object> {
+
+  /**
+   * 与 {@link java.util.Base64#getUrlEncoder()} 的输出一致：URL安全字符、带填充、不换行
+   */
+  static final Base64Variant URL_SAFE_PADDED = new Base64Variant(Base64Variants.MODIFIED_FOR_URL, "URL-SAFE-PADDED",
+      true, '=', Integer.MAX_VALUE);
+  private static final Logger LOGGER = LoggerFactory.getLogger(ZipMsgJsonSerializer.class);
+
+  @Override
+  public void serialize(Object value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+    if (!(value instanceof ZipMsgSupplier) || !((ZipMsgSupplier) value).isStreaming()) {
+      gen.writeString(value instanceof ZipMsgSupplier ? ((ZipMsgSupplier) value).get() : value.toString());
+      return;
+    }
+    ZipMsgSupplier supplier = (ZipMsgSupplier) value;
+    InputStream in;
+    try {
+      in = supplier.openStream();
+    } catch (IllegalGmArgsException e) {
+      LOGGER.error("stream message failed, message is written as null, zip length is {}", supplier.zipLength(), e);
+      gen.writeNull();
+      return;
+    }
+    try {
+      gen.writeBinary(URL_SAFE_PADDED, in, -1);
+    } catch (IOException e) {
+      LOGGER.error("stream message failed, response is aborted, zip length is {}", supplier.zipLength(), e);
+      throw e;
+    }
+  }
+}
@@ -27,34 +27,319 @@ package com.syswin.temail.usermail.core.util;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
 
+/**
+ * gzip 压缩工具。
+ * <p>
+ * 每个线程复用一组 {@link Deflater}、{@link Inflater} 和缓冲区，直接读写gzip头尾，不再为每条消息创建流对象和本地zlib内存。
+ * 解压时按gzip尾部记录的原始长度一次性分配结果数组；带有可选头字段或多个成员等少见格式时，退回到 {@link GZIPInputStream}。
+ */
 class GzipUtils {
 
+  private static final int HEADER_LENGTH = 10;
+  private static final int TRAILER_LENGTH = 8;
+  private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+  /**
+   * 单条消息解压后的长度上限，防止损坏的数据触发超大内存分配
+   */
+  private static final int MAX_UNZIP_LENGTH = 64 * 1024 * 1024;
+  /**
+   * 超过该大小的线程缓冲区用完即丢弃，避免偶发的大消息长期占用内存
+   */
+  private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+  private static final ThreadLocal<Engine> ENGINE = ThreadLocal.withInitial(Engine::new);
+
   public byte[] zip(final byte[] data) throws IOException {
-    ByteArrayOutputStream bos = new ByteArrayOutputStream();
-    GZIPOutputStream gzip = new GZIPOutputStream(bos);
-    gzip.write(data);
-    gzip.finish();
-    return bos.toByteArray();
+    return zip(data, 0, data.length);
+  }
+
+  public byte[] zip(final byte[] data, int offset, int length) throws IOException {
+    Engine engine = ENGINE.get();
+    engine.begin(HEADER_LENGTH + deflateBound(length) + TRAILER_LENGTH);
+    engine.deflater.setInput(data, offset, length);
+    engine.crc.update(data, offset, length);
+    return engine.end(length);
+  }
+
+  /**
+   * 边读取边压缩，内存中不保留完整的原始数据
+   *
+   * @param in 原始数据流，由调用方关闭
+   * @return 压缩后的数据
+   * @throws IOException 读取失败
+   */
+  public byte[] zip(final InputStream in) throws IOException {
+    Engine engine = ENGINE.get();
+    byte[] input = engine.input;
+    engine.begin(input.length);
+    long length = 0;
+    int num;
+    while ((num = in.read(input, 0, input.length)) != -1) {
+      engine.deflater.setInput(input, 0, num);
+      engine.crc.update(input, 0, num);
+      engine.deflate(false);
+      length += num;
+    }
+    return engine.end((int) length);
   }
 
   public byte[] unzip(final byte[] data) throws IOException {
-    ByteArrayInputStream bis = new ByteArrayInputStream(data);
-    GZIPInputStream gzip = new GZIPInputStream(bis);
-    ByteArrayOutputStream bos = new ByteArrayOutputStream();
-    return unzipByteArrayOutputStream(gzip, bos).toByteArray();
+    return unzip(data, 0, data.length);
+  }
+
+  public byte[] unzip(final byte[] data, int offset, int length) throws IOException {
+    if (!isSimpleMember(data, offset, length)) {
+      return unzipStream(data, offset, length);
+    }
+    int size = readIntLE(data, offset + length - 4);
+    if (size < 0 || size > MAX_UNZIP_LENGTH) {
+      throw new IOException("illegal gzip original size: " + size);
+    }
+    Engine engine = ENGINE.get();
+    Inflater inflater = engine.inflater;
+    inflater.reset();
+    inflater.setInput(data, offset + HEADER_LENGTH, length - HEADER_LENGTH - TRAILER_LENGTH);
+    byte[] out = new byte[size];
+    try {
+      int pos = 0;
+      while (pos < size) {
+        int n = inflater.inflate(out, pos, size - pos);
+        if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        pos += n;
+      }
+      if (!inflater.finished()) {
+        // 输出恰好填满时，流结束标记可能还未被消费
+        inflater.inflate(engine.probe);
+      }
+      if (pos != size || !inflater.finished() || inflater.getRemaining() != 0) {
+        // 尾部长度与实际不符（如原始数据超过4G）或包含多个成员，按流式解压兜底
+        return unzipStream(data, offset, length);
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("illegal gzip data", e);
+    }
+    CRC32 crc = engine.crc;
+    crc.reset();
+    crc.update(out, 0, size);
+    if ((int) crc.getValue() != readIntLE(data, offset + length - TRAILER_LENGTH)) {
+      throw new IOException("gzip crc mismatch");
+    }
+    return out;
   }
 
-  private ByteArrayOutputStream unzipByteArrayOutputStream(GZIPInputStream gzip, ByteArrayOutputStream bos)
-      throws IOException {
-    byte[] buf = new byte[1024];
-    int num = -1;
-    while ((num = gzip.read(buf, 0, buf.length)) != -1) {
-      bos.write(buf, 0, num);
+  /**
+   * 边读取边解压，不生成完整的原始数据，读到末尾时校验gzip尾部的crc和长度。
+   * 复用当前线程的 {@link Inflater}，返回的流须在当前线程读取完毕后才能进行其它解压；带有可选头字段等少见格式时先整体解压
+   *
+   * @param data 压缩数据
+   * @return 原始数据流
+   * @throws IOException 数据损坏
+   */
+  public InputStream unzipAsStream(final byte[] data) throws IOException {
+    if (!isSimpleMember(data, 0, data.length)) {
+      return new ByteArrayInputStream(unzipStream(data, 0, data.length));
     }
-    return bos;
+    return new MemberInputStream(data, ENGINE.get());
   }
 
-}
\ No newline at end of file
+  /**
+   * 压缩 position 到 limit 之间的数据，不修改入参的 position
+   *
+   * @param data 原始数据
+   * @return 压缩后的数据
+   * @throws IOException 压缩失败
+   */
+  public ByteBuffer zip(final ByteBuffer data) throws IOException {
+    if (data.hasArray()) {
+      return ByteBuffer.wrap(zip(data.array(), data.arrayOffset() + data.position(), data.remaining()));
+    }
+    return ByteBuffer.wrap(zip(copyOf(data)));
+  }
+
+  /**
+   * 解压 position 到 limit 之间的数据，不修改入参的 position
+   *
+   * @param data 压缩数据
+   * @return 解压后的数据
+   * @throws IOException 数据损坏
+   */
+  public ByteBuffer unzip(final ByteBuffer data) throws IOException {
+    if (data.hasArray()) {
+      return ByteBuffer.wrap(unzip(data.array(), data.arrayOffset() + data.position(), data.remaining()));
+    }
+    return ByteBuffer.wrap(unzip(copyOf(data)));
+  }
+
+  private static byte[] copyOf(ByteBuffer data) {
+    byte[] bytes = new byte[data.remaining()];
+    data.duplicate().get(bytes);
+    return bytes;
+  }
+
+  private static boolean isSimpleMember(byte[] data, int offset, int length) {
+    return length >= HEADER_LENGTH + TRAILER_LENGTH
+        && data[offset] == HEADER[0] && data[offset + 1] == HEADER[1]
+        && data[offset + 2] == Deflater.DEFLATED && data[offset + 3] == 0;
+  }
+
+  private static int deflateBound(int length) {
+    // 与 zlib compressBound 一致
+    return length + (length >>> 12) + (length >>> 14) + (length >>> 25) + 13;
+  }
+
+  private static void writeIntLE(byte[] buf, int offset, int value) {
+    buf[offset] = (byte) value;
+    buf[offset + 1] = (byte) (value >>> 8);
+    buf[offset + 2] = (byte) (value >>> 16);
+    buf[offset + 3] = (byte) (value >>> 24);
+  }
+
+  private static int readIntLE(byte[] data, int offset) {
+    return (data[offset] & 0xff) | ((data[offset + 1] & 0xff) << 8)
+        | ((data[offset + 2] & 0xff) << 16) | ((data[offset + 3] & 0xff) << 24);
+  }
+
+  private byte[] unzipStream(byte[] data, int offset, int length) throws IOException {
+    try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data, offset, length))) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream(length * 4);
+      byte[] buf = new byte[4096];
+      int num;
+      while ((num = gzip.read(buf, 0, buf.length)) != -1) {
+        bos.write(buf, 0, num);
+        if (bos.size() > MAX_UNZIP_LENGTH) {
+          throw new IOException("gzip original size exceeds " + MAX_UNZIP_LENGTH);
+        }
+      }
+      return bos.toByteArray();
+    }
+  }
+
+  /**
+   * 单个gzip成员的解压流，直接使用线程的 {@link Inflater} 解压头尾之间的数据
+   */
+  private static final class MemberInputStream extends InputStream {
+
+    private final byte[] data;
+    private final Inflater inflater;
+    private final CRC32 crc;
+    private final byte[] single = new byte[1];
+    private long size;
+    private boolean eof;
+
+    private MemberInputStream(byte[] data, Engine engine) {
+      this.data = data;
+      this.inflater = engine.inflater;
+      this.crc = engine.crc;
+      inflater.reset();
+      inflater.setInput(data, HEADER_LENGTH, data.length - HEADER_LENGTH - TRAILER_LENGTH);
+      crc.reset();
+    }
+
+    @Override
+    public int read() throws IOException {
+      return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (eof) {
+        return -1;
+      }
+      if (len == 0) {
+        return 0;
+      }
+      try {
+        int n;
+        while ((n = inflater.inflate(b, off, len)) == 0) {
+          if (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()) {
+            checkTrailer();
+            eof = true;
+            return -1;
+          }
+        }
+        crc.update(b, off, n);
+        size += n;
+        if (size > MAX_UNZIP_LENGTH) {
+          throw new IOException("gzip original size exceeds " + MAX_UNZIP_LENGTH);
+        }
+        return n;
+      } catch (DataFormatException e) {
+        throw new IOException("illegal gzip data", e);
+      }
+    }
+
+    private void checkTrailer() throws IOException {
+      if (!inflater.finished() || inflater.getRemaining() != 0) {
+        throw new IOException("illegal gzip data");
+      }
+      if ((int) crc.getValue() != readIntLE(data, data.length - TRAILER_LENGTH)
+          || (int) size != readIntLE(data, data.length - 4)) {
+        throw new IOException("gzip crc mismatch");
+      }
+    }
+  }
+
+  /**
+   * 线程独占的压缩资源
+   */
+  private static final class Engine {
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] probe = new byte[1];
+    private final byte[] input = new byte[8192];
+    private byte[] buffer = new byte[4096];
+    private byte[] out;
+    private int pos;
+
+    /**
+     * 开始压缩，写入gzip头
+     */
+    private void begin(int minLength) {
+      deflater.reset();
+      crc.reset();
+      out = buffer.length < minLength ? new byte[minLength] : buffer;
+      System.arraycopy(HEADER, 0, out, 0, HEADER_LENGTH);
+      pos = HEADER_LENGTH;
+    }
+
+    /**
+     * 压缩当前输入直到需要更多输入或压缩结束，输出区不足时扩容，尾部始终预留gzip尾的空间
+     */
+    private void deflate(boolean finish) {
+      while (finish ? !deflater.finished() : !deflater.needsInput()) {
+        if (pos == out.length - TRAILER_LENGTH) {
+          out = Arrays.copyOf(out, out.length * 2);
+        }
+        pos += deflater.deflate(out, pos, out.length - TRAILER_LENGTH - pos);
+      }
+    }
+
+    /**
+     * 结束压缩，写入gzip尾并返回结果
+     */
+    private byte[] end(int length) {
+      deflater.finish();
+      deflate(true);
+      writeIntLE(out, pos, (int) crc.getValue());
+      writeIntLE(out, pos + 4, length);
+      byte[] zip = Arrays.copyOf(out, pos + TRAILER_LENGTH);
+      if (out != buffer && out.length <= MAX_RETAINED_BUFFER) {
+        buffer = out;
+      }
+      out = null;
+      return zip;
+    }
+  }
+}
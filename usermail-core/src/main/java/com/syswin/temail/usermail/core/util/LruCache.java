@@ -0,0 +1,83 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按访问顺序淘汰的定长缓存，线程安全。
+ * <p>
+ * 适用于条目数有限、读多写少的本地热点数据；容量小于1时不缓存任何数据。
+ */
+public class LruCache<K, V> {
+
+  private final int maxSize;
+  private final LinkedHashMap<K, V> map;
+
+  public LruCache(int maxSize) {
+    this.maxSize = maxSize;
+    this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > LruCache.this.maxSize;
+      }
+    };
+  }
+
+  /**
+   * 读取缓存，命中时将该条目移到最近使用的位置
+   *
+   * @param key 键
+   * @return 值，未命中时为null
+   */
+  public synchronized V get(K key) {
+    return map.get(key);
+  }
+
+  /**
+   * 写入缓存，超过容量时淘汰最久未使用的条目
+   *
+   * @param key 键
+   * @param value 值
+   */
+  public synchronized void put(K key, V value) {
+    if (maxSize > 0) {
+      map.put(key, value);
+    }
+  }
+
+  public synchronized V remove(K key) {
+    return map.remove(key);
+  }
+
+  public synchronized int size() {
+    return map.size();
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+}
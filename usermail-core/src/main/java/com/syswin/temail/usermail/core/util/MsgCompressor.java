@@ -25,19 +25,43 @@
 package com.syswin.temail.usermail.core.util;
 
 import com.syswin.temail.usermail.common.ResultCodeEnum;
+import com.syswin.temail.usermail.core.codec.MsgCodec;
+import com.syswin.temail.usermail.core.codec.MsgCodecs;
 import com.syswin.temail.usermail.core.exception.IllegalGmArgsException;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CharSequenceInputStream;
 
+/**
+ * 消息体压缩工具。
+ * <p>
+ * 写入使用 {@link #setCodec(MsgCodec)} 配置的编解码器，未配置时沿用不带标识的gzip格式；
+ * 读取时根据数据首字节自动识别编解码器，gzip（魔数 1f 8b）及其他无标识的旧数据按gzip解压。
+ */
 public class MsgCompressor {
 
   private GzipUtils gzip = new GzipUtils();
+  private MsgCodec codec;
   private static final String CHARSET_ENCODE = "utf-8";
+  private static final int DECODE_BUFFER_SIZE = 4096;
+
+  /**
+   * 设置写入时使用的编解码器
+   *
+   * @param codec 编解码器，为null时使用gzip
+   */
+  public void setCodec(MsgCodec codec) {
+    this.codec = codec;
+  }
 
   public byte[] zip(byte[] data) {
     try {
-      return gzip.zip(data);
+      return compress(data);
     } catch (IOException e) {
       throw new IllegalGmArgsException(ResultCodeEnum.ERROR_MSG_ZIP);
     }
@@ -46,27 +70,34 @@ public class MsgCompressor {
   public byte[] zip(final String data) {
     byte[] zip;
     try {
-      zip = gzip.zip(data.getBytes(CHARSET_ENCODE));
+      zip = compress(data.getBytes(CHARSET_ENCODE));
     } catch (IOException e) {
       throw new IllegalGmArgsException(ResultCodeEnum.ERROR_MSG_DECODE, data);
     }
     return zip;
   }
 
+  /**
+   * Base64(URL安全)解码后压缩。通过解码流直接读取字符串，不复制为字节数组再整体解码；gzip边解码边压缩，不生成完整的解码结果
+   *
+   * @param data Base64编码的消息体
+   * @return 压缩后的数据
+   */
   public byte[] zipWithDecode(final String data) {
-    byte[] zip;
+    InputStream in = Base64.getUrlDecoder()
+        .wrap(new CharSequenceInputStream(data, StandardCharsets.US_ASCII, DECODE_BUFFER_SIZE));
     try {
-      zip = gzip.zip(Base64.getUrlDecoder().decode(data.getBytes(Charset.forName(CHARSET_ENCODE))));
+      return codec == null ? gzip.zip(in) : codec.compress(readDecoded(in, decodedLength(data)));
     } catch (IOException e) {
+      // 非法的Base64字符同样在读取解码流时抛出
       throw new IllegalGmArgsException(ResultCodeEnum.ERROR_MSG_DECODE, data);
     }
-    return zip;
   }
 
   public String unzipEncode(final byte[] data) {
     String s;
     try {
-      s = new String(Base64.getUrlEncoder().encode(gzip.unzip(data)), CHARSET_ENCODE);
+      s = new String(Base64.getUrlEncoder().encode(decompress(data)), CHARSET_ENCODE);
     } catch (IOException e) {
       throw new IllegalGmArgsException(ResultCodeEnum.ERROR_MSG_ENCODE);
     }
@@ -76,10 +107,93 @@ public class MsgCompressor {
   public String unzip(final byte[] data) {
     String s;
     try {
-      s = new String(gzip.unzip(data), CHARSET_ENCODE);
+      s = new String(decompress(data), CHARSET_ENCODE);
     } catch (IOException e) {
       throw new IllegalGmArgsException(ResultCodeEnum.ERROR_MSG_ENCODE);
     }
     return s;
   }
+
+  /**
+   * 解压为输入流，gzip数据边读取边解压，供调用方直接编码写出（如 {@code JsonGenerator#writeBinary}）。
+   * 返回的流须在当前线程读取完毕后才能进行其它解压，读取时数据损坏抛出 {@link IOException}
+   *
+   * @param data 压缩数据
+   * @return 原始数据流
+   */
+  public InputStream unzipAsStream(final byte[] data) {
+    try {
+      MsgCodec dataCodec = MsgCodecs.forData(data);
+      return dataCodec == null ? gzip.unzipAsStream(data) : new ByteArrayInputStream(dataCodec.decompress(data));
+    } catch (IOException e) {
+      throw new IllegalGmArgsException(ResultCodeEnum.ERROR_MSG_ENCODE);
+    }
+  }
+
+  /**
+   * 压缩 position 到 limit 之间的数据，不修改入参的 position
+   *
+   * @param data 原始数据
+   * @return 压缩后的数据
+   */
+  public ByteBuffer zip(final ByteBuffer data) {
+    try {
+      return codec == null ? gzip.zip(data) : ByteBuffer.wrap(codec.compress(toBytes(data)));
+    } catch (IOException e) {
+      throw new IllegalGmArgsException(ResultCodeEnum.ERROR_MSG_ZIP);
+    }
+  }
+
+  /**
+   * 解压 position 到 limit 之间的数据，不修改入参的 position。gzip数据在堆内缓冲区上直接解压，不复制入参
+   *
+   * @param data 压缩数据
+   * @return 解压后的数据
+   */
+  public ByteBuffer unzip(final ByteBuffer data) {
+    try {
+      MsgCodec dataCodec = data.hasRemaining() ? MsgCodecs.forTag(data.get(data.position())) : null;
+      return dataCodec == null ? gzip.unzip(data) : ByteBuffer.wrap(dataCodec.decompress(toBytes(data)));
+    } catch (IOException e) {
+      throw new IllegalGmArgsException(ResultCodeEnum.ERROR_MSG_ENCODE);
+    }
+  }
+
+  private static byte[] toBytes(ByteBuffer data) {
+    if (data.hasArray() && data.arrayOffset() == 0 && data.position() == 0 && data.remaining() == data.array().length) {
+      return data.array();
+    }
+    byte[] bytes = new byte[data.remaining()];
+    data.duplicate().get(bytes);
+    return bytes;
+  }
+
+  /**
+   * 按Base64长度计算解码后的长度，兼容不带填充的输入；非法的长度由解码流在读取时报错
+   */
+  private static int decodedLength(String data) {
+    int length = data.length();
+    if (length > 0 && data.charAt(length - 1) == '=') {
+      length -= length > 1 && data.charAt(length - 2) == '=' ? 2 : 1;
+    }
+    return length / 4 * 3 + Math.max(length % 4 - 1, 0);
+  }
+
+  private static byte[] readDecoded(InputStream in, int length) throws IOException {
+    byte[] decoded = new byte[length];
+    IOUtils.readFully(in, decoded);
+    if (in.read() != -1) {
+      throw new IOException("unexpected base64 length");
+    }
+    return decoded;
+  }
+
+  private byte[] compress(byte[] data) throws IOException {
+    return codec == null ? gzip.zip(data) : codec.compress(data);
+  }
+
+  private byte[] decompress(byte[] data) throws IOException {
+    MsgCodec dataCodec = MsgCodecs.forData(data);
+    return dataCodec == null ? gzip.unzip(data) : dataCodec.decompress(data);
+  }
 }
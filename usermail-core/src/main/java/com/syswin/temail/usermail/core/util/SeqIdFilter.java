@@ -25,24 +25,25 @@
 package com.syswin.temail.usermail.core.util;
 
 import com.syswin.temail.usermail.common.ResultCodeEnum;
+import com.syswin.temail.usermail.core.dto.SeqIdRange;
 import com.syswin.temail.usermail.core.exception.IllegalGmArgsException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * 断层seqId过滤器。
+ * <p>
+ * 过滤条件形如 "3_5,7_10,12_-1"：每段 a_b 表示客户端已有a和b、缺失两者之间的消息，b为-1时表示缺失a之后（向前拉取时为之前）的全部消息。
+ * 各段解析为有序且互不重叠的闭区间，判断seqId是否缺失时二分查找，区间长度不受限制。
+ */
 public class SeqIdFilter {
 
-  private static final Logger LOGGER = LoggerFactory.getLogger(SeqIdFilter.class);
-
-  private static final int MAX_SEQ_ID_SIZE = 100;
-
-  private List<Long> existSeqId;
-  private long last = -1L;
   private boolean after = true;
   private long dataBeginSeqId = -1L;
   private long dataEndSeqId = -1L;
+  private long[] begins;
+  private long[] ends;
 
   public SeqIdFilter(String strFilter, boolean after, long dataBeginSeqId, long dataEndSeqId) {
     this.after = after;
@@ -59,74 +60,91 @@ public class SeqIdFilter {
     init(strFilter, dataBeginSeqId, dataEndSeqId);
   }
 
+  /**
+   * 不按已拉取数据的seqId范围裁剪断层区间，用于把过滤条件下推到数据库查询
+   *
+   * @param strFilter 过滤条件
+   * @param after 是否向后拉取
+   * @return 过滤器
+   */
+  public static SeqIdFilter unbounded(String strFilter, boolean after) {
+    return after ? new SeqIdFilter(strFilter, true, Long.MIN_VALUE, Long.MAX_VALUE)
+        : new SeqIdFilter(strFilter, false, Long.MAX_VALUE, Long.MIN_VALUE);
+  }
+
   private void init(String strFilter, long dataBeginSeqId, long dataEndSeqId) {
+    List<long[]> ranges = new ArrayList<>();
     try {
       String[] filters = strFilter.split(",");
-      existSeqId = new ArrayList<>(MAX_SEQ_ID_SIZE);
       for (int i = 0; i < filters.length; i++) {
         String tmp = filters[i];
         String[] filterRange = tmp.split("_");
         long rangeBeginSeqId = Long.parseLong(filterRange[0]);
         long rangeEndSeqId = Long.parseLong(filterRange[1]);
         if (rangeEndSeqId == -1) {
-          last = rangeBeginSeqId;
-        } else {
+          // 边界之后（向前拉取时为之前）的消息全部缺失
           if (after) {
-              //去掉边界值
-              rangeBeginSeqId = rangeBeginSeqId + 1;
-              //升序排列时起始值裁掉小于实际值的部分缩小筛选范围
-              long beginSeqId = Math.max(rangeBeginSeqId, dataBeginSeqId);
-
-              //去掉边界值
-              rangeEndSeqId = rangeEndSeqId - 1;
-              //升序排列时终止值裁掉超出实际值的部分缩小筛选范围
-              long endSeqId = Math.min(rangeEndSeqId, dataEndSeqId);
-
-              for (long j = beginSeqId; j <= endSeqId; j++) {
-                  existSeqId.add(j);
-                  if (existSeqId.size() >= MAX_SEQ_ID_SIZE){
-                      LOGGER.warn("existSeqId List Size is full, strFiler={}, dataBeginSeqId={}, dataEndSeqId={}", strFilter, dataBeginSeqId, dataEndSeqId);
-                      break;
-                  }
-              }
+            ranges.add(new long[]{rangeBeginSeqId + 1, Long.MAX_VALUE});
           } else {
-              //去掉边界值
-              rangeBeginSeqId = rangeBeginSeqId - 1;
-              //降序排列时起始值裁掉超出实际值的部分缩小筛选范围
-              long beginSeqId = Math.min(rangeBeginSeqId, dataBeginSeqId);
-
-              //去掉边界值
-              rangeEndSeqId = rangeEndSeqId + 1;
-              //降序排列时终止值裁掉小于实际值的部分缩小筛选范围
-              long endSeqId = Math.max(rangeEndSeqId, dataEndSeqId);
-
-              for (long j = beginSeqId; j >= endSeqId; j--) {
-                  existSeqId.add(j);
-                  if (existSeqId.size() >= MAX_SEQ_ID_SIZE){
-                      LOGGER.warn("existSeqId List Size is full, strFiler={}, dataBeginSeqId={}, dataEndSeqId={}", strFilter, dataBeginSeqId, dataEndSeqId);
-                      break;
-                  }
-              }
+            ranges.add(new long[]{Long.MIN_VALUE, rangeBeginSeqId - 1});
           }
+        } else if (after) {
+          //去掉边界值，升序排列时起始值裁掉小于实际值的部分、终止值裁掉超出实际值的部分缩小筛选范围
+          ranges.add(new long[]{Math.max(rangeBeginSeqId + 1, dataBeginSeqId),
+              Math.min(rangeEndSeqId - 1, dataEndSeqId)});
+        } else {
+          //去掉边界值，降序排列时起始值裁掉超出实际值的部分、终止值裁掉小于实际值的部分缩小筛选范围
+          ranges.add(new long[]{Math.max(rangeEndSeqId + 1, dataEndSeqId),
+              Math.min(rangeBeginSeqId - 1, dataBeginSeqId)});
         }
       }
     } catch (Exception e) {
       throw new IllegalGmArgsException(ResultCodeEnum.ERROR_FILTER_SEQIDS, strFilter);
     }
+    merge(ranges);
   }
 
-  public boolean filter(long seqId) {
-    return existSeqId.contains(seqId) || lastSeqId(seqId);
+  /**
+   * 去掉空区间，按起始值排序后合并重叠或相邻的区间
+   */
+  private void merge(List<long[]> ranges) {
+    ranges.removeIf(range -> range[0] > range[1]);
+    ranges.sort((r1, r2) -> Long.compare(r1[0], r2[0]));
+    begins = new long[ranges.size()];
+    ends = new long[ranges.size()];
+    int size = 0;
+    for (long[] range : ranges) {
+      if (size > 0 && (ends[size - 1] == Long.MAX_VALUE || range[0] <= ends[size - 1] + 1)) {
+        ends[size - 1] = Math.max(ends[size - 1], range[1]);
+      } else {
+        begins[size] = range[0];
+        ends[size] = range[1];
+        size++;
+      }
+    }
+    begins = Arrays.copyOf(begins, size);
+    ends = Arrays.copyOf(ends, size);
   }
 
-  private boolean lastSeqId(long seqId) {
-    if (last == -1L) {
-      return false;
+  public boolean filter(long seqId) {
+    int index = Arrays.binarySearch(begins, seqId);
+    if (index < 0) {
+      // 取起始值小于seqId的最后一个区间
+      index = -index - 2;
     }
-    if (after) {
-      return (seqId > last);
-    } else {
-      return (seqId < last);
+    return index >= 0 && seqId <= ends[index];
+  }
+
+  /**
+   * 获取合并后的断层区间
+   *
+   * @return 按起始值升序排列、互不重叠的闭区间，为空时表示没有缺失的消息
+   */
+  public List<SeqIdRange> getRanges() {
+    List<SeqIdRange> ranges = new ArrayList<>(begins.length);
+    for (int i = 0; i < begins.length; i++) {
+      ranges.add(new SeqIdRange(begins[i], ends[i]));
     }
+    return ranges;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,150 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 会话ID生成器：会话ID为两个地址按字典序降序拼接后的MD5（小写十六进制），与 DigestUtils.md5Hex 结果一致。
+ * <p>
+ * 每个线程复用一组 {@link MessageDigest} 和编码缓冲区，纯ASCII地址不再拼接字符串；
+ * 前面放置按地址对哈希直接寻址的定长缓存，命中时不加锁，冲突时新值覆盖旧值，热点地址对会留在缓存中。
+ */
+public class SessionIdGenerator {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  private static final ThreadLocal<Engine> ENGINE = ThreadLocal.withInitial(Engine::new);
+
+  /**
+   * Entry 的字段均为final，并发读写数组元素时不会读到未初始化完成的条目
+   */
+  private final Entry[] cache;
+  private final int mask;
+
+  /**
+   * @param cacheSize 缓存的地址对数量，向上取整为2的幂，0为不缓存
+   */
+  public SessionIdGenerator(int cacheSize) {
+    int size = cacheSize > 0 ? Integer.highestOneBit(Math.max(cacheSize - 1, 1)) << 1 : 0;
+    cache = new Entry[size];
+    mask = size - 1;
+  }
+
+  /**
+   * 获取会话ID，与参数顺序无关
+   *
+   * @param from 发件人
+   * @param to 收件人
+   * @return 会话ID
+   */
+  public String getSessionId(String from, String to) {
+    String first = from;
+    String second = to;
+    if (from.compareTo(to) <= 0) {
+      first = to;
+      second = from;
+    }
+    if (cache.length == 0) {
+      return ENGINE.get().md5Hex(first, second);
+    }
+    int hash = first.hashCode() * 31 + second.hashCode();
+    int index = (hash ^ (hash >>> 16)) & mask;
+    Entry entry = cache[index];
+    if (entry != null && entry.first.equals(first) && entry.second.equals(second)) {
+      return entry.sessionId;
+    }
+    String sessionId = ENGINE.get().md5Hex(first, second);
+    cache[index] = new Entry(first, second, sessionId);
+    return sessionId;
+  }
+
+  /**
+   * 线程独占的摘要资源
+   */
+  private static final class Engine {
+
+    private final MessageDigest md5;
+    private final byte[] digest = new byte[16];
+    private final char[] hex = new char[32];
+    private byte[] input = new byte[128];
+
+    private Engine() {
+      try {
+        md5 = MessageDigest.getInstance("MD5");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    private String md5Hex(String first, String second) {
+      int length = first.length() + second.length();
+      if (input.length < length) {
+        input = new byte[Math.max(length, input.length * 2)];
+      }
+      if (writeAscii(first, 0) && writeAscii(second, first.length())) {
+        md5.update(input, 0, length);
+      } else {
+        md5.update((first + second).getBytes(StandardCharsets.UTF_8));
+      }
+      try {
+        md5.digest(digest, 0, digest.length);
+      } catch (DigestException e) {
+        throw new IllegalStateException(e);
+      }
+      for (int i = 0; i < digest.length; i++) {
+        hex[i * 2] = HEX[(digest[i] >>> 4) & 0x0f];
+        hex[i * 2 + 1] = HEX[digest[i] & 0x0f];
+      }
+      return new String(hex);
+    }
+
+    private boolean writeAscii(String s, int offset) {
+      for (int i = 0; i < s.length(); i++) {
+        char c = s.charAt(i);
+        if (c >= 0x80) {
+          return false;
+        }
+        input[offset + i] = (byte) c;
+      }
+      return true;
+    }
+  }
+
+  private static final class Entry {
+
+    private final String first;
+    private final String second;
+    private final String sessionId;
+
+    private Entry(String first, String second, String sessionId) {
+      this.first = first;
+      this.second = second;
+      this.sessionId = sessionId;
+    }
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.util;
+
+import com.syswin.temail.usermail.core.exception.IllegalGmArgsException;
+import java.io.InputStream;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 延迟解压的消息体。
+ * <p>
+ * {@link #get()} 解压后以Base64(URL安全)编码为字符串，此时响应通常已经开始写出，解压失败记录错误日志后返回null；
+ * 开启流式输出时，序列化响应由 {@link com.syswin.temail.usermail.core.json.ZipMsgJsonSerializer} 通过
+ * {@link #openStream()} 边解压边编码写出，不生成解压结果和编码后的字符串。
+ */
+public class ZipMsgSupplier implements Supplier<String> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ZipMsgSupplier.class);
+  private final MsgCompressor msgCompressor;
+  private final byte[] zipMsg;
+  private final boolean streaming;
+
+  /**
+   * @param msgCompressor 解压工具
+   * @param zipMsg 压缩的消息体
+   * @param streaming 是否在序列化响应时流式输出
+   */
+  public ZipMsgSupplier(MsgCompressor msgCompressor, byte[] zipMsg, boolean streaming) {
+    this.msgCompressor = msgCompressor;
+    this.zipMsg = zipMsg;
+    this.streaming = streaming;
+  }
+
+  @Override
+  public String get() {
+    try {
+      return msgCompressor.unzipEncode(zipMsg);
+    } catch (IllegalGmArgsException e) {
+      LOGGER.error("lazy decode message failed, message is omitted from the response, zip length is {}",
+          zipLength(), e);
+      return null;
+    }
+  }
+
+  public boolean isStreaming() {
+    return streaming;
+  }
+
+  /**
+   * 打开解压流，见 {@link MsgCompressor#unzipAsStream(byte[])}
+   *
+   * @return 原始数据流
+   */
+  public InputStream openStream() {
+    return msgCompressor.unzipAsStream(zipMsg);
+  }
+
+  public int zipLength() {
+    return zipMsg == null ? 0 : zipMsg.length;
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class MsgCodecsTest {
+
+  private final byte[] data = ("{\"msg\":\"hello temail\",\"at\":\"\",\"meta\":{\"type\":0}}"
+      + "{\"msg\":\"hello temail\",\"at\":\"\",\"meta\":{\"type\":0}}").getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void lz4RoundTrip() throws IOException {
+    MsgCodec codec = new Lz4MsgCodec();
+    byte[] compressed = codec.compress(data);
+    assertThat(compressed[0]).isEqualTo(Lz4MsgCodec.TAG);
+    assertThat(codec.decompress(compressed)).isEqualTo(data);
+    assertThat(codec.decompress(codec.compress(new byte[0]))).isEmpty();
+  }
+
+  @Test
+  public void zstdRoundTrip() throws IOException {
+    MsgCodec codec = new ZstdMsgCodec();
+    byte[] compressed = codec.compress(data);
+    assertThat(compressed[0]).isEqualTo(ZstdMsgCodec.TAG);
+    assertThat(codec.decompress(compressed)).isEqualTo(data);
+    assertThat(codec.decompress(codec.compress(new byte[0]))).isEmpty();
+  }
+
+  @Test
+  public void decompressCorruptedData() throws IOException {
+    byte[] lz4 = new Lz4MsgCodec().compress(data);
+    byte[] truncated = Arrays.copyOf(lz4, lz4.length / 2);
+    assertThatThrownBy(() -> new Lz4MsgCodec().decompress(truncated)).isInstanceOf(IOException.class);
+    byte[] zstd = new ZstdMsgCodec().compress(data);
+    assertThatThrownBy(() -> new ZstdMsgCodec().decompress(Arrays.copyOf(zstd, 4)))
+        .isInstanceOf(IOException.class);
+  }
+
+  @Test
+  public void findCodec() throws IOException {
+    assertThat(MsgCodecs.forName(null)).isNull();
+    assertThat(MsgCodecs.forName("gzip")).isNull();
+    assertThat(MsgCodecs.forName("LZ4")).isInstanceOf(Lz4MsgCodec.class);
+    assertThat(MsgCodecs.forName("zstd")).isInstanceOf(ZstdMsgCodec.class);
+    assertThatThrownBy(() -> MsgCodecs.forName("snappy")).isInstanceOf(IllegalArgumentException.class);
+
+    assertThat(MsgCodecs.forData(new ZstdMsgCodec().compress(data))).isInstanceOf(ZstdMsgCodec.class);
+    assertThat(MsgCodecs.forData(new byte[]{0x1f, (byte) 0x8b})).isNull();
+    assertThat(MsgCodecs.forData(new byte[0])).isNull();
+  }
+}
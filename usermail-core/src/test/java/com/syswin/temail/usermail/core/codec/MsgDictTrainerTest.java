@@ -0,0 +1,54 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.syswin.temail.usermail.core.codec;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MsgDictTrainerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void checkSkippedSamples() throws IOException {
+    MsgDictTrainer.checkSkipped(100, 0);
+    MsgDictTrainer.checkSkipped(95, 5);
+
+    assertThatThrownBy(() -> MsgDictTrainer.checkSkipped(90, 10)).isInstanceOf(IOException.class);
+    assertThatThrownBy(() -> MsgDictTrainer.checkSkipped(0, 0)).isInstanceOf(IOException.class);
+  }
+
+  @Test
+  public void requireDictionaryDirectory() throws IOException {
+    MsgDictTrainer.registerDictionaries(folder.newFolder().toPath());
+
+    assertThatThrownBy(() -> MsgDictTrainer.registerDictionaries(folder.getRoot().toPath().resolve("missing")))
+        .isInstanceOf(IOException.class);
+  }
+}
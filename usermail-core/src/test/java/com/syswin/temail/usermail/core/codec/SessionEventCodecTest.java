@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.syswin.temail.usermail.core.dto.CdtpHeaderDTO;
+import com.syswin.temail.usermail.core.dto.SessionEvent;
+import com.syswin.temail.usermail.core.exception.UserMailException;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class SessionEventCodecTest {
+
+  @Test
+  public void encodeAndDecode() {
+    SessionEvent event = new SessionEvent(new CdtpHeaderDTO("{CDTP-header:value}", "xPacketId"), 3, "from@t.email",
+        "to@t.email");
+    event.setOwner("from@t.email");
+    event.setMsgid("msgid");
+    event.setReplyMsgParentId("parent");
+    event.setToMsg("中文<msg>");
+    event.setSeqNo(-5L);
+    event.setAttachmentSize(Integer.MAX_VALUE);
+    event.setFilter(Arrays.asList("a@t.email", null, ""));
+    event.setDeleteAllMsg(false);
+    event.setTrashMsgInfo("[{\"from\":\"from@t.email\"}]");
+    event.setTemailDomain("t.email");
+
+    byte[] binary = SessionEventCodec.encode(event);
+    assertThat(SessionEventCodec.isBinary(binary)).isTrue();
+    assertThat(binary.length).isLessThan(event.toJson().length);
+
+    SessionEvent decoded = SessionEventCodec.decode(binary);
+    assertThat(decoded).isEqualToComparingFieldByField(event);
+    assertThat(decoded.toJson()).isEqualTo(event.toJson());
+  }
+
+  @Test
+  public void unsetFieldsStayNull() {
+    SessionEvent event = new SessionEvent();
+    event.setSessionMessageType(7);
+    byte[] binary = SessionEventCodec.encode(event);
+    assertThat(binary).hasSize(4);
+    SessionEvent decoded = SessionEventCodec.decode(binary);
+    assertThat(decoded.getSessionMessageType()).isEqualTo(7);
+    assertThat(decoded.getTimestamp()).isNull();
+    assertThat(decoded.getFilter()).isNull();
+  }
+
+  @Test
+  public void unknownFieldsAreSkipped() {
+    SessionEvent event = new SessionEvent();
+    event.setSessionMessageType(2);
+    byte[] binary = SessionEventCodec.encode(event);
+    // 追加字段号100的varint字段和字段号101的长度字段
+    byte[] extended = Arrays.copyOf(binary, binary.length + 8);
+    int pos = binary.length;
+    extended[pos++] = (byte) 0xA0;
+    extended[pos++] = 0x06;
+    extended[pos++] = 0x01;
+    extended[pos++] = (byte) 0xAA;
+    extended[pos++] = 0x06;
+    extended[pos++] = 0x02;
+    extended[pos++] = 'o';
+    extended[pos] = 'k';
+    assertThat(SessionEventCodec.decode(extended).getSessionMessageType()).isEqualTo(2);
+  }
+
+  @Test
+  public void jsonIsNotBinary() {
+    assertThat(SessionEventCodec.isBinary("{\"sessionMessageType\":2}".getBytes())).isFalse();
+    assertThat(SessionEventCodec.isBinary(new byte[0])).isFalse();
+  }
+
+  @Test
+  public void malformedMessages() {
+    SessionEvent event = new SessionEvent();
+    event.setFrom("from@t.email");
+    byte[] binary = SessionEventCodec.encode(event);
+    assertThatThrownBy(() -> SessionEventCodec.decode(Arrays.copyOf(binary, binary.length - 1)))
+        .isInstanceOf(UserMailException.class);
+    byte[] otherVersion = binary.clone();
+    otherVersion[1] = 2;
+    assertThatThrownBy(() -> SessionEventCodec.decode(otherVersion)).isInstanceOf(UserMailException.class);
+    assertThatThrownBy(() -> SessionEventCodec.decode("{}".getBytes())).isInstanceOf(UserMailException.class);
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.codec;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZstdDictMsgCodecTest {
+
+  private static byte[] dict1;
+  private static byte[] dict2;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void trainDictionaries() {
+    dict1 = MsgDictTrainer.train(samples(1), 4096);
+    dict2 = MsgDictTrainer.train(samples(2), 4096);
+  }
+
+  private static List<byte[]> samples(long seed) {
+    Random random = new Random(seed);
+    List<byte[]> samples = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      samples.add(message(random).getBytes(StandardCharsets.UTF_8));
+    }
+    return samples;
+  }
+
+  private static String message(Random random) {
+    return "{\"from\":\"user" + random.nextInt(1000) + "@msgseal.com\",\"to\":\"user" + random.nextInt(1000)
+        + "@msgseal.com\",\"type\":" + random.nextInt(3) + ",\"msgId\":\"syswin-" + Long.toHexString(random.nextLong())
+        + "\",\"meta\":{\"attachmentSize\":" + random.nextInt(100) + "}}";
+  }
+
+  @Test
+  public void compressWithDictionary() throws IOException {
+    int dictId = ZstdDictMsgCodec.dictId(dict1);
+    ZstdDictMsgCodec codec = new ZstdDictMsgCodec(Collections.singletonMap(dictId, dict1), dictId, 3);
+    byte[] data = message(new Random(3)).getBytes(StandardCharsets.UTF_8);
+
+    byte[] compressed = codec.compress(data);
+
+    assertThat(compressed[0]).isEqualTo(ZstdDictMsgCodec.TAG);
+    assertThat(MsgCodecs.readInt(compressed, 1)).isEqualTo(dictId);
+    assertThat(compressed.length).isLessThan(data.length / 2);
+    assertThat(codec.decompress(compressed)).isEqualTo(data);
+  }
+
+  @Test
+  public void storeIncompressibleData() throws IOException {
+    int dictId = ZstdDictMsgCodec.dictId(dict1);
+    ZstdDictMsgCodec codec = new ZstdDictMsgCodec(Collections.singletonMap(dictId, dict1), dictId, 3);
+    byte[] data = new byte[16];
+    new Random(4).nextBytes(data);
+
+    byte[] compressed = codec.compress(data);
+
+    assertThat(compressed[0]).isEqualTo(StoredMsgCodec.TAG);
+    assertThat(MsgCodecs.forData(compressed).decompress(compressed)).isEqualTo(data);
+  }
+
+  @Test
+  public void decompressWithOldDictionary() throws IOException {
+    int dictId1 = ZstdDictMsgCodec.dictId(dict1);
+    int dictId2 = ZstdDictMsgCodec.dictId(dict2);
+    ZstdDictMsgCodec oldCodec = new ZstdDictMsgCodec(Collections.singletonMap(dictId1, dict1), dictId1, 3);
+    Map<Integer, byte[]> dictionaries = new HashMap<>();
+    dictionaries.put(dictId1, dict1);
+    dictionaries.put(dictId2, dict2);
+    ZstdDictMsgCodec newCodec = new ZstdDictMsgCodec(dictionaries, dictId2, 3);
+    byte[] data = message(new Random(5)).getBytes(StandardCharsets.UTF_8);
+
+    byte[] oldCompressed = oldCodec.compress(data);
+    byte[] newCompressed = newCodec.compress(data);
+
+    assertThat(MsgCodecs.readInt(newCompressed, 1)).isEqualTo(dictId2);
+    assertThat(newCodec.decompress(oldCompressed)).isEqualTo(data);
+    assertThatThrownBy(() -> oldCodec.decompress(newCompressed)).isInstanceOf(IOException.class);
+  }
+
+  @Test
+  public void loadFromDirectory() throws IOException {
+    Files.write(folder.getRoot().toPath().resolve("a" + ZstdDictMsgCodec.DICT_FILE_SUFFIX), dict1);
+    Files.write(folder.getRoot().toPath().resolve("b" + ZstdDictMsgCodec.DICT_FILE_SUFFIX), dict2);
+    Path dir = folder.getRoot().toPath();
+    int current = ZstdDictMsgCodec.dictId(dict1);
+
+    ZstdDictMsgCodec codec = ZstdDictMsgCodec.fromDirectory(dir, current, 3);
+
+    assertThat(codec.getCurrentDictId()).isEqualTo(current);
+    assertThat(ZstdDictMsgCodec.loadDictionaries(dir)).containsOnlyKeys(current, ZstdDictMsgCodec.dictId(dict2));
+    assertThatThrownBy(() -> ZstdDictMsgCodec.fromDirectory(dir, 0, 3)).isInstanceOf(IOException.class);
+    assertThatThrownBy(() -> ZstdDictMsgCodec.fromDirectory(folder.newFolder().toPath(), current, 3))
+        .isInstanceOf(IOException.class);
+  }
+}
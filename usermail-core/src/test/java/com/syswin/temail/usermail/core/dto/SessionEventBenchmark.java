@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.dto;
+
+import com.google.gson.Gson;
+import com.syswin.temail.usermail.common.ParamsKey.SessionEventKey;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 发送消息事件序列化的基准测试，对比原实现（HashMap + Gson.toJson + getBytes）。
+ * <p>
+ * 运行：在 usermail-core 执行 mvn test-compile 后，以测试classpath运行本类的 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class SessionEventBenchmark {
+
+  private final Gson gson = new Gson();
+  private final CdtpHeaderDTO headerInfo = new CdtpHeaderDTO(
+      "{\"receiver\":\"to@t.email\",\"sender\":\"from@t.email\",\"senderPK\":\"MIGbMBAGByqGSM49AgEGBSuBBAAjA4GGAAQB\"}",
+      "6b1f7bd5-02d4-4d8e-9d43-6e1f7e1b2a11");
+  private final String from = "from@t.email";
+  private final String to = "to@t.email";
+  private final String toMsg = "AQAAAAEBAgMEBQYHCAkKCwwNDg8QERITFBUWFxgZGhscHR4fICEiIyQlJicoKSorLC0uLzAx"
+      + "MjM0NTY3ODk6Ozw9Pj9AQUJDREVGR0hJSktMTU5PUFFSU1RVVldYWVpbXF1eX2BhYmNkZWZnaGlqa2xtbm9wcXJzdHV2d3h5ent8fX5/gA==";
+
+  @Benchmark
+  public byte[] mapGson() {
+    Map<String, Object> eventMap = new HashMap<>(18);
+    eventMap.put(SessionEventKey.CDTP_HEADER, headerInfo.getCdtpHeader());
+    eventMap.put(SessionEventKey.X_PACKET_ID, headerInfo.getxPacketId());
+    eventMap.put(SessionEventKey.TIMESTAMP, System.currentTimeMillis());
+    eventMap.put(SessionEventKey.SESSION_MESSAGE_TYPE, 1);
+    eventMap.put(SessionEventKey.FROM, from);
+    eventMap.put(SessionEventKey.TO, to);
+    eventMap.put(SessionEventKey.OWNER, to);
+    eventMap.put(SessionEventKey.MSGID, "msgid-1563000000000");
+    eventMap.put(SessionEventKey.TO_MSG, toMsg);
+    eventMap.put(SessionEventKey.SEQ_NO, 12L);
+    eventMap.put(SessionEventKey.ATTACHMENT_SIZE, 0);
+    eventMap.put(SessionEventKey.AUTHOR, from);
+    eventMap.put(SessionEventKey.FILTER, null);
+    eventMap.put(SessionEventKey.SESSION_EXT_DATA, null);
+    return gson.toJson(eventMap).getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public byte[] sessionEvent() {
+    SessionEvent event = new SessionEvent(headerInfo, 1, from, to);
+    event.setOwner(to);
+    event.setMsgid("msgid-1563000000000");
+    event.setToMsg(toMsg);
+    event.setSeqNo(12L);
+    event.setAttachmentSize(0);
+    event.setAuthor(from);
+    return event.toJson();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(SessionEventBenchmark.class.getSimpleName()).build()).run();
+  }
+}
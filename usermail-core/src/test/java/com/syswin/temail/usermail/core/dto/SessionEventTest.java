@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.dto;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import com.syswin.temail.usermail.common.ParamsKey.SessionEventKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class SessionEventTest {
+
+  private final JsonParser parser = new JsonParser();
+
+  @Test
+  public void toJsonMatchesMapSerializedByGson() {
+    CdtpHeaderDTO headerInfo = new CdtpHeaderDTO("{CDTP-header:value}", "{xPacketId:value}");
+    SessionEvent event = new SessionEvent(headerInfo, 1, "from@t.email", "to@t.email");
+    event.setOwner("from@t.email");
+    event.setMsgid("msgid");
+    event.setToMsg("<msg>");
+    event.setSeqNo(3L);
+    event.setAttachmentSize(100);
+    event.setAuthor("from@t.email");
+    event.setFilter(Arrays.asList("a@t.email", "b@t.email"));
+    event.setDeleteAllMsg(true);
+
+    Map<String, Object> eventMap = new HashMap<>();
+    eventMap.put(SessionEventKey.CDTP_HEADER, headerInfo.getCdtpHeader());
+    eventMap.put(SessionEventKey.X_PACKET_ID, headerInfo.getxPacketId());
+    eventMap.put(SessionEventKey.TIMESTAMP, event.getTimestamp());
+    eventMap.put(SessionEventKey.SESSION_MESSAGE_TYPE, 1);
+    eventMap.put(SessionEventKey.FROM, "from@t.email");
+    eventMap.put(SessionEventKey.TO, "to@t.email");
+    eventMap.put(SessionEventKey.OWNER, "from@t.email");
+    eventMap.put(SessionEventKey.MSGID, "msgid");
+    eventMap.put(SessionEventKey.TO_MSG, "<msg>");
+    eventMap.put(SessionEventKey.SEQ_NO, 3L);
+    eventMap.put(SessionEventKey.ATTACHMENT_SIZE, 100);
+    eventMap.put(SessionEventKey.AUTHOR, "from@t.email");
+    eventMap.put(SessionEventKey.FILTER, Arrays.asList("a@t.email", "b@t.email"));
+    eventMap.put(SessionEventKey.SESSION_EXT_DATA, null);
+    eventMap.put(SessionEventKey.DELETE_ALL_MSG, true);
+
+    String json = new String(event.toJson(), StandardCharsets.UTF_8);
+    assertThat(parser.parse(json)).isEqualTo(parser.parse(new Gson().toJson(eventMap)));
+    assertThat(json).contains("\"toMsg\":\"\\u003cmsg\\u003e\"");
+  }
+
+  @Test
+  public void unsetFieldsAreOmitted() {
+    SessionEvent event = new SessionEvent();
+    event.setTemailDomain("t.email");
+    event.setSessionMessageType(7);
+    assertThat(new String(event.toJson(), StandardCharsets.UTF_8))
+        .isEqualTo("{\"sessionMessageType\":7,\"temailDomain\":\"t.email\"}");
+
+    SessionEvent withoutHeader = new SessionEvent(null, 1, null, null);
+    assertThat(parser.parse(new String(withoutHeader.toJson(), StandardCharsets.UTF_8)).getAsJsonObject().keySet())
+        .containsExactly(SessionEventKey.TIMESTAMP, SessionEventKey.SESSION_MESSAGE_TYPE);
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.json;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.gson.Gson;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class JsonBytesWriterTest {
+
+  private static final String[] STRINGS = {
+      "", "plain", "中文消息", "quote\"back\\slash/", "<html>&'a'=b", "\t\b\n\r\f\u0000\u001f\u007f",
+      "line para ", "emoji😀", "lone\uD83Dhigh", "lone\uDE00low", "éࠀ￿"
+  };
+  private final Gson gson = new Gson();
+
+  @Test
+  public void stringsAreEscapedLikeGson() {
+    for (String value : STRINGS) {
+      Map<String, Object> map = Collections.singletonMap("key", value);
+      byte[] json = JsonBytesWriter.beginObject().put("key", value).endObject();
+      assertThat(json).as(value).isEqualTo(gson.toJson(map).getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void numbersAndBooleansLikeGson() {
+    long[] longs = {0, 1, -1, 9, 10, 1563000000000L, Long.MAX_VALUE, Long.MIN_VALUE};
+    for (long value : longs) {
+      assertThat(new String(JsonBytesWriter.beginObject().put("n", value).endObject(), StandardCharsets.UTF_8))
+          .isEqualTo(gson.toJson(Collections.singletonMap("n", value)));
+    }
+    assertThat(new String(JsonBytesWriter.beginObject().put("i", Integer.MIN_VALUE).put("b", true)
+        .put("c", false).endObject(), StandardCharsets.UTF_8))
+        .isEqualTo("{\"i\":-2147483648,\"b\":true,\"c\":false}");
+  }
+
+  @Test
+  public void nullFieldsAreOmitted() {
+    byte[] json = JsonBytesWriter.beginObject().put("a", (String) null).put("b", "x").put("c", (Long) null)
+        .put("d", (List<String>) null).endObject();
+    assertThat(new String(json, StandardCharsets.UTF_8)).isEqualTo("{\"b\":\"x\"}");
+    assertThat(new String(JsonBytesWriter.beginObject().endObject(), StandardCharsets.UTF_8)).isEqualTo("{}");
+  }
+
+  @Test
+  public void listsLikeGson() {
+    List<String> values = Arrays.asList("a", null, "<b>", "中");
+    Map<String, Object> map = new HashMap<>();
+    map.put("filter", values);
+    assertThat(new String(JsonBytesWriter.beginObject().put("filter", values).endObject(), StandardCharsets.UTF_8))
+        .isEqualTo(gson.toJson(map));
+    assertThat(JsonBytesWriter.toJsonArray(values)).isEqualTo(gson.toJson(values));
+    assertThat(JsonBytesWriter.toJsonArray(new ArrayList<>())).isEqualTo("[]");
+    assertThat(JsonBytesWriter.toJsonArray(null)).isEqualTo(gson.toJson(null));
+  }
+
+  @Test
+  public void bufferGrowsForLargeValues() {
+    StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 100_000; i++) {
+      large.append(i % 2 == 0 ? '<' : '中');
+    }
+    String value = large.toString();
+    byte[] json = JsonBytesWriter.beginObject().put("key", value).endObject();
+    assertThat(json).isEqualTo(gson.toJson(Collections.singletonMap("key", value)).getBytes(StandardCharsets.UTF_8));
+    assertThat(new String(JsonBytesWriter.beginObject().put("k", "v").endObject(), StandardCharsets.UTF_8))
+        .isEqualTo("{\"k\":\"v\"}");
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.json;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonProperty.Access;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.syswin.temail.usermail.core.codec.Lz4MsgCodec;
+import com.syswin.temail.usermail.core.codec.MsgCodecs;
+import com.syswin.temail.usermail.core.util.MsgCompressor;
+import com.syswin.temail.usermail.core.util.ZipMsgSupplier;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Random;
+import java.util.function.Supplier;
+import org.junit.Test;
+
+public class ZipMsgJsonSerializerTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final MsgCompressor gzipCompressor = new MsgCompressor();
+
+  @Test
+  public void streamingOutputEqualsUrlEncoder() throws IOException {
+    MsgCompressor lz4Compressor = new MsgCompressor();
+    lz4Compressor.setCodec(MsgCodecs.forName(Lz4MsgCodec.NAME));
+    Random random = new Random(1);
+
+    for (int length : new int[]{0, 1, 2, 3, 4, 5, 100000}) {
+      byte[] raw = new byte[length];
+      random.nextBytes(raw);
+      String expected = Base64.getUrlEncoder().encodeToString(raw);
+      for (MsgCompressor compressor : new MsgCompressor[]{gzipCompressor, lz4Compressor}) {
+        Message message = new Message();
+        message.setSupplier(new ZipMsgSupplier(compressor, compressor.zip(raw), true));
+        String json = objectMapper.writeValueAsString(message);
+        assertThat(json).isEqualTo("{\"message\":\"" + expected + "\"}");
+        assertThat(objectMapper.readValue(json, Message.class).getMessage()).isEqualTo(expected);
+      }
+    }
+  }
+
+  @Test
+  public void nonStreamingValuesAreWrittenAsString() throws IOException {
+    Message message = new Message();
+    message.setMessage("plain");
+    assertThat(objectMapper.writeValueAsString(message)).isEqualTo("{\"message\":\"plain\"}");
+
+    byte[] raw = "lazy".getBytes();
+    message.setSupplier(new ZipMsgSupplier(gzipCompressor, gzipCompressor.zip(raw), false));
+    assertThat(objectMapper.writeValueAsString(message))
+        .isEqualTo("{\"message\":\"" + Base64.getUrlEncoder().encodeToString(raw) + "\"}");
+
+    assertThat(objectMapper.writeValueAsString(new Message())).isEqualTo("{}");
+  }
+
+  @Test
+  public void corruptedHeaderIsWrittenAsNull() throws IOException {
+    Message message = new Message();
+    message.setSupplier(new ZipMsgSupplier(gzipCompressor, "not-gzip".getBytes(), true));
+    assertThat(objectMapper.writeValueAsString(message)).isEqualTo("{\"message\":null}");
+  }
+
+  @Test
+  public void corruptionFoundWhileStreamingAbortsOutput() throws IOException {
+    byte[] zip = gzipCompressor.zip("corrupted".getBytes());
+    zip[zip.length - 8] ^= 1;
+    Message message = new Message();
+    message.setSupplier(new ZipMsgSupplier(gzipCompressor, zip, true));
+    assertThatThrownBy(() -> objectMapper.writeValueAsString(message)).isInstanceOf(IOException.class);
+  }
+
+  /**
+   * 与消息实体相同的注解方式
+   */
+  @JsonInclude(Include.NON_NULL)
+  private static class Message {
+
+    private String message;
+    private Supplier<String> supplier;
+
+    @JsonProperty(access = Access.WRITE_ONLY)
+    public String getMessage() {
+      if (supplier != null) {
+        message = supplier.get();
+        supplier = null;
+      }
+      return message;
+    }
+
+    public void setMessage(String message) {
+      this.message = message;
+      this.supplier = null;
+    }
+
+    void setSupplier(Supplier<String> supplier) {
+      this.supplier = supplier;
+    }
+
+    @JsonProperty("message")
+    @JsonSerialize(using = ZipMsgJsonSerializer.class)
+    private Object messageForJson() {
+      if (supplier instanceof ZipMsgSupplier && ((ZipMsgSupplier) supplier).isStreaming()) {
+        return supplier;
+      }
+      return getMessage();
+    }
+  }
+}
@@ -25,8 +25,18 @@
 package com.syswin.temail.usermail.core.util;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import org.junit.Test;
 
 public class GzipUtilsTest {
@@ -46,4 +56,132 @@ public class GzipUtilsTest {
 
   }
 
-}
\ No newline at end of file
+  @Test
+  public void zipCompatibleWithJdkStreams() throws IOException {
+    for (byte[] msg : Arrays.asList(new byte[0], randomBytes(1 << 20), repeatedBytes(300000))) {
+      assertThat(jdkUnzip(gzipUtils.zip(msg))).isEqualTo(msg);
+      assertThat(gzipUtils.unzip(jdkZip(msg))).isEqualTo(msg);
+      assertThat(gzipUtils.unzip(gzipUtils.zip(msg))).isEqualTo(msg);
+    }
+  }
+
+  @Test
+  public void unzipHeaderWithFileName() throws IOException {
+    byte[] msg = repeatedBytes(1000);
+    byte[] zip = gzipUtils.zip(msg);
+    byte[] name = "msg\0".getBytes(StandardCharsets.ISO_8859_1);
+    byte[] named = new byte[zip.length + name.length];
+    System.arraycopy(zip, 0, named, 0, 10);
+    named[3] = 0x08;
+    System.arraycopy(name, 0, named, 10, name.length);
+    System.arraycopy(zip, 10, named, 10 + name.length, zip.length - 10);
+
+    assertThat(gzipUtils.unzip(named)).isEqualTo(msg);
+  }
+
+  @Test
+  public void unzipCorruptedData() throws IOException {
+    byte[] zip = gzipUtils.zip(repeatedBytes(1000));
+    zip[zip.length - 6] ^= 0x01;
+    assertThatThrownBy(() -> gzipUtils.unzip(zip)).isInstanceOf(IOException.class);
+    assertThatThrownBy(() -> gzipUtils.unzip("test".getBytes())).isInstanceOf(IOException.class);
+  }
+
+  @Test
+  public void zipByteBuffer() throws IOException {
+    byte[] msg = repeatedBytes(1000);
+    ByteBuffer heap = ByteBuffer.allocate(msg.length + 4);
+    heap.position(2);
+    heap.put(msg).flip().position(2);
+    ByteBuffer zip = gzipUtils.zip(heap);
+    assertThat(heap.position()).isEqualTo(2);
+
+    ByteBuffer direct = ByteBuffer.allocateDirect(zip.remaining());
+    direct.put(zip).flip();
+    ByteBuffer unzip = gzipUtils.unzip(direct);
+    byte[] result = new byte[unzip.remaining()];
+    unzip.get(result);
+    assertThat(result).isEqualTo(msg);
+  }
+
+  @Test
+  public void zipInputStream() throws IOException {
+    for (byte[] msg : Arrays.asList(new byte[0], randomBytes(100000), repeatedBytes(300000))) {
+      byte[] zip = gzipUtils.zip(new ByteArrayInputStream(msg));
+      assertThat(jdkUnzip(zip)).isEqualTo(msg);
+      assertThat(zip).isEqualTo(gzipUtils.zip(msg));
+    }
+  }
+
+  @Test
+  public void unzipAsStream() throws IOException {
+    for (byte[] msg : Arrays.asList(new byte[0], randomBytes(100000), repeatedBytes(300000))) {
+      for (byte[] zip : Arrays.asList(gzipUtils.zip(msg), jdkZip(msg))) {
+        try (InputStream in = gzipUtils.unzipAsStream(zip)) {
+          assertThat(readAll(in)).isEqualTo(msg);
+          assertThat(in.read()).isEqualTo(-1);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void unzipAsStreamChecksTrailer() throws IOException {
+    byte[] zip = gzipUtils.zip(randomBytes(1000));
+    byte[] badCrc = zip.clone();
+    badCrc[badCrc.length - 8] ^= 1;
+    byte[] badSize = zip.clone();
+    badSize[badSize.length - 1] ^= 1;
+    byte[] truncated = Arrays.copyOf(zip, zip.length - 20);
+
+    for (byte[] data : Arrays.asList(badCrc, badSize)) {
+      InputStream in = gzipUtils.unzipAsStream(data);
+      assertThatThrownBy(() -> readAll(in)).isInstanceOf(IOException.class).hasMessageContaining("crc");
+    }
+    InputStream in = gzipUtils.unzipAsStream(truncated);
+    assertThatThrownBy(() -> readAll(in)).isInstanceOf(IOException.class);
+  }
+
+  private static byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    new Random(1).nextBytes(bytes);
+    return bytes;
+  }
+
+  private static byte[] repeatedBytes(int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) ('a' + i % 7);
+    }
+    return bytes;
+  }
+
+  private static byte[] jdkZip(byte[] data) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(bos)) {
+      gzip.write(data);
+    }
+    return bos.toByteArray();
+  }
+
+  private static byte[] jdkUnzip(byte[] data) throws IOException {
+    try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data))) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      byte[] buf = new byte[1024];
+      int num;
+      while ((num = gzip.read(buf)) != -1) {
+        bos.write(buf, 0, num);
+      }
+      return bos.toByteArray();
+    }
+  }
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    byte[] buf = new byte[1024];
+    int num;
+    while ((num = in.read(buf)) != -1) {
+      bos.write(buf, 0, num);
+    }
+    return bos.toByteArray();
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class LruCacheTest {
+
+  @Test
+  public void evictLeastRecentlyUsed() {
+    LruCache<Long, String> cache = new LruCache<>(2);
+    cache.put(1L, "a");
+    cache.put(2L, "b");
+    assertThat(cache.get(1L)).isEqualTo("a");
+
+    cache.put(3L, "c");
+
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.get(2L)).isNull();
+    assertThat(cache.get(1L)).isEqualTo("a");
+    assertThat(cache.get(3L)).isEqualTo("c");
+  }
+
+  @Test
+  public void disabledWhenMaxSizeIsZero() {
+    LruCache<Long, String> cache = new LruCache<>(0);
+    cache.put(1L, "a");
+
+    assertThat(cache.get(1L)).isNull();
+    assertThat(cache.size()).isZero();
+  }
+}
@@ -26,13 +26,22 @@ package com.syswin.temail.usermail.core.util;
 
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 
 import com.syswin.temail.usermail.common.ResultCodeEnum;
+import com.syswin.temail.usermail.core.codec.Lz4MsgCodec;
+import com.syswin.temail.usermail.core.codec.MsgCodecs;
 import com.syswin.temail.usermail.core.exception.IllegalGmArgsException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Random;
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
@@ -86,7 +95,11 @@ public class MsgCompressorTest {
     String sourceData = "test";
     byte[] sourceDecodeData = Base64.getUrlDecoder().decode(sourceData.getBytes(Charset.forName(CHARSET_ENCODE)));
     byte[] zipBytes = "zip-test".getBytes();
-    when(gzipUtils.zip(sourceDecodeData)).thenReturn(zipBytes);
+    when(gzipUtils.zip(any(InputStream.class)))
+        .thenAnswer(invocation -> {
+          assertThat(IOUtils.toByteArray((InputStream) invocation.getArgument(0))).isEqualTo(sourceDecodeData);
+          return zipBytes;
+        });
 
     byte[] result = msgCompressor.zipWithDecode(sourceData);
     assertThat(result).isEqualTo(zipBytes);
@@ -95,9 +108,8 @@ public class MsgCompressorTest {
   @Test
   public void zipWithDecodeIfCatchIoException() throws IOException {
     String sourceData = "test";
-    byte[] sourceDecodeData = Base64.getUrlDecoder().decode(sourceData.getBytes(Charset.forName(CHARSET_ENCODE)));
     byte[] zipBytes = "zip-test".getBytes();
-    when(gzipUtils.zip(sourceDecodeData)).thenThrow(IOException.class);
+    when(gzipUtils.zip(any(InputStream.class))).thenThrow(IOException.class);
 
     byte[] result = new byte[0];
     try {
@@ -200,4 +212,97 @@ public class MsgCompressorTest {
       assertThat(e.getResultCode()).isEqualTo(ResultCodeEnum.ERROR_MSG_ENCODE);
     }
   }
-}
\ No newline at end of file
+
+  @Test
+  public void zipWithCodecAndReadLegacyGzip() {
+    MsgCompressor gzipCompressor = new MsgCompressor();
+    byte[] legacy = gzipCompressor.zip("legacy");
+    assertThat(legacy[0]).isEqualTo((byte) 0x1f);
+
+    MsgCompressor lz4Compressor = new MsgCompressor();
+    lz4Compressor.setCodec(MsgCodecs.forName(Lz4MsgCodec.NAME));
+    byte[] lz4 = lz4Compressor.zip("lz4");
+    assertThat(lz4[0]).isEqualTo(Lz4MsgCodec.TAG);
+
+    assertThat(lz4Compressor.unzip(legacy)).isEqualTo("legacy");
+    assertThat(gzipCompressor.unzip(lz4)).isEqualTo("lz4");
+  }
+
+  @Test
+  public void zipAndUnzipByteBuffer() {
+    byte[] data = "byte-buffer".getBytes();
+    MsgCompressor gzipCompressor = new MsgCompressor();
+    MsgCompressor lz4Compressor = new MsgCompressor();
+    lz4Compressor.setCodec(MsgCodecs.forName(Lz4MsgCodec.NAME));
+
+    for (ByteBuffer zip : Arrays.asList(gzipCompressor.zip(ByteBuffer.wrap(data)),
+        lz4Compressor.zip(ByteBuffer.wrap(data)))) {
+      ByteBuffer unzip = gzipCompressor.unzip(zip);
+      byte[] result = new byte[unzip.remaining()];
+      unzip.get(result);
+      assertThat(result).isEqualTo(data);
+    }
+  }
+
+  @Test
+  public void zipWithDecodeStreamsBase64IntoCodec() {
+    MsgCompressor gzipCompressor = new MsgCompressor();
+    MsgCompressor lz4Compressor = new MsgCompressor();
+    lz4Compressor.setCodec(MsgCodecs.forName(Lz4MsgCodec.NAME));
+    Random random = new Random(1);
+
+    for (int length : new int[]{0, 1, 2, 3, 4, 5, 100000}) {
+      byte[] raw = new byte[length];
+      random.nextBytes(raw);
+      String padded = Base64.getUrlEncoder().encodeToString(raw);
+      String unpadded = Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+      for (MsgCompressor compressor : Arrays.asList(gzipCompressor, lz4Compressor)) {
+        assertThat(compressor.unzipEncode(compressor.zipWithDecode(padded))).isEqualTo(padded);
+        assertThat(compressor.unzipEncode(compressor.zipWithDecode(unpadded))).isEqualTo(padded);
+      }
+    }
+  }
+
+  @Test
+  public void zipWithDecodeRejectsIllegalBase64() {
+    MsgCompressor gzipCompressor = new MsgCompressor();
+    MsgCompressor lz4Compressor = new MsgCompressor();
+    lz4Compressor.setCodec(MsgCodecs.forName(Lz4MsgCodec.NAME));
+
+    for (MsgCompressor compressor : Arrays.asList(gzipCompressor, lz4Compressor)) {
+      for (String data : Arrays.asList("ab+c", "abc/", "a", "ab$c")) {
+        assertThatThrownBy(() -> compressor.zipWithDecode(data))
+            .isInstanceOf(IllegalGmArgsException.class)
+            .hasMessage(data);
+      }
+    }
+  }
+
+  @Test
+  public void unzipAsStreamReadsGzipAndCodecData() throws IOException {
+    byte[] data = new byte[100000];
+    new Random(1).nextBytes(data);
+    MsgCompressor gzipCompressor = new MsgCompressor();
+    MsgCompressor lz4Compressor = new MsgCompressor();
+    lz4Compressor.setCodec(MsgCodecs.forName(Lz4MsgCodec.NAME));
+
+    for (byte[] zip : Arrays.asList(gzipCompressor.zip(data), lz4Compressor.zip(data))) {
+      try (InputStream in = gzipCompressor.unzipAsStream(zip)) {
+        assertThat(IOUtils.toByteArray(in)).isEqualTo(data);
+      }
+    }
+  }
+
+  @Test
+  public void unzipAsStreamFailsOnCorruptedGzip() throws IOException {
+    MsgCompressor compressor = new MsgCompressor();
+    byte[] zip = compressor.zip("corrupted".getBytes());
+    zip[zip.length - 8] ^= 1;
+
+    try (InputStream in = compressor.unzipAsStream(zip)) {
+      assertThatThrownBy(() -> IOUtils.toByteArray(in)).isInstanceOf(IOException.class);
+    }
+    assertThatThrownBy(() -> compressor.unzipAsStream("not-gzip".getBytes()))
+        .isInstanceOf(IllegalGmArgsException.class);
+  }
+}
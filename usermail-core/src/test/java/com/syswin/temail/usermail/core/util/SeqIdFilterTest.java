@@ -27,6 +27,7 @@ package com.syswin.temail.usermail.core.util;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import com.syswin.temail.usermail.common.ResultCodeEnum;
+import com.syswin.temail.usermail.core.dto.SeqIdRange;
 import com.syswin.temail.usermail.core.exception.IllegalGmArgsException;
 import org.junit.Test;
 
@@ -103,4 +104,27 @@ public class SeqIdFilterTest {
       assertThat(e.getMessage()).isEqualTo(strFilter);
     }
   }
-}
\ No newline at end of file
+
+  @Test
+  public void filterLargeGapWithoutLimit() {
+    seqIdFilter = new SeqIdFilter("0_100000", true, 1, 200000);
+
+    assertThat(seqIdFilter.filter(99999L)).isTrue();
+    assertThat(seqIdFilter.filter(100000L)).isFalse();
+  }
+
+  @Test
+  public void mergeUnboundedRanges() {
+    seqIdFilter = SeqIdFilter.unbounded("3_5,4_8,8_10,20_-1", true);
+
+    assertThat(seqIdFilter.getRanges())
+        .containsExactly(new SeqIdRange(4, 7), new SeqIdRange(9, 9), new SeqIdRange(21, Long.MAX_VALUE));
+    assertThat(seqIdFilter.filter(8L)).isFalse();
+    assertThat(seqIdFilter.filter(9L)).isTrue();
+    assertThat(seqIdFilter.filter(15L)).isFalse();
+
+    seqIdFilter = SeqIdFilter.unbounded("13_9,3_-1", false);
+
+    assertThat(seqIdFilter.getRanges()).containsExactly(new SeqIdRange(Long.MIN_VALUE, 2), new SeqIdRange(10, 12));
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.util;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 会话ID生成的基准测试，对比原实现（字符串拼接 + DigestUtils.md5Hex）。
+ * <p>
+ * 运行：在 usermail-core 执行 mvn test-compile 后，以测试classpath运行本类的 main 方法。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class SessionIdGeneratorBenchmark {
+
+  /**
+   * 轮流计算的地址对数量，模拟热点会话集中或分散的场景
+   */
+  @Param({"64", "65536"})
+  private int pairs;
+
+  private String[] froms;
+  private String[] tos;
+  private SessionIdGenerator uncached;
+  private SessionIdGenerator cached;
+
+  @Setup
+  public void setup() {
+    froms = new String[pairs];
+    tos = new String[pairs];
+    for (int i = 0; i < pairs; i++) {
+      froms[i] = "user" + i + "@t.email";
+      tos[i] = "friend" + (i * 7) + "@t.email";
+    }
+    uncached = new SessionIdGenerator(0);
+    cached = new SessionIdGenerator(4096);
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+
+    private int index;
+
+    private int next(int size) {
+      index = index + 1 == size ? 0 : index + 1;
+      return index;
+    }
+  }
+
+  @Benchmark
+  public String digestUtils(Cursor cursor) {
+    int i = cursor.next(pairs);
+    String from = froms[i];
+    String to = tos[i];
+    return DigestUtils.md5Hex(from.compareTo(to) > 0 ? from + to : to + from);
+  }
+
+  @Benchmark
+  public String generatorUncached(Cursor cursor) {
+    int i = cursor.next(pairs);
+    return uncached.getSessionId(froms[i], tos[i]);
+  }
+
+  @Benchmark
+  public String generatorCached(Cursor cursor) {
+    int i = cursor.next(pairs);
+    return cached.getSessionId(froms[i], tos[i]);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(SessionIdGeneratorBenchmark.class.getSimpleName()).build()).run();
+  }
+}
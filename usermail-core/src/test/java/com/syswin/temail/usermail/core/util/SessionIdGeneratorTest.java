@@ -0,0 +1,48 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.core.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+
+public class SessionIdGeneratorTest {
+
+  @Test
+  public void sameAsMd5HexOfOrderedPair() {
+    for (SessionIdGenerator generator : new SessionIdGenerator[]{new SessionIdGenerator(0),
+        new SessionIdGenerator(100)}) {
+      for (int i = 0; i < 3; i++) {
+        assertThat(generator.getSessionId("from@syswin.com", "to@syswin.com"))
+            .isEqualTo(DigestUtils.md5Hex("to@syswin.comfrom@syswin.com"));
+        assertThat(generator.getSessionId("to@syswin.com", "from@syswin.com"))
+            .isEqualTo(DigestUtils.md5Hex("to@syswin.comfrom@syswin.com"));
+        assertThat(generator.getSessionId("测试@syswin.com", "a@syswin.com"))
+            .isEqualTo(DigestUtils.md5Hex("测试@syswin.coma@syswin.com"));
+      }
+    }
+  }
+}
@@ -0,0 +1,264 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.rocketmq;
+
+import com.syswin.temail.usermail.core.IMqAdapter;
+import com.syswin.temail.usermail.core.dto.MqMessage;
+import com.syswin.temail.usermail.core.exception.UserMailException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 异步批量发送的mq装饰器：消息先进入有界队列，由单个发送线程攒批后通过 {@link IMqAdapter#sendMessages(List)} 批量发送，
+ * 调用线程不再等待broker响应。
+ * <p>
+ * 达到批量大小或第一条消息等待超过最大延迟时发送一批；队列满时调用线程最多等待入队超时时间，仍无法入队则拒绝发送并抛出异常，
+ * 不会越过队列中的消息直接发送。单线程按入队顺序发送，同一tag的消息保持顺序；发送失败的消息最多重试指定次数，
+ * 重试只重发失败的消息，同一批中排在其后且已发送成功的同tag消息会先于它到达。
+ */
+public class AsyncBatchingMqAdapter implements IMqAdapter {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AsyncBatchingMqAdapter.class);
+  private static final long POLL_MILLIS = 100L;
+  private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(POLL_MILLIS);
+  private static final long RETRY_BACKOFF_MILLIS = 100L;
+
+  private final IMqAdapter delegate;
+  private final BlockingQueue<PendingMessage> queue;
+  private final int batchSize;
+  private final long lingerNanos;
+  private final long offerTimeoutMillis;
+  private final int maxRetries;
+  private volatile boolean running;
+  private Thread sender;
+
+  public AsyncBatchingMqAdapter(IMqAdapter delegate, int capacity, int batchSize, long lingerMillis,
+      long offerTimeoutMillis, int maxRetries) {
+    this.delegate = delegate;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.batchSize = batchSize;
+    this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+    this.offerTimeoutMillis = offerTimeoutMillis;
+    this.maxRetries = maxRetries;
+  }
+
+  @Override
+  public void init() {
+    delegate.init();
+    running = true;
+    sender = new Thread(this::runSender, "usermail-mq-async-sender");
+    sender.start();
+    LOGGER.info("AsyncBatchingMqAdapter started");
+  }
+
+  /**
+   * 停止接收新消息，发送完队列中的消息后再关闭被装饰的adapter
+   */
+  @Override
+  public void destroy() {
+    running = false;
+    if (sender != null) {
+      try {
+        sender.join(TimeUnit.SECONDS.toMillis(10));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      // 发送线程退出后才入队的消息
+      List<PendingMessage> rest = new ArrayList<>();
+      queue.drainTo(rest);
+      if (!rest.isEmpty()) {
+        send(rest);
+      }
+    }
+    delegate.destroy();
+    LOGGER.info("AsyncBatchingMqAdapter shutdowned");
+  }
+
+  /**
+   * 消息入队即返回true，重试后仍发送失败只记录日志；无法入队时抛出异常
+   *
+   * @throws UserMailException 队列已满超过入队等待时间或已停止
+   */
+  @Override
+  public boolean sendMessage(String topic, String tag, String message) {
+    enqueue(new MqMessage(topic, tag, message));
+    return true;
+  }
+
+  /**
+   * 字节消息体原样入队，由被装饰的adapter批量发送；与 {@link #sendMessage(String, String, String)} 相同，无法入队时抛出异常
+   */
+  @Override
+  public boolean sendMessage(String topic, String tag, byte[] message) {
+    enqueue(new MqMessage(topic, tag, message));
+    return true;
+  }
+
+  @Override
+  public boolean supportsBinaryMessage() {
+    return delegate.supportsBinaryMessage();
+  }
+
+  /**
+   * 无法入队时返回的future以 {@link UserMailException} 异常结束
+   */
+  @Override
+  public CompletableFuture<Boolean> sendMessageAsync(String topic, String tag, String message) {
+    try {
+      return enqueue(new MqMessage(topic, tag, message));
+    } catch (UserMailException e) {
+      CompletableFuture<Boolean> future = new CompletableFuture<>();
+      future.completeExceptionally(e);
+      return future;
+    }
+  }
+
+  @Override
+  public boolean[] sendMessages(List<MqMessage> messages) {
+    return delegate.sendMessages(messages);
+  }
+
+  int getQueueSize() {
+    return queue.size();
+  }
+
+  private CompletableFuture<Boolean> enqueue(MqMessage message) {
+    PendingMessage pending = new PendingMessage(message);
+    boolean queued = false;
+    if (running) {
+      try {
+        queued = queue.offer(pending, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (!queued) {
+      LOGGER.error("mq async queue is full or stopped, reject message: topic=[{}], tag=[{}]", message.getTopic(),
+          message.getTag());
+      throw new UserMailException("mq async queue is full or stopped");
+    }
+    return pending.future;
+  }
+
+  private void runSender() {
+    List<PendingMessage> batch = new ArrayList<>(batchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        PendingMessage first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < batchSize) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0 || !running) {
+            queue.drainTo(batch, batchSize - batch.size());
+            break;
+          }
+          PendingMessage next = queue.poll(Math.min(remaining, POLL_NANOS), TimeUnit.NANOSECONDS);
+          if (next != null) {
+            batch.add(next);
+          }
+        }
+      } catch (InterruptedException e) {
+        running = false;
+        queue.drainTo(batch);
+        Thread.currentThread().interrupt();
+      }
+      if (!batch.isEmpty()) {
+        send(batch);
+        batch.clear();
+      }
+      if (Thread.currentThread().isInterrupted()) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * 批量发送，失败的消息最多重试 maxRetries 次；批量发送抛出异常时整批重试，可能重复发送已成功的消息
+   */
+  private void send(List<PendingMessage> batch) {
+    List<PendingMessage> pendings = batch;
+    for (int attempt = 0; ; attempt++) {
+      List<MqMessage> messages = new ArrayList<>(pendings.size());
+      for (PendingMessage pending : pendings) {
+        messages.add(pending.message);
+      }
+      boolean last = attempt >= maxRetries;
+      List<PendingMessage> failed = new ArrayList<>();
+      try {
+        boolean[] results = delegate.sendMessages(messages);
+        for (int i = 0; i < pendings.size(); i++) {
+          if (results[i]) {
+            pendings.get(i).future.complete(true);
+          } else if (last) {
+            LOGGER.error("mq async send message FAILURE, message=[{}]", messages.get(i));
+            pendings.get(i).future.complete(false);
+          } else {
+            failed.add(pendings.get(i));
+          }
+        }
+      } catch (RuntimeException e) {
+        if (last) {
+          LOGGER.error("mq async send batch error, size={}", pendings.size(), e);
+          for (PendingMessage pending : pendings) {
+            pending.future.completeExceptionally(e);
+          }
+          return;
+        }
+        LOGGER.warn("mq async send batch error, retry {}, size={}", attempt + 1, pendings.size(), e);
+        failed = pendings;
+      }
+      if (failed.isEmpty()) {
+        return;
+      }
+      pendings = failed;
+      try {
+        TimeUnit.MILLISECONDS.sleep(RETRY_BACKOFF_MILLIS);
+      } catch (InterruptedException e) {
+        // 停止中不再等待，剩余的重试立即进行
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static final class PendingMessage {
+
+    private final MqMessage message;
+    private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+    private PendingMessage(MqMessage message) {
+      this.message = message;
+    }
+  }
+}
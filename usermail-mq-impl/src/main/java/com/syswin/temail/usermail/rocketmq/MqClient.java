@@ -26,10 +26,26 @@ package com.syswin.temail.usermail.rocketmq;
 
 import com.syswin.temail.usermail.core.IMqConsumer;
 import com.syswin.temail.usermail.core.exception.UserMailException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.MQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
 import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
 import org.apache.rocketmq.client.consumer.listener.MessageListenerConcurrently;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
 import org.apache.rocketmq.client.exception.MQClientException;
 import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
 import org.apache.rocketmq.common.message.MessageExt;
@@ -40,6 +56,23 @@ import org.slf4j.LoggerFactory;
 public class MqClient {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(MqClient.class);
+  /**
+   * 顺序消费未设置单批最大消息数时的默认值，每次只投递一条消息时无法分片到多个通道并行处理
+   */
+  static final int ORDERED_DEFAULT_BATCH_MAX_SIZE = 32;
+  /**
+   * 顺序消费时单条消息的默认最大重试次数，与RocketMQ并发消费的默认值相同
+   */
+  static final int DEFAULT_MAX_RECONSUME_TIMES = 16;
+  /**
+   * 顺序消费原地重试的初始等待时间，之后每次翻倍，最长 {@link #MAX_RECONSUME_BACKOFF_MILLIS}
+   */
+  static final long RECONSUME_BACKOFF_MILLIS = 100L;
+  static final long MAX_RECONSUME_BACKOFF_MILLIS = 3000L;
+  /**
+   * 退回broker时的延迟级别，小于0时broker直接投递到死信队列
+   */
+  private static final int DEAD_LETTER_DELAY_LEVEL = -1;
 
   private String topic;
   private String tag;
@@ -47,6 +80,13 @@ public class MqClient {
   private String namesrvAddr;
   private IMqConsumer imqConsumer;
   private MessageModel messageModel;
+  private int consumeThreadMin;
+  private int consumeThreadMax;
+  private int consumeMessageBatchMaxSize;
+  private int orderedLanes;
+  private int maxReconsumeTimes = DEFAULT_MAX_RECONSUME_TIMES;
+  long reconsumeBackoffMillis = RECONSUME_BACKOFF_MILLIS;
+  private ExecutorService[] lanes;
 
   public MqClient(String topic, String tag, String groupName, String namesrvAddr, IMqConsumer imqConsumer, RocketMQModel mqModelType) {
     this.topic = topic;
@@ -62,34 +102,74 @@ public class MqClient {
 
   }
 
+  /**
+   * 设置消费线程数，小于等于0时使用RocketMQ默认值
+   *
+   * @param consumeThreadMin 最小消费线程数
+   * @param consumeThreadMax 最大消费线程数
+   */
+  public void setConsumeThreads(int consumeThreadMin, int consumeThreadMax) {
+    this.consumeThreadMin = consumeThreadMin;
+    this.consumeThreadMax = consumeThreadMax;
+  }
+
+  /**
+   * 设置单次投递给{@link IMqConsumer#consumeBatch(List)}的最大消息数，小于等于0时使用RocketMQ默认值（1）
+   *
+   * @param consumeMessageBatchMaxSize 单批最大消息数
+   */
+  public void setConsumeMessageBatchMaxSize(int consumeMessageBatchMaxSize) {
+    this.consumeMessageBatchMaxSize = consumeMessageBatchMaxSize;
+  }
+
+  /**
+   * 设置顺序消费的通道数，大于0时开启顺序消费：RocketMQ按队列串行投递，同一队列中的消息再按tag（owner）
+   * 分片到固定数量的单线程通道，不同owner并行处理，同一owner的事件严格按顺序处理。
+   * 开启时未设置单批最大消息数则使用 {@link #ORDERED_DEFAULT_BATCH_MAX_SIZE}
+   *
+   * @param orderedLanes 顺序消费通道数，小于等于0时为并发消费
+   */
+  public void setOrderedLanes(int orderedLanes) {
+    this.orderedLanes = orderedLanes;
+  }
+
+  /**
+   * 设置顺序消费时单条消息的最大重试次数，在通道内原地重试，超过后仍失败的消息投递到死信队列，不再阻塞同一队列的后续消息
+   *
+   * @param maxReconsumeTimes 最大重试次数，小于等于0时使用 {@link #DEFAULT_MAX_RECONSUME_TIMES}
+   */
+  public void setMaxReconsumeTimes(int maxReconsumeTimes) {
+    this.maxReconsumeTimes = maxReconsumeTimes > 0 ? maxReconsumeTimes : DEFAULT_MAX_RECONSUME_TIMES;
+  }
+
   @PostConstruct
   public void defaultMQConsumer() {
     DefaultMQPushConsumer consumer = new DefaultMQPushConsumer(groupName);
     consumer.setNamesrvAddr(namesrvAddr);
     consumer.setMessageModel(messageModel);
     consumer.setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_FIRST_OFFSET);
+    if (consumeThreadMax > 0) {
+      // 先设置max再设置min，避免min大于默认max
+      consumer.setConsumeThreadMax(consumeThreadMax);
+      consumer.setConsumeThreadMin(consumeThreadMin > 0 ? Math.min(consumeThreadMin, consumeThreadMax)
+          : Math.min(consumer.getConsumeThreadMin(), consumeThreadMax));
+    } else if (consumeThreadMin > 0) {
+      consumer.setConsumeThreadMin(Math.min(consumeThreadMin, consumer.getConsumeThreadMax()));
+    }
+    int batchMaxSize = batchMaxSize();
+    if (batchMaxSize > 0) {
+      consumer.setConsumeMessageBatchMaxSize(batchMaxSize);
+    }
     try {
       consumer.subscribe(topic, tag);
-      consumer.registerMessageListener(
-          (MessageListenerConcurrently) (messageExts, context) -> {
-            try {
-              for (MessageExt messageExt : messageExts) {
-                LOGGER.info("MQ: MsgId={} Topic={} Tags={} Keys={}", messageExt.getMsgId(), messageExt.getTopic(), messageExt.getTags(),
-                    messageExt.getKeys());
-                String message = new String(messageExt.getBody());
-                imqConsumer.consumer(message);
-              }
-            } catch (UserMailException e) {
-              LOGGER.error("MQ args execption", e);
-              return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
-            } catch (Exception e) {
-              LOGGER.error("MQ consumer execption", e);
-              // 稍后再试
-              return ConsumeConcurrentlyStatus.RECONSUME_LATER;
-            }
-            // 消费成功
-            return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
-          });
+      if (orderedLanes > 0) {
+        startLanes();
+        consumer.registerMessageListener(
+            (MessageListenerOrderly) (messageExts, context) -> consumeMessageOrderly(consumer, messageExts, context));
+      } else {
+        consumer.registerMessageListener(
+            (MessageListenerConcurrently) (messageExts, context) -> consumeMessage(consumer, messageExts, context));
+      }
       consumer.start();
     } catch (MQClientException e) {
       LOGGER.error("MQ delete action init error.");
@@ -97,6 +177,190 @@ public class MqClient {
 
   }
 
+  /**
+   * 批量消费一次投递的消息，仅将失败的消息退回broker重试，同批消费成功的消息不会被重复投递
+   */
+  ConsumeConcurrentlyStatus consumeMessage(MQPushConsumer consumer, List<MessageExt> messageExts,
+      ConsumeConcurrentlyContext context) {
+    List<byte[]> bodies = new ArrayList<>(messageExts.size());
+    for (MessageExt messageExt : messageExts) {
+      LOGGER.info("MQ: MsgId={} Topic={} Tags={} Keys={}", messageExt.getMsgId(), messageExt.getTopic(),
+          messageExt.getTags(), messageExt.getKeys());
+      bodies.add(messageExt.getBody());
+    }
+    boolean[] results;
+    try {
+      results = imqConsumer.consumeBatch(bodies);
+    } catch (UserMailException e) {
+      LOGGER.error("MQ args execption", e);
+      return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+    } catch (Exception e) {
+      LOGGER.error("MQ consumer execption", e);
+      // 稍后再试
+      return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+    }
+    int failed = 0;
+    for (int i = 0; i < results.length; i++) {
+      if (!results[i]) {
+        failed++;
+        if (messageModel == MessageModel.BROADCASTING) {
+          // 广播模式下RocketMQ不重试，与整批返回RECONSUME_LATER的效果一致
+          LOGGER.warn("MQ consumer failed in broadcasting mode, dropped MsgId={}", messageExts.get(i).getMsgId());
+          continue;
+        }
+        try {
+          consumer.sendMessageBack(messageExts.get(i), context.getDelayLevelWhenNextConsume(),
+              context.getMessageQueue().getBrokerName());
+        } catch (Exception e) {
+          LOGGER.error("MQ send message back error, MsgId={}", messageExts.get(i).getMsgId(), e);
+          // 退回失败时只能整批稍后再试
+          return ConsumeConcurrentlyStatus.RECONSUME_LATER;
+        }
+      }
+    }
+    if (failed > 0) {
+      LOGGER.warn("MQ consumer batch size={}, failed={}", results.length, failed);
+    }
+    // 消费成功
+    return ConsumeConcurrentlyStatus.CONSUME_SUCCESS;
+  }
+
+  /**
+   * 实际使用的单批最大消息数，小于等于0时使用RocketMQ默认值
+   */
+  int batchMaxSize() {
+    if (orderedLanes <= 0 || consumeMessageBatchMaxSize > 1) {
+      return consumeMessageBatchMaxSize;
+    }
+    if (consumeMessageBatchMaxSize == 1) {
+      LOGGER.warn("MQ ordered consumer with consumeMessageBatchMaxSize=1, lanes will not run in parallel");
+      return consumeMessageBatchMaxSize;
+    }
+    return ORDERED_DEFAULT_BATCH_MAX_SIZE;
+  }
+
+  void startLanes() {
+    lanes = new ExecutorService[orderedLanes];
+    for (int i = 0; i < lanes.length; i++) {
+      String name = "usermail-mq-lane-" + groupName + "-" + i;
+      lanes[i] = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  @PreDestroy
+  public void stopLanes() {
+    if (lanes != null) {
+      for (ExecutorService lane : lanes) {
+        lane.shutdown();
+      }
+    }
+  }
+
+  /**
+   * 顺序消费一次投递的消息：按tag分片到各通道并行处理，通道内逐条处理，失败的消息在通道内原地重试，
+   * 保证同一owner的事件不会乱序。所有通道都消费成功或已投递死信时返回成功；只有投递死信失败、通道无法继续时
+   * 才整批挂起稍后重新投递，此时其它通道已消费的消息也会被重复投递，依赖消费端的幂等处理
+   */
+  ConsumeOrderlyStatus consumeMessageOrderly(MQPushConsumer consumer, List<MessageExt> messageExts,
+      ConsumeOrderlyContext context) {
+    String brokerName = context.getMessageQueue().getBrokerName();
+    Map<Integer, List<MessageExt>> laneMessages = new LinkedHashMap<>();
+    for (MessageExt messageExt : messageExts) {
+      String key = messageExt.getTags();
+      int lane = key == null ? 0 : Math.abs(key.hashCode() % lanes.length);
+      laneMessages.computeIfAbsent(lane, index -> new ArrayList<>()).add(messageExt);
+    }
+    boolean success = true;
+    if (laneMessages.size() == 1) {
+      // 只有一个通道时直接在消费线程处理，省去线程切换
+      success = consumeInOrder(consumer, brokerName, laneMessages.values().iterator().next());
+    } else {
+      List<Future<Boolean>> futures = new ArrayList<>(laneMessages.size());
+      for (Entry<Integer, List<MessageExt>> entry : laneMessages.entrySet()) {
+        futures.add(lanes[entry.getKey()].submit(() -> consumeInOrder(consumer, brokerName, entry.getValue())));
+      }
+      for (Future<Boolean> future : futures) {
+        try {
+          success &= future.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          success = false;
+        } catch (ExecutionException e) {
+          LOGGER.error("MQ consumer execption", e.getCause());
+          success = false;
+        }
+      }
+    }
+    return success ? ConsumeOrderlyStatus.SUCCESS : ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+  }
+
+  /**
+   * 逐条消费，不合并为批量调用，避免消费端合并同类操作时打乱同一owner的事件顺序。
+   * 参数错误的消息与并发消费相同直接跳过；失败的消息按退避时间原地重试，达到最大重试次数仍失败时投递到死信队列后跳过，
+   * 可按MsgId从死信队列查询后人工补偿
+   *
+   * @return 通道内的消息都已消费成功或投递死信时返回true，投递死信失败时返回false
+   */
+  private boolean consumeInOrder(MQPushConsumer consumer, String brokerName, List<MessageExt> messageExts) {
+    for (MessageExt messageExt : messageExts) {
+      LOGGER.info("MQ: MsgId={} Topic={} Tags={} Keys={}", messageExt.getMsgId(), messageExt.getTopic(),
+          messageExt.getTags(), messageExt.getKeys());
+      long backoff = reconsumeBackoffMillis;
+      for (int times = 0; !consumeOne(messageExt); times++) {
+        if (times >= maxReconsumeTimes) {
+          if (!sendToDeadLetter(consumer, brokerName, messageExt)) {
+            return false;
+          }
+          break;
+        }
+        LOGGER.warn("MQ ordered consumer failed, retry {} in {}ms, MsgId={} Tags={}", times + 1, backoff,
+            messageExt.getMsgId(), messageExt.getTags());
+        try {
+          Thread.sleep(backoff);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+        backoff = Math.min(backoff * 2, MAX_RECONSUME_BACKOFF_MILLIS);
+      }
+    }
+    return true;
+  }
+
+  private boolean consumeOne(MessageExt messageExt) {
+    try {
+      return imqConsumer.consumeBatch(Collections.singletonList(messageExt.getBody()))[0];
+    } catch (UserMailException e) {
+      LOGGER.error("MQ args execption, skip MsgId={}", messageExt.getMsgId(), e);
+      return true;
+    } catch (Exception e) {
+      LOGGER.error("MQ consumer execption", e);
+      return false;
+    }
+  }
+
+  private boolean sendToDeadLetter(MQPushConsumer consumer, String brokerName, MessageExt messageExt) {
+    if (messageModel == MessageModel.BROADCASTING) {
+      // 广播模式下RocketMQ不重试也没有死信队列
+      LOGGER.error("MQ ordered consumer failed after {} retries in broadcasting mode, dropped MsgId={} Tags={}",
+          maxReconsumeTimes, messageExt.getMsgId(), messageExt.getTags());
+      return true;
+    }
+    try {
+      consumer.sendMessageBack(messageExt, DEAD_LETTER_DELAY_LEVEL, brokerName);
+      LOGGER.error("MQ ordered consumer failed after {} retries, sent to dead letter queue, MsgId={} Tags={} Keys={}",
+          maxReconsumeTimes, messageExt.getMsgId(), messageExt.getTags(), messageExt.getKeys());
+      return true;
+    } catch (Exception e) {
+      LOGGER.error("MQ send message to dead letter queue error, suspend queue, MsgId={}", messageExt.getMsgId(), e);
+      return false;
+    }
+  }
+
   public enum RocketMQModel {
     CLUSTERING, BROADCASTING
   }
@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.rocketmq;
+
+import com.syswin.temail.usermail.core.IMqAdapter;
+import com.syswin.temail.usermail.core.dto.MqMessage;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 事务发件箱方式发送mq消息：事务内产生的消息先缓存在当前事务中，提交前通过一条多行insert写入 usermail_mq_outbox 表，
+ * 与业务数据同时提交；由 {@link OutboxRelay} 按写入顺序批量读取并发送。不在事务中调用时直接写入一行。
+ */
+public class OutboxMqAdapter implements IMqAdapter {
+
+  static final String TABLE = "usermail_mq_outbox";
+  /**
+   * 单条insert语句的消息数上限，避免超过max_allowed_packet
+   */
+  private static final int INSERT_BATCH_SIZE = 200;
+
+  private final JdbcTemplate jdbcTemplate;
+  private final OutboxRelay outboxRelay;
+
+  public OutboxMqAdapter(JdbcTemplate jdbcTemplate, OutboxRelay outboxRelay) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.outboxRelay = outboxRelay;
+  }
+
+  @Override
+  public void init() {
+    outboxRelay.start();
+  }
+
+  @Override
+  public void destroy() {
+    outboxRelay.stop();
+  }
+
+  @Override
+  public boolean sendMessage(String topic, String tag, String message) {
+    MqMessage mqMessage = new MqMessage(topic, tag, message);
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      List<MqMessage> messages = new ArrayList<>(1);
+      messages.add(mqMessage);
+      insert(messages);
+      return true;
+    }
+    @SuppressWarnings("unchecked")
+    List<MqMessage> buffer = (List<MqMessage>) TransactionSynchronizationManager.getResource(this);
+    if (buffer == null) {
+      List<MqMessage> messages = new ArrayList<>();
+      TransactionSynchronizationManager.bindResource(this, messages);
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void beforeCommit(boolean readOnly) {
+          insert(messages);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+          TransactionSynchronizationManager.unbindResourceIfPossible(OutboxMqAdapter.this);
+        }
+      });
+      buffer = messages;
+    }
+    buffer.add(mqMessage);
+    return true;
+  }
+
+  /**
+   * 多行insert写入发件箱，自增id即发送顺序
+   */
+  void insert(List<MqMessage> messages) {
+    for (int from = 0; from < messages.size(); from += INSERT_BATCH_SIZE) {
+      List<MqMessage> batch = messages.subList(from, Math.min(from + INSERT_BATCH_SIZE, messages.size()));
+      StringBuilder sql = new StringBuilder("insert into ").append(TABLE)
+          .append(" (`topic`, `tag`, `message`) values ");
+      Object[] args = new Object[batch.size() * 3];
+      for (int i = 0; i < batch.size(); i++) {
+        sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+        MqMessage message = batch.get(i);
+        args[i * 3] = message.getTopic();
+        args[i * 3 + 1] = message.getTag();
+        args[i * 3 + 2] = message.getMessage();
+      }
+      jdbcTemplate.update(sql.toString(), args);
+    }
+  }
+}
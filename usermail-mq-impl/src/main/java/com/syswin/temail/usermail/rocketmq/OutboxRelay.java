@@ -0,0 +1,171 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.rocketmq;
+
+import com.syswin.temail.usermail.core.IMqAdapter;
+import com.syswin.temail.usermail.core.dto.MqMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 发件箱中继：按id顺序批量读取发件箱中的消息，批量发送后删除。
+ * <p>
+ * 多个节点的中继通过mysql命名锁 GET_LOCK 串行执行，发送期间不锁定发件箱的行，不阻塞业务事务写入；消息按写入顺序发送，
+ * 某条消息发送失败时记录失败次数，它及之后的消息留待下次重试，保证同一tag的消息不乱序，重试可能造成重复投递。
+ * 失败次数达到上限的消息移入死信表 usermail_mq_outbox_dead，不再阻塞之后的消息。
+ */
+public class OutboxRelay {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(OutboxRelay.class);
+  static final String DEAD_TABLE = "usermail_mq_outbox_dead";
+  static final String LOCK_NAME = "usermail_mq_outbox_relay";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final IMqAdapter sender;
+  private final int batchSize;
+  private final long intervalMillis;
+  private final int maxAttempts;
+  private ScheduledExecutorService relayExecutor;
+
+  public OutboxRelay(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate, IMqAdapter sender,
+      int batchSize, long intervalMillis, int maxAttempts) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = transactionTemplate;
+    this.sender = sender;
+    this.batchSize = batchSize;
+    this.intervalMillis = intervalMillis;
+    this.maxAttempts = maxAttempts;
+  }
+
+  void start() {
+    sender.init();
+    relayExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "usermail-mq-outbox-relay");
+      thread.setDaemon(true);
+      return thread;
+    });
+    relayExecutor.scheduleWithFixedDelay(this::drain, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  void stop() {
+    if (relayExecutor != null) {
+      relayExecutor.shutdown();
+      try {
+        relayExecutor.awaitTermination(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    sender.destroy();
+  }
+
+  /**
+   * 连续发送直到发件箱中不足一批或发送失败
+   */
+  void drain() {
+    try {
+      Integer sent;
+      do {
+        sent = transactionTemplate.execute(status -> relayBatchLocked());
+      } while (sent != null && sent == batchSize);
+    } catch (Exception e) {
+      LOGGER.error("mq outbox relay error", e);
+    }
+  }
+
+  /**
+   * 持有中继锁时发送一批消息，锁被其它节点持有时跳过本轮
+   *
+   * @return 已发送并删除的消息数
+   */
+  private int relayBatchLocked() {
+    if (!Integer.valueOf(1).equals(jdbcTemplate.queryForObject("select get_lock(?, 0)", Integer.class, LOCK_NAME))) {
+      return 0;
+    }
+    try {
+      return relayBatch();
+    } finally {
+      jdbcTemplate.queryForObject("select release_lock(?)", Integer.class, LOCK_NAME);
+    }
+  }
+
+  /**
+   * 发送一批消息并删除已发送的部分，第一条发送失败的消息失败次数加一，达到上限时移入死信表
+   *
+   * @return 已发送并删除的消息数
+   */
+  int relayBatch() {
+    List<Long> ids = new ArrayList<>(batchSize);
+    List<Integer> attempts = new ArrayList<>(batchSize);
+    List<MqMessage> messages = new ArrayList<>(batchSize);
+    jdbcTemplate.query("select `id`, `topic`, `tag`, `message`, `attempts` from " + OutboxMqAdapter.TABLE
+        + " order by `id` limit ?", rs -> {
+          ids.add(rs.getLong(1));
+          messages.add(new MqMessage(rs.getString(2), rs.getString(3), rs.getString(4)));
+          attempts.add(rs.getInt(5));
+        }, batchSize);
+    if (messages.isEmpty()) {
+      return 0;
+    }
+    boolean[] results = sender.sendMessages(messages);
+    int sent = 0;
+    while (sent < results.length && results[sent]) {
+      sent++;
+    }
+    if (sent > 0) {
+      StringBuilder sql = new StringBuilder("delete from ").append(OutboxMqAdapter.TABLE).append(" where `id` in (");
+      for (int i = 0; i < sent; i++) {
+        sql.append(i == 0 ? "?" : ", ?");
+      }
+      sql.append(')');
+      jdbcTemplate.update(sql.toString(), ids.subList(0, sent).toArray());
+    }
+    if (sent < results.length) {
+      fail(ids.get(sent), attempts.get(sent) + 1);
+    }
+    return sent;
+  }
+
+  private void fail(long id, int attempts) {
+    if (attempts < maxAttempts) {
+      LOGGER.warn("mq outbox relay send failed at id={}, attempts={}, retry later", id, attempts);
+      jdbcTemplate.update("update " + OutboxMqAdapter.TABLE + " set `attempts` = ? where `id` = ?", attempts, id);
+      return;
+    }
+    LOGGER.error("mq outbox relay send failed at id={}, attempts={}, move to {}", id, attempts, DEAD_TABLE);
+    jdbcTemplate.update("insert into " + DEAD_TABLE + " (`id`, `topic`, `tag`, `message`, `attempts`, `create_time`)"
+        + " select `id`, `topic`, `tag`, `message`, ?, `create_time` from " + OutboxMqAdapter.TABLE + " where `id` = ?",
+        attempts, id);
+    jdbcTemplate.update("delete from " + OutboxMqAdapter.TABLE + " where `id` = ?", id);
+  }
+}
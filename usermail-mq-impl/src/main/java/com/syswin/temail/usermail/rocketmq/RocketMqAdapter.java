@@ -25,13 +25,21 @@
 package com.syswin.temail.usermail.rocketmq;
 
 import com.syswin.temail.usermail.core.IMqAdapter;
+import com.syswin.temail.usermail.core.dto.MqMessage;
 import com.syswin.temail.usermail.core.exception.UserMailException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.UUID;
 import org.apache.rocketmq.client.exception.MQClientException;
 import org.apache.rocketmq.client.producer.DefaultMQProducer;
 import org.apache.rocketmq.client.producer.SendResult;
 import org.apache.rocketmq.client.producer.SendStatus;
 import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.StopWatch;
@@ -39,6 +47,10 @@ import org.springframework.util.StopWatch;
 public class RocketMqAdapter implements IMqAdapter {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(RocketMqAdapter.class);
+  /**
+   * 估算批量消息大小时每条消息的额外开销，与broker的计算方式一致
+   */
+  private static final int MESSAGE_OVERHEAD = 20;
 
   // 生产者的组名
   private DefaultMQProducer producer;
@@ -73,9 +85,31 @@ public class RocketMqAdapter implements IMqAdapter {
 
   @Override
   public boolean sendMessage(String topic, String tag, String message) {
+    return send(topic, tag, message.getBytes(), message);
+  }
+
+  /**
+   * 消息体直接作为rocketmq消息的body发送，日志中的消息内容仅在需要输出时解码
+   */
+  @Override
+  public boolean sendMessage(String topic, String tag, byte[] message) {
+    return send(topic, tag, message, new Object() {
+      @Override
+      public String toString() {
+        return new String(message, StandardCharsets.UTF_8);
+      }
+    });
+  }
+
+  @Override
+  public boolean supportsBinaryMessage() {
+    return true;
+  }
+
+  private boolean send(String topic, String tag, byte[] body, Object message) {
     LOGGER.info("RocketMqAdapter send message topic=[{}], tag=[{}], message=[{}]", topic, tag, message);
     // 创建一个消息实例，包含 topic、tag 和 消息体,如下：topic 为 "TopicTest"，tag 为 "push"
-    Message mqMessage = new Message(topic, tag, (message).getBytes());
+    Message mqMessage = new Message(topic, tag, body);
     StopWatch stop = new StopWatch();
     try {
       stop.start();
@@ -102,4 +136,94 @@ public class RocketMqAdapter implements IMqAdapter {
       stop.stop();
     }
   }
+
+  /**
+   * 按消息队列分组后批量发送：有tag的消息与 {@link #sendMessage} 相同按tag选择队列，同一tag的消息保持顺序；
+   * 每批的大小不超过producer允许的消息大小
+   */
+  @Override
+  public boolean[] sendMessages(List<MqMessage> messages) {
+    boolean[] results = new boolean[messages.size()];
+    Map<String, List<Integer>> topicGroups = new LinkedHashMap<>();
+    Map<MessageQueue, List<Integer>> queueGroups = new LinkedHashMap<>();
+    Map<String, List<MessageQueue>> topicQueues = new LinkedHashMap<>();
+    for (int i = 0; i < messages.size(); i++) {
+      MqMessage message = messages.get(i);
+      if (message.getTag() == null) {
+        topicGroups.computeIfAbsent(message.getTopic(), topic -> new ArrayList<>()).add(i);
+        continue;
+      }
+      try {
+        List<MessageQueue> mqs = topicQueues.get(message.getTopic());
+        if (mqs == null) {
+          mqs = producer.fetchPublishMessageQueues(message.getTopic());
+          topicQueues.put(message.getTopic(), mqs);
+        }
+        MessageQueue mq = mqs.get(Math.abs(message.getTag().hashCode() % mqs.size()));
+        queueGroups.computeIfAbsent(mq, key -> new ArrayList<>()).add(i);
+      } catch (Exception e) {
+        LOGGER.error("mq fetch message queues error,topic=[{}]", message.getTopic(), e);
+      }
+    }
+    for (List<Integer> indexes : topicGroups.values()) {
+      sendGroup(messages, indexes, null, results);
+    }
+    for (Entry<MessageQueue, List<Integer>> entry : queueGroups.entrySet()) {
+      sendGroup(messages, entry.getValue(), entry.getKey(), results);
+    }
+    return results;
+  }
+
+  private void sendGroup(List<MqMessage> messages, List<Integer> indexes, MessageQueue mq, boolean[] results) {
+    int maxSize = producer.getMaxMessageSize();
+    List<Message> batch = new ArrayList<>();
+    List<Integer> batchIndexes = new ArrayList<>();
+    int batchSize = 0;
+    for (int index : indexes) {
+      MqMessage message = messages.get(index);
+      byte[] body = message.getBody() == null ? message.getMessage().getBytes() : message.getBody();
+      Message mqMessage = new Message(message.getTopic(), message.getTag(), body);
+      int size = sizeOf(mqMessage);
+      if (!batch.isEmpty() && batchSize + size > maxSize) {
+        sendBatch(batch, batchIndexes, mq, results);
+        batch = new ArrayList<>();
+        batchIndexes = new ArrayList<>();
+        batchSize = 0;
+      }
+      batch.add(mqMessage);
+      batchIndexes.add(index);
+      batchSize += size;
+    }
+    if (!batch.isEmpty()) {
+      sendBatch(batch, batchIndexes, mq, results);
+    }
+  }
+
+  private void sendBatch(List<Message> batch, List<Integer> indexes, MessageQueue mq, boolean[] results) {
+    String topic = batch.get(0).getTopic();
+    try {
+      SendResult result = mq == null ? producer.send(batch) : producer.send(batch, mq);
+      LOGGER.info("MQ: send batch result: {}, size={}", result, batch.size());
+      boolean success = result.getSendStatus().equals(SendStatus.SEND_OK);
+      if (!success) {
+        LOGGER.error("mq send batch FAILURE,topic=[{}],size=[{}]", topic, batch.size());
+      }
+      for (int index : indexes) {
+        results[index] = success;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOGGER.error("mq send batch interrupted,topic=[{}],size=[{}]", topic, batch.size(), e);
+    } catch (Exception e) {
+      LOGGER.error("mq send batch error,topic=[{}],size=[{}]", topic, batch.size(), e);
+    }
+  }
+
+  private static int sizeOf(Message message) {
+    int size = message.getTopic().length() + message.getBody().length + MESSAGE_OVERHEAD;
+    for (Entry<String, String> property : message.getProperties().entrySet()) {
+      size += property.getKey().length() + property.getValue().length();
+    }
+    return size;
+  }
 }
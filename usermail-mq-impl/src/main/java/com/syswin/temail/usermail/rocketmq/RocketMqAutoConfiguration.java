@@ -30,10 +30,14 @@ import com.syswin.temail.usermail.core.IMqAdapter;
 import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ListableBeanFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Configuration
 @EnableConfigurationProperties(RocketMqProperties.class)
@@ -45,7 +49,8 @@ public class RocketMqAutoConfiguration {
   @ConditionalOnProperty(name = "spring.rocketmq.sender", havingValue = "ROCKETMQ")
   public IMqAdapter imq(RocketMqProperties rocketMqProperties) {
     LOGGER.info("MQAdapter [rocketmq] started");
-    return new RocketMqAdapter(rocketMqProperties.getProducerGroup(), rocketMqProperties.getHost());
+    return async(new RocketMqAdapter(rocketMqProperties.getProducerGroup(), rocketMqProperties.getHost()),
+        rocketMqProperties);
   }
 
   @Bean
@@ -55,12 +60,42 @@ public class RocketMqAutoConfiguration {
     return new DbAdapter(temailMqSender);
   }
 
-  @Bean
+  @Bean(initMethod = "init", destroyMethod = "destroy")
   @ConditionalOnProperty(name = "spring.rocketmq.sender", havingValue = "libraryMessage")
   public IMqAdapter libraryMessagingMqAdapter(Map<String, MqProducer> mqProducers,
       RocketMqProperties rocketMqProperties) {
     LOGGER.info("MQAdapter [libraryMessage] started");
-    return new LibraryMessagingMqAdapter(mqProducers, rocketMqProperties);
+    return async(new LibraryMessagingMqAdapter(mqProducers, rocketMqProperties), rocketMqProperties);
+  }
+
+  @Bean(initMethod = "init", destroyMethod = "destroy")
+  @ConditionalOnProperty(name = "spring.rocketmq.sender", havingValue = "OUTBOX")
+  public IMqAdapter outboxImq(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+      ListableBeanFactory beanFactory, RocketMqProperties rocketMqProperties) {
+    IMqAdapter relaySender;
+    if ("libraryMessage".equals(rocketMqProperties.getOutboxRelaySender())) {
+      relaySender = new LibraryMessagingMqAdapter(beanFactory.getBeansOfType(MqProducer.class), rocketMqProperties);
+    } else {
+      relaySender = new RocketMqAdapter(rocketMqProperties.getProducerGroup(), rocketMqProperties.getHost());
+    }
+    OutboxRelay outboxRelay = new OutboxRelay(jdbcTemplate, new TransactionTemplate(transactionManager), relaySender,
+        rocketMqProperties.getOutboxRelayBatchSize(), rocketMqProperties.getOutboxRelayIntervalMillis(),
+        rocketMqProperties.getOutboxRelayMaxAttempts());
+    LOGGER.info("MQAdapter [outbox] started, relay sender [{}]", rocketMqProperties.getOutboxRelaySender());
+    return new OutboxMqAdapter(jdbcTemplate, outboxRelay);
+  }
+
+  /**
+   * 开启异步发送时包装为异步批量发送的adapter，DB方式需随业务事务写入，不做包装
+   */
+  private IMqAdapter async(IMqAdapter mqAdapter, RocketMqProperties rocketMqProperties) {
+    if (!rocketMqProperties.isAsyncSend()) {
+      return mqAdapter;
+    }
+    LOGGER.info("MQAdapter async batching enabled");
+    return new AsyncBatchingMqAdapter(mqAdapter, rocketMqProperties.getAsyncQueueCapacity(),
+        rocketMqProperties.getAsyncBatchSize(), rocketMqProperties.getAsyncLingerMillis(),
+        rocketMqProperties.getAsyncOfferTimeoutMillis(), rocketMqProperties.getAsyncMaxRetries());
   }
 
 }
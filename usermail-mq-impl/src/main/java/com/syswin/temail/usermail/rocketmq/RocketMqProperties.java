@@ -32,6 +32,46 @@ public class RocketMqProperties {
   private String host;
   private String producerGroup;
   private String topic;
+  /**
+   * 是否异步批量发送，仅对 ROCKETMQ 和 libraryMessage 发送方式生效
+   */
+  private boolean asyncSend;
+  /**
+   * 异步发送队列的容量
+   */
+  private int asyncQueueCapacity = 8192;
+  /**
+   * 异步发送每批的最大消息数
+   */
+  private int asyncBatchSize = 32;
+  /**
+   * 异步发送时第一条消息等待攒批的最大时间（毫秒）
+   */
+  private long asyncLingerMillis = 5;
+  /**
+   * 异步发送队列满时调用线程等待入队的最大时间（毫秒），超时后拒绝发送并抛出异常
+   */
+  private long asyncOfferTimeoutMillis = 100;
+  /**
+   * 异步发送失败的消息的最大重试次数
+   */
+  private int asyncMaxRetries = 2;
+  /**
+   * 发件箱中继实际发送消息的方式：ROCKETMQ 或 libraryMessage
+   */
+  private String outboxRelaySender = "ROCKETMQ";
+  /**
+   * 发件箱中继每批读取的消息数
+   */
+  private int outboxRelayBatchSize = 500;
+  /**
+   * 发件箱中继的轮询间隔（毫秒）
+   */
+  private long outboxRelayIntervalMillis = 200;
+  /**
+   * 发件箱消息的最大发送次数，达到后移入死信表
+   */
+  private int outboxRelayMaxAttempts = 10;
 
   public String getHost() {
     return host;
@@ -56,4 +96,84 @@ public class RocketMqProperties {
   public void setTopic(String topic) {
     this.topic = topic;
   }
+
+  public boolean isAsyncSend() {
+    return asyncSend;
+  }
+
+  public void setAsyncSend(boolean asyncSend) {
+    this.asyncSend = asyncSend;
+  }
+
+  public int getAsyncQueueCapacity() {
+    return asyncQueueCapacity;
+  }
+
+  public void setAsyncQueueCapacity(int asyncQueueCapacity) {
+    this.asyncQueueCapacity = asyncQueueCapacity;
+  }
+
+  public int getAsyncBatchSize() {
+    return asyncBatchSize;
+  }
+
+  public void setAsyncBatchSize(int asyncBatchSize) {
+    this.asyncBatchSize = asyncBatchSize;
+  }
+
+  public long getAsyncLingerMillis() {
+    return asyncLingerMillis;
+  }
+
+  public void setAsyncLingerMillis(long asyncLingerMillis) {
+    this.asyncLingerMillis = asyncLingerMillis;
+  }
+
+  public long getAsyncOfferTimeoutMillis() {
+    return asyncOfferTimeoutMillis;
+  }
+
+  public void setAsyncOfferTimeoutMillis(long asyncOfferTimeoutMillis) {
+    this.asyncOfferTimeoutMillis = asyncOfferTimeoutMillis;
+  }
+
+  public int getAsyncMaxRetries() {
+    return asyncMaxRetries;
+  }
+
+  public void setAsyncMaxRetries(int asyncMaxRetries) {
+    this.asyncMaxRetries = asyncMaxRetries;
+  }
+
+  public String getOutboxRelaySender() {
+    return outboxRelaySender;
+  }
+
+  public void setOutboxRelaySender(String outboxRelaySender) {
+    this.outboxRelaySender = outboxRelaySender;
+  }
+
+  public int getOutboxRelayBatchSize() {
+    return outboxRelayBatchSize;
+  }
+
+  public void setOutboxRelayBatchSize(int outboxRelayBatchSize) {
+    this.outboxRelayBatchSize = outboxRelayBatchSize;
+  }
+
+  public long getOutboxRelayIntervalMillis() {
+    return outboxRelayIntervalMillis;
+  }
+
+  public void setOutboxRelayIntervalMillis(long outboxRelayIntervalMillis) {
+    this.outboxRelayIntervalMillis = outboxRelayIntervalMillis;
+  }
+
+  public int getOutboxRelayMaxAttempts() {
+    return outboxRelayMaxAttempts;
+  }
+
+  public void setOutboxRelayMaxAttempts(int outboxRelayMaxAttempts) {
+    this.outboxRelayMaxAttempts = outboxRelayMaxAttempts;
+  }
 }
@@ -0,0 +1,181 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.rocketmq;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.syswin.temail.usermail.core.IMqAdapter;
+import com.syswin.temail.usermail.core.dto.MqMessage;
+import com.syswin.temail.usermail.core.exception.UserMailException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class AsyncBatchingMqAdapterTest {
+
+  private final IMqAdapter delegate = Mockito.mock(IMqAdapter.class);
+  private AsyncBatchingMqAdapter asyncBatchingMqAdapter;
+
+  @After
+  public void tearDown() {
+    if (asyncBatchingMqAdapter != null) {
+      asyncBatchingMqAdapter.destroy();
+    }
+  }
+
+  @Test
+  public void sendQueuedMessagesInOneBatch() throws Exception {
+    when(delegate.sendMessages(anyList())).thenAnswer(invocation -> new boolean[]{true, false});
+    asyncBatchingMqAdapter = new AsyncBatchingMqAdapter(delegate, 16, 2, 1000, 100, 0);
+    asyncBatchingMqAdapter.init();
+
+    CompletableFuture<Boolean> first = asyncBatchingMqAdapter.sendMessageAsync("topic", "tag1", "message1");
+    CompletableFuture<Boolean> second = asyncBatchingMqAdapter.sendMessageAsync("topic", "tag2", "message2");
+
+    assertThat(first.get(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(second.get(5, TimeUnit.SECONDS)).isFalse();
+    ArgumentCaptor<List<MqMessage>> captor = ArgumentCaptor.forClass(List.class);
+    verify(delegate).sendMessages(captor.capture());
+    assertThat(captor.getValue()).extracting(MqMessage::getMessage).containsExactly("message1", "message2");
+    verify(delegate).init();
+  }
+
+  @Test
+  public void sendBinaryMessageWithoutDecoding() throws Exception {
+    when(delegate.sendMessages(anyList())).thenAnswer(invocation -> new boolean[]{true, true});
+    when(delegate.supportsBinaryMessage()).thenReturn(true);
+    asyncBatchingMqAdapter = new AsyncBatchingMqAdapter(delegate, 16, 2, 1000, 100, 0);
+    asyncBatchingMqAdapter.init();
+    byte[] body = {0, (byte) 0xff, 1};
+
+    assertThat(asyncBatchingMqAdapter.supportsBinaryMessage()).isTrue();
+    assertThat(asyncBatchingMqAdapter.sendMessage("topic", "tag", body)).isTrue();
+    asyncBatchingMqAdapter.sendMessageAsync("topic", "tag", "message").get(5, TimeUnit.SECONDS);
+
+    ArgumentCaptor<List<MqMessage>> captor = ArgumentCaptor.forClass(List.class);
+    verify(delegate).sendMessages(captor.capture());
+    assertThat(captor.getValue().get(0).getBody()).isSameAs(body);
+    assertThat(captor.getValue().get(1).getBody()).isNull();
+    assertThat(captor.getValue().get(1).getMessage()).isEqualTo("message");
+  }
+
+  @Test
+  public void sendPartialBatchAfterLinger() throws Exception {
+    when(delegate.sendMessages(anyList())).thenAnswer(invocation -> {
+      boolean[] results = new boolean[invocation.<List<MqMessage>>getArgument(0).size()];
+      Arrays.fill(results, true);
+      return results;
+    });
+    asyncBatchingMqAdapter = new AsyncBatchingMqAdapter(delegate, 16, 10, 10, 100, 0);
+    asyncBatchingMqAdapter.init();
+
+    assertThat(asyncBatchingMqAdapter.sendMessage("topic", "tag", "message")).isTrue();
+    CompletableFuture<Boolean> future = asyncBatchingMqAdapter.sendMessageAsync("topic", "tag", "message");
+    assertThat(future.get(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  public void rejectWhenQueueFull() throws Exception {
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(delegate.sendMessages(anyList())).thenAnswer(invocation -> {
+      blocked.countDown();
+      release.await(5, TimeUnit.SECONDS);
+      return new boolean[]{true};
+    });
+    asyncBatchingMqAdapter = new AsyncBatchingMqAdapter(delegate, 1, 1, 0, 10, 0);
+    asyncBatchingMqAdapter.init();
+
+    asyncBatchingMqAdapter.sendMessageAsync("topic", "tag", "inflight");
+    assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+    asyncBatchingMqAdapter.sendMessageAsync("topic", "tag", "queued");
+    CompletableFuture<Boolean> overflow = asyncBatchingMqAdapter.sendMessageAsync("topic", "tag", "overflow");
+
+    assertThat(overflow).isCompletedExceptionally();
+    assertThatThrownBy(() -> asyncBatchingMqAdapter.sendMessage("topic", "tag", "overflow"))
+        .isInstanceOf(UserMailException.class);
+    verify(delegate, never()).sendMessageAsync("topic", "tag", "overflow");
+    verify(delegate, never()).sendMessage("topic", "tag", "overflow");
+    release.countDown();
+  }
+
+  @Test
+  public void retryFailedMessages() throws Exception {
+    when(delegate.sendMessages(anyList())).thenAnswer(invocation -> new boolean[]{true, false})
+        .thenThrow(new IllegalStateException("broker down"))
+        .thenAnswer(invocation -> new boolean[]{true});
+    asyncBatchingMqAdapter = new AsyncBatchingMqAdapter(delegate, 16, 2, 1000, 100, 2);
+    asyncBatchingMqAdapter.init();
+
+    CompletableFuture<Boolean> first = asyncBatchingMqAdapter.sendMessageAsync("topic", "tag1", "message1");
+    CompletableFuture<Boolean> second = asyncBatchingMqAdapter.sendMessageAsync("topic", "tag2", "message2");
+
+    assertThat(first.get(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(second.get(5, TimeUnit.SECONDS)).isTrue();
+    ArgumentCaptor<List<MqMessage>> captor = ArgumentCaptor.forClass(List.class);
+    verify(delegate, times(3)).sendMessages(captor.capture());
+    assertThat(captor.getAllValues().get(2)).extracting(MqMessage::getMessage).containsExactly("message2");
+  }
+
+  @Test
+  public void failFuturesWhenBatchThrows() throws Exception {
+    when(delegate.sendMessages(anyList())).thenThrow(new IllegalStateException("broker down"));
+    asyncBatchingMqAdapter = new AsyncBatchingMqAdapter(delegate, 16, 1, 0, 100, 0);
+    asyncBatchingMqAdapter.init();
+
+    CompletableFuture<Boolean> future = asyncBatchingMqAdapter.sendMessageAsync("topic", "tag", "message");
+    assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+        .hasCauseInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void flushQueuedMessagesOnDestroy() {
+    when(delegate.sendMessages(anyList())).thenAnswer(invocation -> {
+      List<MqMessage> messages = invocation.getArgument(0);
+      return new boolean[messages.size()];
+    });
+    asyncBatchingMqAdapter = new AsyncBatchingMqAdapter(delegate, 16, 100, 10000, 100, 0);
+    asyncBatchingMqAdapter.init();
+    CompletableFuture<Boolean> future = asyncBatchingMqAdapter.sendMessageAsync("topic", "tag", "message");
+    asyncBatchingMqAdapter.destroy();
+    asyncBatchingMqAdapter = null;
+
+    assertThat(future).isDone();
+    verify(delegate).destroy();
+  }
+}
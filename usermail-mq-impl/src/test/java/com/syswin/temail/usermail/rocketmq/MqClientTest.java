@@ -0,0 +1,291 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.syswin.temail.usermail.rocketmq;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.syswin.temail.usermail.core.IMqConsumer;
+import com.syswin.temail.usermail.core.exception.UserMailException;
+import com.syswin.temail.usermail.rocketmq.MqClient.RocketMQModel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.apache.rocketmq.client.consumer.MQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeConcurrentlyStatus;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MqClientTest {
+
+  @Mock
+  private IMqConsumer imqConsumer;
+  @Mock
+  private MQPushConsumer pushConsumer;
+
+  private final ConsumeConcurrentlyContext context = new ConsumeConcurrentlyContext(
+      new MessageQueue("topic", "broker-a", 0));
+  private final ConsumeOrderlyContext orderlyContext = new ConsumeOrderlyContext(
+      new MessageQueue("topic", "broker-a", 0));
+  private List<MessageExt> messageExts;
+
+  @Before
+  public void setUp() {
+    messageExts = Arrays.asList(message("a"), message("b"), message("c"));
+  }
+
+  @Test
+  public void onlyFailedMessagesAreSentBack() throws Exception {
+    MqClient mqClient = mqClient(RocketMQModel.CLUSTERING);
+    when(imqConsumer.consumeBatch(anyList())).thenReturn(new boolean[]{true, false, true});
+
+    ConsumeConcurrentlyStatus status = mqClient.consumeMessage(pushConsumer, messageExts, context);
+
+    assertThat(status).isEqualTo(ConsumeConcurrentlyStatus.CONSUME_SUCCESS);
+    verify(pushConsumer).sendMessageBack(messageExts.get(1), context.getDelayLevelWhenNextConsume(), "broker-a");
+    verify(pushConsumer, never()).sendMessageBack(eq(messageExts.get(0)), anyInt(), anyString());
+    verify(pushConsumer, never()).sendMessageBack(eq(messageExts.get(2)), anyInt(), anyString());
+  }
+
+  @Test
+  public void batchBodiesArePassedInOrder() {
+    MqClient mqClient = mqClient(RocketMQModel.CLUSTERING);
+    when(imqConsumer.consumeBatch(anyList())).thenReturn(new boolean[]{true, true, true});
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<byte[]>> captor = ArgumentCaptor.forClass(List.class);
+
+    mqClient.consumeMessage(pushConsumer, messageExts, context);
+
+    verify(imqConsumer).consumeBatch(captor.capture());
+    assertThat(captor.getValue()).extracting(body -> new String(body, StandardCharsets.UTF_8))
+        .containsExactly("a", "b", "c");
+  }
+
+  @Test
+  public void reconsumeWholeBatchWhenSendBackFails() throws Exception {
+    MqClient mqClient = mqClient(RocketMQModel.CLUSTERING);
+    when(imqConsumer.consumeBatch(anyList())).thenReturn(new boolean[]{false, true, true});
+    doThrow(new MQClientException("broker unavailable", null)).when(pushConsumer)
+        .sendMessageBack(any(MessageExt.class), anyInt(), anyString());
+
+    assertThat(mqClient.consumeMessage(pushConsumer, messageExts, context))
+        .isEqualTo(ConsumeConcurrentlyStatus.RECONSUME_LATER);
+  }
+
+  @Test
+  public void failedMessagesAreNotSentBackInBroadcastingMode() throws Exception {
+    MqClient mqClient = mqClient(RocketMQModel.BROADCASTING);
+    when(imqConsumer.consumeBatch(anyList())).thenReturn(new boolean[]{false, false, true});
+
+    assertThat(mqClient.consumeMessage(pushConsumer, messageExts, context))
+        .isEqualTo(ConsumeConcurrentlyStatus.CONSUME_SUCCESS);
+    verify(pushConsumer, never()).sendMessageBack(any(MessageExt.class), anyInt(), anyString());
+  }
+
+  @Test
+  public void batchExceptionKeepsPreviousSemantics() {
+    MqClient mqClient = mqClient(RocketMQModel.CLUSTERING);
+    when(imqConsumer.consumeBatch(anyList())).thenThrow(new UserMailException("bad args"))
+        .thenThrow(new IllegalStateException("db down"));
+
+    assertThat(mqClient.consumeMessage(pushConsumer, messageExts, context))
+        .isEqualTo(ConsumeConcurrentlyStatus.CONSUME_SUCCESS);
+    assertThat(mqClient.consumeMessage(pushConsumer, messageExts, context))
+        .isEqualTo(ConsumeConcurrentlyStatus.RECONSUME_LATER);
+  }
+
+  @Test
+  public void orderedModeKeepsOrderPerOwner() {
+    MqClient mqClient = mqClient(RocketMQModel.CLUSTERING);
+    mqClient.setOrderedLanes(4);
+    mqClient.startLanes();
+    List<String> consumed = Collections.synchronizedList(new ArrayList<>());
+    when(imqConsumer.consumeBatch(anyList())).thenAnswer(invocation -> {
+      List<byte[]> bodies = invocation.getArgument(0);
+      consumed.add(new String(bodies.get(0), StandardCharsets.UTF_8));
+      return new boolean[]{true};
+    });
+    List<MessageExt> ordered = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      ordered.add(message("owner" + (i % 3), "owner" + (i % 3) + "-" + i));
+    }
+
+    ConsumeOrderlyStatus status = mqClient.consumeMessageOrderly(pushConsumer, ordered, orderlyContext);
+    mqClient.stopLanes();
+
+    assertThat(status).isEqualTo(ConsumeOrderlyStatus.SUCCESS);
+    assertThat(consumed).hasSize(20);
+    for (int owner = 0; owner < 3; owner++) {
+      String prefix = "owner" + owner + "-";
+      List<String> ownerEvents = consumed.stream().filter(body -> body.startsWith(prefix))
+          .collect(Collectors.toList());
+      assertThat(ownerEvents).isSortedAccordingTo(Comparator.comparingInt(body -> Integer.parseInt(
+          body.substring(prefix.length()))));
+    }
+  }
+
+  @Test
+  public void orderedModeRetriesFailedMessageInPlace() throws Exception {
+    MqClient mqClient = orderedMqClient(RocketMQModel.CLUSTERING, 1);
+    List<String> consumed = new ArrayList<>();
+    when(imqConsumer.consumeBatch(anyList())).thenAnswer(invocation -> {
+      List<byte[]> bodies = invocation.getArgument(0);
+      consumed.add(new String(bodies.get(0), StandardCharsets.UTF_8));
+      return new boolean[]{consumed.size() != 2};
+    });
+
+    ConsumeOrderlyStatus status = mqClient.consumeMessageOrderly(pushConsumer,
+        Arrays.asList(message("owner", "a"), message("owner", "b"), message("owner", "c")), orderlyContext);
+    mqClient.stopLanes();
+
+    assertThat(status).isEqualTo(ConsumeOrderlyStatus.SUCCESS);
+    assertThat(consumed).containsExactly("a", "b", "b", "c");
+    verify(pushConsumer, never()).sendMessageBack(any(MessageExt.class), anyInt(), anyString());
+  }
+
+  @Test
+  public void orderedModeDeadLettersMessageAfterMaxReconsumeTimes() throws Exception {
+    MqClient mqClient = orderedMqClient(RocketMQModel.CLUSTERING, 4);
+    mqClient.setMaxReconsumeTimes(3);
+    MessageExt poison = message("owner1", "poison");
+    when(imqConsumer.consumeBatch(anyList())).thenAnswer(invocation -> {
+      List<byte[]> bodies = invocation.getArgument(0);
+      return new boolean[]{!"poison".equals(new String(bodies.get(0), StandardCharsets.UTF_8))};
+    });
+
+    ConsumeOrderlyStatus status = mqClient.consumeMessageOrderly(pushConsumer,
+        Arrays.asList(poison, message("owner1", "b"), message("owner2", "c")), orderlyContext);
+    mqClient.stopLanes();
+
+    assertThat(status).isEqualTo(ConsumeOrderlyStatus.SUCCESS);
+    // 首次消费加3次重试后投递死信，同一owner的后续消息继续消费
+    verify(imqConsumer, times(6)).consumeBatch(anyList());
+    verify(pushConsumer).sendMessageBack(poison, -1, "broker-a");
+  }
+
+  @Test
+  public void orderedModeSuspendsWhenDeadLetterFails() throws Exception {
+    MqClient mqClient = orderedMqClient(RocketMQModel.CLUSTERING, 1);
+    mqClient.setMaxReconsumeTimes(2);
+    when(imqConsumer.consumeBatch(anyList())).thenReturn(new boolean[]{true}, new boolean[]{false});
+    doThrow(new MQClientException("broker unavailable", null)).when(pushConsumer)
+        .sendMessageBack(any(MessageExt.class), anyInt(), anyString());
+
+    ConsumeOrderlyStatus status = mqClient.consumeMessageOrderly(pushConsumer,
+        Arrays.asList(message("owner", "a"), message("owner", "b"), message("owner", "c")), orderlyContext);
+    mqClient.stopLanes();
+
+    assertThat(status).isEqualTo(ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT);
+    verify(imqConsumer, times(4)).consumeBatch(anyList());
+  }
+
+  @Test
+  public void orderedModeDropsFailedMessageInBroadcastingMode() throws Exception {
+    MqClient mqClient = orderedMqClient(RocketMQModel.BROADCASTING, 1);
+    mqClient.setMaxReconsumeTimes(1);
+    when(imqConsumer.consumeBatch(anyList())).thenReturn(new boolean[]{false}, new boolean[]{false},
+        new boolean[]{true});
+
+    ConsumeOrderlyStatus status = mqClient.consumeMessageOrderly(pushConsumer,
+        Arrays.asList(message("owner", "a"), message("owner", "b")), orderlyContext);
+    mqClient.stopLanes();
+
+    assertThat(status).isEqualTo(ConsumeOrderlyStatus.SUCCESS);
+    verify(imqConsumer, times(3)).consumeBatch(anyList());
+    verify(pushConsumer, never()).sendMessageBack(any(MessageExt.class), anyInt(), anyString());
+  }
+
+  @Test
+  public void orderedModeSkipsArgsException() {
+    MqClient mqClient = orderedMqClient(RocketMQModel.CLUSTERING, 1);
+    when(imqConsumer.consumeBatch(anyList())).thenThrow(new UserMailException("bad args"))
+        .thenReturn(new boolean[]{true});
+
+    ConsumeOrderlyStatus status = mqClient.consumeMessageOrderly(pushConsumer,
+        Arrays.asList(message("owner", "a"), message("owner", "b")), orderlyContext);
+    mqClient.stopLanes();
+
+    assertThat(status).isEqualTo(ConsumeOrderlyStatus.SUCCESS);
+    verify(imqConsumer, times(2)).consumeBatch(anyList());
+  }
+
+  @Test
+  public void orderedModeDefaultsBatchMaxSize() {
+    MqClient mqClient = mqClient(RocketMQModel.CLUSTERING);
+    assertThat(mqClient.batchMaxSize()).isEqualTo(0);
+    mqClient.setOrderedLanes(4);
+    assertThat(mqClient.batchMaxSize()).isEqualTo(MqClient.ORDERED_DEFAULT_BATCH_MAX_SIZE);
+    mqClient.setConsumeMessageBatchMaxSize(8);
+    assertThat(mqClient.batchMaxSize()).isEqualTo(8);
+  }
+
+  private MqClient mqClient(RocketMQModel model) {
+    return new MqClient("topic", "*", "group", "localhost:9876", imqConsumer, model);
+  }
+
+  private MqClient orderedMqClient(RocketMQModel model, int orderedLanes) {
+    MqClient mqClient = mqClient(model);
+    mqClient.setOrderedLanes(orderedLanes);
+    mqClient.reconsumeBackoffMillis = 1L;
+    mqClient.startLanes();
+    return mqClient;
+  }
+
+  private static MessageExt message(String tag, String body) {
+    MessageExt messageExt = message(body);
+    messageExt.setTags(tag);
+    return messageExt;
+  }
+
+  private static MessageExt message(String body) {
+    MessageExt messageExt = new MessageExt();
+    messageExt.setTopic("topic");
+    messageExt.setBody(body.getBytes(StandardCharsets.UTF_8));
+    return messageExt;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.rocketmq;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OutboxMqAdapterTest {
+
+  @Mock
+  private JdbcTemplate jdbcTemplate;
+  @Mock
+  private OutboxRelay outboxRelay;
+
+  @After
+  public void tearDown() {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  public void initAndDestroy() {
+    OutboxMqAdapter outboxMqAdapter = new OutboxMqAdapter(jdbcTemplate, outboxRelay);
+    outboxMqAdapter.init();
+    outboxMqAdapter.destroy();
+    verify(outboxRelay).start();
+    verify(outboxRelay).stop();
+  }
+
+  @Test
+  public void sendMessageWithoutTransaction() {
+    OutboxMqAdapter outboxMqAdapter = new OutboxMqAdapter(jdbcTemplate, outboxRelay);
+    assertThat(outboxMqAdapter.sendMessage("topic", "tag", "message")).isTrue();
+    verify(jdbcTemplate).update("insert into usermail_mq_outbox (`topic`, `tag`, `message`) values (?, ?, ?)",
+        "topic", "tag", "message");
+  }
+
+  @Test
+  public void sendMessageInTransaction() {
+    OutboxMqAdapter outboxMqAdapter = new OutboxMqAdapter(jdbcTemplate, outboxRelay);
+    TransactionSynchronizationManager.initSynchronization();
+    outboxMqAdapter.sendMessage("topic", "tag1", "message1");
+    outboxMqAdapter.sendMessage("topic", "tag2", "message2");
+    verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
+
+    List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+    assertThat(synchronizations).hasSize(1);
+    synchronizations.get(0).beforeCommit(false);
+    verify(jdbcTemplate).update(
+        "insert into usermail_mq_outbox (`topic`, `tag`, `message`) values (?, ?, ?), (?, ?, ?)",
+        "topic", "tag1", "message1", "topic", "tag2", "message2");
+
+    synchronizations.get(0).afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+    assertThat(TransactionSynchronizationManager.hasResource(outboxMqAdapter)).isFalse();
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.rocketmq;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.syswin.temail.usermail.core.IMqAdapter;
+import com.syswin.temail.usermail.core.dto.MqMessage;
+import java.sql.ResultSet;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OutboxRelayTest {
+
+  @Mock
+  private JdbcTemplate jdbcTemplate;
+  @Mock
+  private TransactionTemplate transactionTemplate;
+  @Mock
+  private IMqAdapter sender;
+  @Mock
+  private ResultSet resultSet;
+  private OutboxRelay outboxRelay;
+
+  @Before
+  public void setUp() throws Exception {
+    outboxRelay = new OutboxRelay(jdbcTemplate, transactionTemplate, sender, 10, 200, 3);
+    when(resultSet.getLong(1)).thenReturn(1L, 2L, 3L);
+    when(resultSet.getString(2)).thenReturn("topic");
+    when(resultSet.getString(3)).thenReturn("tag1", "tag2", "tag3");
+    when(resultSet.getString(4)).thenReturn("message1", "message2", "message3");
+    when(resultSet.getInt(5)).thenReturn(0, 2, 0);
+    doAnswer(invocation -> {
+      RowCallbackHandler handler = invocation.getArgument(1);
+      for (int i = 0; i < 3; i++) {
+        handler.processRow(resultSet);
+      }
+      return null;
+    }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(10));
+  }
+
+  @Test
+  public void relayBatch() {
+    when(sender.sendMessages(any())).thenReturn(new boolean[]{true, true, true});
+    assertThat(outboxRelay.relayBatch()).isEqualTo(3);
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<MqMessage>> captor = ArgumentCaptor.forClass(List.class);
+    verify(sender).sendMessages(captor.capture());
+    assertThat(captor.getValue()).extracting(MqMessage::getTag).containsExactly("tag1", "tag2", "tag3");
+    verify(jdbcTemplate).update("delete from usermail_mq_outbox where `id` in (?, ?, ?)", 1L, 2L, 3L);
+  }
+
+  @Test
+  public void relayBatchKeepsMessagesAfterFailure() {
+    when(sender.sendMessages(any())).thenReturn(new boolean[]{true, false, true});
+    assertThat(outboxRelay.relayBatch()).isEqualTo(1);
+    verify(jdbcTemplate).update("delete from usermail_mq_outbox where `id` in (?)", 1L);
+  }
+
+  @Test
+  public void relayBatchNothingDeletedWhenFirstFails() {
+    when(sender.sendMessages(any())).thenReturn(new boolean[]{false, true, true});
+    assertThat(outboxRelay.relayBatch()).isEqualTo(0);
+    verify(jdbcTemplate).update("update usermail_mq_outbox set `attempts` = ? where `id` = ?", 1, 1L);
+    verify(jdbcTemplate, never()).update(startsWith("delete"), any(Object[].class));
+  }
+
+  @Test
+  public void relayBatchMovesMessageToDeadLetterAfterMaxAttempts() {
+    when(sender.sendMessages(any())).thenReturn(new boolean[]{true, false, true});
+    assertThat(outboxRelay.relayBatch()).isEqualTo(1);
+    verify(jdbcTemplate).update("insert into usermail_mq_outbox_dead (`id`, `topic`, `tag`, `message`, `attempts`, "
+        + "`create_time`) select `id`, `topic`, `tag`, `message`, ?, `create_time` from usermail_mq_outbox "
+        + "where `id` = ?", 3, 2L);
+    verify(jdbcTemplate).update("delete from usermail_mq_outbox where `id` = ?", 2L);
+  }
+
+  @Test
+  public void drainSkipsWhenLockHeldByOtherRelay() {
+    when(transactionTemplate.execute(any()))
+        .thenAnswer(invocation -> invocation.<TransactionCallback<Integer>>getArgument(0).doInTransaction(null));
+    when(jdbcTemplate.queryForObject("select get_lock(?, 0)", Integer.class, OutboxRelay.LOCK_NAME)).thenReturn(0);
+    outboxRelay.drain();
+    verify(sender, never()).sendMessages(any());
+    verify(jdbcTemplate, never()).queryForObject("select release_lock(?)", Integer.class, OutboxRelay.LOCK_NAME);
+  }
+
+  @Test
+  public void drainReleasesLock() {
+    when(transactionTemplate.execute(any()))
+        .thenAnswer(invocation -> invocation.<TransactionCallback<Integer>>getArgument(0).doInTransaction(null));
+    when(jdbcTemplate.queryForObject("select get_lock(?, 0)", Integer.class, OutboxRelay.LOCK_NAME)).thenReturn(1);
+    when(sender.sendMessages(any())).thenReturn(new boolean[]{true, true, true});
+    outboxRelay.drain();
+    verify(jdbcTemplate).update("delete from usermail_mq_outbox where `id` in (?, ?, ?)", 1L, 2L, 3L);
+    verify(jdbcTemplate).queryForObject("select release_lock(?)", Integer.class, OutboxRelay.LOCK_NAME);
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.redis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+/**
+ * 会话最新消息id的延迟合并写入：同一会话在一个刷新周期内的多次更新只保留序列号最大的一次，周期结束时通过脚本批量写入redis。
+ * <p>
+ * 多个节点各自缓存未刷新的值，刷新时按消息序列号比较后写入（序列号另存于 {@link #seqNoKey(String)}），
+ * 较晚刷新的旧消息不会覆盖其他节点已写入的新消息。未刷新的值对本节点的读取立即可见，删除操作与刷新互斥，
+ * 并同时删除序列号，避免已删除的key被旧值重新写回。
+ */
+class LastMsgIdWriteBehind {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LastMsgIdWriteBehind.class);
+  /**
+   * 序列号不小于已写入的序列号时才写入消息id，KEYS为依次排列的消息id key和序列号key，ARGV为依次排列的消息id和序列号，
+   * 返回写入的数量
+   */
+  static final RedisScript<Long> SET_IF_NEWER_SCRIPT = new DefaultRedisScript<>(
+      "local updated = 0 "
+          + "for i = 1, #KEYS, 2 do "
+          + "local current = tonumber(redis.call('GET', KEYS[i + 1])) "
+          + "if not current or current <= tonumber(ARGV[i + 1]) then "
+          + "redis.call('SET', KEYS[i], ARGV[i]) redis.call('SET', KEYS[i + 1], ARGV[i + 1]) "
+          + "updated = updated + 1 end "
+          + "end "
+          + "return updated",
+      Long.class);
+  /**
+   * 单次脚本写入的最大会话数量
+   */
+  static final int FLUSH_BATCH_SIZE = 500;
+  private static final String SEQ_NO_KEY_SUFFIX = "_seqno";
+  private static final StringRedisSerializer STRING_SERIALIZER = new StringRedisSerializer();
+  /**
+   * 脚本参数已按各自的方式序列化，直接透传
+   */
+  private static final RedisSerializer<byte[]> RAW_SERIALIZER = new RedisSerializer<byte[]>() {
+    @Override
+    public byte[] serialize(byte[] bytes) {
+      return bytes;
+    }
+
+    @Override
+    public byte[] deserialize(byte[] bytes) {
+      return bytes;
+    }
+  };
+
+  private final RedisTemplate redisTemplate;
+  private final Map<String, PendingMsgId> pending = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService flushExecutor;
+
+  LastMsgIdWriteBehind(RedisTemplate redisTemplate, long flushIntervalMillis) {
+    this.redisTemplate = redisTemplate;
+    this.flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "usermail-lastmsgid-flush");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.flushExecutor
+        .scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 消息id对应的序列号key
+   *
+   * @param key 消息id key
+   * @return 序列号key
+   */
+  static String seqNoKey(String key) {
+    return key + SEQ_NO_KEY_SUFFIX;
+  }
+
+  void set(String key, String lastMsgId, long seqNo) {
+    pending.merge(key, new PendingMsgId(lastMsgId, seqNo),
+        (current, update) -> update.seqNo >= current.seqNo ? update : current);
+  }
+
+  /**
+   * 获取尚未写入redis的最新消息id
+   *
+   * @param key redis key
+   * @return 最新消息id，不存在时返回null
+   */
+  String get(String key) {
+    PendingMsgId pendingMsgId = pending.get(key);
+    return pendingMsgId == null ? null : pendingMsgId.msgId;
+  }
+
+  synchronized void delete(String key) {
+    pending.remove(key);
+    redisTemplate.delete(Arrays.asList(key, seqNoKey(key)));
+  }
+
+  synchronized void flush() {
+    if (pending.isEmpty()) {
+      return;
+    }
+    // 按key排序，保证每次分批写入的顺序稳定
+    List<Entry<String, PendingMsgId>> snapshot = new ArrayList<>(new TreeMap<>(pending).entrySet());
+    for (int from = 0; from < snapshot.size(); from += FLUSH_BATCH_SIZE) {
+      List<Entry<String, PendingMsgId>> batch = snapshot
+          .subList(from, Math.min(from + FLUSH_BATCH_SIZE, snapshot.size()));
+      try {
+        Object updated = redisTemplate
+            .execute(SET_IF_NEWER_SCRIPT, RAW_SERIALIZER, null, keys(batch), args(batch));
+        // 刷新期间又有更新的key保留新值，等待下次刷新
+        batch.forEach(entry -> pending.remove(entry.getKey(), entry.getValue()));
+        LOGGER.debug("flush lastMsgId-->size={}, updated={}", batch.size(), updated);
+      } catch (Exception e) {
+        LOGGER.warn("flush lastMsgId failed, size={}", batch.size(), e);
+        return;
+      }
+    }
+  }
+
+  void destroy() {
+    flushExecutor.shutdown();
+    flush();
+  }
+
+  private static List<String> keys(List<Entry<String, PendingMsgId>> batch) {
+    List<String> keys = new ArrayList<>(batch.size() * 2);
+    for (Entry<String, PendingMsgId> entry : batch) {
+      keys.add(entry.getKey());
+      keys.add(seqNoKey(entry.getKey()));
+    }
+    return keys;
+  }
+
+  /**
+   * 消息id与 {@link RedisTemplate#opsForValue()} 的写入方式相同，使用value的序列化方式；序列号按字符串写入，供脚本比较
+   */
+  private Object[] args(List<Entry<String, PendingMsgId>> batch) {
+    RedisSerializer valueSerializer = redisTemplate.getValueSerializer();
+    Object[] args = new Object[batch.size() * 2];
+    for (int i = 0; i < batch.size(); i++) {
+      PendingMsgId pendingMsgId = batch.get(i).getValue();
+      args[i * 2] = valueSerializer.serialize(pendingMsgId.msgId);
+      args[i * 2 + 1] = STRING_SERIALIZER.serialize(String.valueOf(pendingMsgId.seqNo));
+    }
+    return args;
+  }
+
+  private static final class PendingMsgId {
+
+    private final String msgId;
+    private final long seqNo;
+
+    private PendingMsgId(String msgId, long seqNo) {
+      this.msgId = msgId;
+      this.seqNo = seqNo;
+    }
+  }
+}
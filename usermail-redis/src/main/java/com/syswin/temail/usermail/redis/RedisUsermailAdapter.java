@@ -25,18 +25,150 @@
 package com.syswin.temail.usermail.redis;
 
 import com.syswin.temail.usermail.core.IUsermailAdapter;
+import com.syswin.temail.usermail.core.dto.ReplyCountDeltaDTO;
+import com.syswin.temail.usermail.core.dto.SeqNoAndPkID;
 import com.syswin.temail.usermail.redis.common.CacheKey.Usermail;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 public class RedisUsermailAdapter implements IUsermailAdapter {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(RedisUsermailAdapter.class);
+  /**
+   * 同时自增序列号和主键，KEYS[1]为序列号key，KEYS[2]为主键key
+   */
+  static final RedisScript<List> SEQNO_AND_PKID_SCRIPT = new DefaultRedisScript<>(
+      "return {redis.call('INCR', KEYS[1]), redis.call('INCR', KEYS[2])}", List.class);
+  /**
+   * 索引已存在时才更新会话分数，避免在未全量建立的索引上产生残缺数据；索引正在重建时写入重建中的索引，
+   * KEYS[1]为索引key，KEYS[2]为重建中的索引key，ARGV[1]为分数，ARGV[2]为会话
+   */
+  static final RedisScript<Long> ZADD_IF_EXISTS_SCRIPT = new DefaultRedisScript<>(
+      "if redis.call('EXISTS', KEYS[1]) == 1 then return redis.call('ZADD', KEYS[1], ARGV[1], ARGV[2]) end "
+          + "if redis.call('EXISTS', KEYS[2]) == 1 then return redis.call('ZADD', KEYS[2], ARGV[1], ARGV[2]) end "
+          + "return -1",
+      Long.class);
+  /**
+   * 标记索引开始重建：创建只含占位成员的重建中索引并设置过期时间，KEYS[1]为重建中的索引key，
+   * ARGV[1]、ARGV[2]为占位成员的分数和成员，ARGV[3]为过期时间（秒）
+   */
+  static final RedisScript<Long> BEGIN_REBUILD_SCRIPT = new DefaultRedisScript<>(
+      "redis.call('ZADD', KEYS[1], ARGV[1], ARGV[2]) return redis.call('EXPIRE', KEYS[1], ARGV[3])", Long.class);
+  /**
+   * 完成索引重建：全量数据与重建期间的更新按较大的分数合并后，RENAME为正式索引。正式索引已存在（其他节点已完成重建）时不做处理。
+   * KEYS[1]为索引key，KEYS[2]为重建中的索引key，ARGV为依次排列的分数和会话，第一对为占位成员
+   */
+  static final RedisScript<Long> FINISH_REBUILD_SCRIPT = new DefaultRedisScript<>(
+      "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end "
+          + "for i = 1, #ARGV, 2 do "
+          + "local current = redis.call('ZSCORE', KEYS[2], ARGV[i + 1]) "
+          + "if not current or tonumber(current) < tonumber(ARGV[i]) then "
+          + "redis.call('ZADD', KEYS[2], ARGV[i], ARGV[i + 1]) end "
+          + "end "
+          + "redis.call('PERSIST', KEYS[2]) "
+          + "redis.call('RENAME', KEYS[2], KEYS[1]) "
+          + "return 1",
+      Long.class);
+  /**
+   * 累加回复数变化量并登记到待刷新集合，KEYS[1]为变化量key，KEYS[2]为待刷新集合，ARGV[1]、ARGV[2]为源消息id和所属人，
+   * ARGV[3]为回复数变化量，ARGV[4]为最新回复消息id（空串表示不修改），ARGV[5]为1时覆盖最新回复消息id，否则仅在不存在时写入
+   */
+  static final RedisScript<Long> ADD_REPLY_COUNT_DELTA_SCRIPT = new DefaultRedisScript<>(
+      "redis.call('HMSET', KEYS[1], 'msgid', ARGV[1], 'owner', ARGV[2]) "
+          + "redis.call('HINCRBY', KEYS[1], 'count', ARGV[3]) "
+          + "if ARGV[4] ~= '' then "
+          + "if ARGV[5] == '1' then redis.call('HSET', KEYS[1], 'last', ARGV[4]) "
+          + "else redis.call('HSETNX', KEYS[1], 'last', ARGV[4]) end "
+          + "end "
+          + "return redis.call('SADD', KEYS[2], KEYS[1])",
+      Long.class);
+  /**
+   * 取出并删除一条回复数变化量，KEYS[1]为变化量key，KEYS[2]为待刷新集合，返回源消息id、所属人、回复数变化量、最新回复消息id
+   */
+  static final RedisScript<List> TAKE_REPLY_COUNT_DELTA_SCRIPT = new DefaultRedisScript<>(
+      "local delta = redis.call('HMGET', KEYS[1], 'msgid', 'owner', 'count', 'last') "
+          + "redis.call('DEL', KEYS[1]) "
+          + "redis.call('SREM', KEYS[2], KEYS[1]) "
+          + "return {delta[1] or '', delta[2] or '', delta[3] or '0', delta[4] or ''}",
+      List.class);
+  /**
+   * 从待刷新集合中取出并删除最多ARGV[1]条回复数变化量，KEYS[1]为待刷新集合，返回依次排列的源消息id、所属人、回复数变化量、最新回复消息id
+   */
+  static final RedisScript<List> TAKE_REPLY_COUNT_DELTAS_SCRIPT = new DefaultRedisScript<>(
+      "local keys = redis.call('SMEMBERS', KEYS[1]) "
+          + "local result = {} "
+          + "for i = 1, math.min(#keys, tonumber(ARGV[1])) do "
+          + "local delta = redis.call('HMGET', keys[i], 'msgid', 'owner', 'count', 'last') "
+          + "redis.call('DEL', keys[i]) "
+          + "redis.call('SREM', KEYS[1], keys[i]) "
+          + "if delta[1] then "
+          + "result[#result + 1] = delta[1] result[#result + 1] = delta[2] or '' "
+          + "result[#result + 1] = delta[3] or '0' result[#result + 1] = delta[4] or '' "
+          + "end "
+          + "end "
+          + "return result",
+      List.class);
+  /**
+   * 批量读取回复数变化量，KEYS为变化量key，返回依次排列的回复数变化量和最新回复消息id，不存在时均为空串
+   */
+  static final RedisScript<List> GET_REPLY_COUNT_DELTAS_SCRIPT = new DefaultRedisScript<>(
+      "local result = {} "
+          + "for i, key in ipairs(KEYS) do "
+          + "local delta = redis.call('HMGET', key, 'count', 'last') "
+          + "result[#result + 1] = delta[1] or '' result[#result + 1] = delta[2] or '' "
+          + "end "
+          + "return result",
+      List.class);
+  private static final int REPLY_COUNT_DELTA_FIELDS = 4;
+  /**
+   * 会话索引的占位成员，分数小于任何会话，保证没有会话的owner也有索引；读取时过滤
+   */
+  static final String SESSION_RECENCY_PLACEHOLDER = "";
+  private static final String SESSION_RECENCY_PLACEHOLDER_SCORE = "-1";
+  /**
+   * 重建中索引的过期时间（秒），重建的节点异常退出时自动清理
+   */
+  private static final String SESSION_RECENCY_REBUILD_TIMEOUT = "60";
+  /**
+   * 会话索引的成员和分数按字符串存储，与redisTemplate的value序列化方式无关
+   */
+  private static final StringRedisSerializer STRING_SERIALIZER = new StringRedisSerializer();
+  /**
+   * 单次 MGET 的最大key数量
+   */
+  private static final int MGET_BATCH_SIZE = 500;
+  private static final byte[] CONSUMED_EVENT_VALUE = STRING_SERIALIZER.serialize("1");
   private final RedisTemplate redisTemplate;
+  private final LastMsgIdWriteBehind lastMsgIdWriteBehind;
 
   public RedisUsermailAdapter(RedisTemplate redisTemplate) {
+    this(redisTemplate, 0L);
+  }
+
+  /**
+   * @param redisTemplate redisTemplate
+   * @param lastMsgIdFlushInterval 会话最新消息id延迟合并写入的周期（毫秒），小于等于0时同步写入
+   */
+  public RedisUsermailAdapter(RedisTemplate redisTemplate, long lastMsgIdFlushInterval) {
     this.redisTemplate = redisTemplate;
+    this.lastMsgIdWriteBehind =
+        lastMsgIdFlushInterval > 0 ? new LastMsgIdWriteBehind(redisTemplate, lastMsgIdFlushInterval) : null;
   }
 
   @Override
@@ -47,23 +179,20 @@ public class RedisUsermailAdapter implements IUsermailAdapter {
 
   @Override
   public long getMsgSeqNo(String from, String to, String owner) {
-    if (null == from || "".equals(from)) {
-      throw new IllegalArgumentException("param [from] is illegal");
-    }
-    if (null == to || "".equals(to)) {
-      throw new IllegalArgumentException("param [to] is illegal");
-    }
-    String key;
-    if (from.compareTo(to) > 0) {
-      key = String.format("%s%s_%s_%s", Usermail.KEY_USERMAIL_SEQNO, from, to, owner);
-    } else {
-      key = String.format("%s%s_%s_%s", Usermail.KEY_USERMAIL_SEQNO, to, from, owner);
-    }
+    String key = msgSeqNoKey(from, to, owner);
     long sequenceNo = redisTemplate.opsForValue().increment(key, 1L);
     LOGGER.debug("getMsgSeqNo-->{}={}", key, sequenceNo);
     return sequenceNo;
   }
 
+  @Override
+  public SeqNoAndPkID getMsgSeqNoAndPkID(String from, String to, String owner) {
+    String key = msgSeqNoKey(from, to, owner);
+    SeqNoAndPkID seqNoAndPkID = incrSeqNoAndPkID(key, Usermail.KEY_USERMAIL_PKID);
+    LOGGER.debug("getMsgSeqNoAndPkID-->{}={}", key, seqNoAndPkID);
+    return seqNoAndPkID;
+  }
+
   @Override
   public long getMsgReplyPkID() {
     return redisTemplate.opsForValue().increment(Usermail.KEY_USERMAIL_MSG_REPLY_PKID, 1L);
@@ -75,27 +204,272 @@ public class RedisUsermailAdapter implements IUsermailAdapter {
     return redisTemplate.opsForValue().increment(seqNo, 1L);
   }
 
+  @Override
+  public SeqNoAndPkID getMsgReplySeqNoAndPkID(String parentMsgid, String owner) {
+    String seqNo = String.format(Usermail.KEY_USERMAIL_REPLY_SEQNO, parentMsgid, owner);
+    return incrSeqNoAndPkID(seqNo, Usermail.KEY_USERMAIL_MSG_REPLY_PKID);
+  }
+
   @Override
   public long getUsermailBlacklistPkID() {
     return redisTemplate.opsForValue().increment(Usermail.KEY_USERMAIL_BLACKLIST_PKID, 1L);
   }
 
   @Override
-  public void setLastMsgId(String owner, String to, String lastMsgId) {
+  public void setLastMsgId(String owner, String to, String lastMsgId, long seqNo) {
     String usermailKey = String.format(Usermail.KEY_USERMAIL_LAST_MSG_ID, owner, to);
+    if (lastMsgIdWriteBehind != null) {
+      lastMsgIdWriteBehind.set(usermailKey, lastMsgId, seqNo);
+      return;
+    }
     redisTemplate.opsForValue().set(usermailKey, lastMsgId);
   }
 
   @Override
   public String getLastMsgId(String owner, String to) {
     String usermailKey = String.format(Usermail.KEY_USERMAIL_LAST_MSG_ID, owner, to);
+    if (lastMsgIdWriteBehind != null) {
+      String pendingMsgId = lastMsgIdWriteBehind.get(usermailKey);
+      if (pendingMsgId != null) {
+        return pendingMsgId;
+      }
+    }
     return (String) redisTemplate.opsForValue().get(usermailKey);
   }
 
+  @Override
+  public Map<String, String> getLastMsgIds(String owner, Collection<String> tos) {
+    Map<String, String> lastMsgIds = new HashMap<>(tos.size() * 4 / 3 + 1);
+    List<String> batchTos = new ArrayList<>(Math.min(tos.size(), MGET_BATCH_SIZE));
+    List<String> batchKeys = new ArrayList<>(Math.min(tos.size(), MGET_BATCH_SIZE));
+    for (String to : tos) {
+      batchTos.add(to);
+      batchKeys.add(String.format(Usermail.KEY_USERMAIL_LAST_MSG_ID, owner, to));
+      if (batchKeys.size() == MGET_BATCH_SIZE) {
+        multiGetLastMsgIds(batchTos, batchKeys, lastMsgIds);
+        batchTos.clear();
+        batchKeys.clear();
+      }
+    }
+    if (!batchKeys.isEmpty()) {
+      multiGetLastMsgIds(batchTos, batchKeys, lastMsgIds);
+    }
+    return lastMsgIds;
+  }
+
   @Override
   public void deleteLastMsgId(String owner, String to) {
     String usermailKey = String.format(Usermail.KEY_USERMAIL_LAST_MSG_ID, owner, to);
+    if (lastMsgIdWriteBehind != null) {
+      lastMsgIdWriteBehind.delete(usermailKey);
+      return;
+    }
     redisTemplate.delete(usermailKey);
   }
 
+  @Override
+  public void updateSessionRecency(String owner, String to, long lastMsgTime) {
+    redisTemplate.execute(ZADD_IF_EXISTS_SCRIPT, STRING_SERIALIZER, null, sessionRecencyKeys(owner),
+        String.valueOf(lastMsgTime), to);
+  }
+
+  @Override
+  public void rebuildSessionRecency(String owner, Supplier<Map<String, Long>> lastMsgTimesLoader) {
+    List<String> keys = sessionRecencyKeys(owner);
+    redisTemplate.execute(BEGIN_REBUILD_SCRIPT, STRING_SERIALIZER, null, keys.subList(1, 2),
+        SESSION_RECENCY_PLACEHOLDER_SCORE, SESSION_RECENCY_PLACEHOLDER, SESSION_RECENCY_REBUILD_TIMEOUT);
+    Map<String, Long> lastMsgTimes = lastMsgTimesLoader.get();
+    Object[] args = new Object[lastMsgTimes.size() * 2 + 2];
+    args[0] = SESSION_RECENCY_PLACEHOLDER_SCORE;
+    args[1] = SESSION_RECENCY_PLACEHOLDER;
+    int i = 2;
+    for (Map.Entry<String, Long> entry : lastMsgTimes.entrySet()) {
+      args[i++] = String.valueOf(entry.getValue());
+      args[i++] = entry.getKey();
+    }
+    redisTemplate.execute(FINISH_REBUILD_SCRIPT, STRING_SERIALIZER, null, keys, args);
+  }
+
+  @Override
+  public List<String> listRecentSessions(String owner, long start, long end) {
+    byte[] key = STRING_SERIALIZER.serialize(String.format(Usermail.KEY_USERMAIL_SESSION_RECENCY, owner));
+    Set<byte[]> members = (Set<byte[]>) redisTemplate
+        .execute((RedisCallback<Set<byte[]>>) connection -> connection.zRevRange(key, start, end));
+    if (members == null || members.isEmpty()) {
+      // 已建立的索引至少包含占位成员，只有超出范围时才为空
+      return start == 0 ? null : Collections.emptyList();
+    }
+    List<String> tos = new ArrayList<>(members.size());
+    for (byte[] member : members) {
+      String to = STRING_SERIALIZER.deserialize(member);
+      if (!SESSION_RECENCY_PLACEHOLDER.equals(to)) {
+        tos.add(to);
+      }
+    }
+    return tos;
+  }
+
+  @Override
+  public void removeSessionRecency(String owner, String to) {
+    byte[] key = STRING_SERIALIZER.serialize(String.format(Usermail.KEY_USERMAIL_SESSION_RECENCY, owner));
+    byte[] member = STRING_SERIALIZER.serialize(to);
+    redisTemplate.execute((RedisCallback<Long>) connection -> connection.zRem(key, member));
+  }
+
+  @Override
+  public void deleteSessionRecency(String owner) {
+    redisTemplate.delete(String.format(Usermail.KEY_USERMAIL_SESSION_RECENCY, owner));
+  }
+
+  private static List<String> sessionRecencyKeys(String owner) {
+    return Arrays.asList(String.format(Usermail.KEY_USERMAIL_SESSION_RECENCY, owner),
+        String.format(Usermail.KEY_USERMAIL_SESSION_RECENCY_REBUILDING, owner));
+  }
+
+  @Override
+  public boolean isEventConsumed(String eventKey) {
+    byte[] key = STRING_SERIALIZER.serialize(String.format(Usermail.KEY_USERMAIL_CONSUMED_EVENT, eventKey));
+    Object exists = redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.exists(key));
+    return Boolean.TRUE.equals(exists);
+  }
+
+  @Override
+  public void markEventConsumed(String eventKey, long ttlSeconds) {
+    byte[] key = STRING_SERIALIZER.serialize(String.format(Usermail.KEY_USERMAIL_CONSUMED_EVENT, eventKey));
+    redisTemplate.execute((RedisCallback<Boolean>) connection -> connection
+        .set(key, CONSUMED_EVENT_VALUE, Expiration.seconds(ttlSeconds), SetOption.SET_IF_ABSENT));
+  }
+
+  @Override
+  public void addReplyCountDelta(ReplyCountDeltaDTO delta) {
+    executeAddReplyCountDelta(delta, "1");
+  }
+
+  @Override
+  public void restoreReplyCountDelta(ReplyCountDeltaDTO delta) {
+    executeAddReplyCountDelta(delta, "0");
+  }
+
+  @Override
+  public ReplyCountDeltaDTO takeReplyCountDelta(String parentMsgid, String owner) {
+    List<String> keys = Arrays.asList(String.format(Usermail.KEY_USERMAIL_REPLY_COUNT_DELTA, parentMsgid, owner),
+        Usermail.KEY_USERMAIL_REPLY_COUNT_PENDING);
+    List<String> result = (List<String>) redisTemplate
+        .execute(TAKE_REPLY_COUNT_DELTA_SCRIPT, STRING_SERIALIZER, STRING_SERIALIZER, keys);
+    if (result == null || result.isEmpty() || result.get(0).isEmpty()) {
+      return null;
+    }
+    return toReplyCountDelta(result, 0);
+  }
+
+  @Override
+  public List<ReplyCountDeltaDTO> takeReplyCountDeltas(int limit) {
+    List<String> result = (List<String>) redisTemplate.execute(TAKE_REPLY_COUNT_DELTAS_SCRIPT, STRING_SERIALIZER,
+        STRING_SERIALIZER, Collections.singletonList(Usermail.KEY_USERMAIL_REPLY_COUNT_PENDING),
+        String.valueOf(limit));
+    if (result == null || result.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<ReplyCountDeltaDTO> deltas = new ArrayList<>(result.size() / REPLY_COUNT_DELTA_FIELDS);
+    for (int i = 0; i + REPLY_COUNT_DELTA_FIELDS <= result.size(); i += REPLY_COUNT_DELTA_FIELDS) {
+      deltas.add(toReplyCountDelta(result, i));
+    }
+    return deltas;
+  }
+
+  @Override
+  public Map<String, ReplyCountDeltaDTO> getReplyCountDeltas(String owner, Collection<String> parentMsgids) {
+    Map<String, ReplyCountDeltaDTO> deltas = new HashMap<>();
+    List<String> batchMsgids = new ArrayList<>(Math.min(parentMsgids.size(), MGET_BATCH_SIZE));
+    for (String parentMsgid : parentMsgids) {
+      batchMsgids.add(parentMsgid);
+      if (batchMsgids.size() == MGET_BATCH_SIZE) {
+        multiGetReplyCountDeltas(owner, batchMsgids, deltas);
+        batchMsgids.clear();
+      }
+    }
+    if (!batchMsgids.isEmpty()) {
+      multiGetReplyCountDeltas(owner, batchMsgids, deltas);
+    }
+    return deltas;
+  }
+
+  private void executeAddReplyCountDelta(ReplyCountDeltaDTO delta, String overwriteLast) {
+    List<String> keys = Arrays.asList(
+        String.format(Usermail.KEY_USERMAIL_REPLY_COUNT_DELTA, delta.getMsgid(), delta.getOwner()),
+        Usermail.KEY_USERMAIL_REPLY_COUNT_PENDING);
+    String lastReplyMsgid = delta.getLastReplyMsgid() == null ? "" : delta.getLastReplyMsgid();
+    redisTemplate.execute(ADD_REPLY_COUNT_DELTA_SCRIPT, STRING_SERIALIZER, null, keys, delta.getMsgid(),
+        delta.getOwner(), String.valueOf(delta.getCount()), lastReplyMsgid, overwriteLast);
+  }
+
+  private void multiGetReplyCountDeltas(String owner, List<String> parentMsgids,
+      Map<String, ReplyCountDeltaDTO> deltas) {
+    List<String> keys = new ArrayList<>(parentMsgids.size());
+    for (String parentMsgid : parentMsgids) {
+      keys.add(String.format(Usermail.KEY_USERMAIL_REPLY_COUNT_DELTA, parentMsgid, owner));
+    }
+    List<String> result = (List<String>) redisTemplate
+        .execute(GET_REPLY_COUNT_DELTAS_SCRIPT, STRING_SERIALIZER, STRING_SERIALIZER, keys);
+    if (result == null) {
+      return;
+    }
+    for (int i = 0; i < parentMsgids.size() && i * 2 + 1 < result.size(); i++) {
+      String count = result.get(i * 2);
+      if (!count.isEmpty()) {
+        String last = result.get(i * 2 + 1);
+        deltas.put(parentMsgids.get(i), new ReplyCountDeltaDTO(parentMsgids.get(i), owner, Integer.parseInt(count),
+            last.isEmpty() ? null : last));
+      }
+    }
+  }
+
+  private static ReplyCountDeltaDTO toReplyCountDelta(List<String> fields, int offset) {
+    String last = fields.get(offset + 3);
+    return new ReplyCountDeltaDTO(fields.get(offset), fields.get(offset + 1), Integer.parseInt(fields.get(offset + 2)),
+        last.isEmpty() ? null : last);
+  }
+
+  /**
+   * 写入尚未刷新的会话最新消息id并停止后台刷新
+   */
+  public void destroy() {
+    if (lastMsgIdWriteBehind != null) {
+      lastMsgIdWriteBehind.destroy();
+    }
+  }
+
+  String msgSeqNoKey(String from, String to, String owner) {
+    if (null == from || "".equals(from)) {
+      throw new IllegalArgumentException("param [from] is illegal");
+    }
+    if (null == to || "".equals(to)) {
+      throw new IllegalArgumentException("param [to] is illegal");
+    }
+    if (from.compareTo(to) > 0) {
+      return String.format("%s%s_%s_%s", Usermail.KEY_USERMAIL_SEQNO, from, to, owner);
+    } else {
+      return String.format("%s%s_%s_%s", Usermail.KEY_USERMAIL_SEQNO, to, from, owner);
+    }
+  }
+
+  private void multiGetLastMsgIds(List<String> tos, List<String> keys, Map<String, String> lastMsgIds) {
+    List<Object> values = redisTemplate.opsForValue().multiGet(keys);
+    for (int i = 0; i < keys.size(); i++) {
+      String lastMsgId = lastMsgIdWriteBehind != null ? lastMsgIdWriteBehind.get(keys.get(i)) : null;
+      if (lastMsgId == null && values != null) {
+        lastMsgId = (String) values.get(i);
+      }
+      if (lastMsgId != null) {
+        lastMsgIds.put(tos.get(i), lastMsgId);
+      }
+    }
+  }
+
+  private SeqNoAndPkID incrSeqNoAndPkID(String seqNoKey, String pkIDKey) {
+    List<Long> result = (List<Long>) redisTemplate
+        .execute(SEQNO_AND_PKID_SCRIPT, Arrays.asList(seqNoKey, pkIDKey));
+    return new SeqNoAndPkID(result.get(0), result.get(1));
+  }
+
 }
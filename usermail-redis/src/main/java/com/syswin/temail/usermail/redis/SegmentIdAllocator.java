@@ -0,0 +1,137 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.redis;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * 号段式主键分配器：每次通过 INCRBY 从redis预占 blockSize 个主键，本地无锁递增发放。
+ * <p>
+ * 当前号段剩余量低于阈值时，在后台线程中预取下一个号段，发号线程正常情况下不会等待redis。
+ * 号段 (end - blockSize, end] 与逐个 INCR 的旧实现使用同一个key，两种实现可以混合部署。
+ */
+class SegmentIdAllocator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SegmentIdAllocator.class);
+
+  /**
+   * 剩余量低于号段长度的该比例时触发预取
+   */
+  private static final int PREFETCH_PERCENT = 20;
+
+  private final RedisTemplate redisTemplate;
+  private final String key;
+  private final long blockSize;
+  private final long prefetchThreshold;
+  private final Executor prefetchExecutor;
+  private final AtomicReference<CompletableFuture<Segment>> nextSegment = new AtomicReference<>();
+  private volatile Segment currentSegment = new Segment(0L, 0L);
+
+  SegmentIdAllocator(RedisTemplate redisTemplate, String key, long blockSize, Executor prefetchExecutor) {
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("param [blockSize] must be positive");
+    }
+    this.redisTemplate = redisTemplate;
+    this.key = key;
+    this.blockSize = blockSize;
+    this.prefetchThreshold = blockSize * PREFETCH_PERCENT / 100;
+    this.prefetchExecutor = prefetchExecutor;
+  }
+
+  /**
+   * 获取下一个主键
+   *
+   * @return 主键
+   */
+  long nextId() {
+    while (true) {
+      Segment segment = currentSegment;
+      long id = segment.cursor.incrementAndGet();
+      if (id <= segment.end) {
+        if (segment.end - id <= prefetchThreshold) {
+          prefetch();
+        }
+        return id;
+      }
+      switchSegment(segment);
+    }
+  }
+
+  private void prefetch() {
+    if (nextSegment.get() != null) {
+      return;
+    }
+    CompletableFuture<Segment> future = new CompletableFuture<>();
+    if (nextSegment.compareAndSet(null, future)) {
+      prefetchExecutor.execute(() -> {
+        try {
+          future.complete(allocate());
+        } catch (Exception e) {
+          LOGGER.warn("prefetch id segment of [{}] failed", key, e);
+          future.completeExceptionally(e);
+        }
+      });
+    }
+  }
+
+  private synchronized void switchSegment(Segment exhausted) {
+    if (currentSegment != exhausted) {
+      return;
+    }
+    CompletableFuture<Segment> future = nextSegment.getAndSet(null);
+    Segment segment = null;
+    if (future != null) {
+      try {
+        segment = future.join();
+      } catch (Exception e) {
+        LOGGER.warn("use prefetched id segment of [{}] failed, allocate again", key, e);
+      }
+    }
+    currentSegment = segment != null ? segment : allocate();
+  }
+
+  private Segment allocate() {
+    long end = redisTemplate.opsForValue().increment(key, blockSize);
+    LOGGER.debug("allocate id segment-->{}=({}, {}]", key, end - blockSize, end);
+    return new Segment(end - blockSize, end);
+  }
+
+  private static final class Segment {
+
+    private final AtomicLong cursor;
+    private final long end;
+
+    private Segment(long begin, long end) {
+      this.cursor = new AtomicLong(begin);
+      this.end = end;
+    }
+  }
+}
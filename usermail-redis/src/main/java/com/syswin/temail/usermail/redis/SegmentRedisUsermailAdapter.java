@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.redis;
+
+import com.syswin.temail.usermail.core.dto.SeqNoAndPkID;
+import com.syswin.temail.usermail.redis.common.CacheKey.Usermail;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * 主键采用号段方式分配的适配器，其余操作与{@link RedisUsermailAdapter}一致。
+ * <p>
+ * 主键通常直接取自本地号段，获取序列号和主键时只需一次自增序列号的redis请求。
+ * <p>
+ * 每个节点持有独立的号段，主键全局唯一但不再严格按时间递增，节点重启时未用完的号段会被跳过。
+ */
+public class SegmentRedisUsermailAdapter extends RedisUsermailAdapter {
+
+  private final ExecutorService prefetchExecutor;
+  private final SegmentIdAllocator pkIdAllocator;
+  private final SegmentIdAllocator msgReplyPkIdAllocator;
+  private final SegmentIdAllocator blacklistPkIdAllocator;
+
+  public SegmentRedisUsermailAdapter(RedisTemplate redisTemplate, long blockSize) {
+    this(redisTemplate, blockSize, 0L);
+  }
+
+  public SegmentRedisUsermailAdapter(RedisTemplate redisTemplate, long blockSize, long lastMsgIdFlushInterval) {
+    super(redisTemplate, lastMsgIdFlushInterval);
+    this.prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "usermail-pkid-prefetch");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.pkIdAllocator = new SegmentIdAllocator(redisTemplate, Usermail.KEY_USERMAIL_PKID, blockSize,
+        prefetchExecutor);
+    this.msgReplyPkIdAllocator = new SegmentIdAllocator(redisTemplate, Usermail.KEY_USERMAIL_MSG_REPLY_PKID,
+        blockSize, prefetchExecutor);
+    this.blacklistPkIdAllocator = new SegmentIdAllocator(redisTemplate, Usermail.KEY_USERMAIL_BLACKLIST_PKID,
+        blockSize, prefetchExecutor);
+  }
+
+  @Override
+  public long getPkID() {
+    return pkIdAllocator.nextId();
+  }
+
+  @Override
+  public SeqNoAndPkID getMsgSeqNoAndPkID(String from, String to, String owner) {
+    return new SeqNoAndPkID(getMsgSeqNo(from, to, owner), getPkID());
+  }
+
+  @Override
+  public long getMsgReplyPkID() {
+    return msgReplyPkIdAllocator.nextId();
+  }
+
+  @Override
+  public SeqNoAndPkID getMsgReplySeqNoAndPkID(String parentMsgid, String owner) {
+    return new SeqNoAndPkID(getMsgReplySeqNo(parentMsgid, owner), getMsgReplyPkID());
+  }
+
+  @Override
+  public long getUsermailBlacklistPkID() {
+    return blacklistPkIdAllocator.nextId();
+  }
+
+  @Override
+  public void destroy() {
+    prefetchExecutor.shutdownNow();
+    super.destroy();
+  }
+
+}
@@ -52,6 +52,26 @@ public class CacheKey {
      * 单聊回复消息sequenceno
      */
     String KEY_USERMAIL_REPLY_SEQNO = "usermail_reply_seqno_%s_%s";
+    /**
+     * 单聊会话最新消息时间索引（zset）
+     */
+    String KEY_USERMAIL_SESSION_RECENCY = "usermail_session_recency_%s";
+    /**
+     * 重建中的单聊会话最新消息时间索引（zset），重建完成后RENAME为正式索引
+     */
+    String KEY_USERMAIL_SESSION_RECENCY_REBUILDING = "usermail_session_recency_rebuilding_%s";
+    /**
+     * 已消费的自消费topic事件，用于消费幂等
+     */
+    String KEY_USERMAIL_CONSUMED_EVENT = "usermail_consumed_event_%s";
+    /**
+     * 源消息尚未写入数据库的回复数变化量（hash：msgid、owner、count、last）
+     */
+    String KEY_USERMAIL_REPLY_COUNT_DELTA = "usermail_reply_count_delta_%s_%s";
+    /**
+     * 存在回复数变化量的key集合，定时刷新时从中取出
+     */
+    String KEY_USERMAIL_REPLY_COUNT_PENDING = "usermail_reply_count_pending";
   }
 
 }
@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.redis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+public class LastMsgIdWriteBehindTest {
+
+  private final RedisTemplate redisTemplate = mock(RedisTemplate.class);
+  private LastMsgIdWriteBehind writeBehind;
+
+  @Before
+  public void setUp() {
+    when(redisTemplate.getValueSerializer()).thenReturn(new StringRedisSerializer());
+    writeBehind = new LastMsgIdWriteBehind(redisTemplate, TimeUnit.HOURS.toMillis(1));
+  }
+
+  @After
+  public void tearDown() {
+    writeBehind.destroy();
+  }
+
+  @Test
+  public void coalesceUpdatesIntoOneCompareAndSet() {
+    writeBehind.set("key1", "msgid-1", 1L);
+    writeBehind.set("key1", "msgid-2", 2L);
+    writeBehind.set("key2", "msgid-3", 3L);
+    assertThat(writeBehind.get("key1")).isEqualTo("msgid-2");
+
+    writeBehind.flush();
+
+    verify(redisTemplate).execute(eq(LastMsgIdWriteBehind.SET_IF_NEWER_SCRIPT), any(RedisSerializer.class), isNull(),
+        eq(Arrays.asList("key1", "key1_seqno", "key2", "key2_seqno")), eq(bytes("msgid-2")), eq(bytes("2")),
+        eq(bytes("msgid-3")), eq(bytes("3")));
+    assertThat(writeBehind.get("key1")).isNull();
+  }
+
+  @Test
+  public void olderMessageDoesNotReplacePendingValue() {
+    writeBehind.set("key1", "msgid-2", 2L);
+    writeBehind.set("key1", "msgid-1", 1L);
+
+    assertThat(writeBehind.get("key1")).isEqualTo("msgid-2");
+  }
+
+  @Test
+  public void keepPendingWhenFlushFailed() {
+    when(redisTemplate.execute(eq(LastMsgIdWriteBehind.SET_IF_NEWER_SCRIPT), any(RedisSerializer.class), isNull(),
+        anyList(), any(), any())).thenThrow(new IllegalStateException("redis down"));
+    writeBehind.set("key1", "msgid-1", 1L);
+
+    writeBehind.flush();
+
+    assertThat(writeBehind.get("key1")).isEqualTo("msgid-1");
+  }
+
+  @Test
+  public void deleteDropsPendingValueAndSeqNo() {
+    writeBehind.set("key1", "msgid-1", 1L);
+
+    writeBehind.delete("key1");
+    writeBehind.flush();
+
+    assertThat(writeBehind.get("key1")).isNull();
+    verify(redisTemplate).delete(Arrays.asList("key1", "key1_seqno"));
+    verify(redisTemplate, never()).execute(eq(LastMsgIdWriteBehind.SET_IF_NEWER_SCRIPT), any(RedisSerializer.class),
+        isNull(), anyList(), any(), any());
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -24,22 +24,42 @@
 
 package com.syswin.temail.usermail.redis;
 
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.syswin.temail.usermail.core.dto.ReplyCountDeltaDTO;
+import com.syswin.temail.usermail.core.dto.SeqNoAndPkID;
 import com.syswin.temail.usermail.redis.common.CacheKey.Usermail;
 import com.syswin.temail.usermail.redis.confguration.RedisConfiguration;
 import com.syswin.temail.usermail.redis.configuration.TestRedisConfiguration;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.test.context.junit4.SpringRunner;
 
 @SpringBootTest(classes = {RedisConfiguration.class, TestRedisConfiguration.class})
@@ -83,7 +103,7 @@ public class RedisUsermailAdapterTest {
     String to = "redis-to";
     String lastMsgId = "123";
     String usermailKey = String.format(Usermail.KEY_USERMAIL_LAST_MSG_ID, owner, to);
-    redisUsermailAdapter.setLastMsgId(owner, to, lastMsgId);
+    redisUsermailAdapter.setLastMsgId(owner, to, lastMsgId, 1L);
     verify(valueOperations).set(usermailKey, lastMsgId);
   }
 
@@ -98,6 +118,16 @@ public class RedisUsermailAdapterTest {
     Assert.assertTrue(result.equals(lastMsgId));
   }
 
+  @Test
+  public void testGetLastMsgIds() {
+    String owner = "redis-owner";
+    List<String> keys = Arrays.asList(String.format(Usermail.KEY_USERMAIL_LAST_MSG_ID, owner, "to-1"),
+        String.format(Usermail.KEY_USERMAIL_LAST_MSG_ID, owner, "to-2"));
+    when(valueOperations.multiGet(keys)).thenReturn(Arrays.asList("123", null));
+    Map<String, String> result = redisUsermailAdapter.getLastMsgIds(owner, Arrays.asList("to-1", "to-2"));
+    Assert.assertEquals(Collections.singletonMap("to-1", "123"), result);
+  }
+
   @Test
   public void testDeleteLastMsgId() {
     String owner = "redis-owner";
@@ -148,6 +178,163 @@ public class RedisUsermailAdapterTest {
     Assert.assertTrue(sequenceNo == 2l);
   }
 
+  @Test
+  public void testGetMsgSeqNoAndPkID() {
+    String from = "1_form";
+    String to = "0_to";
+    String owner = "owner";
+    String key = String.format("%s%s_%s_%s", Usermail.KEY_USERMAIL_SEQNO, from, to, owner);
+    when(redisTemplate.execute(RedisUsermailAdapter.SEQNO_AND_PKID_SCRIPT,
+        Arrays.asList(key, Usermail.KEY_USERMAIL_PKID))).thenReturn(Arrays.asList(2L, 3L));
+    SeqNoAndPkID seqNoAndPkID = redisUsermailAdapter.getMsgSeqNoAndPkID(from, to, owner);
+    Assert.assertEquals(new SeqNoAndPkID(2L, 3L), seqNoAndPkID);
+  }
 
-}
+  @Test
+  public void testGetMsgReplySeqNoAndPkID() {
+    String parentMsgid = "parentMsgid-123";
+    String owner = "owner";
+    String seqNo = String.format(Usermail.KEY_USERMAIL_REPLY_SEQNO, parentMsgid, owner);
+    when(redisTemplate.execute(RedisUsermailAdapter.SEQNO_AND_PKID_SCRIPT,
+        Arrays.asList(seqNo, Usermail.KEY_USERMAIL_MSG_REPLY_PKID))).thenReturn(Arrays.asList(4L, 5L));
+    SeqNoAndPkID seqNoAndPkID = redisUsermailAdapter.getMsgReplySeqNoAndPkID(parentMsgid, owner);
+    Assert.assertEquals(new SeqNoAndPkID(4L, 5L), seqNoAndPkID);
+  }
+
+  @Test
+  public void testUpdateSessionRecency() {
+    String owner = "redis-owner";
+    List<String> keys = Arrays.asList(String.format(Usermail.KEY_USERMAIL_SESSION_RECENCY, owner),
+        String.format(Usermail.KEY_USERMAIL_SESSION_RECENCY_REBUILDING, owner));
+    redisUsermailAdapter.updateSessionRecency(owner, "redis-to", 123L);
+    verify(redisTemplate).execute(eq(RedisUsermailAdapter.ZADD_IF_EXISTS_SCRIPT), any(StringRedisSerializer.class),
+        isNull(), eq(keys), eq("123"), eq("redis-to"));
+  }
+
+  @Test
+  public void testRebuildSessionRecency() {
+    String owner = "redis-owner";
+    String key = String.format(Usermail.KEY_USERMAIL_SESSION_RECENCY, owner);
+    String rebuildingKey = String.format(Usermail.KEY_USERMAIL_SESSION_RECENCY_REBUILDING, owner);
+    redisUsermailAdapter.rebuildSessionRecency(owner, () -> {
+      // 加载全量数据前已标记重建开始，加载期间的更新会写入重建中的索引
+      verify(redisTemplate).execute(eq(RedisUsermailAdapter.BEGIN_REBUILD_SCRIPT), any(StringRedisSerializer.class),
+          isNull(), eq(Collections.singletonList(rebuildingKey)), eq("-1"),
+          eq(RedisUsermailAdapter.SESSION_RECENCY_PLACEHOLDER), eq("60"));
+      return Collections.singletonMap("redis-to", 123L);
+    });
+    verify(redisTemplate).execute(eq(RedisUsermailAdapter.FINISH_REBUILD_SCRIPT), any(StringRedisSerializer.class),
+        isNull(), eq(Arrays.asList(key, rebuildingKey)), eq("-1"), eq(RedisUsermailAdapter.SESSION_RECENCY_PLACEHOLDER),
+        eq("123"), eq("redis-to"));
+  }
+
+  @Test
+  public void testListRecentSessions() {
+    Set<byte[]> members = new LinkedHashSet<>(
+        Arrays.asList("to-2".getBytes(StandardCharsets.UTF_8), "to-1".getBytes(StandardCharsets.UTF_8)));
+    when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(members);
+    List<String> result = redisUsermailAdapter.listRecentSessions("redis-owner", 0, 1);
+    Assert.assertEquals(Arrays.asList("to-2", "to-1"), result);
+  }
+
+  @Test
+  public void testListRecentSessionsSkipsPlaceholder() {
+    Set<byte[]> members = new LinkedHashSet<>(Arrays.asList("to-1".getBytes(StandardCharsets.UTF_8),
+        RedisUsermailAdapter.SESSION_RECENCY_PLACEHOLDER.getBytes(StandardCharsets.UTF_8)));
+    when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(members, Collections.singleton(new byte[0]));
+    Assert.assertEquals(Collections.singletonList("to-1"), redisUsermailAdapter.listRecentSessions("redis-owner", 0, 1));
+    // 没有会话的owner只有占位成员，返回空列表而不是null，不会触发重建
+    Assert.assertEquals(Collections.emptyList(), redisUsermailAdapter.listRecentSessions("redis-owner", 0, 1));
+  }
+
+  @Test
+  public void testListRecentSessionsWhenAbsent() {
+    when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(null);
+    Assert.assertNull(redisUsermailAdapter.listRecentSessions("redis-owner", 0, 1));
+    Assert.assertEquals(Collections.emptyList(), redisUsermailAdapter.listRecentSessions("redis-owner", 2, 3));
+  }
+
+  @Test
+  public void testDeleteSessionRecency() {
+    String owner = "redis-owner";
+    redisUsermailAdapter.deleteSessionRecency(owner);
+    verify(redisTemplate).delete(String.format(Usermail.KEY_USERMAIL_SESSION_RECENCY, owner));
+  }
+
+  @Test
+  public void testIsEventConsumed() {
+    when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(true, null);
+    Assert.assertTrue(redisUsermailAdapter.isEventConsumed("packet:owner:3"));
+    Assert.assertFalse(redisUsermailAdapter.isEventConsumed("packet:owner:3"));
+  }
+
+  @Test
+  public void testMarkEventConsumed() {
+    RedisConnection connection = mock(RedisConnection.class);
+    when(redisTemplate.execute(any(RedisCallback.class)))
+        .thenAnswer(invocation -> ((RedisCallback) invocation.getArgument(0)).doInRedis(connection));
+    redisUsermailAdapter.markEventConsumed("packet:owner:3", 60L);
+    byte[] key = String.format(Usermail.KEY_USERMAIL_CONSUMED_EVENT, "packet:owner:3").getBytes(StandardCharsets.UTF_8);
+    ArgumentCaptor<Expiration> expiration = ArgumentCaptor.forClass(Expiration.class);
+    verify(connection).set(aryEq(key), aryEq("1".getBytes(StandardCharsets.UTF_8)), expiration.capture(),
+        eq(SetOption.SET_IF_ABSENT));
+    Assert.assertEquals(60L, expiration.getValue().getExpirationTimeInSeconds());
+  }
+
+  @Test
+  public void testAddReplyCountDelta() {
+    List<String> keys = Arrays.asList(String.format(Usermail.KEY_USERMAIL_REPLY_COUNT_DELTA, "parent", "owner"),
+        Usermail.KEY_USERMAIL_REPLY_COUNT_PENDING);
+    redisUsermailAdapter.addReplyCountDelta(new ReplyCountDeltaDTO("parent", "owner", 2, "reply"));
+    redisUsermailAdapter.restoreReplyCountDelta(new ReplyCountDeltaDTO("parent", "owner", -1, null));
+    verify(redisTemplate).execute(eq(RedisUsermailAdapter.ADD_REPLY_COUNT_DELTA_SCRIPT),
+        any(StringRedisSerializer.class), isNull(), eq(keys), eq("parent"), eq("owner"), eq("2"), eq("reply"),
+        eq("1"));
+    verify(redisTemplate).execute(eq(RedisUsermailAdapter.ADD_REPLY_COUNT_DELTA_SCRIPT),
+        any(StringRedisSerializer.class), isNull(), eq(keys), eq("parent"), eq("owner"), eq("-1"), eq(""), eq("0"));
+  }
+
+  @Test
+  public void testTakeReplyCountDelta() {
+    List<String> keys = Arrays.asList(String.format(Usermail.KEY_USERMAIL_REPLY_COUNT_DELTA, "parent", "owner"),
+        Usermail.KEY_USERMAIL_REPLY_COUNT_PENDING);
+    when(redisTemplate.execute(eq(RedisUsermailAdapter.TAKE_REPLY_COUNT_DELTA_SCRIPT),
+        any(StringRedisSerializer.class), any(StringRedisSerializer.class), eq(keys)))
+        .thenReturn(Arrays.asList("parent", "owner", "3", "reply"), Arrays.asList("", "", "0", ""));
+    ReplyCountDeltaDTO delta = redisUsermailAdapter.takeReplyCountDelta("parent", "owner");
+    Assert.assertEquals("parent", delta.getMsgid());
+    Assert.assertEquals("owner", delta.getOwner());
+    Assert.assertEquals(3, delta.getCount());
+    Assert.assertEquals("reply", delta.getLastReplyMsgid());
+    Assert.assertNull(redisUsermailAdapter.takeReplyCountDelta("parent", "owner"));
+  }
 
+  @Test
+  public void testTakeReplyCountDeltas() {
+    when(redisTemplate.execute(eq(RedisUsermailAdapter.TAKE_REPLY_COUNT_DELTAS_SCRIPT),
+        any(StringRedisSerializer.class), any(StringRedisSerializer.class),
+        eq(Collections.singletonList(Usermail.KEY_USERMAIL_REPLY_COUNT_PENDING)), eq("500")))
+        .thenReturn(Arrays.asList("parent1", "owner", "1", "reply1", "parent2", "owner", "-1", ""));
+    List<ReplyCountDeltaDTO> deltas = redisUsermailAdapter.takeReplyCountDeltas(500);
+    Assert.assertEquals(2, deltas.size());
+    Assert.assertEquals("parent1", deltas.get(0).getMsgid());
+    Assert.assertEquals("reply1", deltas.get(0).getLastReplyMsgid());
+    Assert.assertEquals(-1, deltas.get(1).getCount());
+    Assert.assertNull(deltas.get(1).getLastReplyMsgid());
+  }
+
+  @Test
+  public void testGetReplyCountDeltas() {
+    List<String> keys = Arrays.asList(String.format(Usermail.KEY_USERMAIL_REPLY_COUNT_DELTA, "parent1", "owner"),
+        String.format(Usermail.KEY_USERMAIL_REPLY_COUNT_DELTA, "parent2", "owner"));
+    when(redisTemplate.execute(eq(RedisUsermailAdapter.GET_REPLY_COUNT_DELTAS_SCRIPT),
+        any(StringRedisSerializer.class), any(StringRedisSerializer.class), eq(keys)))
+        .thenReturn(Arrays.asList("2", "reply", "", ""));
+    Map<String, ReplyCountDeltaDTO> deltas = redisUsermailAdapter
+        .getReplyCountDeltas("owner", Arrays.asList("parent1", "parent2"));
+    Assert.assertEquals(Collections.singleton("parent1"), deltas.keySet());
+    Assert.assertEquals(2, deltas.get("parent1").getCount());
+    Assert.assertEquals("reply", deltas.get("parent1").getLastReplyMsgid());
+  }
+
+}
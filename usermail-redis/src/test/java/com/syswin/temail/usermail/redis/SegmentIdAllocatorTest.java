@@ -0,0 +1,120 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.redis;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.syswin.temail.usermail.redis.common.CacheKey.Usermail;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+public class SegmentIdAllocatorTest {
+
+  private static final String KEY = Usermail.KEY_USERMAIL_PKID;
+  private final RedisTemplate redisTemplate = mock(RedisTemplate.class);
+  private final ValueOperations valueOperations = mock(ValueOperations.class);
+  private final AtomicLong redisCounter = new AtomicLong();
+
+  @Before
+  public void setUp() {
+    when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    when(valueOperations.increment(KEY, 10L))
+        .thenAnswer(invocation -> redisCounter.addAndGet(invocation.getArgument(1)));
+  }
+
+  @Test
+  public void allocateIdsFromOneSegment() {
+    SegmentIdAllocator allocator = new SegmentIdAllocator(redisTemplate, KEY, 10L, Runnable::run);
+    for (long expect = 1; expect <= 7; expect++) {
+      assertThat(allocator.nextId()).isEqualTo(expect);
+    }
+    verify(valueOperations, times(1)).increment(KEY, 10L);
+  }
+
+  @Test
+  public void prefetchNextSegmentBeforeExhausted() {
+    SegmentIdAllocator allocator = new SegmentIdAllocator(redisTemplate, KEY, 10L, Runnable::run);
+    for (long expect = 1; expect <= 8; expect++) {
+      assertThat(allocator.nextId()).isEqualTo(expect);
+    }
+    verify(valueOperations, times(2)).increment(KEY, 10L);
+    for (long expect = 9; expect <= 15; expect++) {
+      assertThat(allocator.nextId()).isEqualTo(expect);
+    }
+    verify(valueOperations, times(2)).increment(KEY, 10L);
+  }
+
+  @Test
+  public void allocateSynchronouslyWhenPrefetchFailed() {
+    doAnswer(invocation -> redisCounter.addAndGet(10L))
+        .doThrow(new IllegalStateException("redis down"))
+        .doAnswer(invocation -> redisCounter.addAndGet(10L))
+        .when(valueOperations).increment(KEY, 10L);
+    SegmentIdAllocator allocator = new SegmentIdAllocator(redisTemplate, KEY, 10L, Runnable::run);
+    for (long expect = 1; expect <= 12; expect++) {
+      assertThat(allocator.nextId()).isEqualTo(expect);
+    }
+    verify(valueOperations, times(3)).increment(KEY, 10L);
+  }
+
+  @Test
+  public void allocateUniqueIdsConcurrently() throws Exception {
+    ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor();
+    ExecutorService workers = Executors.newFixedThreadPool(8);
+    SegmentIdAllocator allocator = new SegmentIdAllocator(redisTemplate, KEY, 10L, prefetchExecutor);
+    Set<Long> ids = ConcurrentHashMap.newKeySet();
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      futures.add(workers.submit(() -> {
+        for (int j = 0; j < 1000; j++) {
+          ids.add(allocator.nextId());
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+    workers.shutdownNow();
+    prefetchExecutor.shutdownNow();
+    assertThat(ids).hasSize(8000);
+    assertThat(ids).allMatch(id -> id > 0 && id <= redisCounter.get());
+  }
+}
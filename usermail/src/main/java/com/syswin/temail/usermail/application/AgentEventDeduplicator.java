@@ -0,0 +1,126 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.syswin.temail.usermail.application;
+
+import com.syswin.temail.usermail.core.IUsermailAdapter;
+import com.syswin.temail.usermail.core.dto.SessionEvent;
+import com.syswin.temail.usermail.core.util.LruCache;
+import javax.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * 自消费topic事件的消费幂等：以 xPacketId + owner + 事件类型 为key，事件处理成功后记录到本地定长缓存和redis（可选），
+ * mq重复投递的事件在访问数据库之前直接跳过。
+ * <p>
+ * 只在处理成功后记录，处理失败的事件重新投递时仍会执行；没有xPacketId的事件（如废纸篓删除、域清理）不做去重。
+ */
+@Service
+public class AgentEventDeduplicator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AgentEventDeduplicator.class);
+
+  private final IUsermailAdapter usermailAdapter;
+  /**
+   * 本地缓存的已消费事件数，0为不使用本地缓存
+   */
+  @Value("${app.usermailagent.mq.dedup.localSize:10000}")
+  private int localSize;
+  /**
+   * redis中已消费记录的过期时间（秒），0为不使用redis
+   */
+  @Value("${app.usermailagent.mq.dedup.redisTtl:0}")
+  private long redisTtl;
+  private LruCache<String, Boolean> consumed;
+
+  @Autowired
+  public AgentEventDeduplicator(IUsermailAdapter usermailAdapter) {
+    this.usermailAdapter = usermailAdapter;
+  }
+
+  @PostConstruct
+  public void init() {
+    consumed = new LruCache<>(localSize);
+  }
+
+  /**
+   * 判断事件是否已经消费过
+   *
+   * @param event 自消费topic事件
+   * @return 已消费过返回true
+   */
+  public boolean isConsumed(SessionEvent event) {
+    String key = keyOf(event);
+    if (key == null) {
+      return false;
+    }
+    if (consumed.get(key) != null) {
+      return true;
+    }
+    if (redisTtl <= 0) {
+      return false;
+    }
+    try {
+      if (usermailAdapter.isEventConsumed(key)) {
+        consumed.put(key, Boolean.TRUE);
+        return true;
+      }
+    } catch (Exception e) {
+      // 幂等记录不可用时按未消费处理，由业务自身的校验兜底
+      LOGGER.warn("query consumed event error, key={}", key, e);
+    }
+    return false;
+  }
+
+  /**
+   * 记录事件已消费成功
+   *
+   * @param event 自消费topic事件
+   */
+  public void markConsumed(SessionEvent event) {
+    String key = keyOf(event);
+    if (key == null) {
+      return;
+    }
+    consumed.put(key, Boolean.TRUE);
+    if (redisTtl <= 0) {
+      return;
+    }
+    try {
+      usermailAdapter.markEventConsumed(key, redisTtl);
+    } catch (Exception e) {
+      LOGGER.warn("mark consumed event error, key={}", key, e);
+    }
+  }
+
+  private static String keyOf(SessionEvent event) {
+    if (event.getxPacketId() == null || event.getxPacketId().isEmpty()) {
+      return null;
+    }
+    return event.getxPacketId() + ":" + event.getOwner() + ":" + event.getSessionMessageType();
+  }
+}
@@ -31,9 +31,11 @@ import static com.syswin.temail.usermail.common.ParamsKey.CassandraConstant.TABL
 import static com.syswin.temail.usermail.common.ParamsKey.SessionEventKey.MESSAGE;
 
 import com.syswin.temail.usermail.cassandra.application.INosqlMsgTemplate;
-import com.syswin.temail.usermail.cassandra.domains.MsgRow;
 import com.syswin.temail.usermail.common.Constants.TemailStatus;
+import com.syswin.temail.usermail.core.util.LruCache;
 import com.syswin.temail.usermail.core.util.MsgCompressor;
+import com.syswin.temail.usermail.core.util.NamedThreadFactory;
+import com.syswin.temail.usermail.core.util.ZipMsgSupplier;
 import com.syswin.temail.usermail.domains.UsermailDO;
 import com.syswin.temail.usermail.domains.UsermailMsgReplyDO;
 import java.nio.ByteBuffer;
@@ -41,6 +43,19 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -48,6 +63,46 @@ public class ConvertMsgService {
 
   private final MsgCompressor msgCompressor;
   private final INosqlMsgTemplate nosqlMsgTemplate;
+  /**
+   * 并行解压使用的线程数，0为在请求线程中逐条解压
+   */
+  @Value("${app.usermailagent.msg.decode.parallelism:0}")
+  private int decodeParallelism;
+  /**
+   * 一页中待解压的消息数达到该值时才并行解压，消息较少时线程切换的开销大于收益
+   */
+  @Value("${app.usermailagent.msg.decode.parallelThreshold:32}")
+  private int decodeParallelThreshold;
+  /**
+   * 延迟解压：消息内容在序列化响应时才解压，不返回消息内容的接口无需解压。
+   * 此时响应已经开始写出，无法再转为错误响应，解压失败的消息不返回内容并记录错误日志
+   */
+  @Value("${app.usermailagent.msg.decode.lazy:false}")
+  private boolean decodeLazy;
+  /**
+   * 延迟解压时流式输出：序列化响应时边解压边以Base64编码写出，不生成解压结果和编码后的字符串
+   */
+  @Value("${app.usermailagent.msg.decode.stream:false}")
+  private boolean decodeStream;
+  private ForkJoinPool decodePool;
+  /**
+   * 并发查询Cassandra的线程数（所有请求共享），0为每次只发一条 IN 查询
+   */
+  @Value("${app.usermailagent.nosql.fetch.concurrency:0}")
+  private int nosqlFetchConcurrency;
+  /**
+   * 并发查询时每条查询包含的消息id数，1为按分区逐条查询
+   */
+  @Value("${app.usermailagent.nosql.fetch.batchSize:1}")
+  private int nosqlFetchBatchSize;
+  /**
+   * 从Cassandra读取的消息体本地缓存条目数（单聊消息和回复消息各一份），0为不缓存
+   */
+  @Value("${app.usermailagent.nosql.cache.size:0}")
+  private int nosqlCacheSize;
+  private ExecutorService nosqlFetchExecutor;
+  private LruCache<Long, byte[]> usermailNosqlCache = new LruCache<>(0);
+  private LruCache<Long, byte[]> replyNosqlCache = new LruCache<>(0);
 
   public ConvertMsgService(MsgCompressor msgCompressor,
       INosqlMsgTemplate nosqlMsgTemplate) {
@@ -55,6 +110,30 @@ public class ConvertMsgService {
     this.nosqlMsgTemplate = nosqlMsgTemplate;
   }
 
+  @PostConstruct
+  public void init() {
+    if (decodeParallelism > 0) {
+      decodePool = new ForkJoinPool(decodeParallelism);
+    }
+    if (nosqlFetchConcurrency > 0) {
+      // 队列满时由请求线程执行查询，Cassandra变慢时不会无限堆积任务
+      nosqlFetchExecutor = new ThreadPoolExecutor(nosqlFetchConcurrency, nosqlFetchConcurrency, 0L,
+          TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(nosqlFetchConcurrency * 32),
+          new NamedThreadFactory("usermail-nosql-fetch"), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+    usermailNosqlCache = new LruCache<>(nosqlCacheSize);
+    replyNosqlCache = new LruCache<>(nosqlCacheSize);
+  }
+
+  @PreDestroy
+  public void destroy() {
+    if (decodePool != null) {
+      decodePool.shutdown();
+    }
+    if (nosqlFetchExecutor != null) {
+      nosqlFetchExecutor.shutdown();
+    }
+  }
 
   /**
    * 将在mysql中查询到的zipmsg解压后set到单聊消息记录，为null的话去Cassandra查询 并将其解压后的消息set到单聊消息记录
@@ -65,7 +144,9 @@ public class ConvertMsgService {
   public List<UsermailDO> convertMsg(List<UsermailDO> usermails) {
     if (usermails != null && !usermails.isEmpty()) {
 
-      List idList = new ArrayList(usermails.size());
+      List<Long> idList = new ArrayList<>(usermails.size());
+      List<UsermailDO> decodeList = new ArrayList<>(usermails.size());
+      List<byte[]> zipMsgList = new ArrayList<>(usermails.size());
 
       for (int i = 0; i < usermails.size(); i++) {
         UsermailDO usermail = usermails.get(i);
@@ -76,7 +157,8 @@ public class ConvertMsgService {
         }
         byte[] msg = usermail.getZipMsg();
         if (msg != null && msg.length > 0) {
-          usermail.setMessage(msgCompressor.unzipEncode(msg));
+          decodeList.add(usermail);
+          zipMsgList.add(msg);
           usermail.setZipMsg(null);
         } else {
           idList.add(usermail.getId());
@@ -84,23 +166,18 @@ public class ConvertMsgService {
       }
 
       if (!idList.isEmpty()) {
-        List<Map<String, Object>> nosqlColumnList = nosqlMsgTemplate
-            .listMsg(KEYSPACE_USERMAILAGENT, TABLE_USERMAIL, idList.toArray(), ID, MESSAGE);
-        Map<Long, MsgRow> msgRowMap = new HashMap<>();
-        nosqlColumnList.forEach(entry -> {
-          Long id = (Long) entry.get(ID);
-          ByteBuffer message = (ByteBuffer) entry.get(MESSAGE);
-          msgRowMap.put(id, new MsgRow(id, message.array()));
-        });
+        Map<Long, byte[]> nosqlMsgMap = listNosqlMsg(TABLE_USERMAIL, usermailNosqlCache, idList);
         for (int i = 0; i < usermails.size(); i++) {
           UsermailDO usermail = usermails.get(i);
-          MsgRow msgRow = msgRowMap.get(usermail.getId());
-          if (msgRow == null) {
+          byte[] message = nosqlMsgMap.get(usermail.getId());
+          if (message == null) {
             continue;
           }
-          usermail.setMessage(msgCompressor.unzipEncode(msgRow.getMessage()));
+          decodeList.add(usermail);
+          zipMsgList.add(message);
         }
       }
+      decode(decodeList, zipMsgList, UsermailDO::setMessage, UsermailDO::setMessageSupplier);
     }
     return usermails;
   }
@@ -113,7 +190,9 @@ public class ConvertMsgService {
    */
   public List<UsermailMsgReplyDO> convertReplyMsg(List<UsermailMsgReplyDO> replyList) {
     if (replyList != null && !replyList.isEmpty()) {
-      List idList = new ArrayList(replyList.size());
+      List<Long> idList = new ArrayList<>(replyList.size());
+      List<UsermailMsgReplyDO> decodeList = new ArrayList<>(replyList.size());
+      List<byte[]> zipMsgList = new ArrayList<>(replyList.size());
 
       for (int i = 0; i < replyList.size(); i++) {
         UsermailMsgReplyDO reply = replyList.get(i);
@@ -123,33 +202,108 @@ public class ConvertMsgService {
           continue;
         }
         if (null != reply.getZipMsg() && reply.getZipMsg().length > 0) {
-          reply.setMsg(msgCompressor.unzipEncode(reply.getZipMsg()));
+          decodeList.add(reply);
+          zipMsgList.add(reply.getZipMsg());
           reply.setZipMsg(null);
         } else {
           idList.add(reply.getId());
         }
       }
       if (!idList.isEmpty()) {
-        List<Map<String, Object>> nosqlColumnList = nosqlMsgTemplate
-            .listMsg(KEYSPACE_USERMAILAGENT, TABLE_USERMAIL_MSG_REPLY, idList.toArray(), ID, MESSAGE);
-        Map<Long, MsgRow> msgRowMap = new HashMap<>();
-        nosqlColumnList.forEach(entry -> {
-          Long id = (Long) entry.get(ID);
-          ByteBuffer message = (ByteBuffer) entry.get(MESSAGE);
-          msgRowMap.put(id, new MsgRow(id, message.array()));
-        });
+        Map<Long, byte[]> nosqlMsgMap = listNosqlMsg(TABLE_USERMAIL_MSG_REPLY, replyNosqlCache, idList);
 
         for (int i = 0; i < replyList.size(); i++) {
           UsermailMsgReplyDO msgReply = replyList.get(i);
-          MsgRow msgRow = msgRowMap.get(msgReply.getId());
-          if (msgRow == null) {
+          byte[] message = nosqlMsgMap.get(msgReply.getId());
+          if (message == null) {
             continue;
           }
-          msgReply.setMsg(msgCompressor.unzipEncode(msgRow.getMessage()));
+          decodeList.add(msgReply);
+          zipMsgList.add(message);
         }
       }
-
+      decode(decodeList, zipMsgList, UsermailMsgReplyDO::setMsg, UsermailMsgReplyDO::setMsgSupplier);
     }
     return replyList;
   }
+
+  /**
+   * 从Cassandra查询消息体：先读本地缓存，未命中的id按配置拆分为多条分区查询并发执行，否则合并为一条 IN 查询
+   *
+   * @param table 表名
+   * @param cache 该表的消息体缓存
+   * @param idList 消息id列表
+   * @return 消息id与压缩消息体的映射
+   */
+  private Map<Long, byte[]> listNosqlMsg(String table, LruCache<Long, byte[]> cache, List<Long> idList) {
+    Map<Long, byte[]> msgMap = new HashMap<>(idList.size() * 4 / 3 + 1);
+    List<Long> missIdList = idList;
+    if (cache.getMaxSize() > 0) {
+      missIdList = new ArrayList<>(idList.size());
+      for (Long id : idList) {
+        byte[] message = cache.get(id);
+        if (message != null) {
+          msgMap.put(id, message);
+        } else {
+          missIdList.add(id);
+        }
+      }
+      if (missIdList.isEmpty()) {
+        return msgMap;
+      }
+    }
+
+    List<Map<String, Object>> nosqlColumnList;
+    int batchSize = Math.max(nosqlFetchBatchSize, 1);
+    if (nosqlFetchExecutor == null || missIdList.size() <= batchSize) {
+      nosqlColumnList = nosqlMsgTemplate.listMsg(KEYSPACE_USERMAILAGENT, table, missIdList.toArray(), ID, MESSAGE);
+    } else {
+      List<CompletableFuture<List<Map<String, Object>>>> futures = new ArrayList<>();
+      for (int from = 0; from < missIdList.size(); from += batchSize) {
+        Object[] ids = missIdList.subList(from, Math.min(from + batchSize, missIdList.size())).toArray();
+        futures.add(CompletableFuture.supplyAsync(
+            () -> nosqlMsgTemplate.listMsg(KEYSPACE_USERMAILAGENT, table, ids, ID, MESSAGE), nosqlFetchExecutor));
+      }
+      nosqlColumnList = new ArrayList<>(missIdList.size());
+      try {
+        for (CompletableFuture<List<Map<String, Object>>> future : futures) {
+          nosqlColumnList.addAll(future.join());
+        }
+      } catch (CompletionException e) {
+        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+      }
+    }
+
+    nosqlColumnList.forEach(entry -> {
+      Long id = (Long) entry.get(ID);
+      byte[] message = ((ByteBuffer) entry.get(MESSAGE)).array();
+      msgMap.put(id, message);
+      cache.put(id, message);
+    });
+    return msgMap;
+  }
+
+  /**
+   * 解压消息体并以Base64编码后set到对应的消息记录：延迟模式下只设置解压函数；待解压消息较多且配置了线程数时并行解压；否则逐条解压
+   *
+   * @param targets 消息记录列表
+   * @param zipMsgs 与消息记录一一对应的压缩消息体
+   * @param messageSetter 设置消息内容
+   * @param supplierSetter 设置延迟解压函数
+   */
+  private <T> void decode(List<T> targets, List<byte[]> zipMsgs, BiConsumer<T, String> messageSetter,
+      BiConsumer<T, Supplier<String>> supplierSetter) {
+    if (decodeLazy) {
+      for (int i = 0; i < targets.size(); i++) {
+        supplierSetter.accept(targets.get(i), new ZipMsgSupplier(msgCompressor, zipMsgs.get(i), decodeStream));
+      }
+    } else if (decodePool != null && targets.size() >= decodeParallelThreshold) {
+      decodePool.submit(() -> IntStream.range(0, targets.size()).parallel()
+          .forEach(i -> messageSetter.accept(targets.get(i), msgCompressor.unzipEncode(zipMsgs.get(i))))).join();
+    } else {
+      for (int i = 0; i < targets.size(); i++) {
+        messageSetter.accept(targets.get(i), msgCompressor.unzipEncode(zipMsgs.get(i)));
+      }
+    }
+  }
 }
@@ -0,0 +1,218 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.application;
+
+import com.syswin.temail.usermail.core.IUsermailAdapter;
+import com.syswin.temail.usermail.core.dto.ReplyCountDeltaDTO;
+import com.syswin.temail.usermail.infrastructure.domain.IUsermailMsgDB;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 源消息回复数的延迟合并写入：同一源消息在一个刷新周期内的多次回复数变化累加为一个变化量，周期结束时通过一条update语句批量写入，
+ * 避免热门源消息的行锁在发送回复的事务之间争用。
+ * <p>
+ * 变化量在事务提交后累加到redis中，所有节点共享，未刷新的变化量对所有节点的读取立即可见。各节点定时从redis中原子地取出变化量写入数据库，
+ * 同一变化量只会被一个节点取出。依赖源消息当前最新回复消息id的操作（删除、撤回、阅后即焚回复）需先调用 {@link #flush(String, String)}
+ * 将该源消息的变化量写入数据库。刷新周期为0时直接写入数据库。
+ */
+@Service
+public class ReplyCountWriteBehind {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ReplyCountWriteBehind.class);
+  /**
+   * 定时刷新时每批从redis取出的变化量数量
+   */
+  private static final int FLUSH_BATCH_SIZE = 500;
+
+  private final IUsermailMsgDB usermailMsgDB;
+  private final IUsermailAdapter usermailAdapter;
+  /**
+   * 回复数的刷新周期（毫秒），0为不合并，直接写入数据库
+   */
+  @Value("${app.usermailagent.replyCount.flushInterval:0}")
+  private long flushInterval;
+  private ScheduledExecutorService flushExecutor;
+
+  @Autowired
+  public ReplyCountWriteBehind(IUsermailMsgDB usermailMsgDB, IUsermailAdapter usermailAdapter) {
+    this.usermailMsgDB = usermailMsgDB;
+    this.usermailAdapter = usermailAdapter;
+  }
+
+  @PostConstruct
+  public void init() {
+    if (flushInterval > 0) {
+      flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "usermail-replycount-flush");
+        thread.setDaemon(true);
+        return thread;
+      });
+      flushExecutor.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @PreDestroy
+  public void destroy() {
+    if (flushExecutor != null) {
+      flushExecutor.shutdown();
+      flushQuietly();
+    }
+  }
+
+  /**
+   * 更新源消息的回复数，在事务中调用时于事务提交后生效
+   *
+   * @param msgid 源消息id
+   * @param owner 消息所属人
+   * @param count 回复数变化量
+   * @param lastReplyMsgid 最新回复消息id
+   */
+  public void add(String msgid, String owner, int count, String lastReplyMsgid) {
+    if (flushInterval <= 0) {
+      usermailMsgDB.updateReplyCountAndLastReplyMsgid(msgid, owner, count, lastReplyMsgid);
+      return;
+    }
+    ReplyCountDeltaDTO delta = new ReplyCountDeltaDTO(msgid, owner, count, lastReplyMsgid);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCommit() {
+          addQuietly(delta);
+        }
+      });
+    } else {
+      usermailAdapter.addReplyCountDelta(delta);
+    }
+  }
+
+  /**
+   * 批量获取源消息尚未写入数据库的回复数变化量
+   *
+   * @param owner 消息所属人
+   * @param msgids 源消息id列表
+   * @return 源消息id与变化量的映射，没有变化量的源消息不包含在内
+   */
+  public Map<String, ReplyCountDeltaDTO> getPending(String owner, Collection<String> msgids) {
+    if (flushInterval <= 0 || msgids.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    return usermailAdapter.getReplyCountDeltas(owner, msgids);
+  }
+
+  /**
+   * 立即从redis中取出源消息尚未写入的变化量并写入数据库；在事务中调用时随事务提交，事务回滚则放回redis
+   *
+   * @param msgid 源消息id
+   * @param owner 消息所属人
+   */
+  public void flush(String msgid, String owner) {
+    if (flushInterval <= 0) {
+      return;
+    }
+    ReplyCountDeltaDTO delta = usermailAdapter.takeReplyCountDelta(msgid, owner);
+    if (delta == null) {
+      return;
+    }
+    try {
+      usermailMsgDB.updateReplyCountAndLastReplyMsgid(msgid, owner, delta.getCount(), delta.getLastReplyMsgid());
+    } catch (RuntimeException e) {
+      restoreQuietly(Collections.singletonList(delta));
+      throw e;
+    }
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+        @Override
+        public void afterCompletion(int status) {
+          if (status == TransactionSynchronization.STATUS_ROLLED_BACK) {
+            restoreQuietly(Collections.singletonList(delta));
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * 从redis中分批取出所有尚未写入的变化量批量写入数据库，写入失败时放回redis等待下次刷新
+   */
+  public void flush() {
+    List<ReplyCountDeltaDTO> deltas;
+    do {
+      deltas = usermailAdapter.takeReplyCountDeltas(FLUSH_BATCH_SIZE);
+      if (deltas.isEmpty()) {
+        return;
+      }
+      try {
+        usermailMsgDB.batchUpdateReplyCountAndLastReplyMsgid(deltas);
+        LOGGER.debug("flush replyCount-->size={}", deltas.size());
+      } catch (RuntimeException e) {
+        restoreQuietly(deltas);
+        throw e;
+      }
+    } while (deltas.size() == FLUSH_BATCH_SIZE);
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (Exception e) {
+      LOGGER.warn("flush replyCount failed", e);
+    }
+  }
+
+  private void addQuietly(ReplyCountDeltaDTO delta) {
+    try {
+      usermailAdapter.addReplyCountDelta(delta);
+    } catch (Exception e) {
+      // 事务已提交，无法回滚回复本身，只能记录丢失的变化量
+      LOGGER.error("add replyCount delta failed, delta is lost: {}", delta, e);
+    }
+  }
+
+  private void restoreQuietly(List<ReplyCountDeltaDTO> deltas) {
+    for (ReplyCountDeltaDTO delta : deltas) {
+      try {
+        usermailAdapter.restoreReplyCountDelta(delta);
+      } catch (Exception e) {
+        LOGGER.error("restore replyCount delta failed, delta is lost: {}", delta, e);
+      }
+    }
+  }
+}
@@ -25,21 +25,19 @@
 package com.syswin.temail.usermail.application;
 
 import com.google.gson.Gson;
-import com.syswin.temail.usermail.common.ParamsKey;
-import com.syswin.temail.usermail.common.ParamsKey.SessionEventKey;
 import com.syswin.temail.usermail.common.SessionEventType;
 import com.syswin.temail.usermail.configuration.UsermailConfig;
 import com.syswin.temail.usermail.core.IMqAdapter;
 import com.syswin.temail.usermail.core.dto.CdtpHeaderDTO;
+import com.syswin.temail.usermail.core.dto.SessionEvent;
+import com.syswin.temail.usermail.core.json.JsonBytesWriter;
 import com.syswin.temail.usermail.dto.TrashMailDTO;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 @Component
-public class Usermail2NotifyMqService implements SessionEventType, SessionEventKey {
+public class Usermail2NotifyMqService implements SessionEventType {
 
 
   private final IMqAdapter mqAdapter;
@@ -71,18 +69,17 @@ public class Usermail2NotifyMqService implements SessionEventType, SessionEventK
   public void sendMqMsgSaveMail(CdtpHeaderDTO headerInfo, String from, String to, String owner, String msgId,
       String toMsg, long seqNo, int eventType, int attachmentSize, String author, List<String> filter,
       String sessionExtData) {
-    Map<String, Object> eventMap = new HashMap<>(18);
-    combineNormalParam(headerInfo, eventType, from, to, eventMap);
-    eventMap.put(OWNER, owner);
-    eventMap.put(MSGID, msgId);
+    SessionEvent event = new SessionEvent(headerInfo, eventType, from, to);
+    event.setOwner(owner);
+    event.setMsgid(msgId);
     // 会话消息已接收 (未读+1)
-    eventMap.put(TO_MSG, toMsg);
-    eventMap.put(SEQ_NO, seqNo);
-    eventMap.put(ATTACHMENT_SIZE, attachmentSize);
-    eventMap.put(AUTHOR, author);
-    eventMap.put(FILTER, filter);
-    eventMap.put(SessionEventKey.SESSION_EXT_DATA, sessionExtData);
-    mqAdapter.sendMessage(usermailConfig.mqTopic, from, gs.toJson(eventMap));
+    event.setToMsg(toMsg);
+    event.setSeqNo(seqNo);
+    event.setAttachmentSize(attachmentSize);
+    event.setAuthor(author);
+    event.setFilter(filter);
+    event.setSessionExtData(sessionExtData);
+    sendMessage(from, event);
   }
 
   /**
@@ -96,10 +93,9 @@ public class Usermail2NotifyMqService implements SessionEventType, SessionEventK
    */
   public void sendMqAfterUpdateStatus(CdtpHeaderDTO headerInfo, String from, String to,
       String msgId, int eventType) {
-    Map<String, Object> eventMap = new HashMap<>(10);
-    combineNormalParam(headerInfo, eventType, from, to, eventMap);
-    eventMap.put(MSGID, msgId);
-    mqAdapter.sendMessage(usermailConfig.mqTopic, from, gs.toJson(eventMap));
+    SessionEvent event = new SessionEvent(headerInfo, eventType, from, to);
+    event.setMsgid(msgId);
+    sendMessage(from, event);
   }
 
   /**
@@ -115,11 +111,10 @@ public class Usermail2NotifyMqService implements SessionEventType, SessionEventK
    */
   public void sendMqUpdateMsg(String xPacketId, String cdtpHeader, String from, String to,
       String owner, String msgId, int eventType) {
-    Map<String, Object> eventMap = new HashMap<>(12);
-    combineNormalParam(new CdtpHeaderDTO(cdtpHeader, xPacketId), eventType, from, to, eventMap);
-    eventMap.put(OWNER, owner);
-    eventMap.put(MSGID, msgId);
-    mqAdapter.sendMessage(usermailConfig.mqTopic, from, gs.toJson(eventMap));
+    SessionEvent event = new SessionEvent(new CdtpHeaderDTO(cdtpHeader, xPacketId), eventType, from, to);
+    event.setOwner(owner);
+    event.setMsgid(msgId);
+    sendMessage(from, event);
   }
 
   /**
@@ -133,10 +128,9 @@ public class Usermail2NotifyMqService implements SessionEventType, SessionEventK
    */
   public void sendMqAfterDeleteSession(CdtpHeaderDTO headerInfo, String from, String to, boolean deleteAllMsg,
       int eventType) {
-    Map<String, Object> eventMap = new HashMap<>(11);
-    combineNormalParam(headerInfo, eventType, from, to, eventMap);
-    eventMap.put(DELETE_ALL_MSG, deleteAllMsg);
-    mqAdapter.sendMessage(usermailConfig.mqTopic, from, gs.toJson(eventMap));
+    SessionEvent event = new SessionEvent(headerInfo, eventType, from, to);
+    event.setDeleteAllMsg(deleteAllMsg);
+    sendMessage(from, event);
   }
 
   /**
@@ -154,16 +148,15 @@ public class Usermail2NotifyMqService implements SessionEventType, SessionEventK
    */
   public void sendMqSaveMsgReply(CdtpHeaderDTO headerInfo, String from, String to, String owner, String msgId,
       String toMsg, long seqNo, int attachmentSize, String parentMsgId) {
-    Map<String, Object> eventMap = new HashMap<>(17);
-    combineNormalParam(headerInfo, EVENT_TYPE_18, from, to, eventMap);
-    eventMap.put(OWNER, owner);
-    eventMap.put(PARENT_MSGID, parentMsgId);
-    eventMap.put(MSGID, msgId);
+    SessionEvent event = new SessionEvent(headerInfo, EVENT_TYPE_18, from, to);
+    event.setOwner(owner);
+    event.setParentMsgId(parentMsgId);
+    event.setMsgid(msgId);
     // 会话消息已接收 (未读+1)
-    eventMap.put(TO_MSG, toMsg);
-    eventMap.put(SEQ_NO, seqNo);
-    eventMap.put(ATTACHMENT_SIZE, attachmentSize);
-    mqAdapter.sendMessage(usermailConfig.mqTopic, from, gs.toJson(eventMap));
+    event.setToMsg(toMsg);
+    event.setSeqNo(seqNo);
+    event.setAttachmentSize(attachmentSize);
+    sendMessage(from, event);
   }
 
   /**
@@ -180,12 +173,11 @@ public class Usermail2NotifyMqService implements SessionEventType, SessionEventK
    */
   public void sendMqAfterUpdateMsgReply(String xPacketId, String cdtpHeader, String from, String to,
       String owner, String msgId, int eventType, String parentMsgId) {
-    Map<String, Object> eventMap = new HashMap<>(13);
-    combineNormalParam(new CdtpHeaderDTO(cdtpHeader, xPacketId), eventType, from, to, eventMap);
-    eventMap.put(OWNER, owner);
-    eventMap.put(MSGID, msgId);
-    eventMap.put(PARENT_MSGID, parentMsgId);
-    mqAdapter.sendMessage(usermailConfig.mqTopic, from, gs.toJson(eventMap));
+    SessionEvent event = new SessionEvent(new CdtpHeaderDTO(cdtpHeader, xPacketId), eventType, from, to);
+    event.setOwner(owner);
+    event.setMsgid(msgId);
+    event.setParentMsgId(parentMsgId);
+    sendMessage(from, event);
   }
 
   /**
@@ -201,12 +193,11 @@ public class Usermail2NotifyMqService implements SessionEventType, SessionEventK
    */
   public void sendMqAfterRemoveMsgReply(CdtpHeaderDTO headerInfo, String from, String to, String owner,
       List<String> msgIds, int eventType, String parentMsgId) {
-    Map<String, Object> eventMap = new HashMap<>(13);
-    combineNormalParam(headerInfo, eventType, from, to, eventMap);
-    eventMap.put(OWNER, owner);
-    eventMap.put(MSGID, gs.toJson(msgIds));
-    eventMap.put(PARENT_MSGID, parentMsgId);
-    mqAdapter.sendMessage(usermailConfig.mqTopic, from, gs.toJson(eventMap));
+    SessionEvent event = new SessionEvent(headerInfo, eventType, from, to);
+    event.setOwner(owner);
+    event.setMsgid(JsonBytesWriter.toJsonArray(msgIds));
+    event.setParentMsgId(parentMsgId);
+    sendMessage(from, event);
   }
 
   /**
@@ -218,9 +209,7 @@ public class Usermail2NotifyMqService implements SessionEventType, SessionEventK
    * @param eventType 事件类型（归档或取消归档）
    */
   public void sendMqAfterUpdateArchiveStatus(CdtpHeaderDTO headerInfo, String from, String to, int eventType) {
-    Map<String, Object> eventMap = new HashMap<>(9);
-    combineNormalParam(headerInfo, eventType, from, to, eventMap);
-    mqAdapter.sendMessage(usermailConfig.mqTopic, from, gs.toJson(eventMap));
+    sendMessage(from, new SessionEvent(headerInfo, eventType, from, to));
   }
 
   /**
@@ -234,11 +223,10 @@ public class Usermail2NotifyMqService implements SessionEventType, SessionEventK
    */
   public void sendMqMoveTrashNotify(CdtpHeaderDTO headerInfo, String from, String to,
       List<String> msgIds, int eventType) {
-    Map<String, Object> eventMap = new HashMap<>(12);
-    combineNormalParam(headerInfo, eventType, from, to, eventMap);
-    eventMap.put(OWNER, from);
-    eventMap.put(MSGID, gs.toJson(msgIds));
-    mqAdapter.sendMessage(usermailConfig.mqTopic, from, gs.toJson(eventMap));
+    SessionEvent event = new SessionEvent(headerInfo, eventType, from, to);
+    event.setOwner(from);
+    event.setMsgid(JsonBytesWriter.toJsonArray(msgIds));
+    sendMessage(from, event);
   }
 
   /**
@@ -251,13 +239,12 @@ public class Usermail2NotifyMqService implements SessionEventType, SessionEventK
    */
   public void sendMqTrashMsgNotify(CdtpHeaderDTO headerInfo, String owner,
       List<TrashMailDTO> trashMailDtoList, int eventType) {
-    Map<String, Object> eventMap = new HashMap<>(9);
-    combineNormalParam(headerInfo, eventType, null, null, eventMap);
-    eventMap.put(OWNER, owner);
+    SessionEvent event = new SessionEvent(headerInfo, eventType, null, null);
+    event.setOwner(owner);
     if (trashMailDtoList != null && !trashMailDtoList.isEmpty()) {
-      eventMap.put(ParamsKey.SessionEventKey.TRASH_MSG_INFO, gs.toJson(trashMailDtoList));
+      event.setTrashMsgInfo(gs.toJson(trashMailDtoList));
     }
-    mqAdapter.sendMessage(usermailConfig.mqTopic, owner, gs.toJson(eventMap));
+    sendMessage(owner, event);
   }
 
   /**
@@ -271,29 +258,19 @@ public class Usermail2NotifyMqService implements SessionEventType, SessionEventK
    */
   public void sendMqUpdateSessionExtData(CdtpHeaderDTO headerInfo, String from, String to, String sessionExtData,
       int eventType) {
-    Map<String, Object> eventMap = new HashMap<>(16);
-    this.combineNormalParam(headerInfo, eventType, from, to, eventMap);
-    eventMap.put(SessionEventKey.OWNER, from);
-    eventMap.put(SessionEventKey.SESSION_EXT_DATA, sessionExtData);
-    mqAdapter.sendMessage(usermailConfig.mqTopic, from, gs.toJson(eventMap));
+    SessionEvent event = new SessionEvent(headerInfo, eventType, from, to);
+    event.setOwner(from);
+    event.setSessionExtData(sessionExtData);
+    sendMessage(from, event);
   }
 
   /**
-   * 组装公共参数
+   * 流式序列化事件并发送到notify的topic
    *
-   * @param headerInfo 头信息（header和xPacketId）
-   * @param eventType 事件类型
-   * @param from 发件人
-   * @param to 收件人
-   * @param eventMap 参数集合
+   * @param tag 消息tag
+   * @param event 会话事件
    */
-  private void combineNormalParam(CdtpHeaderDTO headerInfo, int eventType, String from, String to,
-      Map<String, Object> eventMap) {
-    eventMap.put(CDTP_HEADER, headerInfo.getCdtpHeader());
-    eventMap.put(X_PACKET_ID, headerInfo.getxPacketId());
-    eventMap.put(TIMESTAMP, System.currentTimeMillis());
-    eventMap.put(SESSION_MESSAGE_TYPE, eventType);
-    eventMap.put(FROM, from);
-    eventMap.put(TO, to);
+  private void sendMessage(String tag, SessionEvent event) {
+    mqAdapter.sendMessage(usermailConfig.mqTopic, tag, event.toJson());
   }
 }
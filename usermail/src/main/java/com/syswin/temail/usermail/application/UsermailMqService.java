@@ -26,27 +26,35 @@ package com.syswin.temail.usermail.application;
 
 import com.google.gson.Gson;
 import com.syswin.temail.usermail.common.Constants.UsermailAgentEventType;
-import com.syswin.temail.usermail.common.ParamsKey;
-import com.syswin.temail.usermail.common.ParamsKey.SessionEventKey;
 import com.syswin.temail.usermail.configuration.UsermailConfig;
 import com.syswin.temail.usermail.core.IMqAdapter;
+import com.syswin.temail.usermail.core.codec.SessionEventCodec;
+import com.syswin.temail.usermail.core.dto.CdtpHeaderDTO;
+import com.syswin.temail.usermail.core.dto.SessionEvent;
 import com.syswin.temail.usermail.dto.TrashMailDTO;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 @Component
 public class UsermailMqService {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(UsermailMqService.class);
+
   private final IMqAdapter mqAdapter;
   private final UsermailConfig usermailConfig;
   private final Gson gson = new Gson();
+  private final boolean binaryEvent;
 
 
   public UsermailMqService(IMqAdapter mqAdapter, UsermailConfig usermailConfig) {
     this.mqAdapter = mqAdapter;
     this.usermailConfig = usermailConfig;
+    this.binaryEvent = usermailConfig.agentEventBinary && mqAdapter.supportsBinaryMessage();
+    if (usermailConfig.agentEventBinary && !binaryEvent) {
+      LOGGER.warn("mq adapter can not send binary message, usermail agent events are sent as json");
+    }
   }
 
   /**
@@ -58,14 +66,11 @@ public class UsermailMqService {
    */
   public void sendMqRemoveTrash(String owner,
       List<TrashMailDTO> trashMailDtoList, int type) {
-    Map<String, Object> usermailMap = new HashMap<>(7);
-    usermailMap.put(ParamsKey.SessionEventKey.FROM, owner);
-    usermailMap.put(ParamsKey.SessionEventKey.TIMESTAMP, System.currentTimeMillis());
-    usermailMap.put(ParamsKey.SessionEventKey.SESSION_MESSAGE_TYPE, type);
+    SessionEvent event = new SessionEvent(null, type, owner, null);
     if (trashMailDtoList != null && !trashMailDtoList.isEmpty()) {
-      usermailMap.put(ParamsKey.SessionEventKey.TRASH_MSG_INFO, gson.toJson(trashMailDtoList));
+      event.setTrashMsgInfo(gson.toJson(trashMailDtoList));
     }
-    mqAdapter.sendMessage(usermailConfig.mqUserMailAgentTopic, owner, gson.toJson(usermailMap));
+    sendMessage(owner, event);
   }
 
   /**
@@ -80,16 +85,11 @@ public class UsermailMqService {
    */
   public void sendMqDestroyMsg(String xPacketId, String cdtpHeader, String from, String to, String owner,
       String msgId) {
-    Map<String, Object> usermailMap = new HashMap<>(12);
-    usermailMap.put(ParamsKey.SessionEventKey.X_PACKET_ID, xPacketId);
-    usermailMap.put(ParamsKey.SessionEventKey.CDTP_HEADER, cdtpHeader);
-    usermailMap.put(ParamsKey.SessionEventKey.OWNER, owner);
-    usermailMap.put(ParamsKey.SessionEventKey.FROM, from);
-    usermailMap.put(ParamsKey.SessionEventKey.TO, to);
-    usermailMap.put(ParamsKey.SessionEventKey.SESSION_MESSAGE_TYPE, UsermailAgentEventType.DESTROY_AFTER_READ_2);
-    usermailMap.put(ParamsKey.SessionEventKey.MSGID, msgId);
-    usermailMap.put(ParamsKey.SessionEventKey.TIMESTAMP, System.currentTimeMillis());
-    mqAdapter.sendMessage(usermailConfig.mqUserMailAgentTopic, owner, gson.toJson(usermailMap));
+    SessionEvent event = new SessionEvent(new CdtpHeaderDTO(cdtpHeader, xPacketId),
+        UsermailAgentEventType.DESTROY_AFTER_READ_2, from, to);
+    event.setOwner(owner);
+    event.setMsgid(msgId);
+    sendMessage(owner, event);
   }
 
   /**
@@ -104,16 +104,11 @@ public class UsermailMqService {
    */
   public void sendMqRevertMsg(String xPacketId, String cdtpHeader, String from, String to,
       String owner, String msgId) {
-    Map<String, Object> usermailMap = new HashMap<>(12);
-    usermailMap.put(ParamsKey.SessionEventKey.OWNER, owner);
-    usermailMap.put(ParamsKey.SessionEventKey.FROM, from);
-    usermailMap.put(ParamsKey.SessionEventKey.TO, to);
-    usermailMap.put(ParamsKey.SessionEventKey.MSGID, msgId);
-    usermailMap.put(ParamsKey.SessionEventKey.X_PACKET_ID, xPacketId);
-    usermailMap.put(ParamsKey.SessionEventKey.CDTP_HEADER, cdtpHeader);
-    usermailMap.put(ParamsKey.SessionEventKey.TIMESTAMP, System.currentTimeMillis());
-    usermailMap.put(ParamsKey.SessionEventKey.SESSION_MESSAGE_TYPE, UsermailAgentEventType.REVERT_MSG_3);
-    mqAdapter.sendMessage(usermailConfig.mqUserMailAgentTopic, owner, gson.toJson(usermailMap));
+    SessionEvent event = new SessionEvent(new CdtpHeaderDTO(cdtpHeader, xPacketId),
+        UsermailAgentEventType.REVERT_MSG_3, from, to);
+    event.setOwner(owner);
+    event.setMsgid(msgId);
+    sendMessage(owner, event);
   }
 
   /**
@@ -129,18 +124,12 @@ public class UsermailMqService {
    */
   public void sendMqRevertReplyMsg(String xPacketId, String cdtpHeader, String from, String to, String owner,
       String parentMsgReplyId, String msgId) {
-    Map<String, Object> usermailMap = new HashMap<>(13);
-    usermailMap.put(ParamsKey.SessionEventKey.X_PACKET_ID, xPacketId);
-    usermailMap.put(ParamsKey.SessionEventKey.CDTP_HEADER, cdtpHeader);
-    usermailMap.put(ParamsKey.SessionEventKey.OWNER, owner);
-    usermailMap.put(ParamsKey.SessionEventKey.FROM, from);
-    usermailMap.put(ParamsKey.SessionEventKey.TO, to);
-    usermailMap.put(ParamsKey.SessionEventKey.MSGID, msgId);
-    usermailMap.put(ParamsKey.SessionEventKey.REPLY_MSG_PARENT_ID, parentMsgReplyId);
-    usermailMap.put(ParamsKey.SessionEventKey.TIMESTAMP, System.currentTimeMillis());
-    usermailMap.put(ParamsKey.SessionEventKey.SESSION_MESSAGE_TYPE, UsermailAgentEventType.REVERT_REPLY_MSG_4);
-    mqAdapter.sendMessage(usermailConfig.mqUserMailAgentTopic, owner, gson.toJson(usermailMap));
-
+    SessionEvent event = new SessionEvent(new CdtpHeaderDTO(cdtpHeader, xPacketId),
+        UsermailAgentEventType.REVERT_REPLY_MSG_4, from, to);
+    event.setOwner(owner);
+    event.setMsgid(msgId);
+    event.setReplyMsgParentId(parentMsgReplyId);
+    sendMessage(owner, event);
   }
 
   /**
@@ -156,18 +145,12 @@ public class UsermailMqService {
    */
   public void sendMqReplyMsgDestroyAfterRead(String xPacketId, String cdtpHeader, String from, String to,
       String owner, String msgId, String parentMsgId) {
-    Map<String, Object> usermailMap = new HashMap<>(13);
-    usermailMap.put(ParamsKey.SessionEventKey.X_PACKET_ID, xPacketId);
-    usermailMap.put(ParamsKey.SessionEventKey.CDTP_HEADER, cdtpHeader);
-    usermailMap.put(ParamsKey.SessionEventKey.FROM, from);
-    usermailMap.put(ParamsKey.SessionEventKey.TO, to);
-    usermailMap.put(ParamsKey.SessionEventKey.OWNER, owner);
-    usermailMap.put(ParamsKey.SessionEventKey.MSGID, msgId);
-    usermailMap.put(ParamsKey.SessionEventKey.REPLY_MSG_PARENT_ID, parentMsgId);
-    usermailMap.put(ParamsKey.SessionEventKey.TIMESTAMP, System.currentTimeMillis());
-    usermailMap
-        .put(ParamsKey.SessionEventKey.SESSION_MESSAGE_TYPE, UsermailAgentEventType.DESTROY_AFTER_READ_REPLY_MSG_5);
-    mqAdapter.sendMessage(usermailConfig.mqUserMailAgentTopic, owner, gson.toJson(usermailMap));
+    SessionEvent event = new SessionEvent(new CdtpHeaderDTO(cdtpHeader, xPacketId),
+        UsermailAgentEventType.DESTROY_AFTER_READ_REPLY_MSG_5, from, to);
+    event.setOwner(owner);
+    event.setMsgid(msgId);
+    event.setReplyMsgParentId(parentMsgId);
+    sendMessage(owner, event);
   }
 
   /**
@@ -177,12 +160,10 @@ public class UsermailMqService {
    * @param temail 被移除人地址
    */
   public void sendMqRemoveGroupMemberMsg(String groupTemail, String temail) {
-    Map<String, Object> usermailMap = new HashMap<>(7);
-    usermailMap.put(ParamsKey.SessionEventKey.GROUP_TEMAIL, groupTemail);
-    usermailMap.put(ParamsKey.SessionEventKey.TEMAIL, temail);
-    usermailMap.put(ParamsKey.SessionEventKey.TIMESTAMP, System.currentTimeMillis());
-    usermailMap.put(ParamsKey.SessionEventKey.SESSION_MESSAGE_TYPE, UsermailAgentEventType.REMOVE_GROUP_CHAT_MEMBERS_6);
-    mqAdapter.sendMessage(usermailConfig.mqUserMailAgentTopic, groupTemail, gson.toJson(usermailMap));
+    SessionEvent event = new SessionEvent(null, UsermailAgentEventType.REMOVE_GROUP_CHAT_MEMBERS_6, null, null);
+    event.setGroupTemail(groupTemail);
+    event.setTemail(temail);
+    sendMessage(groupTemail, event);
   }
 
   /**
@@ -192,10 +173,19 @@ public class UsermailMqService {
    * @param eventType 事件类型
    */
   public void sendMqClearDomain(String domain, int eventType) {
-    Map<String, Object> params = new HashMap<>(4);
-    params.put(SessionEventKey.TEMAIL_DOMAIN, domain);
-    params.put(SessionEventKey.SESSION_MESSAGE_TYPE, eventType);
-    params.put(SessionEventKey.TIMESTAMP, System.currentTimeMillis());
-    mqAdapter.sendMessage(usermailConfig.mqUserMailAgentTopic, domain, new Gson().toJson(params));
+    SessionEvent event = new SessionEvent(null, eventType, null, null);
+    event.setTemailDomain(domain);
+    sendMessage(domain, event);
+  }
+
+  /**
+   * 序列化事件并发送到usermail agent的topic，开启二进制格式时使用 {@link SessionEventCodec}，否则为json
+   *
+   * @param tag 消息tag
+   * @param event 会话事件
+   */
+  private void sendMessage(String tag, SessionEvent event) {
+    byte[] message = binaryEvent ? SessionEventCodec.encode(event) : event.toJson();
+    mqAdapter.sendMessage(usermailConfig.mqUserMailAgentTopic, tag, message);
   }
 }
@@ -33,6 +33,8 @@ import com.syswin.temail.usermail.common.ResultCodeEnum;
 import com.syswin.temail.usermail.common.SessionEventType;
 import com.syswin.temail.usermail.core.IUsermailAdapter;
 import com.syswin.temail.usermail.core.dto.CdtpHeaderDTO;
+import com.syswin.temail.usermail.core.dto.SeqIdRange;
+import com.syswin.temail.usermail.core.dto.SeqNoAndPkID;
 import com.syswin.temail.usermail.core.exception.IllegalGmArgsException;
 import com.syswin.temail.usermail.core.util.MsgCompressor;
 import com.syswin.temail.usermail.core.util.SeqIdFilter;
@@ -49,6 +51,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
@@ -65,13 +68,19 @@ public class UsermailMsgReplyService {
   private final MsgCompressor msgCompressor;
   private final UsermailMqService usermailMqService;
   private final ConvertMsgService convertMsgService;
+  private final ReplyCountWriteBehind replyCountWriteBehind;
+  /**
+   * 断层seqId过滤条件下推到数据库查询，只返回缺失的回复消息
+   */
+  @Value("${app.usermailagent.seqIdFilter.pushdown:false}")
+  private boolean seqIdFilterPushdown;
 
   @Autowired
   public UsermailMsgReplyService(IUsermailMsgDB usermailMsgDB, IUsermailAdapter usermailAdapter,
       IUsermailMsgReplyDB usermailMsgReplyDB, Usermail2NotifyMqService usermail2NotifyMqService,
       UsermailSessionService usermailSessionService,
       MsgCompressor msgCompressor, UsermailMqService usermailMqService,
-      ConvertMsgService convertMsgService) {
+      ConvertMsgService convertMsgService, ReplyCountWriteBehind replyCountWriteBehind) {
     this.usermailMsgDB = usermailMsgDB;
     this.usermailAdapter = usermailAdapter;
     this.usermailMsgReplyDB = usermailMsgReplyDB;
@@ -80,6 +89,7 @@ public class UsermailMsgReplyService {
     this.msgCompressor = msgCompressor;
     this.usermailMqService = usermailMqService;
     this.convertMsgService = convertMsgService;
+    this.replyCountWriteBehind = replyCountWriteBehind;
   }
 
   /**
@@ -101,14 +111,15 @@ public class UsermailMsgReplyService {
       String msgId, String parentMsgId, int type, int attachmentSize, String owner) {
     this.msgReplyTypeValidate(parentMsgId, owner);
     String sessionid = usermailSessionService.getSessionID(from, to);
-    long msgReplySeqNo = usermailAdapter.getMsgReplySeqNo(parentMsgId, owner);
-    UsermailMsgReplyDO usermailMsgReply = new UsermailMsgReplyDO(usermailAdapter.getMsgReplyPkID(), parentMsgId, msgId,
+    SeqNoAndPkID seqNoAndPkID = usermailAdapter.getMsgReplySeqNoAndPkID(parentMsgId, owner);
+    long msgReplySeqNo = seqNoAndPkID.getSeqNo();
+    UsermailMsgReplyDO usermailMsgReply = new UsermailMsgReplyDO(seqNoAndPkID.getPkID(), parentMsgId, msgId,
         from, to, msgReplySeqNo, "", TemailStatus.STATUS_NORMAL_0, type, owner, sessionid,
         msgCompressor.zipWithDecode(message));
     usermailMsgReplyDB.insert(usermailMsgReply);
 
     // 更新最新回复消息id
-    usermailMsgDB.updateReplyCountAndLastReplyMsgid(parentMsgId, owner, ReplyCountEnum.INCR.value(), msgId);
+    replyCountWriteBehind.add(parentMsgId, owner, ReplyCountEnum.INCR.value(), msgId);
     LOGGER.debug("new rely created, update msgId={} lastReplyMsgid={}", parentMsgId, msgId);
     usermail2NotifyMqService
         .sendMqSaveMsgReply(cdtpHeaderDto, from, to, owner, msgId, message, msgReplySeqNo, attachmentSize,
@@ -146,6 +157,7 @@ public class UsermailMsgReplyService {
           xPacketId, cdtpHeader, from, to, msgId, replyMsgParentId, owner);
       return;
     }
+    replyCountWriteBehind.flush(replyMsgParentId, owner);
     UsermailDO usermail = usermailMsgDB.selectByMsgidAndOwner(replyMsgParentId, owner);
     if (usermail != null) {
       this.updateUsermailLastReplyId(usermail, replyMsgParentId, msgId);
@@ -192,6 +204,7 @@ public class UsermailMsgReplyService {
     if (CollectionUtils.isEmpty(msgIds)) {
       throw new IllegalGmArgsException(ResultCodeEnum.ERROR_REQUEST_PARAM);
     }
+    replyCountWriteBehind.flush(parentMsgReplyId, from);
     UsermailDO usermail = this.msgReplyTypeValidate(parentMsgReplyId, from);
     LOGGER.info("Label-delete-usermail-reply: delete reply messages，from = {},to = {},msgIds = {}", from, to, msgIds);
     int count = usermailMsgReplyDB.deleteMsgReplysByMsgIds(from, msgIds);
@@ -237,10 +250,18 @@ public class UsermailMsgReplyService {
     dto.setParentMsgid(parentMsgid);
     dto.setSignal(signal);
     dto.setOwner(owner);
+    boolean isAfter = "after".equals(signal);
+    if (seqIdFilterPushdown && StringUtils.isNotEmpty(filterSeqIds)) {
+      List<SeqIdRange> seqIdRanges = SeqIdFilter.unbounded(filterSeqIds, isAfter).getRanges();
+      if (seqIdRanges.isEmpty()) {
+        return new ArrayList<>(0);
+      }
+      dto.setSeqIdRanges(seqIdRanges);
+      return this.convertMsgService.convertReplyMsg(usermailMsgReplyDB.listMsgReplys(dto));
+    }
     List<UsermailMsgReplyDO> data = this.convertMsgService.convertReplyMsg(usermailMsgReplyDB.listMsgReplys(dto));
     List<UsermailMsgReplyDO> dataFilter = new ArrayList<>();
     if (StringUtils.isNotEmpty(filterSeqIds) && !CollectionUtils.isEmpty(data)) {
-      boolean isAfter = "after".equals(signal);
       long beginSeqId = data.get(0).getSeqNo();
       long endSeqId = data.get(data.size() - 1).getSeqNo();
 
@@ -277,6 +298,7 @@ public class UsermailMsgReplyService {
           xPacketId, cdtpHeader, from, to, msgId, owner);
       return;
     }
+    replyCountWriteBehind.flush(replyMsgParentId, owner);
     UsermailDO usermail = usermailMsgDB.selectByMsgidAndOwner(replyMsgParentId, owner);
     if (usermail != null) {
       updateUsermailLastReplyId(usermail, replyMsgParentId, msgId);
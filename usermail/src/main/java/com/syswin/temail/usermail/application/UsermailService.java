@@ -26,19 +26,25 @@ package com.syswin.temail.usermail.application;
 
 
 import static com.syswin.temail.usermail.common.ParamsKey.SessionEventKey.PACKET_ID_SUFFIX;
+import static com.syswin.temail.usermail.common.ResultCodeEnum.ERROR_ILLEGAL_STORE_TYPE;
 import static com.syswin.temail.usermail.common.ResultCodeEnum.ERROR_REQUEST_PARAM;
 
-import com.google.gson.Gson;
 import com.syswin.temail.usermail.common.Constants.TemailArchiveStatus;
 import com.syswin.temail.usermail.common.Constants.TemailStatus;
+import com.syswin.temail.usermail.common.Constants.TemailStoreType;
 import com.syswin.temail.usermail.common.Constants.TemailType;
 import com.syswin.temail.usermail.common.Constants.UsermailAgentEventType;
 import com.syswin.temail.usermail.common.SessionEventType;
 import com.syswin.temail.usermail.core.IUsermailAdapter;
 import com.syswin.temail.usermail.core.dto.CdtpHeaderDTO;
 import com.syswin.temail.usermail.core.dto.Meta;
+import com.syswin.temail.usermail.core.dto.ReplyCountDeltaDTO;
+import com.syswin.temail.usermail.core.dto.SeqIdRange;
+import com.syswin.temail.usermail.core.dto.SeqNoAndPkID;
 import com.syswin.temail.usermail.core.exception.IllegalGmArgsException;
+import com.syswin.temail.usermail.core.json.JsonBytesWriter;
 import com.syswin.temail.usermail.core.util.MsgCompressor;
+import com.syswin.temail.usermail.core.util.NamedThreadFactory;
 import com.syswin.temail.usermail.core.util.SeqIdFilter;
 import com.syswin.temail.usermail.domains.UsermailBoxDO;
 import com.syswin.temail.usermail.domains.UsermailDO;
@@ -47,6 +53,8 @@ import com.syswin.temail.usermail.dto.DeleteMailBoxQueryDTO;
 import com.syswin.temail.usermail.dto.MailboxDTO;
 import com.syswin.temail.usermail.dto.QueryTrashDTO;
 import com.syswin.temail.usermail.dto.RevertMailDTO;
+import com.syswin.temail.usermail.dto.SyncCursorDTO;
+import com.syswin.temail.usermail.dto.SyncMailsDTO;
 import com.syswin.temail.usermail.dto.TrashMailDTO;
 import com.syswin.temail.usermail.dto.UmQueryDTO;
 import com.syswin.temail.usermail.dto.UpdateSessionExtDataDTO;
@@ -55,11 +63,22 @@ import com.syswin.temail.usermail.infrastructure.domain.IUsermailMsgReplyDB;
 import com.syswin.temail.usermail.infrastructure.domain.IUsermailMsgDB;
 import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,6 +93,10 @@ import org.springframework.util.CollectionUtils;
 public class UsermailService {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(UsermailService.class);
+  /**
+   * 查询会话时不区分归档状态
+   */
+  private static final int ALL_ARCHIVE_STATUS = -1;
   private final IUsermailMsgDB usermailMsgDB;
   private final IUsermailBoxDB usermailBoxDB;
   private final IUsermailMsgReplyDB usermailMsgReplyDB;
@@ -83,9 +106,33 @@ public class UsermailService {
   private final UsermailMqService usermailMqService;
   private final MsgCompressor msgCompressor;
   private final ConvertMsgService convertMsgService;
+  private final ReplyCountWriteBehind replyCountWriteBehind;
 
   @Value("${app.usermailagent.mailboxes.topN:50}")
   private Integer topN;
+  @Value("${app.usermailagent.mailboxes.recency.enabled:false}")
+  private boolean sessionRecencyEnabled;
+  /**
+   * 断层seqId过滤条件下推到数据库查询，只返回缺失的消息
+   */
+  @Value("${app.usermailagent.seqIdFilter.pushdown:false}")
+  private boolean seqIdFilterPushdown;
+  /**
+   * 批量同步时并发查询各会话的线程数（所有请求共享），0为在请求线程中逐个查询
+   */
+  @Value("${app.usermailagent.batchSync.threads:8}")
+  private int batchSyncThreads;
+  /**
+   * 批量同步单次请求的会话数上限
+   */
+  @Value("${app.usermailagent.batchSync.maxSessions:50}")
+  private int batchSyncMaxSessions;
+  private ExecutorService batchSyncExecutor;
+  /**
+   * 批量发送单次请求的消息副本数上限
+   */
+  @Value("${app.usermailagent.batchSend.maxMails:100}")
+  private int batchSendMaxMails;
 
 
   @Autowired
@@ -95,7 +142,8 @@ public class UsermailService {
       UsermailSessionService usermailSessionService, Usermail2NotifyMqService usermail2NotifyMqService,
       UsermailMqService usermailMqService,
       MsgCompressor msgCompressor,
-      ConvertMsgService convertMsgService) {
+      ConvertMsgService convertMsgService,
+      ReplyCountWriteBehind replyCountWriteBehind) {
     this.usermailMsgDB = usermailMsgDB;
     this.usermailBoxDB = usermailBoxDB;
     this.usermailMsgReplyDB = usermailMsgReplyDB;
@@ -105,6 +153,24 @@ public class UsermailService {
     this.usermailMqService = usermailMqService;
     this.msgCompressor = msgCompressor;
     this.convertMsgService = convertMsgService;
+    this.replyCountWriteBehind = replyCountWriteBehind;
+  }
+
+  @PostConstruct
+  public void init() {
+    if (batchSyncThreads > 0) {
+      // 队列满时由请求线程执行查询，重连高峰时自然限流
+      batchSyncExecutor = new ThreadPoolExecutor(batchSyncThreads, batchSyncThreads, 0L, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(batchSyncThreads * 32), new NamedThreadFactory("usermail-batch-sync"),
+          new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+  }
+
+  @PreDestroy
+  public void destroy() {
+    if (batchSyncExecutor != null) {
+      batchSyncExecutor.shutdown();
+    }
   }
 
   /**
@@ -125,6 +191,9 @@ public class UsermailService {
     if (dbBox == null) {
       dbBox = new UsermailBoxDO(usermailAdapter.getPkID(), sessionId, target, owner, sessionExtData);
       usermailBoxDB.saveUsermailBox(dbBox);
+      if (sessionRecencyEnabled) {
+        usermailAdapter.updateSessionRecency(owner, target, 0L);
+      }
     }
     return dbBox;
   }
@@ -143,27 +212,177 @@ public class UsermailService {
       String other) {
     String from = usermail.getFrom();
     String to = usermail.getTo();
-    String msgId = usermail.getMsgId();
-    String author = usermail.getAuthor();
+    SeqNoAndPkID seqNoAndPkID = usermailAdapter.getMsgSeqNoAndPkID(from, to, owner);
+    String sessionId = usermailSessionService.getSessionID(from, to);
+    UsermailBoxDO dbBox = this.saveUsermailBoxInfo(sessionId, from, to, owner, usermail.getSessionExtData());
+    UsermailDO mail = buildUsermail(usermail, owner, sessionId, seqNoAndPkID);
+    usermailMsgDB.insertUsermail(mail);
+    usermailBoxDB.updateLastMsg(owner, dbBox.getMail2(), mail.getMsgid(), mail.getSeqNo());
+    return afterSaveMail(headerInfo, usermail, owner, other, mail, dbBox);
+  }
+
+  /**
+   * 批量发送单聊消息：同一条消息存入各收件箱的副本（收件人和发件人各一份，或群发的多份）在同一事务中写入。
+   * <p>
+   * 数据库操作按批次合并：会话查询、新会话插入、消息插入、会话最新消息更新各一条sql。
+   * 序列号分配、会话最新消息id、会话排序索引及消息通知仍按副本逐条访问redis和MQ。
+   *
+   * @param headerInfo 头信息（header和xPacketId）
+   * @param usermails 各消息副本，按storeType确定消息所属人
+   * @return 与消息副本一一对应的map(key包括 : msgId 、 seqId)
+   */
+  @Transactional
+  public List<Map<String, Object>> sendMails(CdtpHeaderDTO headerInfo, List<CreateUsermailDTO> usermails) {
+    if (usermails.size() > batchSendMaxMails) {
+      LOGGER.warn("batch send mails exceed limit: size={}", usermails.size());
+      throw new IllegalGmArgsException(ERROR_REQUEST_PARAM);
+    }
+    List<String> owners = new ArrayList<>(usermails.size());
+    List<UsermailBoxDO> boxKeys = new ArrayList<>(usermails.size());
+    List<UsermailDO> mails = new ArrayList<>(usermails.size());
+    for (CreateUsermailDTO usermail : usermails) {
+      String from = usermail.getFrom();
+      String to = usermail.getTo();
+      String owner = resolveOwner(usermail);
+      SeqNoAndPkID seqNoAndPkID = usermailAdapter.getMsgSeqNoAndPkID(from, to, owner);
+      String sessionId = usermailSessionService.getSessionID(from, to);
+      owners.add(owner);
+      boxKeys.add(new UsermailBoxDO(0L, sessionId, owner.equals(from) ? to : from, owner,
+          usermail.getSessionExtData()));
+      mails.add(buildUsermail(usermail, owner, sessionId, seqNoAndPkID));
+    }
+    List<UsermailBoxDO> boxes = saveUsermailBoxInfos(boxKeys);
+    usermailMsgDB.batchInsertUsermails(mails);
+    updateLastMsgs(boxes, mails);
+    List<Map<String, Object>> results = new ArrayList<>(usermails.size());
+    for (int i = 0; i < usermails.size(); i++) {
+      CreateUsermailDTO usermail = usermails.get(i);
+      String owner = owners.get(i);
+      String other = owner.equals(usermail.getFrom()) ? usermail.getTo() : usermail.getFrom();
+      results.add(afterSaveMail(headerInfo, usermail, owner, other, mails.get(i), boxes.get(i)));
+    }
+    return results;
+  }
+
+  /**
+   * 批量保存会话：一次查询已有会话，不存在的会话合并为一条insert语句插入
+   *
+   * @param boxKeys 待保存的会话，与消息副本一一对应，同一会话可以出现多次
+   * @return 与入参一一对应的数据库会话信息
+   */
+  private List<UsermailBoxDO> saveUsermailBoxInfos(List<UsermailBoxDO> boxKeys) {
+    Map<List<String>, UsermailBoxDO> boxMap = new HashMap<>(boxKeys.size() * 4 / 3 + 1);
+    for (UsermailBoxDO dbBox : usermailBoxDB.listUsermailBoxsByOwnerAndMail2Pairs(boxKeys)) {
+      boxMap.put(Arrays.asList(dbBox.getOwner(), dbBox.getMail2()), dbBox);
+    }
+    List<UsermailBoxDO> newBoxes = new ArrayList<>();
+    List<UsermailBoxDO> boxes = new ArrayList<>(boxKeys.size());
+    for (UsermailBoxDO boxKey : boxKeys) {
+      List<String> key = Arrays.asList(boxKey.getOwner(), boxKey.getMail2());
+      UsermailBoxDO dbBox = boxMap.get(key);
+      if (dbBox == null) {
+        dbBox = new UsermailBoxDO(usermailAdapter.getPkID(), boxKey.getSessionid(), boxKey.getMail2(),
+            boxKey.getOwner(), boxKey.getSessionExtData());
+        boxMap.put(key, dbBox);
+        newBoxes.add(dbBox);
+      }
+      boxes.add(dbBox);
+    }
+    usermailBoxDB.batchSaveUsermailBox(newBoxes);
+    if (sessionRecencyEnabled) {
+      for (UsermailBoxDO newBox : newBoxes) {
+        usermailAdapter.updateSessionRecency(newBox.getOwner(), newBox.getMail2(), 0L);
+      }
+    }
+    return boxes;
+  }
+
+  /**
+   * 批量更新会话的最新消息摘要，同一会话有多条消息时取seqNo最大的一条
+   *
+   * @param boxes 与消息一一对应的会话信息
+   * @param mails 已保存的单聊消息
+   */
+  private void updateLastMsgs(List<UsermailBoxDO> boxes, List<UsermailDO> mails) {
+    Map<List<String>, UsermailBoxDO> lastMsgs = new LinkedHashMap<>(boxes.size() * 4 / 3 + 1);
+    for (int i = 0; i < boxes.size(); i++) {
+      UsermailBoxDO box = boxes.get(i);
+      UsermailDO mail = mails.get(i);
+      List<String> key = Arrays.asList(box.getOwner(), box.getMail2());
+      UsermailBoxDO lastMsg = lastMsgs.get(key);
+      if (lastMsg == null || lastMsg.getLastSeqNo() < mail.getSeqNo()) {
+        lastMsg = new UsermailBoxDO(box.getOwner(), box.getMail2(), null);
+        lastMsg.setLastMsgid(mail.getMsgid());
+        lastMsg.setLastSeqNo(mail.getSeqNo());
+        lastMsgs.put(key, lastMsg);
+      }
+    }
+    usermailBoxDB.batchUpdateLastMsg(new ArrayList<>(lastMsgs.values()));
+  }
+
+  /**
+   * 按storeType确定消息所属人，storeType为发件人时清空sessionExtData
+   *
+   * @param usermail 创建temail时消息信息
+   * @return 消息所属人
+   */
+  public String resolveOwner(CreateUsermailDTO usermail) {
+    int storeType = usermail.getStoreType();
+    if (storeType == TemailStoreType.STORE_TYPE_TO_1) {
+      // owner消息所属人 store_type_to_1表示存收件人收件箱，所以owner为to即为收件人
+      return usermail.getTo();
+    }
+    if (storeType == TemailStoreType.STORE_TYPE_FROM_2) {
+      // owner为发件人时，首次发消息发件人获取不到收件人的头像昵称信息，可忽略传入的参数，避免误存
+      usermail.setSessionExtData("");
+      return usermail.getFrom();
+    }
+    LOGGER.warn("storeType is error:usermail:{},storeType={}", usermail, storeType);
+    throw new IllegalGmArgsException(ERROR_ILLEGAL_STORE_TYPE);
+  }
+
+  /**
+   * 组装待保存的单聊消息
+   *
+   * @param usermail 创建temail时消息信息
+   * @param owner 消息所属人
+   * @param sessionId 会话ID
+   * @param seqNoAndPkID 消息序列号和主键
+   * @return 单聊消息
+   */
+  private UsermailDO buildUsermail(CreateUsermailDTO usermail, String owner, String sessionId,
+      SeqNoAndPkID seqNoAndPkID) {
     List<String> filter = usermail.getFilter();
     String filterStr = null;
     if (filter != null && !filter.isEmpty()) {
       filterStr = String.join(",", filter);
     }
-
-    int attachmentSize = usermail.getAttachmentSize();
-    long seqNo = usermailAdapter.getMsgSeqNo(from, to, owner);
-    String sessionId = usermailSessionService.getSessionID(from, to);
-    UsermailBoxDO dbBox = this.saveUsermailBoxInfo(sessionId, from, to, owner, usermail.getSessionExtData());
-    long pkid = usermailAdapter.getPkID();
-    UsermailDO mail = new UsermailDO(pkid, usermail.getMsgId(), sessionId,
-        from, to, TemailStatus.STATUS_NORMAL_0, usermail.getType(), owner, "",
-        seqNo, msgCompressor.zipWithDecode(usermail.getMsgData()), author, filterStr);
+    UsermailDO mail = new UsermailDO(seqNoAndPkID.getPkID(), usermail.getMsgId(), sessionId,
+        usermail.getFrom(), usermail.getTo(), TemailStatus.STATUS_NORMAL_0, usermail.getType(), owner, "",
+        seqNoAndPkID.getSeqNo(), msgCompressor.zipWithDecode(usermail.getMsgData()), usermail.getAuthor(),
+        filterStr);
     Meta meta = usermail.getMeta();
     if (meta != null) {
       BeanUtils.copyProperties(meta, mail);
     }
-    usermailMsgDB.insertUsermail(mail);
+    return mail;
+  }
+
+  /**
+   * 消息入库并更新会话最新消息后，更新redis并发送通知
+   *
+   * @param headerInfo 头信息（header和xPacketId）
+   * @param usermail 创建temail时消息信息
+   * @param owner 消息所属人
+   * @param other 收件人
+   * @param mail 已保存的单聊消息
+   * @param dbBox 当前数据库的会话信息
+   * @return map(key包括 : msgId 、 seqId)
+   */
+  private Map<String, Object> afterSaveMail(CdtpHeaderDTO headerInfo, CreateUsermailDTO usermail, String owner,
+      String other, UsermailDO mail, UsermailBoxDO dbBox) {
+    String msgId = usermail.getMsgId();
+    long seqNo = mail.getSeqNo();
     int eventType;
 
     switch (usermail.getType()) {
@@ -178,14 +397,18 @@ public class UsermailService {
         break;
     }
     usermail2NotifyMqService
-        .sendMqMsgSaveMail(headerInfo, from, to, owner, msgId, usermail.getMsgData(), seqNo, eventType, attachmentSize,
-            author, filter, dbBox.getSessionExtData());
-    usermailAdapter.setLastMsgId(owner, other, msgId);
+        .sendMqMsgSaveMail(headerInfo, usermail.getFrom(), usermail.getTo(), owner, msgId, usermail.getMsgData(),
+            seqNo, eventType, usermail.getAttachmentSize(), usermail.getAuthor(), usermail.getFilter(),
+            dbBox.getSessionExtData());
+    usermailAdapter.setLastMsgId(owner, other, msgId, seqNo);
+    if (sessionRecencyEnabled) {
+      usermailAdapter.updateSessionRecency(owner, dbBox.getMail2(), System.currentTimeMillis());
+    }
     Map<String, Object> result = new HashMap<>(2);
     final String msgIdKey = "msgId";
     final String seqIdKey = "seqId";
     result.put(msgIdKey, msgId);
-    result.put(seqIdKey, mail.getSeqNo());
+    result.put(seqIdKey, seqNo);
     return result;
   }
 
@@ -204,6 +427,92 @@ public class UsermailService {
       String signal) {
     LOGGER.info("GetMails action input param from={}, to={}, fromSeqNo={}, pageSize={}, " +
             "filterSeqIds={}", from, to, fromSeqNo, pageSize, filterSeqIds);
+    UmQueryDTO umQueryDto = buildUmQuery(from, to, fromSeqNo, pageSize, signal);
+    final String afterFetch = "after";
+    boolean isAfter = afterFetch.equals(signal);
+    if (seqIdFilterPushdown && StringUtils.isNotEmpty(filterSeqIds)) {
+      return convertMsgService.convertMsg(listUsermailsInSeqIdRanges(umQueryDto, filterSeqIds, isAfter));
+    }
+    List<UsermailDO> mails = convertMsgService.convertMsg(usermailMsgDB.listUsermails(umQueryDto));
+    return filterBySeqIds(mails, filterSeqIds, isAfter);
+  }
+
+  /**
+   * 批量同步多个单聊会话的消息：各会话并发查询，查询结果合并后统一解压
+   *
+   * @param from 发件人
+   * @param cursors 各会话的拉取位置
+   * @return 与拉取位置一一对应的会话消息
+   */
+  public List<SyncMailsDTO> batchGetMails(String from, List<SyncCursorDTO> cursors) {
+    LOGGER.info("BatchGetMails action input param from={}, cursors={}", from, cursors);
+    if (cursors.size() > batchSyncMaxSessions) {
+      LOGGER.warn("batch sync sessions exceed limit: from={}, size={}", from, cursors.size());
+      throw new IllegalGmArgsException(ERROR_REQUEST_PARAM);
+    }
+    List<CompletableFuture<List<UsermailDO>>> futures = new ArrayList<>(cursors.size());
+    for (SyncCursorDTO cursor : cursors) {
+      if (batchSyncExecutor == null) {
+        futures.add(CompletableFuture.completedFuture(listUnconvertedMails(from, cursor)));
+      } else {
+        futures.add(CompletableFuture.supplyAsync(() -> listUnconvertedMails(from, cursor), batchSyncExecutor));
+      }
+    }
+    List<List<UsermailDO>> pages = new ArrayList<>(cursors.size());
+    List<UsermailDO> allMails = new ArrayList<>();
+    try {
+      for (CompletableFuture<List<UsermailDO>> future : futures) {
+        List<UsermailDO> page = future.join();
+        pages.add(page);
+        allMails.addAll(page);
+      }
+    } catch (CompletionException e) {
+      throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+    }
+    convertMsgService.convertMsg(allMails);
+    List<SyncMailsDTO> result = new ArrayList<>(cursors.size());
+    for (int i = 0; i < cursors.size(); i++) {
+      result.add(new SyncMailsDTO(cursors.get(i).getTo(), pages.get(i)));
+    }
+    return result;
+  }
+
+  /**
+   * 查询单个会话待同步的消息并按断层seqId过滤，不解压消息体
+   *
+   * @param from 发件人
+   * @param cursor 会话拉取位置
+   * @return 未解压的会话消息
+   */
+  private List<UsermailDO> listUnconvertedMails(String from, SyncCursorDTO cursor) {
+    UmQueryDTO umQueryDto = buildUmQuery(from, cursor.getTo(), cursor.getSeqId(), cursor.getPageSize(),
+        cursor.getSignal());
+    String filterSeqIds = cursor.getFilterSeqIds();
+    boolean isAfter = "after".equals(cursor.getSignal());
+    if (seqIdFilterPushdown && StringUtils.isNotEmpty(filterSeqIds)) {
+      return listUsermailsInSeqIdRanges(umQueryDto, filterSeqIds, isAfter);
+    }
+    return filterBySeqIds(usermailMsgDB.listUsermails(umQueryDto), filterSeqIds, isAfter);
+  }
+
+  /**
+   * 断层seqId过滤条件下推到数据库，只查询缺失的消息
+   *
+   * @param umQueryDto 查询条件
+   * @param filterSeqIds 过滤断层seqId
+   * @param isAfter 是否向后拉取
+   * @return 未解压的会话消息
+   */
+  private List<UsermailDO> listUsermailsInSeqIdRanges(UmQueryDTO umQueryDto, String filterSeqIds, boolean isAfter) {
+    List<SeqIdRange> seqIdRanges = SeqIdFilter.unbounded(filterSeqIds, isAfter).getRanges();
+    if (seqIdRanges.isEmpty()) {
+      return new ArrayList<>(0);
+    }
+    umQueryDto.setSeqIdRanges(seqIdRanges);
+    return usermailMsgDB.listUsermails(umQueryDto);
+  }
+
+  private UmQueryDTO buildUmQuery(String from, String to, long fromSeqNo, int pageSize, String signal) {
     UmQueryDTO umQueryDto = new UmQueryDTO();
     umQueryDto.setFromSeqNo(fromSeqNo);
     umQueryDto.setSignal(signal);
@@ -211,22 +520,30 @@ public class UsermailService {
     umQueryDto.setSessionid(sessionId);
     umQueryDto.setPageSize(pageSize);
     umQueryDto.setOwner(from);
-    List<UsermailDO> mails = convertMsgService.convertMsg(usermailMsgDB.listUsermails(umQueryDto));
+    return umQueryDto;
+  }
+
+  /**
+   * 按断层seqId过滤拉取到的消息，过滤范围裁剪到本页消息的seqId范围
+   *
+   * @param mails 拉取到的消息
+   * @param filterSeqIds 过滤断层seqId
+   * @param isAfter 是否向后拉取
+   * @return 过滤后的消息
+   */
+  private List<UsermailDO> filterBySeqIds(List<UsermailDO> mails, String filterSeqIds, boolean isAfter) {
+    if (StringUtils.isEmpty(filterSeqIds) || CollectionUtils.isEmpty(mails)) {
+      return mails;
+    }
+    long beginSeqId = mails.get(0).getSeqNo();
+    long endSeqId = mails.get(mails.size() - 1).getSeqNo();
+
+    SeqIdFilter seqIdFilter = new SeqIdFilter(filterSeqIds, isAfter, beginSeqId, endSeqId);
     List<UsermailDO> resultFilter = new ArrayList<>();
-    if (StringUtils.isNotEmpty(filterSeqIds) && !CollectionUtils.isEmpty(mails)) {
-      final String afterFetch = "after";
-      boolean isAfter = afterFetch.equals(signal);
-      long beginSeqId = mails.get(0).getSeqNo();
-      long endSeqId = mails.get(mails.size() - 1).getSeqNo();
-
-      SeqIdFilter seqIdFilter = new SeqIdFilter(filterSeqIds, isAfter, beginSeqId, endSeqId);
-      for (UsermailDO mail : mails) {
-        if (seqIdFilter.filter(mail.getSeqNo())) {
-          resultFilter.add(mail);
-        }
+    for (UsermailDO mail : mails) {
+      if (seqIdFilter.filter(mail.getSeqNo())) {
+        resultFilter.add(mail);
       }
-    } else {
-      resultFilter = mails;
     }
     return resultFilter;
   }
@@ -284,19 +601,24 @@ public class UsermailService {
     Map<String, String> localMailBoxes = CollectionUtils.isEmpty(usermailBoxes) ? new HashMap<>(0) : usermailBoxes;
     List<UsermailBoxDO> dbBoxes = usermailBoxDB.listUsermailBoxsByOwner(from, archiveStatus);
     List<MailboxDTO> mailBoxes = new ArrayList<>(dbBoxes.size());
-    List<UsermailDO> lastUsermail;
+    List<String> tos = new ArrayList<>(dbBoxes.size());
+    for (UsermailBoxDO dbBox : dbBoxes) {
+      tos.add(dbBox.getMail2());
+    }
+    Map<String, String> lastMsgIds = usermailAdapter.getLastMsgIds(from, tos);
+    List<UsermailBoxDO> changedBoxes = new ArrayList<>(dbBoxes.size());
     for (UsermailBoxDO dbBox : dbBoxes) {
       String to = dbBox.getMail2();
-      if (Objects.equals(usermailAdapter.getLastMsgId(from, to), localMailBoxes.get(to))) {
+      if (Objects.equals(lastMsgIds.get(to), localMailBoxes.get(to))) {
         // 最新的msgId相同，不做处理
         continue;
       }
+      changedBoxes.add(dbBox);
+    }
+    Map<String, UsermailDO> lastUsermails = this.mapLastUsermails(from, changedBoxes);
+    for (UsermailBoxDO dbBox : changedBoxes) {
       MailboxDTO mailBox = new MailboxDTO();
-      UmQueryDTO umQuery = new UmQueryDTO(dbBox.getSessionid(), from);
-      lastUsermail = convertMsgService.convertMsg(usermailMsgDB.listLastUsermails(umQuery));
-      if (!CollectionUtils.isEmpty(lastUsermail)) {
-        mailBox.setLastMsg(lastUsermail.get(0));
-      }
+      mailBox.setLastMsg(lastUsermails.get(dbBox.getSessionid()));
       mailBox.setTo(dbBox.getMail2());
       mailBox.setArchiveStatus(dbBox.getArchiveStatus());
       mailBox.setSessionExtData(dbBox.getSessionExtData());
@@ -311,27 +633,112 @@ public class UsermailService {
    * @param from 会话拥有者
    * @param archiveStatus 归档状态
    * @param pageSize 拉取数量上限
-   * @return 倒序排序后的会话列表
+   * @return 按最新消息时间倒序排序后的会话列表
    */
   public List<MailboxDTO> getMailBoxes(String from, int archiveStatus, int pageSize) {
-    List<UsermailBoxDO> usermailBoxDOes = usermailBoxDB.selectTopNByOwner(from, archiveStatus);
+    pageSize = pageSize > topN ? topN : pageSize;
+    List<UsermailBoxDO> usermailBoxDOes = sessionRecencyEnabled
+        ? this.selectTopNByRecency(from, archiveStatus, pageSize)
+        : usermailBoxDB.selectTopNByOwner(from, archiveStatus, pageSize);
     List<MailboxDTO> mailboxes = new ArrayList<>(usermailBoxDOes.size());
-    List<UsermailDO> lastUsermail;
+    Map<String, UsermailDO> lastUsermails = this.mapLastUsermails(from, usermailBoxDOes);
     for (UsermailBoxDO usermailBoxDO : usermailBoxDOes) {
       MailboxDTO mailBox = new MailboxDTO();
-      UmQueryDTO umQuery = new UmQueryDTO(usermailBoxDO.getSessionid(), from);
-      lastUsermail = convertMsgService.convertMsg(usermailMsgDB.listLastUsermails(umQuery));
-      if (!CollectionUtils.isEmpty(lastUsermail)) {
-        mailBox.setLastMsg(lastUsermail.get(0));
-      }
+      mailBox.setLastMsg(lastUsermails.get(usermailBoxDO.getSessionid()));
       mailBox.setTo(usermailBoxDO.getMail2());
       mailBox.setSessionExtData(usermailBoxDO.getSessionExtData());
       mailBox.setArchiveStatus(usermailBoxDO.getArchiveStatus());
       mailboxes.add(mailBox);
     }
-    Collections.sort(mailboxes, new MailboxComparator());
-    pageSize = pageSize > topN ? topN : pageSize;
-    return mailboxes.size() > pageSize ? mailboxes.subList(0, pageSize) : mailboxes;
+    return mailboxes;
+  }
+
+  /**
+   * 通过redis中的会话最新消息时间索引拉取topN会话列表，索引不存在时从数据库重建
+   *
+   * @param from 会话拥有者
+   * @param archiveStatus 归档状态
+   * @param pageSize 拉取数量上限
+   * @return 按最新消息时间倒序的会话列表
+   */
+  private List<UsermailBoxDO> selectTopNByRecency(String from, int archiveStatus, int pageSize) {
+    List<UsermailBoxDO> topBoxes = new ArrayList<>(pageSize);
+    long start = 0;
+    while (topBoxes.size() < pageSize) {
+      List<String> mail2s = usermailAdapter.listRecentSessions(from, start, start + pageSize - 1);
+      if (mail2s == null) {
+        this.rebuildSessionRecency(from);
+        return usermailBoxDB.selectTopNByOwner(from, archiveStatus, pageSize);
+      }
+      if (mail2s.isEmpty()) {
+        break;
+      }
+      Map<String, UsermailBoxDO> boxes = new HashMap<>(mail2s.size() * 4 / 3 + 1);
+      for (UsermailBoxDO box : usermailBoxDB.listUsermailBoxsByOwnerAndMail2s(from, mail2s)) {
+        boxes.put(box.getMail2(), box);
+      }
+      for (String mail2 : mail2s) {
+        UsermailBoxDO box = boxes.get(mail2);
+        // 索引中可能残留已删除的会话，或者尚未提交的新会话，直接跳过
+        if (box == null || (archiveStatus != ALL_ARCHIVE_STATUS && box.getArchiveStatus() != archiveStatus)) {
+          continue;
+        }
+        topBoxes.add(box);
+        if (topBoxes.size() == pageSize) {
+          break;
+        }
+      }
+      if (mail2s.size() < pageSize) {
+        break;
+      }
+      start += pageSize;
+    }
+    return topBoxes;
+  }
+
+  /**
+   * 使用数据库中的全部会话重建会话最新消息时间索引
+   *
+   * @param owner 会话拥有者
+   */
+  private void rebuildSessionRecency(String owner) {
+    usermailAdapter.rebuildSessionRecency(owner, () -> {
+      List<UsermailBoxDO> boxes = usermailBoxDB.listUsermailBoxsByOwner(owner, ALL_ARCHIVE_STATUS);
+      Map<String, Long> lastMsgTimes = new HashMap<>(boxes.size() * 4 / 3 + 1);
+      for (UsermailBoxDO box : boxes) {
+        lastMsgTimes.put(box.getMail2(), this.toMillis(box.getLastMsgTime()));
+      }
+      LOGGER.info("rebuild session recency index, owner is {}, size is {}", owner, lastMsgTimes.size());
+      return lastMsgTimes;
+    });
+  }
+
+  private long toMillis(Timestamp timestamp) {
+    return timestamp == null ? 0L : timestamp.getTime();
+  }
+
+  /**
+   * 批量查询会话的最新一条消息并解压
+   *
+   * @param owner 会话拥有者
+   * @param boxes 会话列表
+   * @return 会话ID与最新一条消息的映射
+   */
+  private Map<String, UsermailDO> mapLastUsermails(String owner, List<UsermailBoxDO> boxes) {
+    if (boxes.isEmpty()) {
+      return new HashMap<>(0);
+    }
+    List<String> sessionIds = new ArrayList<>(boxes.size());
+    for (UsermailBoxDO box : boxes) {
+      sessionIds.add(box.getSessionid());
+    }
+    List<UsermailDO> usermails = convertMsgService
+        .convertMsg(usermailMsgDB.listLastUsermailsBySessions(owner, sessionIds));
+    Map<String, UsermailDO> lastUsermails = new HashMap<>(usermails.size() * 4 / 3 + 1);
+    for (UsermailDO usermail : usermails) {
+      lastUsermails.put(usermail.getSessionid(), usermail);
+    }
+    return lastUsermails;
   }
 
   /**
@@ -347,11 +754,12 @@ public class UsermailService {
     // msg 內容更新为空串
     LOGGER.info("Label-delete-usermail-msg: delete msg by msgIds,from is {},to is {},ids is {}", from, to, msgIds);
     usermailMsgDB.deleteMsg(msgIds, from);
+    usermailBoxDB.refreshLastMsg(from, to);
     LOGGER.info("Label-delete-usermail-msg: delete reply msg by parentMsgId, owner is {}, parentMsgId is {}", from,
         msgIds);
     usermailMsgReplyDB.deleteMsgReplysByParentIds(from, msgIds);
-    usermail2NotifyMqService
-        .sendMqAfterUpdateStatus(headerInfo, from, to, new Gson().toJson(msgIds), SessionEventType.EVENT_TYPE_4);
+    usermail2NotifyMqService.sendMqAfterUpdateStatus(headerInfo, from, to, JsonBytesWriter.toJsonArray(msgIds),
+        SessionEventType.EVENT_TYPE_4);
 
     UmQueryDTO umQueryDto = new UmQueryDTO();
     umQueryDto.setOwner(from);
@@ -363,9 +771,15 @@ public class UsermailService {
       String lastMsgId = usermailAdapter.getLastMsgId(from, to);
       String newLastMsgId = usermails.get(0).getMsgid();
       if (!newLastMsgId.equals(lastMsgId)) {
-        usermailAdapter.setLastMsgId(from, to, newLastMsgId);
+        // 最新消息被删除后回退到序列号更小的消息，先删除再写入，避免延迟合并写入时被已删除消息的序列号拦截
+        usermailAdapter.deleteLastMsgId(from, to);
+        usermailAdapter.setLastMsgId(from, to, newLastMsgId, usermails.get(0).getSeqNo());
       }
     }
+    if (sessionRecencyEnabled) {
+      usermailAdapter.updateSessionRecency(from, to,
+          CollectionUtils.isEmpty(usermails) ? 0L : this.toMillis(usermails.get(0).getCreateTime()));
+    }
   }
 
   /**
@@ -429,6 +843,9 @@ public class UsermailService {
         .sendMqAfterDeleteSession(cdtpHeaderDto, queryDto.getFrom(), queryDto.getTo(), queryDto.isDeleteAllMsg(),
             SessionEventType.EVENT_TYPE_4);
     usermailAdapter.deleteLastMsgId(queryDto.getFrom(), queryDto.getTo());
+    if (sessionRecencyEnabled) {
+      usermailAdapter.removeSessionRecency(queryDto.getFrom(), queryDto.getTo());
+    }
     return true;
   }
 
@@ -446,6 +863,9 @@ public class UsermailService {
         .info("Label-delete-GroupChat-session: delete session, params is owner:{}, groupTemail:{}", owner, groupTemail);
     String sessionId = usermailSessionService.getSessionID(groupTemail, owner);
     usermailMsgDB.deleteBySessionIdAndOwner(sessionId, owner);
+    if (sessionRecencyEnabled) {
+      usermailAdapter.removeSessionRecency(owner, groupTemail);
+    }
     return true;
   }
 
@@ -462,7 +882,7 @@ public class UsermailService {
   }
 
   /**
-   * 批量查询单聊回复消息
+   * 批量查询单聊回复消息，回复数包含尚未写入数据库的变化量
    *
    * @param from 发件人
    * @param msgIds 消息id列表
@@ -470,9 +890,24 @@ public class UsermailService {
    */
   public List<UsermailDO> batchQueryMsgsReplyCount(String from, List<String> msgIds) {
     List<UsermailDO> usermailList = usermailMsgDB.listUsermailsByFromToMsgIds(from, msgIds);
+    Map<String, List<String>> msgidsByOwner = new HashMap<>();
+    for (UsermailDO usermail : usermailList) {
+      msgidsByOwner.computeIfAbsent(usermail.getOwner(), owner -> new ArrayList<>()).add(usermail.getMsgid());
+    }
+    Map<String, Map<String, ReplyCountDeltaDTO>> deltasByOwner = new HashMap<>(msgidsByOwner.size() * 4 / 3 + 1);
+    msgidsByOwner.forEach((owner, ids) -> deltasByOwner.put(owner, replyCountWriteBehind.getPending(owner, ids)));
     for (int i = 0; i < usermailList.size(); i++) {
-      usermailList.get(i).setMessage(null);
-      usermailList.get(i).setZipMsg(null);
+      UsermailDO usermail = usermailList.get(i);
+      usermail.setMessage(null);
+      usermail.setZipMsg(null);
+      ReplyCountDeltaDTO delta = deltasByOwner.get(usermail.getOwner()).get(usermail.getMsgid());
+      if (delta != null) {
+        int replyCount = usermail.getReplyCount() == null ? 0 : usermail.getReplyCount();
+        usermail.setReplyCount(replyCount + delta.getCount());
+        if (delta.getLastReplyMsgid() != null) {
+          usermail.setLastReplyMsgId(delta.getLastReplyMsgid());
+        }
+      }
     }
     return usermailList;
   }
@@ -540,6 +975,19 @@ public class UsermailService {
       msgIds.add(dto.getMsgId());
     }
     usermailMsgDB.deleteMsgByStatus(trashMails, temail, TemailStatus.STATUS_TRASH_4);
+    Set<String> mail2s = new HashSet<>();
+    for (TrashMailDTO dto : trashMails) {
+      mail2s.add(temail.equals(dto.getFrom()) ? dto.getTo() : dto.getFrom());
+    }
+    for (String mail2 : mail2s) {
+      usermailBoxDB.refreshLastMsg(temail, mail2);
+      if (sessionRecencyEnabled) {
+        UsermailBoxDO box = usermailBoxDB.selectByOwnerAndMail2(temail, mail2);
+        if (box != null) {
+          usermailAdapter.updateSessionRecency(temail, mail2, this.toMillis(box.getLastMsgTime()));
+        }
+      }
+    }
     LOGGER
         .info("Label-delete-usermail-trash: Mq consumer remove msg from trash, params is temail:{},msginfo:{}",
             temail, trashMails);
@@ -553,7 +1001,13 @@ public class UsermailService {
    */
   @Transactional
   public void clearMsgFromTrash(String temail) {
+    List<String> sessionids = usermailMsgDB.listSessionidsByStatus(temail, TemailStatus.STATUS_TRASH_4);
     usermailMsgDB.deleteMsgByStatus(null, temail, TemailStatus.STATUS_TRASH_4);
+    // 只刷新废纸篓消息所在的会话，避免对owner的全部会话执行关联子查询
+    usermailBoxDB.refreshLastMsgBySessionids(temail, sessionids);
+    if (sessionRecencyEnabled) {
+      usermailAdapter.deleteSessionRecency(temail);
+    }
     LOGGER.info("Label-delete-usermail-trash: Mq consumer clear trash, params is temail:{}", temail);
     usermailMsgReplyDB.deleteMsgReplysByStatus(temail, TemailStatus.STATUS_TRASH_4);
   }
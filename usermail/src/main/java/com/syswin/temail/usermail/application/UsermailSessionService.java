@@ -24,12 +24,19 @@
 
 package com.syswin.temail.usermail.application;
 
-import org.apache.commons.codec.digest.DigestUtils;
+import com.syswin.temail.usermail.core.util.SessionIdGenerator;
 import org.springframework.stereotype.Component;
 
 @Component
 public class UsermailSessionService {
 
+  /**
+   * 缓存的热点地址对数量
+   */
+  private static final int SESSION_ID_CACHE_SIZE = 4096;
+
+  private final SessionIdGenerator sessionIdGenerator = new SessionIdGenerator(SESSION_ID_CACHE_SIZE);
+
   /**
    * 获取会话id
    *
@@ -44,13 +51,7 @@ public class UsermailSessionService {
     if (null == to || "".equals(to)) {
       throw new IllegalArgumentException("param [to] is illegal");
     }
-    String value;
-    if (from.compareTo(to) > 0) {
-      value = from + to;
-    } else {
-      value = to + from;
-    }
-    return DigestUtils.md5Hex(value);
+    return sessionIdGenerator.getSessionId(from, to);
   }
 
 }
@@ -66,6 +66,36 @@ public class UsermailConfig {
   @Value("${app.usermail.message.db:mongodb}")
   public String dbSelector = "mongodb";
 
+  /**
+   * 自消费的topic是否使用二进制格式的事件，消费端同时兼容json和二进制格式
+   */
+  @Value("${app.usermailagent.mq.binaryEvent:false}")
+  public boolean agentEventBinary;
+
+  /**
+   * 自消费topic的消费线程数和单批最大消息数，小于等于0时使用RocketMQ默认值
+   */
+  @Value("${app.usermailagent.mq.consumeThreadMin:0}")
+  public int agentConsumeThreadMin;
+
+  @Value("${app.usermailagent.mq.consumeThreadMax:0}")
+  public int agentConsumeThreadMax;
+
+  @Value("${app.usermailagent.mq.consumeBatchSize:0}")
+  public int agentConsumeBatchSize;
+
+  /**
+   * 自消费topic顺序消费的通道数，大于0时同一owner的事件按顺序处理，不同owner并行处理
+   */
+  @Value("${app.usermailagent.mq.orderedLanes:0}")
+  public int agentOrderedLanes;
+
+  /**
+   * 自消费topic顺序消费时单条消息的最大原地重试次数，超过后投递到死信队列并跳过该消息
+   */
+  @Value("${app.usermailagent.mq.maxReconsumeTimes:16}")
+  public int agentMaxReconsumeTimes;
+
   public String getMqTopic() {
     return mqTopic;
   }
@@ -101,4 +131,24 @@ public class UsermailConfig {
   public String getDbSelector() {
     return dbSelector;
   }
+
+  public boolean isAgentEventBinary() {
+    return agentEventBinary;
+  }
+
+  public int getAgentConsumeThreadMin() {
+    return agentConsumeThreadMin;
+  }
+
+  public int getAgentConsumeThreadMax() {
+    return agentConsumeThreadMax;
+  }
+
+  public int getAgentConsumeBatchSize() {
+    return agentConsumeBatchSize;
+  }
+
+  public int getAgentOrderedLanes() {
+    return agentOrderedLanes;
+  }
 }
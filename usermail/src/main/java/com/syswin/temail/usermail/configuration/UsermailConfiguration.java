@@ -27,14 +27,20 @@ package com.syswin.temail.usermail.configuration;
 import com.syswin.library.messaging.all.spring.MqConsumerConfig;
 import com.syswin.library.messaging.all.spring.MqImplementation;
 import com.syswin.library.messaging.all.spring.MqProducerConfig;
-import com.syswin.temail.usermail.core.IUsermailAdapter;
+import com.syswin.temail.usermail.core.codec.MsgCodecs;
+import com.syswin.temail.usermail.core.codec.ZstdDictMsgCodec;
+import com.syswin.temail.usermail.core.codec.ZstdMsgCodec;
 import com.syswin.temail.usermail.core.util.MsgCompressor;
 import com.syswin.temail.usermail.interfaces.DomainClearMqConsumer;
 import com.syswin.temail.usermail.interfaces.UsermailMQConsumer;
 import com.syswin.temail.usermail.redis.RedisUsermailAdapter;
+import com.syswin.temail.usermail.redis.SegmentRedisUsermailAdapter;
 import com.syswin.temail.usermail.rocketmq.MqClient;
 import com.syswin.temail.usermail.rocketmq.RocketMqProperties;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.function.Consumer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -46,8 +52,13 @@ public class UsermailConfiguration {
   @Bean
   @ConditionalOnProperty(name = "spring.rocketmq.receiver", havingValue = "ROCKETMQ", matchIfMissing = true)
   MqClient usermailMqClient(UsermailConfig config, UsermailMQConsumer usermailMqConsumer) {
-    return new MqClient(config.mqUserMailAgentTopic, "*", config.mqTrashConsumer, config.namesrvAddr,
+    MqClient mqClient = new MqClient(config.mqUserMailAgentTopic, "*", config.mqTrashConsumer, config.namesrvAddr,
         usermailMqConsumer, MqClient.RocketMQModel.CLUSTERING);
+    mqClient.setConsumeThreads(config.agentConsumeThreadMin, config.agentConsumeThreadMax);
+    mqClient.setConsumeMessageBatchMaxSize(config.agentConsumeBatchSize);
+    mqClient.setOrderedLanes(config.agentOrderedLanes);
+    mqClient.setMaxReconsumeTimes(config.agentMaxReconsumeTimes);
+    return mqClient;
   }
 
   @Bean
@@ -59,8 +70,17 @@ public class UsermailConfiguration {
   }
 
   @Bean
-  public MsgCompressor msgCompressor() {
-    return new MsgCompressor();
+  public MsgCompressor msgCompressor(@Value("${app.usermailagent.msg.codec:gzip}") String codec,
+      @Value("${app.usermailagent.msg.dict.dir:}") String dictDir,
+      @Value("${app.usermailagent.msg.dict.current:}") String currentDictId) throws IOException {
+    if (!dictDir.isEmpty()) {
+      // 只要配置了字典目录就注册字典编解码器，切回其他压缩算法后已写入的数据仍可读取
+      int dictId = currentDictId.isEmpty() ? 0 : Integer.parseUnsignedInt(currentDictId);
+      MsgCodecs.register(ZstdDictMsgCodec.fromDirectory(Paths.get(dictDir), dictId, ZstdMsgCodec.DEFAULT_LEVEL));
+    }
+    MsgCompressor msgCompressor = new MsgCompressor();
+    msgCompressor.setCodec(MsgCodecs.forName(codec));
+    return msgCompressor;
   }
 
 
@@ -86,9 +106,19 @@ public class UsermailConfiguration {
             : MqImplementation.valueOf(usermailConfig.senderMqType));
   }
 
-  @Bean
-  public IUsermailAdapter usermailAdapter(RedisTemplate redisTemplate) {
-    return new RedisUsermailAdapter(redisTemplate);
+  @Bean(destroyMethod = "destroy")
+  @ConditionalOnProperty(name = "app.usermailagent.pkid.segment.enabled", havingValue = "false", matchIfMissing = true)
+  public RedisUsermailAdapter usermailAdapter(RedisTemplate redisTemplate,
+      @Value("${app.usermailagent.lastMsgId.flushInterval:0}") long lastMsgIdFlushInterval) {
+    return new RedisUsermailAdapter(redisTemplate, lastMsgIdFlushInterval);
+  }
+
+  @Bean(destroyMethod = "destroy")
+  @ConditionalOnProperty(name = "app.usermailagent.pkid.segment.enabled", havingValue = "true")
+  public SegmentRedisUsermailAdapter segmentUsermailAdapter(RedisTemplate redisTemplate,
+      @Value("${app.usermailagent.pkid.segment.blockSize:1000}") long blockSize,
+      @Value("${app.usermailagent.lastMsgId.flushInterval:0}") long lastMsgIdFlushInterval) {
+    return new SegmentRedisUsermailAdapter(redisTemplate, blockSize, lastMsgIdFlushInterval);
   }
 
 }
\ No newline at end of file
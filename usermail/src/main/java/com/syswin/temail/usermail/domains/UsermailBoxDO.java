@@ -53,6 +53,12 @@ public class UsermailBoxDO implements java.io.Serializable {
   private int archiveStatus;
   @ApiModelProperty(value = "会话中对方的昵称和头像")
   private String sessionExtData;
+  @ApiModelProperty(value = "最新一条消息的msgid")
+  private String lastMsgid;
+  @ApiModelProperty(value = "最新一条消息的seqNo")
+  private long lastSeqNo;
+  @ApiModelProperty(value = "最新一条消息的时间")
+  private Timestamp lastMsgTime;
 
   public UsermailBoxDO(long id, String sessionid, String mail2, String owner, String sessionExtData) {
     this.id = id;
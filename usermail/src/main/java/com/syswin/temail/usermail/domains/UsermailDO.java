@@ -28,12 +28,18 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonProperty.Access;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.syswin.temail.usermail.core.json.TimestampJsonSerializer;
+import com.syswin.temail.usermail.core.json.ZipMsgJsonSerializer;
+import com.syswin.temail.usermail.core.util.ZipMsgSupplier;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.sql.Timestamp;
+import java.util.function.Supplier;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -42,7 +48,7 @@ import org.apache.ibatis.type.Alias;
 
 @Setter
 @Getter
-@ToString
+@ToString(exclude = "messageSupplier")
 @NoArgsConstructor
 @JsonInclude(Include.NON_NULL)
 @ApiModel(value = "temail Usermail")
@@ -105,6 +111,9 @@ public class UsermailDO implements Serializable {
   private Timestamp updateTime;
 
   private byte[] zipMsg;
+  @JsonIgnore
+  @ApiModelProperty(hidden = true)
+  private transient Supplier<String> messageSupplier;
 
   @ApiModelProperty(value = "消息创建者")
   private String author;
@@ -142,4 +151,43 @@ public class UsermailDO implements Serializable {
     this.author = author;
     this.filter = filter;
   }
+
+  /**
+   * 延迟解压模式下，消息内容在首次读取（通常是序列化响应）时才由 {@link #messageSupplier} 生成
+   *
+   * @return 消息内容
+   */
+  @JsonProperty(access = Access.WRITE_ONLY)
+  public String getMessage() {
+    Supplier<String> supplier = messageSupplier;
+    if (supplier != null) {
+      message = supplier.get();
+      messageSupplier = null;
+    }
+    return message;
+  }
+
+  public void setMessage(String message) {
+    this.message = message;
+    this.messageSupplier = null;
+  }
+
+  /**
+   * 序列化响应时的消息内容：开启流式输出的延迟解压消息交给 {@link ZipMsgJsonSerializer} 边解压边写出，其它情况同
+   * {@link #getMessage()}。原属性标记为只写，仅用于反序列化，避免与本方法重复输出
+   */
+  @JsonProperty("message")
+  @JsonSerialize(using = ZipMsgJsonSerializer.class)
+  private Object messageForJson() {
+    Supplier<String> supplier = messageSupplier;
+    if (supplier instanceof ZipMsgSupplier && ((ZipMsgSupplier) supplier).isStreaming()) {
+      return supplier;
+    }
+    return getMessage();
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    getMessage();
+    out.defaultWriteObject();
+  }
 }
@@ -28,11 +28,17 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonProperty.Access;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.syswin.temail.usermail.core.json.TimestampJsonSerializer;
+import com.syswin.temail.usermail.core.json.ZipMsgJsonSerializer;
+import com.syswin.temail.usermail.core.util.ZipMsgSupplier;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.sql.Timestamp;
+import java.util.function.Supplier;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -41,7 +47,7 @@ import org.apache.ibatis.type.Alias;
 
 @Getter
 @Setter
-@ToString
+@ToString(exclude = "msgSupplier")
 @NoArgsConstructor
 @JsonInclude(Include.NON_NULL)
 @ApiModel(value = "temail UsermailMsgReply")
@@ -84,6 +90,9 @@ public class UsermailMsgReplyDO implements java.io.Serializable {
   @ApiModelProperty(value = "SessionID")
   private String sessionid;
   private byte[] zipMsg;
+  @JsonIgnore
+  @ApiModelProperty(hidden = true)
+  private transient Supplier<String> msgSupplier;
 
   public UsermailMsgReplyDO(long id, String parentMsgId, String msgid, String from, String to, long seqNo,
       String msg, int status, int type, String owner, String sessionid) {
@@ -115,4 +124,43 @@ public class UsermailMsgReplyDO implements java.io.Serializable {
     this.sessionid = sessionid;
     this.zipMsg = zipMsg;
   }
+
+  /**
+   * 延迟解压模式下，消息内容在首次读取（通常是序列化响应）时才由 {@link #msgSupplier} 生成
+   *
+   * @return 消息内容
+   */
+  @JsonProperty(access = Access.WRITE_ONLY)
+  public String getMsg() {
+    Supplier<String> supplier = msgSupplier;
+    if (supplier != null) {
+      msg = supplier.get();
+      msgSupplier = null;
+    }
+    return msg;
+  }
+
+  public void setMsg(String msg) {
+    this.msg = msg;
+    this.msgSupplier = null;
+  }
+
+  /**
+   * 序列化响应时的消息内容：开启流式输出的延迟解压消息交给 {@link ZipMsgJsonSerializer} 边解压边写出，其它情况同
+   * {@link #getMsg()}。原属性标记为只写，仅用于反序列化，避免与本方法重复输出
+   */
+  @JsonProperty("message")
+  @JsonSerialize(using = ZipMsgJsonSerializer.class)
+  private Object messageForJson() {
+    Supplier<String> supplier = msgSupplier;
+    if (supplier instanceof ZipMsgSupplier && ((ZipMsgSupplier) supplier).isStreaming()) {
+      return supplier;
+    }
+    return getMsg();
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    getMsg();
+    out.defaultWriteObject();
+  }
 }
@@ -24,7 +24,9 @@
 
 package com.syswin.temail.usermail.dto;
 
+import com.syswin.temail.usermail.core.dto.SeqIdRange;
 import java.io.Serializable;
+import java.util.List;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -45,4 +47,8 @@ public class QueryMsgReplyDTO implements Serializable {
   private String parentMsgid;
   private String signal;
   private String owner;
+  /**
+   * 只查询seqId落在这些区间内的回复消息，为null时不限制
+   */
+  private List<SeqIdRange> seqIdRanges;
 }
@@ -24,6 +24,8 @@
 
 package com.syswin.temail.usermail.dto;
 
+import com.syswin.temail.usermail.core.dto.SeqIdRange;
+import java.util.List;
 import java.util.Objects;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -46,6 +48,10 @@ public class UmQueryDTO implements java.io.Serializable {
   private String sessionid;
   private String owner;
   private String signal;
+  /**
+   * 只查询seqId落在这些区间内的消息，为null时不限制
+   */
+  private List<SeqIdRange> seqIdRanges;
 
   public UmQueryDTO(String sessionid, String owner) {
     this.sessionid = sessionid;
@@ -67,11 +73,12 @@ public class UmQueryDTO implements java.io.Serializable {
         Objects.equals(msgid, umQueryDto.msgid) &&
         Objects.equals(sessionid, umQueryDto.sessionid) &&
         Objects.equals(owner, umQueryDto.owner) &&
-        Objects.equals(signal, umQueryDto.signal);
+        Objects.equals(signal, umQueryDto.signal) &&
+        Objects.equals(seqIdRanges, umQueryDto.seqIdRanges);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(fromSeqNo, pageSize, msgid, status, sessionid, owner, signal);
+    return Objects.hash(fromSeqNo, pageSize, msgid, status, sessionid, owner, signal, seqIdRanges);
   }
 }
@@ -36,6 +36,13 @@ public interface IUsermailBoxDB {
    */
   void saveUsermailBox(UsermailBoxDO usermailBox);
 
+  /**
+   * 批量新增单聊会话信息
+   *
+   * @param usermailBoxes 会话信息列表
+   */
+  void batchSaveUsermailBox(List<UsermailBoxDO> usermailBoxes);
+
   /**
    * 查找当前用户的会话列表
    *
@@ -63,6 +70,16 @@ public interface IUsermailBoxDB {
    */
   List<UsermailBoxDO> listUsermailBoxsByOwnerAndTo(String from, String to);
 
+  List<UsermailBoxDO> listUsermailBoxsByOwnerAndMail2s(String owner, List<String> mail2s);
+
+  /**
+   * 按会话拥有者和另一位聊天者批量查询会话，各会话的拥有者可以不同
+   *
+   * @param boxes 待查询的会话，只使用owner和mail2
+   * @return 会话列表
+   */
+  List<UsermailBoxDO> listUsermailBoxsByOwnerAndMail2Pairs(List<UsermailBoxDO> boxes);
+
   /**
    * 更新会话归档状态
    *
@@ -98,7 +115,28 @@ public interface IUsermailBoxDB {
    * @param archiveStatus 归档状态
    * @return 会话列表
    */
-  List<UsermailBoxDO> selectTopNByOwner(String from, int archiveStatus);
+  List<UsermailBoxDO> selectTopNByOwner(String from, int archiveStatus, int pageSize);
+
+  int updateLastMsg(String owner, String mail2, String lastMsgid, long lastSeqNo);
+
+  /**
+   * 批量更新会话的最新消息摘要，只允许seqNo向前推进
+   *
+   * @param boxes 会话的owner、mail2及最新消息的lastMsgid、lastSeqNo，同一会话只能出现一次
+   * @return 更新的数量
+   */
+  int batchUpdateLastMsg(List<UsermailBoxDO> boxes);
+
+  int refreshLastMsg(String owner, String mail2);
+
+  /**
+   * 删除消息后根据消息表重新计算指定会话的最新消息摘要
+   *
+   * @param owner 会话拥有者
+   * @param sessionids 需要刷新的会话id
+   * @return 更新的数量
+   */
+  int refreshLastMsgBySessionids(String owner, List<String> sessionids);
 
   /**
    * 更新会话中对方的头像和昵称信息
@@ -24,6 +24,7 @@
 
 package com.syswin.temail.usermail.infrastructure.domain;
 
+import com.syswin.temail.usermail.core.dto.ReplyCountDeltaDTO;
 import com.syswin.temail.usermail.domains.UsermailDO;
 import com.syswin.temail.usermail.dto.QueryTrashDTO;
 import com.syswin.temail.usermail.dto.RevertMailDTO;
@@ -41,6 +42,13 @@ public interface IUsermailMsgDB {
    */
   void insertUsermail(UsermailDO usermail);
 
+  /**
+   * 批量保存单聊消息，多条消息合并为一条insert语句
+   *
+   * @param usermails 单聊消息列表
+   */
+  void batchInsertUsermails(List<UsermailDO> usermails);
+
   /**
    * 根据用户会话id查询消息列表
    *
@@ -66,6 +74,8 @@ public interface IUsermailMsgDB {
    */
   List<UsermailDO> listLastUsermails(UmQueryDTO umQueryDto);
 
+  List<UsermailDO> listLastUsermailsBySessions(String owner, List<String> sessionIds);
+
   /**
    * 撤回消息
    *
@@ -128,6 +138,13 @@ public interface IUsermailMsgDB {
    */
   void updateReplyCountAndLastReplyMsgid(String msgid, String owner, int count, String lastReplyMsgid);
 
+  /**
+   * 批量更新消息的回复数，多条消息合并为一条update语句
+   *
+   * @param deltas 各消息的回复数变化量和最新回复消息id
+   */
+  void batchUpdateReplyCountAndLastReplyMsgid(List<ReplyCountDeltaDTO> deltas);
+
   /**
    * 根据msgIds批量更新消息状态
    *
@@ -148,6 +165,15 @@ public interface IUsermailMsgDB {
    */
   int deleteMsgByStatus(List<TrashMailDTO> trashMails, String owner, int status);
 
+  /**
+   * 查询指定状态消息所属的会话id
+   *
+   * @param owner 消息拥有者
+   * @param status 消息状态
+   * @return 会话id列表
+   */
+  List<String> listSessionidsByStatus(String owner, int status);
+
   /**
    * 根据msgIds批量移出废纸篓（还原废纸篓消息）
    *
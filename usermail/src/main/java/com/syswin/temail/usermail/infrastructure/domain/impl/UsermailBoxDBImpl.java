@@ -26,6 +26,7 @@ package com.syswin.temail.usermail.infrastructure.domain.impl;
 
 import com.syswin.temail.usermail.domains.UsermailBoxDO;
 import com.syswin.temail.usermail.infrastructure.domain.IUsermailBoxDB;
+import java.util.ArrayList;
 import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
@@ -33,6 +34,8 @@ import org.springframework.stereotype.Repository;
 @Repository
 public class UsermailBoxDBImpl implements IUsermailBoxDB {
 
+  private static final int REFRESH_BATCH_SIZE = 200;
+
   private final com.syswin.temail.usermail.infrastructure.domain.mapper.UsermailBoxMapper usermailBoxMapper;
 
   @Autowired
@@ -51,6 +54,19 @@ public class UsermailBoxDBImpl implements IUsermailBoxDB {
     usermailBoxMapper.saveUsermailBox(usermailBox);
   }
 
+  /**
+   * 批量新增单聊会话信息
+   *
+   * @param usermailBoxes 会话信息列表
+   */
+  @Override
+  public void batchSaveUsermailBox(List<UsermailBoxDO> usermailBoxes) {
+    if (usermailBoxes.isEmpty()) {
+      return;
+    }
+    usermailBoxMapper.batchSaveUsermailBox(usermailBoxes);
+  }
+
   /**
    * 查找当前用户的会话列表
    *
@@ -87,6 +103,35 @@ public class UsermailBoxDBImpl implements IUsermailBoxDB {
     return usermailBoxMapper.listUsermailBoxsByOwnerAndTo(from, to);
   }
 
+  /**
+   * 根据会话拥有者和多个另一位聊天者批量查询会话
+   *
+   * @param owner 会话拥有者
+   * @param mail2s 另一位聊天者列表
+   * @return 会话列表
+   */
+  @Override
+  public List<UsermailBoxDO> listUsermailBoxsByOwnerAndMail2s(String owner, List<String> mail2s) {
+    if (mail2s.isEmpty()) {
+      return new ArrayList<>(0);
+    }
+    return usermailBoxMapper.listUsermailBoxsByOwnerAndMail2s(owner, mail2s);
+  }
+
+  /**
+   * 按会话拥有者和另一位聊天者批量查询会话，各会话的拥有者可以不同
+   *
+   * @param boxes 待查询的会话，只使用owner和mail2
+   * @return 会话列表
+   */
+  @Override
+  public List<UsermailBoxDO> listUsermailBoxsByOwnerAndMail2Pairs(List<UsermailBoxDO> boxes) {
+    if (boxes.isEmpty()) {
+      return new ArrayList<>(0);
+    }
+    return usermailBoxMapper.listUsermailBoxsByOwnerAndMail2Pairs(boxes);
+  }
+
   /**
    * 更新会话归档状态
    *
@@ -126,15 +171,73 @@ public class UsermailBoxDBImpl implements IUsermailBoxDB {
   }
 
   /**
-   * 拉取topN会话列表
+   * 按最新消息时间倒序拉取topN会话列表
    *
    * @param from 会话拥有者
    * @param archiveStatus 归档状态
+   * @param pageSize 拉取数量上限
    * @return 会话列表
    */
   @Override
-  public List<UsermailBoxDO> selectTopNByOwner(String from, int archiveStatus) {
-    return usermailBoxMapper.selectTopNByOwner(from, archiveStatus);
+  public List<UsermailBoxDO> selectTopNByOwner(String from, int archiveStatus, int pageSize) {
+    return usermailBoxMapper.selectTopNByOwner(from, archiveStatus, pageSize);
+  }
+
+  /**
+   * 发送消息后更新会话的最新消息摘要，只允许seqNo向前推进
+   *
+   * @param owner 会话拥有者
+   * @param mail2 另一位聊天者
+   * @param lastMsgid 最新消息msgid
+   * @param lastSeqNo 最新消息seqNo
+   * @return 更新的数量
+   */
+  @Override
+  public int updateLastMsg(String owner, String mail2, String lastMsgid, long lastSeqNo) {
+    return usermailBoxMapper.updateLastMsg(owner, mail2, lastMsgid, lastSeqNo);
+  }
+
+  /**
+   * 批量更新会话的最新消息摘要，只允许seqNo向前推进
+   *
+   * @param boxes 会话的owner、mail2及最新消息的lastMsgid、lastSeqNo，同一会话只能出现一次
+   * @return 更新的数量
+   */
+  @Override
+  public int batchUpdateLastMsg(List<UsermailBoxDO> boxes) {
+    if (boxes.isEmpty()) {
+      return 0;
+    }
+    return usermailBoxMapper.batchUpdateLastMsg(boxes);
+  }
+
+  /**
+   * 删除消息后根据消息表重新计算会话的最新消息摘要
+   *
+   * @param owner 会话拥有者
+   * @param mail2 另一位聊天者
+   * @return 更新的数量
+   */
+  @Override
+  public int refreshLastMsg(String owner, String mail2) {
+    return usermailBoxMapper.refreshLastMsg(owner, mail2);
+  }
+
+  /**
+   * 删除消息后根据消息表重新计算指定会话的最新消息摘要，会话较多时分批更新
+   *
+   * @param owner 会话拥有者
+   * @param sessionids 需要刷新的会话id
+   * @return 更新的数量
+   */
+  @Override
+  public int refreshLastMsgBySessionids(String owner, List<String> sessionids) {
+    int count = 0;
+    for (int from = 0; from < sessionids.size(); from += REFRESH_BATCH_SIZE) {
+      count += usermailBoxMapper.refreshLastMsgBySessionids(owner,
+          sessionids.subList(from, Math.min(from + REFRESH_BATCH_SIZE, sessionids.size())));
+    }
+    return count;
   }
 
   /**
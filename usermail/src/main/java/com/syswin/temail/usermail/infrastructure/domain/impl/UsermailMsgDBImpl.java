@@ -28,6 +28,7 @@ import com.google.gson.Gson;
 import com.syswin.temail.usermail.common.Constants.TemailStatus;
 import com.syswin.temail.usermail.configuration.UsermailConfig;
 import com.syswin.temail.usermail.core.IMqAdapter;
+import com.syswin.temail.usermail.core.dto.ReplyCountDeltaDTO;
 import com.syswin.temail.usermail.domains.UsermailDO;
 import com.syswin.temail.usermail.dto.QueryTrashDTO;
 import com.syswin.temail.usermail.dto.RevertMailDTO;
@@ -36,6 +37,7 @@ import com.syswin.temail.usermail.dto.UmQueryDTO;
 import com.syswin.temail.usermail.infrastructure.domain.IUsermailMsgDB;
 import com.syswin.temail.usermail.infrastructure.domain.mapper.UsermailMapper;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
@@ -43,6 +45,15 @@ import org.springframework.stereotype.Repository;
 @Repository
 public class UsermailMsgDBImpl implements IUsermailMsgDB {
 
+  /**
+   * 批量查询会话最新消息时单条sql的会话数量上限
+   */
+  private static final int SESSION_BATCH_SIZE = 500;
+  /**
+   * 批量保存或更新消息时单条sql的消息数量上限，避免超过max_allowed_packet
+   */
+  private static final int INSERT_BATCH_SIZE = 200;
+
   private final UsermailMapper usermailMapper;
   private final IMqAdapter mqAdapter;
   //private final UsermailMongoMapper usermailMongoMapper;
@@ -74,6 +85,19 @@ public class UsermailMsgDBImpl implements IUsermailMsgDB {
       mqAdapter.sendMessage(usermailConfig.mongoTopic, usermail.getFrom(), gson.toJson(eventDTO));
     }*/
   }
+  /**
+   * 批量保存单聊消息，消息过多时分批插入
+   *
+   * @param usermails 单聊消息列表
+   */
+  @Override
+  public void batchInsertUsermails(List<UsermailDO> usermails) {
+    for (int from = 0; from < usermails.size(); from += INSERT_BATCH_SIZE) {
+      List<UsermailDO> batch = usermails.subList(from, Math.min(from + INSERT_BATCH_SIZE, usermails.size()));
+      usermailMapper.batchInsertUsermails(batch);
+    }
+  }
+
 
   /**
    * 根据用户会话id查询消息列表
@@ -143,6 +167,29 @@ public class UsermailMsgDBImpl implements IUsermailMsgDB {
 
   }
 
+  /**
+   * 批量获取用户多个会话的最新一条消息，会话过多时分批查询
+   *
+   * @param owner 消息拥有者
+   * @param sessionIds 会话id列表
+   * @return 每个会话最新的一条消息
+   */
+  @Override
+  public List<UsermailDO> listLastUsermailsBySessions(String owner, List<String> sessionIds) {
+    if (sessionIds.isEmpty()) {
+      return new ArrayList<>(0);
+    }
+    if (sessionIds.size() <= SESSION_BATCH_SIZE) {
+      return usermailMapper.listLastUsermailsBySessions(owner, sessionIds);
+    }
+    List<UsermailDO> usermails = new ArrayList<>(sessionIds.size());
+    for (int from = 0; from < sessionIds.size(); from += SESSION_BATCH_SIZE) {
+      List<String> batch = sessionIds.subList(from, Math.min(from + SESSION_BATCH_SIZE, sessionIds.size()));
+      usermails.addAll(usermailMapper.listLastUsermailsBySessions(owner, batch));
+    }
+    return usermails;
+  }
+
   /**
    * 撤回消息
    *
@@ -247,6 +294,19 @@ public class UsermailMsgDBImpl implements IUsermailMsgDB {
     usermailMapper.updateReplyCountAndLastReplyMsgid(msgid, owner, count, lastReplyMsgid);
   }
 
+  /**
+   * 批量更新消息的回复数，消息过多时分批更新
+   *
+   * @param deltas 各消息的回复数变化量和最新回复消息id
+   */
+  @Override
+  public void batchUpdateReplyCountAndLastReplyMsgid(List<ReplyCountDeltaDTO> deltas) {
+    for (int from = 0; from < deltas.size(); from += INSERT_BATCH_SIZE) {
+      List<ReplyCountDeltaDTO> batch = deltas.subList(from, Math.min(from + INSERT_BATCH_SIZE, deltas.size()));
+      usermailMapper.batchUpdateReplyCountAndLastReplyMsgid(batch);
+    }
+  }
+
   /**
    * 根据msgIds批量更新消息状态
    *
@@ -273,6 +333,18 @@ public class UsermailMsgDBImpl implements IUsermailMsgDB {
     return usermailMapper.deleteMsgByStatus(trashMails, owner, status);
   }
 
+  /**
+   * 查询指定状态消息所属的会话id
+   *
+   * @param owner 消息拥有者
+   * @param status 消息状态
+   * @return 会话id列表
+   */
+  @Override
+  public List<String> listSessionidsByStatus(String owner, int status) {
+    return usermailMapper.listSessionidsByStatus(owner, status);
+  }
+
   /**
    * 还原废纸篓消息
    *
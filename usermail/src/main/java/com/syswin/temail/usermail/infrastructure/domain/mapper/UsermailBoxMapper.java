@@ -39,6 +39,13 @@ public interface UsermailBoxMapper {
    */
   void saveUsermailBox(UsermailBoxDO usermailBox);
 
+  /**
+   * 批量新增单聊会话信息，多条会话合并为一条insert语句
+   *
+   * @param usermailBoxes 会话信息列表
+   */
+  void batchSaveUsermailBox(List<UsermailBoxDO> usermailBoxes);
+
   /**
    * 查找当前用户的会话列表
    *
@@ -66,6 +73,24 @@ public interface UsermailBoxMapper {
    */
   List<UsermailBoxDO> listUsermailBoxsByOwnerAndTo(@Param("owner") String from, @Param("mail2") String to);
 
+  /**
+   * 根据会话拥有者和多个另一位聊天者批量查询会话
+   *
+   * @param owner 会话拥有者
+   * @param mail2s 另一位聊天者列表
+   * @return 会话列表
+   */
+  List<UsermailBoxDO> listUsermailBoxsByOwnerAndMail2s(@Param("owner") String owner,
+      @Param("mail2s") List<String> mail2s);
+
+  /**
+   * 按会话拥有者和另一位聊天者批量查询会话，各会话的拥有者可以不同
+   *
+   * @param boxes 待查询的会话，只使用owner和mail2
+   * @return 会话列表
+   */
+  List<UsermailBoxDO> listUsermailBoxsByOwnerAndMail2Pairs(List<UsermailBoxDO> boxes);
+
   /**
    * 更新会话归档状态
    *
@@ -87,13 +112,53 @@ public interface UsermailBoxMapper {
   UsermailBoxDO selectByOwnerAndMail2(@Param("owner") String owner, @Param("mail2") String to);
 
   /**
-   * 拉取topN会话列表
+   * 按最新消息时间倒序拉取topN会话列表
    *
    * @param owner 会话拥有者
    * @param archiveStatus 归档状态
+   * @param pageSize 拉取数量上限
    * @return 会话列表
    */
-  List<UsermailBoxDO> selectTopNByOwner(@Param("owner") String owner, @Param("archiveStatus") int archiveStatus);
+  List<UsermailBoxDO> selectTopNByOwner(@Param("owner") String owner, @Param("archiveStatus") int archiveStatus,
+      @Param("pageSize") int pageSize);
+
+  /**
+   * 发送消息后更新会话的最新消息摘要，只允许seqNo向前推进
+   *
+   * @param owner 会话拥有者
+   * @param mail2 另一位聊天者
+   * @param lastMsgid 最新消息msgid
+   * @param lastSeqNo 最新消息seqNo
+   * @return 更新的数量
+   */
+  int updateLastMsg(@Param("owner") String owner, @Param("mail2") String mail2, @Param("lastMsgid") String lastMsgid,
+      @Param("lastSeqNo") long lastSeqNo);
+
+  /**
+   * 批量更新会话的最新消息摘要，一条update语句完成，只允许seqNo向前推进
+   *
+   * @param boxes 会话的owner、mail2及最新消息的lastMsgid、lastSeqNo，同一会话只能出现一次
+   * @return 更新的数量
+   */
+  int batchUpdateLastMsg(List<UsermailBoxDO> boxes);
+
+  /**
+   * 删除消息后根据消息表重新计算会话的最新消息摘要
+   *
+   * @param owner 会话拥有者
+   * @param mail2 另一位聊天者
+   * @return 更新的数量
+   */
+  int refreshLastMsg(@Param("owner") String owner, @Param("mail2") String mail2);
+
+  /**
+   * 删除消息后根据消息表重新计算指定会话的最新消息摘要
+   *
+   * @param owner 会话拥有者
+   * @param sessionids 需要刷新的会话id
+   * @return 更新的数量
+   */
+  int refreshLastMsgBySessionids(@Param("owner") String owner, @Param("sessionids") List<String> sessionids);
 
 
   /**
@@ -24,6 +24,7 @@
 
 package com.syswin.temail.usermail.infrastructure.domain.mapper;
 
+import com.syswin.temail.usermail.core.dto.ReplyCountDeltaDTO;
 import com.syswin.temail.usermail.domains.UsermailDO;
 import com.syswin.temail.usermail.dto.QueryTrashDTO;
 import com.syswin.temail.usermail.dto.RevertMailDTO;
@@ -44,6 +45,13 @@ public interface UsermailMapper {
    */
   void insertUsermail(UsermailDO usermail);
 
+  /**
+   * 批量保存单聊消息，多条消息合并为一条insert语句
+   *
+   * @param usermails 单聊消息列表
+   */
+  void batchInsertUsermails(List<UsermailDO> usermails);
+
   /**
    * 根据用户会话id查询消息列表
    *
@@ -69,6 +77,16 @@ public interface UsermailMapper {
    */
   List<UsermailDO> listLastUsermails(UmQueryDTO umQueryDto);
 
+  /**
+   * 批量获取用户多个会话的最新一条消息
+   *
+   * @param owner 消息拥有者
+   * @param sessionIds 会话id列表
+   * @return 每个会话最新的一条消息
+   */
+  List<UsermailDO> listLastUsermailsBySessions(@Param("owner") String owner,
+      @Param("sessionIds") List<String> sessionIds);
+
   /**
    * 撤回消息
    *
@@ -96,6 +114,15 @@ public interface UsermailMapper {
   void updateDestroyAfterReadStatus(@Param("owner") String owner, @Param("msgid") String msgid,
       @Param("status") int status);
 
+  /**
+   * 查询指定状态消息所属的会话id
+   *
+   * @param owner 消息拥有者
+   * @param status 消息状态
+   * @return 会话id列表
+   */
+  List<String> listSessionidsByStatus(@Param("owner") String owner, @Param("status") int status);
+
   /**
    * 根据会话id批量删除消息
    *
@@ -133,6 +160,13 @@ public interface UsermailMapper {
   void updateReplyCountAndLastReplyMsgid(@Param("msgid") String msgid, @Param("owner") String owner,
       @Param("count") int count, @Param("lastReplyMsgid") String lastReplyMsgid);
 
+  /**
+   * 批量更新消息的回复数，多条消息合并为一条update语句
+   *
+   * @param deltas 各消息的回复数变化量和最新回复消息id
+   */
+  void batchUpdateReplyCountAndLastReplyMsgid(List<ReplyCountDeltaDTO> deltas);
+
   /**
    * 根据msgIds批量更新消息状态
    *
@@ -32,16 +32,17 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.syswin.temail.usermail.application.UmBlacklistProxy;
 import com.syswin.temail.usermail.application.UsermailService;
-import com.syswin.temail.usermail.common.Constants.TemailStoreType;
-import com.syswin.temail.usermail.common.ResultCodeEnum;
 import com.syswin.temail.usermail.core.dto.CdtpHeaderDTO;
 import com.syswin.temail.usermail.core.dto.ResultDTO;
 import com.syswin.temail.usermail.core.exception.IllegalGmArgsException;
 import com.syswin.temail.usermail.domains.UsermailDO;
+import com.syswin.temail.usermail.dto.BatchCreateUsermailDTO;
+import com.syswin.temail.usermail.dto.BatchSyncMailsDTO;
 import com.syswin.temail.usermail.dto.CreateUsermailDTO;
 import com.syswin.temail.usermail.dto.DeleteMailBoxQueryDTO;
 import com.syswin.temail.usermail.dto.MailboxDTO;
 import com.syswin.temail.usermail.dto.MoveTrashMailDTO;
+import com.syswin.temail.usermail.dto.SyncMailsDTO;
 import com.syswin.temail.usermail.dto.TrashMailsDTO;
 import com.syswin.temail.usermail.dto.UmDeleteMailDTO;
 import com.syswin.temail.usermail.dto.UpdateArchiveDTO;
@@ -94,27 +95,36 @@ public class UsermailAgentController {
     umBlacklistProxy.checkInBlacklist(usermail.getFrom(), usermail.getTo());
     ResultDTO resultDto = new ResultDTO();
     CdtpHeaderDTO cdtpHeaderDto = getHeaderInfoFromRequest(request);
-    int storeType = usermail.getStoreType();
-    String owner;
-    String other;
-    if (storeType == TemailStoreType.STORE_TYPE_TO_1) {
-      // owner消息所属人 store_type_to_1表示存收件人收件箱，所以owner为to即为收件人
-      owner = usermail.getTo();
-      other = usermail.getFrom();
-    } else if (storeType == TemailStoreType.STORE_TYPE_FROM_2) {
-      owner = usermail.getFrom();
-      other = usermail.getTo();
-      // owner为发件人时，首次发消息发件人获取不到收件人的头像昵称信息，可忽略传入的参数，避免误存
-      usermail.setSessionExtData("");
-    } else {
-      LOGGER.warn("storeType is error:usermail:{},storeType={}", usermail, storeType);
-      throw new IllegalGmArgsException(ResultCodeEnum.ERROR_ILLEGAL_STORE_TYPE);
-    }
+    String owner = usermailService.resolveOwner(usermail);
+    String other = owner.equals(usermail.getFrom()) ? usermail.getTo() : usermail.getFrom();
     Map<String, Object> result = usermailService.sendMail(cdtpHeaderDto, usermail, owner, other);
     resultDto.setData(result);
     return resultDto;
   }
 
+  /**
+   * 批量发送单聊消息，同一条消息在收件人和发件人收件箱的副本（或群发的多份副本）在一个事务中一次写入。
+   *
+   * @param request 从HttpServletRequest中获取业务header：CDTP-header,X-PACKET-ID。
+   * @param batchCreateUsermail 请求参数，每个副本{@link CreateUsermailDTO}的含义与发送单聊消息的参数相同。
+   * @return 返回ResultDTO对象，包含与副本一一对应的msgId和seqId。
+   * @See ResultDTO
+   */
+  @ApiOperation(value = "批量发送单聊消息", notes = "一次保存消息的多个副本")
+  @PostMapping(value = "/usermail/batch")
+  public ResultDTO createUsermails(HttpServletRequest request,
+      @Valid @RequestBody BatchCreateUsermailDTO batchCreateUsermail) {
+    List<CreateUsermailDTO> usermails = batchCreateUsermail.getUsermails();
+    for (CreateUsermailDTO usermail : usermails) {
+      umBlacklistProxy.checkInBlacklist(usermail.getFrom(), usermail.getTo());
+    }
+    ResultDTO resultDto = new ResultDTO();
+    CdtpHeaderDTO cdtpHeaderDto = getHeaderInfoFromRequest(request);
+    List<Map<String, Object>> result = usermailService.sendMails(cdtpHeaderDto, usermails);
+    resultDto.setData(result);
+    return resultDto;
+  }
+
   /**
    * 发送者拉取指定单聊会话消息，该消息存储在发送者收件箱。
    *
@@ -145,6 +155,23 @@ public class UsermailAgentController {
     return resultDto;
   }
 
+  /**
+   * 发送者批量拉取多个单聊会话消息，用于断线重连后一次追平多个会话。
+   *
+   * @param batchSyncMails 请求参数，包含发送者{@link BatchSyncMailsDTO#getFrom()}和各会话的拉取位置{@link
+   * BatchSyncMailsDTO#getCursors()}，每个拉取位置的含义与同步单聊会话消息的参数相同。
+   * @return 返回ResultDTO对象，包含与拉取位置一一对应的会话消息列表{@link SyncMailsDTO}。
+   * @See ResultDTO
+   */
+  @ApiOperation(value = "批量同步单聊会话消息", notes = "一次拉取多个会话的消息")
+  @PostMapping(value = "/usermail/sync")
+  public ResultDTO batchGetMails(@Valid @RequestBody BatchSyncMailsDTO batchSyncMails) {
+    ResultDTO resultDto = new ResultDTO();
+    List<SyncMailsDTO> result = usermailService.batchGetMails(batchSyncMails.getFrom(), batchSyncMails.getCursors());
+    resultDto.setData(result);
+    return resultDto;
+  }
+
   /**
    * 撤回已发送消息
    *
@@ -24,25 +24,30 @@
 
 package com.syswin.temail.usermail.interfaces;
 
-import com.google.common.reflect.TypeToken;
-import com.google.gson.Gson;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.syswin.temail.usermail.application.AgentEventDeduplicator;
 import com.syswin.temail.usermail.application.DomainClearService;
 import com.syswin.temail.usermail.application.UsermailMsgReplyService;
 import com.syswin.temail.usermail.application.UsermailService;
 import com.syswin.temail.usermail.common.Constants.UsermailAgentEventType;
-import com.syswin.temail.usermail.common.ParamsKey;
 import com.syswin.temail.usermail.common.ParamsKey.SessionEventKey;
 import com.syswin.temail.usermail.core.IMqConsumer;
+import com.syswin.temail.usermail.core.codec.SessionEventCodec;
+import com.syswin.temail.usermail.core.dto.SessionEvent;
+import com.syswin.temail.usermail.core.exception.UserMailException;
 import com.syswin.temail.usermail.dto.TrashMailDTO;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StringUtils;
 
 @Component
 public class UsermailMQConsumer implements IMqConsumer {
@@ -55,12 +60,15 @@ public class UsermailMQConsumer implements IMqConsumer {
 
   private final DomainClearService domainClearService;
 
+  private final AgentEventDeduplicator agentEventDeduplicator;
+
   @Autowired
   public UsermailMQConsumer(UsermailService usermailService, UsermailMsgReplyService usermailMsgReplyService,
-      DomainClearService domainClearService) {
+      DomainClearService domainClearService, AgentEventDeduplicator agentEventDeduplicator) {
     this.usermailService = usermailService;
     this.usermailMsgReplyService = usermailMsgReplyService;
     this.domainClearService = domainClearService;
+    this.agentEventDeduplicator = agentEventDeduplicator;
   }
 
   /**
@@ -71,93 +79,282 @@ public class UsermailMQConsumer implements IMqConsumer {
    */
   @Override
   public boolean consumer(String message) {
-    JsonParser parser = new JsonParser();
-    JsonObject root = parser.parse(message).getAsJsonObject();
-    int eventType = root.get(ParamsKey.SessionEventKey.SESSION_MESSAGE_TYPE).getAsInt();
-    String from;
-    String to;
-    String owner;
-    String xPacketId;
-    String msgId;
-    String cdtpHeader;
+    LOGGER.debug("mq-receicver-message->{}", message);
+    return dispatch(parseJson(message));
+  }
+
+  /**
+   * 单聊mq异步处理消费端，按首字节区分二进制事件和json事件
+   *
+   * @param message mq消息体
+   * @return boolean
+   */
+  @Override
+  public boolean consumer(byte[] message) {
+    if (!SessionEventCodec.isBinary(message)) {
+      return consumer(new String(message));
+    }
+    return dispatch(SessionEventCodec.decode(message));
+  }
+
+  /**
+   * 单聊mq批量消费，同一owner的多条废纸篓删除事件合并为一次删除，其余事件按投递顺序逐条处理
+   *
+   * @param messages mq消息体列表
+   * @return 每条消息的消费结果
+   */
+  @Override
+  public boolean[] consumeBatch(List<byte[]> messages) {
+    if (messages.size() <= 1) {
+      return IMqConsumer.super.consumeBatch(messages);
+    }
+    boolean[] results = new boolean[messages.size()];
+    Map<String, TrashRemoveBatch> trashRemoves = new LinkedHashMap<>();
+    for (int i = 0; i < results.length; i++) {
+      try {
+        SessionEvent event = decode(messages.get(i));
+        if (event.getSessionMessageType() == UsermailAgentEventType.TRASH_REMOVE_0) {
+          if (event.getTrashMsgInfo() != null) {
+            trashRemoves.computeIfAbsent(event.getFrom(), TrashRemoveBatch::new)
+                .add(i, parseTrashMails(event.getTrashMsgInfo()));
+            continue;
+          }
+          // 清空废纸篓前先执行该owner已合并的删除，保持原有顺序
+          TrashRemoveBatch batch = trashRemoves.remove(event.getFrom());
+          if (batch != null) {
+            removeMsgFromTrash(batch, results);
+          }
+        }
+        dispatch(event);
+        results[i] = true;
+      } catch (UserMailException e) {
+        LOGGER.error("MQ args execption", e);
+        results[i] = true;
+      } catch (Exception e) {
+        LOGGER.error("MQ consumer execption", e);
+        results[i] = false;
+      }
+    }
+    for (TrashRemoveBatch batch : trashRemoves.values()) {
+      removeMsgFromTrash(batch, results);
+    }
+    return results;
+  }
+
+  private void removeMsgFromTrash(TrashRemoveBatch batch, boolean[] results) {
+    if (batch.indexes.size() > 1) {
+      List<TrashMailDTO> trashMails = new ArrayList<>();
+      for (List<TrashMailDTO> part : batch.parts) {
+        trashMails.addAll(part);
+      }
+      try {
+        usermailService.removeMsgFromTrash(batch.temail, trashMails);
+        for (int index : batch.indexes) {
+          results[index] = true;
+        }
+        return;
+      } catch (Exception e) {
+        // 合并删除失败时逐条重试，只让真正失败的消息重新投递
+        LOGGER.warn("MQ merged trash remove failed, temail={}, size={}", batch.temail, batch.indexes.size(), e);
+      }
+    }
+    for (int i = 0; i < batch.indexes.size(); i++) {
+      int index = batch.indexes.get(i);
+      try {
+        usermailService.removeMsgFromTrash(batch.temail, batch.parts.get(i));
+        results[index] = true;
+      } catch (UserMailException e) {
+        LOGGER.error("MQ args execption", e);
+        results[index] = true;
+      } catch (Exception e) {
+        LOGGER.error("MQ consumer execption", e);
+        results[index] = false;
+      }
+    }
+  }
+
+  private SessionEvent decode(byte[] message) {
+    return SessionEventCodec.isBinary(message) ? SessionEventCodec.decode(message) : parseJson(new String(message));
+  }
+
+  /**
+   * 流式解析废纸篓消息列表（json数组字符串），直接绑定到TrashMailDTO，不经过反射和TypeToken
+   */
+  static List<TrashMailDTO> parseTrashMails(String trashMsgInfo) {
+    try (JsonReader reader = new JsonReader(new StringReader(trashMsgInfo))) {
+      reader.setLenient(true);
+      List<TrashMailDTO> trashMails = new ArrayList<>();
+      reader.beginArray();
+      while (reader.hasNext()) {
+        TrashMailDTO trashMailDto = new TrashMailDTO();
+        reader.beginObject();
+        while (reader.hasNext()) {
+          // 字段名与TrashMailDTO序列化为json时的字段名一致
+          switch (reader.nextName()) {
+            case "from":
+              trashMailDto.setFrom(nextString(reader));
+              break;
+            case "to":
+              trashMailDto.setTo(nextString(reader));
+              break;
+            case "msgId":
+              trashMailDto.setMsgId(nextString(reader));
+              break;
+            default:
+              reader.skipValue();
+          }
+        }
+        reader.endObject();
+        trashMails.add(trashMailDto);
+      }
+      reader.endArray();
+      return trashMails;
+    } catch (IOException e) {
+      throw new JsonSyntaxException(e);
+    }
+  }
+
+  /**
+   * 流式解析json事件，一次遍历只绑定分发需要的字段，其余字段直接跳过，不构建JsonObject树
+   */
+  static SessionEvent parseJson(String message) {
+    try (JsonReader reader = new JsonReader(new StringReader(message))) {
+      reader.setLenient(true);
+      SessionEvent event = new SessionEvent();
+      reader.beginObject();
+      while (reader.hasNext()) {
+        switch (reader.nextName()) {
+          case SessionEventKey.SESSION_MESSAGE_TYPE:
+            event.setSessionMessageType(reader.nextInt());
+            break;
+          case SessionEventKey.CDTP_HEADER:
+            event.setCdtpHeader(nextString(reader));
+            break;
+          case SessionEventKey.X_PACKET_ID:
+            event.setxPacketId(nextString(reader));
+            break;
+          case SessionEventKey.FROM:
+            event.setFrom(nextString(reader));
+            break;
+          case SessionEventKey.TO:
+            event.setTo(nextString(reader));
+            break;
+          case SessionEventKey.OWNER:
+            event.setOwner(nextString(reader));
+            break;
+          case SessionEventKey.MSGID:
+            event.setMsgid(nextString(reader));
+            break;
+          case SessionEventKey.REPLY_MSG_PARENT_ID:
+            event.setReplyMsgParentId(nextString(reader));
+            break;
+          case SessionEventKey.TRASH_MSG_INFO:
+            event.setTrashMsgInfo(nextString(reader));
+            break;
+          case SessionEventKey.GROUP_TEMAIL:
+            event.setGroupTemail(nextString(reader));
+            break;
+          case SessionEventKey.TEMAIL:
+            event.setTemail(nextString(reader));
+            break;
+          case SessionEventKey.TEMAIL_DOMAIN:
+            event.setTemailDomain(nextString(reader));
+            break;
+          default:
+            reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return event;
+    } catch (IOException e) {
+      throw new JsonSyntaxException(e);
+    }
+  }
+
+  private static String nextString(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    return reader.nextString();
+  }
+
+  private boolean dispatch(SessionEvent event) {
+    int eventType = event.getSessionMessageType();
     String domain;
-    LOGGER.debug("mq-receicver-message->{},eventType={}", message, eventType);
+    LOGGER.debug("mq-receicver-message eventType={}", eventType);
+    if (agentEventDeduplicator.isConsumed(event)) {
+      LOGGER.info("mq-receicver-message duplicated, eventType={}, xPacketId={}, owner={}", eventType,
+          event.getxPacketId(), event.getOwner());
+      return true;
+    }
     switch (eventType) {
       case UsermailAgentEventType.TRASH_REMOVE_0:
-        String temail = root.get(ParamsKey.SessionEventKey.FROM).getAsString();
-        JsonElement trashJsonElement = root.get(ParamsKey.SessionEventKey.TRASH_MSG_INFO);
-        if (!StringUtils.isEmpty(trashJsonElement)) {
-          String trashMsgInfo = trashJsonElement.getAsString();
-          List<TrashMailDTO> trashMailDtos = new Gson().fromJson(trashMsgInfo, new TypeToken<List<TrashMailDTO>>() {
-          }.getType());
-          usermailService.removeMsgFromTrash(temail, trashMailDtos);
+        String temail = event.getFrom();
+        if (event.getTrashMsgInfo() != null) {
+          usermailService.removeMsgFromTrash(temail, parseTrashMails(event.getTrashMsgInfo()));
         } else {
           usermailService.clearMsgFromTrash(temail);
         }
         break;
       case UsermailAgentEventType.DESTROY_AFTER_READ_2:
-        owner = root.get(ParamsKey.SessionEventKey.OWNER).getAsString();
-        from = root.get(ParamsKey.SessionEventKey.FROM).getAsString();
-        msgId = root.get(ParamsKey.SessionEventKey.MSGID).getAsString();
-        to = root.get(ParamsKey.SessionEventKey.TO).getAsString();
-        cdtpHeader = root.get(ParamsKey.SessionEventKey.CDTP_HEADER).getAsString();
-        xPacketId = root.get(ParamsKey.SessionEventKey.X_PACKET_ID).getAsString();
-        usermailService.destroyAfterRead(xPacketId, cdtpHeader, from, to, owner, msgId);
+        usermailService.destroyAfterRead(event.getxPacketId(), event.getCdtpHeader(), event.getFrom(), event.getTo(),
+            event.getOwner(), event.getMsgid());
         break;
       case UsermailAgentEventType.REVERT_MSG_3:
-        owner = root.get(ParamsKey.SessionEventKey.OWNER).getAsString();
-        msgId = root.get(ParamsKey.SessionEventKey.MSGID).getAsString();
-        from = root.get(ParamsKey.SessionEventKey.FROM).getAsString();
-        to = root.get(ParamsKey.SessionEventKey.TO).getAsString();
-        cdtpHeader = root.get(ParamsKey.SessionEventKey.CDTP_HEADER).getAsString();
-        xPacketId = root.get(ParamsKey.SessionEventKey.X_PACKET_ID).getAsString();
-        usermailService.revertMqHandler(xPacketId, cdtpHeader, from, to, owner, msgId);
+        usermailService.revertMqHandler(event.getxPacketId(), event.getCdtpHeader(), event.getFrom(), event.getTo(),
+            event.getOwner(), event.getMsgid());
         break;
       case UsermailAgentEventType.REVERT_REPLY_MSG_4:
-        from = root.get(ParamsKey.SessionEventKey.FROM).getAsString();
-        to = root.get(ParamsKey.SessionEventKey.TO).getAsString();
-        cdtpHeader = root.get(ParamsKey.SessionEventKey.CDTP_HEADER).getAsString();
-        xPacketId = root.get(ParamsKey.SessionEventKey.X_PACKET_ID).getAsString();
-        owner = root.get(ParamsKey.SessionEventKey.OWNER).getAsString();
-        msgId = root.get(ParamsKey.SessionEventKey.MSGID).getAsString();
-        String replyMsgParentId = root.get(ParamsKey.SessionEventKey.REPLY_MSG_PARENT_ID).getAsString();
-        usermailMsgReplyService.revertMsgReply(xPacketId, cdtpHeader, from, to, owner, replyMsgParentId, msgId);
+        usermailMsgReplyService.revertMsgReply(event.getxPacketId(), event.getCdtpHeader(), event.getFrom(),
+            event.getTo(), event.getOwner(), event.getReplyMsgParentId(), event.getMsgid());
         break;
       case UsermailAgentEventType.DESTROY_AFTER_READ_REPLY_MSG_5:
-        from = root.get(ParamsKey.SessionEventKey.FROM).getAsString();
-        to = root.get(ParamsKey.SessionEventKey.TO).getAsString();
-        cdtpHeader = root.get(ParamsKey.SessionEventKey.CDTP_HEADER).getAsString();
-        xPacketId = root.get(ParamsKey.SessionEventKey.X_PACKET_ID).getAsString();
-        owner = root.get(ParamsKey.SessionEventKey.OWNER).getAsString();
-        msgId = root.get(ParamsKey.SessionEventKey.MSGID).getAsString();
-        String replyDestroyParentId = root.get(ParamsKey.SessionEventKey.REPLY_MSG_PARENT_ID).getAsString();
-        usermailMsgReplyService.destroyAfterRead(xPacketId, cdtpHeader, from, to, owner, msgId, replyDestroyParentId);
+        usermailMsgReplyService.destroyAfterRead(event.getxPacketId(), event.getCdtpHeader(), event.getFrom(),
+            event.getTo(), event.getOwner(), event.getMsgid(), event.getReplyMsgParentId());
         break;
       case UsermailAgentEventType.REMOVE_GROUP_CHAT_MEMBERS_6:
-        String groupTemail = root.get(ParamsKey.SessionEventKey.GROUP_TEMAIL).getAsString();
-        String member = root.get(ParamsKey.SessionEventKey.TEMAIL).getAsString();
-        usermailService.deleteGroupChatSession(groupTemail, member);
+        usermailService.deleteGroupChatSession(event.getGroupTemail(), event.getTemail());
         break;
       case UsermailAgentEventType.CLEAR_ALL_USERMAIL_7:
-        domain = root.get(SessionEventKey.TEMAIL_DOMAIN).getAsString();
+        domain = event.getTemailDomain();
         domainClearService.clearUsermailAll(domain);
         break;
       case UsermailAgentEventType.CLEAR_ALL_USERMAIL_MSG_REPLY_8:
-        domain = root.get(SessionEventKey.TEMAIL_DOMAIN).getAsString();
+        domain = event.getTemailDomain();
         domainClearService.clearMsgReplyAll(domain);
         break;
       case UsermailAgentEventType.CLEAR_ALL_USERMAIL_BLACK_LIST_9:
-        domain = root.get(SessionEventKey.TEMAIL_DOMAIN).getAsString();
+        domain = event.getTemailDomain();
         domainClearService.clearBlackAll(domain);
         break;
       case UsermailAgentEventType.CLEAR_ALL_USERMAIL_BOX_10:
-        domain = root.get(SessionEventKey.TEMAIL_DOMAIN).getAsString();
+        domain = event.getTemailDomain();
         domainClearService.clearBoxAll(domain);
         break;
       default:
         LOGGER.error("UsermailMQConsumer consumer eventType={}", eventType);
     }
-
+    agentEventDeduplicator.markConsumed(event);
     return true;
   }
+
+  /**
+   * 同一owner待合并执行的废纸篓删除，parts与indexes按消息顺序一一对应
+   */
+  private static class TrashRemoveBatch {
+
+    private final String temail;
+    private final List<Integer> indexes = new ArrayList<>();
+    private final List<List<TrashMailDTO>> parts = new ArrayList<>();
+
+    TrashRemoveBatch(String temail) {
+      this.temail = temail;
+    }
+
+    void add(int index, List<TrashMailDTO> trashMails) {
+      indexes.add(index);
+      parts.add(trashMails);
+    }
+  }
 }
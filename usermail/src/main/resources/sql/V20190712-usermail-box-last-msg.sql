@@ -0,0 +1,18 @@
+-- 会话列表冗余最新一条消息的摘要，topN会话列表直接按 last_msg_time 走索引排序
+ALTER TABLE `usermail_box` ADD COLUMN `last_msgid` varchar(128) NOT NULL DEFAULT '' COMMENT '会话最新一条消息的msgid';
+ALTER TABLE `usermail_box` ADD COLUMN `last_seq_no` bigint(20) NOT NULL DEFAULT '0' COMMENT '会话最新一条消息的seqNo';
+ALTER TABLE `usermail_box` ADD COLUMN `last_msg_time` timestamp NULL DEFAULT NULL COMMENT '会话最新一条消息的时间';
+ALTER TABLE `usermail_box` ADD INDEX `i_owner_status_msgtime` (`owner`, `archive_status`, `last_msg_time`);
+
+-- 回填历史会话的最新消息摘要
+UPDATE `usermail_box` b
+INNER JOIN (
+  SELECT u.`owner`, u.`sessionid`, u.`msgid`, u.`seq_no`, u.`create_time`
+  FROM `usermail` u
+  INNER JOIN (
+    SELECT `owner`, `sessionid`, max(`seq_no`) AS `seq_no`
+    FROM `usermail`
+    GROUP BY `owner`, `sessionid`
+  ) m ON u.`owner` = m.`owner` AND u.`sessionid` = m.`sessionid` AND u.`seq_no` = m.`seq_no`
+) l ON b.`owner` = l.`owner` AND b.`sessionid` = l.`sessionid`
+SET b.`last_msgid` = l.`msgid`, b.`last_seq_no` = l.`seq_no`, b.`last_msg_time` = l.`create_time`;
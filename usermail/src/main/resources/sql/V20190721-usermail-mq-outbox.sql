@@ -0,0 +1,22 @@
+-- 事务发件箱（spring.rocketmq.sender=OUTBOX），业务事务提交前写入，由中继按id顺序批量发送后删除
+CREATE TABLE `usermail_mq_outbox` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT '自增ID，即发送顺序',
+  `topic` varchar(255) NOT NULL COMMENT 'mq topic',
+  `tag` varchar(320) DEFAULT NULL COMMENT 'mq tag',
+  `message` mediumtext NOT NULL COMMENT '消息内容',
+  `attempts` int(11) NOT NULL DEFAULT '0' COMMENT '发送失败次数',
+  `create_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- 发件箱死信表，发送失败次数达到 spring.rocketmq.outbox-relay-max-attempts 的消息由中继移入，需人工排查后处理
+CREATE TABLE `usermail_mq_outbox_dead` (
+  `id` bigint(20) NOT NULL COMMENT '原发件箱消息ID',
+  `topic` varchar(255) NOT NULL COMMENT 'mq topic',
+  `tag` varchar(320) DEFAULT NULL COMMENT 'mq tag',
+  `message` mediumtext NOT NULL COMMENT '消息内容',
+  `attempts` int(11) NOT NULL COMMENT '发送失败次数',
+  `create_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '原消息写入时间',
+  `dead_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '移入死信表时间',
+  PRIMARY KEY (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -7,6 +7,8 @@ ALTER TABLE `usermail` ADD UNIQUE KEY `UK_msg` (`msgid`,`owner`);
 --普通索引改成唯一索引
 ALTER TABLE `usermail_box`
 ADD UNIQUE INDEX `i_owner_mail2` (`owner`, `mail2`) USING BTREE ;
+-- topN会话列表按最新消息时间倒序取前N条
+ALTER TABLE `usermail_box` ADD INDEX `i_owner_status_msgtime` (`owner`, `archive_status`, `last_msg_time`);
 
 
 -- 防止前端重发，加入唯一索引
@@ -34,8 +34,12 @@ CREATE TABLE `usermail_box` (
   `archive_status` tinyint(1) NOT NULL DEFAULT '0' COMMENT '归档状态',
   `update_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '更新时间',
   `session_ext_data` varchar(256) DEFAULT '' COMMENT '会话中对方的头像昵称信息',
+  `last_msgid` varchar(128) NOT NULL DEFAULT '' COMMENT '会话最新一条消息的msgid',
+  `last_seq_no` bigint(20) NOT NULL DEFAULT '0' COMMENT '会话最新一条消息的seqNo',
+  `last_msg_time` timestamp NULL DEFAULT NULL COMMENT '会话最新一条消息的时间',
   PRIMARY KEY (`id`),
-  UNIQUE KEY `i_owner_mail2` (`owner`,`mail2`) USING BTREE
+  UNIQUE KEY `i_owner_mail2` (`owner`,`mail2`) USING BTREE,
+  KEY `i_owner_status_msgtime` (`owner`,`archive_status`,`last_msg_time`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
 DROP TABLE IF EXISTS `usermail_msg_reply`;
@@ -67,3 +71,26 @@ CREATE TABLE `usermail_blacklist` (
   PRIMARY KEY (`id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
+
+DROP TABLE IF EXISTS `usermail_mq_outbox`;
+CREATE TABLE `usermail_mq_outbox` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT '自增ID，即发送顺序',
+  `topic` varchar(255) NOT NULL COMMENT 'mq topic',
+  `tag` varchar(320) DEFAULT NULL COMMENT 'mq tag',
+  `message` mediumtext NOT NULL COMMENT '消息内容',
+  `attempts` int(11) NOT NULL DEFAULT '0' COMMENT '发送失败次数',
+  `create_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+DROP TABLE IF EXISTS `usermail_mq_outbox_dead`;
+CREATE TABLE `usermail_mq_outbox_dead` (
+  `id` bigint(20) NOT NULL COMMENT '原发件箱消息ID',
+  `topic` varchar(255) NOT NULL COMMENT 'mq topic',
+  `tag` varchar(320) DEFAULT NULL COMMENT 'mq tag',
+  `message` mediumtext NOT NULL COMMENT '消息内容',
+  `attempts` int(11) NOT NULL COMMENT '发送失败次数',
+  `create_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '原消息写入时间',
+  `dead_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '移入死信表时间',
+  PRIMARY KEY (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -0,0 +1,103 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.syswin.temail.usermail.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.syswin.temail.usermail.common.Constants.UsermailAgentEventType;
+import com.syswin.temail.usermail.core.IUsermailAdapter;
+import com.syswin.temail.usermail.core.dto.CdtpHeaderDTO;
+import com.syswin.temail.usermail.core.dto.SessionEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class AgentEventDeduplicatorTest {
+
+  private static final String KEY = "packet-1:owner@t.email:" + UsermailAgentEventType.REVERT_MSG_3;
+  private final IUsermailAdapter usermailAdapter = Mockito.mock(IUsermailAdapter.class);
+  private final AgentEventDeduplicator deduplicator = new AgentEventDeduplicator(usermailAdapter);
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(deduplicator, "localSize", 100);
+    ReflectionTestUtils.setField(deduplicator, "redisTtl", 0L);
+    deduplicator.init();
+  }
+
+  @Test
+  public void localCacheShortCircuitsDuplicates() {
+    SessionEvent event = revertEvent("packet-1");
+    assertThat(deduplicator.isConsumed(event)).isFalse();
+    deduplicator.markConsumed(event);
+    assertThat(deduplicator.isConsumed(revertEvent("packet-1"))).isTrue();
+    assertThat(deduplicator.isConsumed(revertEvent("packet-2"))).isFalse();
+    verify(usermailAdapter, never()).isEventConsumed(anyString());
+    verify(usermailAdapter, never()).markEventConsumed(anyString(), anyLong());
+  }
+
+  @Test
+  public void eventsWithoutPacketIdAreNeverDeduplicated() {
+    SessionEvent event = new SessionEvent(null, UsermailAgentEventType.TRASH_REMOVE_0, "owner@t.email", null);
+    deduplicator.markConsumed(event);
+    assertThat(deduplicator.isConsumed(event)).isFalse();
+  }
+
+  @Test
+  public void redisIsCheckedAndMarkedWhenEnabled() {
+    ReflectionTestUtils.setField(deduplicator, "redisTtl", 600L);
+    when(usermailAdapter.isEventConsumed(KEY)).thenReturn(true);
+
+    assertThat(deduplicator.isConsumed(revertEvent("packet-1"))).isTrue();
+    deduplicator.markConsumed(revertEvent("packet-3"));
+
+    verify(usermailAdapter).markEventConsumed("packet-3:owner@t.email:" + UsermailAgentEventType.REVERT_MSG_3, 600L);
+  }
+
+  @Test
+  public void redisErrorsAreTreatedAsNotConsumed() {
+    ReflectionTestUtils.setField(deduplicator, "redisTtl", 600L);
+    when(usermailAdapter.isEventConsumed(KEY)).thenThrow(new IllegalStateException("redis down"));
+    doThrow(new IllegalStateException("redis down")).when(usermailAdapter).markEventConsumed(KEY, 600L);
+
+    assertThat(deduplicator.isConsumed(revertEvent("packet-1"))).isFalse();
+    deduplicator.markConsumed(revertEvent("packet-1"));
+    assertThat(deduplicator.isConsumed(revertEvent("packet-1"))).isTrue();
+  }
+
+  private static SessionEvent revertEvent(String xPacketId) {
+    SessionEvent event = new SessionEvent(new CdtpHeaderDTO("{}", xPacketId), UsermailAgentEventType.REVERT_MSG_3,
+        "from@t.email", "owner@t.email");
+    event.setOwner("owner@t.email");
+    event.setMsgid("msg-1");
+    return event;
+  }
+}
@@ -30,6 +30,8 @@ import static com.syswin.temail.usermail.common.ParamsKey.CassandraConstant.TABL
 import static com.syswin.temail.usermail.common.ParamsKey.CassandraConstant.TABLE_USERMAIL_MSG_REPLY;
 import static com.syswin.temail.usermail.common.ParamsKey.SessionEventKey.MESSAGE;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.syswin.temail.usermail.cassandra.application.INosqlMsgTemplate;
 import com.syswin.temail.usermail.common.Constants.TemailStatus;
 import com.syswin.temail.usermail.common.Constants.TemailType;
@@ -38,6 +40,8 @@ import com.syswin.temail.usermail.domains.UsermailDO;
 import com.syswin.temail.usermail.domains.UsermailMsgReplyDO;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,6 +49,7 @@ import java.util.UUID;
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
 
 public class ConvertMsgServiceTest {
 
@@ -148,4 +153,119 @@ public class ConvertMsgServiceTest {
       }
     });
   }
-}
\ No newline at end of file
+
+  @Test
+  public void convertMsgInParallel() {
+    ReflectionTestUtils.setField(convertMsgService, "decodeParallelism", 2);
+    ReflectionTestUtils.setField(convertMsgService, "decodeParallelThreshold", 4);
+    convertMsgService.init();
+    try {
+      List<UsermailDO> usermails = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        UsermailDO userMail = new UsermailDO();
+        userMail.setId(i);
+        userMail.setZipMsg(msgCompressor.zip(("message" + i).getBytes()));
+        usermails.add(userMail);
+      }
+
+      List<UsermailDO> convertMsg = convertMsgService.convertMsg(usermails);
+
+      for (int i = 0; i < convertMsg.size(); i++) {
+        Assertions.assertThat(convertMsg.get(i).getMessage())
+            .isEqualTo(Base64.getUrlEncoder().encodeToString(("message" + i).getBytes()));
+        Assertions.assertThat(convertMsg.get(i).getZipMsg()).isNull();
+      }
+    } finally {
+      convertMsgService.destroy();
+    }
+  }
+
+  @Test
+  public void convertMsgLazily() {
+    MsgCompressor spyCompressor = Mockito.spy(msgCompressor);
+    ConvertMsgService lazyService = new ConvertMsgService(spyCompressor, nosqlMsgTemplate);
+    ReflectionTestUtils.setField(lazyService, "decodeLazy", true);
+    UsermailMsgReplyDO reply = new UsermailMsgReplyDO();
+    reply.setZipMsg(msgCompressor.zip("reply".getBytes()));
+
+    lazyService.convertReplyMsg(Collections.singletonList(reply));
+
+    Mockito.verify(spyCompressor, Mockito.never()).unzipEncode(Mockito.any(byte[].class));
+    Assertions.assertThat(reply.getZipMsg()).isNull();
+    Assertions.assertThat(reply.getMsg()).isEqualTo(Base64.getUrlEncoder().encodeToString("reply".getBytes()));
+    Assertions.assertThat(reply.getMsg()).isEqualTo(Base64.getUrlEncoder().encodeToString("reply".getBytes()));
+    Mockito.verify(spyCompressor, Mockito.times(1)).unzipEncode(Mockito.any(byte[].class));
+  }
+
+  @Test
+  public void convertMsgLazilyOmitsUndecodableMessage() {
+    ConvertMsgService lazyService = new ConvertMsgService(msgCompressor, nosqlMsgTemplate);
+    ReflectionTestUtils.setField(lazyService, "decodeLazy", true);
+    UsermailDO usermail = new UsermailDO();
+    usermail.setZipMsg(new byte[]{0x1f, (byte) 0x8b, 1, 2, 3});
+
+    lazyService.convertMsg(Collections.singletonList(usermail));
+
+    Assertions.assertThat(usermail.getMessage()).isNull();
+  }
+
+  @Test
+  public void convertMsgStreamsLazily() throws Exception {
+    MsgCompressor spyCompressor = Mockito.spy(msgCompressor);
+    ConvertMsgService streamService = new ConvertMsgService(spyCompressor, nosqlMsgTemplate);
+    ReflectionTestUtils.setField(streamService, "decodeLazy", true);
+    ReflectionTestUtils.setField(streamService, "decodeStream", true);
+    UsermailDO usermail = new UsermailDO();
+    usermail.setZipMsg(msgCompressor.zip("usermail".getBytes()));
+    UsermailMsgReplyDO reply = new UsermailMsgReplyDO();
+    reply.setZipMsg(msgCompressor.zip("reply".getBytes()));
+
+    streamService.convertMsg(Collections.singletonList(usermail));
+    streamService.convertReplyMsg(Collections.singletonList(reply));
+    ObjectMapper objectMapper = new ObjectMapper();
+    JsonNode usermailJson = objectMapper.readTree(objectMapper.writeValueAsString(usermail));
+    JsonNode replyJson = objectMapper.readTree(objectMapper.writeValueAsString(reply));
+
+    Mockito.verify(spyCompressor, Mockito.never()).unzipEncode(Mockito.any(byte[].class));
+    Mockito.verify(spyCompressor, Mockito.times(2)).unzipAsStream(Mockito.any(byte[].class));
+    Assertions.assertThat(usermailJson.get("message").asText())
+        .isEqualTo(Base64.getUrlEncoder().encodeToString("usermail".getBytes()));
+    Assertions.assertThat(replyJson.get("message").asText())
+        .isEqualTo(Base64.getUrlEncoder().encodeToString("reply".getBytes()));
+    Assertions.assertThat(reply.getMsg()).isEqualTo(Base64.getUrlEncoder().encodeToString("reply".getBytes()));
+  }
+
+  @Test
+  public void convertMsgFetchNosqlConcurrentlyAndCache() {
+    ReflectionTestUtils.setField(convertMsgService, "nosqlFetchConcurrency", 2);
+    ReflectionTestUtils.setField(convertMsgService, "nosqlFetchBatchSize", 1);
+    ReflectionTestUtils.setField(convertMsgService, "nosqlCacheSize", 10);
+    convertMsgService.init();
+    try {
+      List<UsermailDO> usermails = new ArrayList<>();
+      for (long i = 0; i < 3; i++) {
+        UsermailDO userMail = new UsermailDO();
+        userMail.setId(i);
+        usermails.add(userMail);
+        HashMap<String, Object> map = new HashMap<>();
+        map.put(ID, i);
+        map.put(MESSAGE, ByteBuffer.wrap(msgCompressor.zip(("message" + i).getBytes())));
+        Mockito.when(nosqlMsgTemplate.listMsg(KEYSPACE_USERMAILAGENT, TABLE_USERMAIL, new Object[]{i}, ID, MESSAGE))
+            .thenReturn(Collections.singletonList(map));
+      }
+
+      convertMsgService.convertMsg(usermails);
+      usermails.forEach(usermail -> usermail.setMessage(null));
+      convertMsgService.convertMsg(usermails);
+
+      for (long i = 0; i < 3; i++) {
+        Assertions.assertThat(usermails.get((int) i).getMessage())
+            .isEqualTo(Base64.getUrlEncoder().encodeToString(("message" + i).getBytes()));
+        Mockito.verify(nosqlMsgTemplate, Mockito.times(1))
+            .listMsg(KEYSPACE_USERMAILAGENT, TABLE_USERMAIL, new Object[]{i}, ID, MESSAGE);
+      }
+    } finally {
+      convertMsgService.destroy();
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2019 Syswin
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.syswin.temail.usermail.application;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import com.syswin.temail.usermail.core.IUsermailAdapter;
+import com.syswin.temail.usermail.core.dto.ReplyCountDeltaDTO;
+import com.syswin.temail.usermail.infrastructure.domain.IUsermailMsgDB;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ReplyCountWriteBehindTest {
+
+  private final IUsermailMsgDB usermailMsgDB = Mockito.mock(IUsermailMsgDB.class);
+  private final IUsermailAdapter usermailAdapter = Mockito.mock(IUsermailAdapter.class);
+  private final ReplyCountWriteBehind replyCountWriteBehind = new ReplyCountWriteBehind(usermailMsgDB,
+      usermailAdapter);
+
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(replyCountWriteBehind, "flushInterval", 1000L);
+  }
+
+  @Test
+  public void writeThroughWhenDisabled() {
+    ReflectionTestUtils.setField(replyCountWriteBehind, "flushInterval", 0L);
+    replyCountWriteBehind.add("msgId", "owner", 1, "reply1");
+    replyCountWriteBehind.flush("msgId", "owner");
+    verify(usermailMsgDB).updateReplyCountAndLastReplyMsgid("msgId", "owner", 1, "reply1");
+    assertThat(replyCountWriteBehind.getPending("owner", Collections.singletonList("msgId"))).isEmpty();
+    verifyZeroInteractions(usermailAdapter);
+  }
+
+  @Test
+  public void addDeltaToSharedStore() {
+    replyCountWriteBehind.add("msgId", "owner", 1, "reply1");
+
+    ArgumentCaptor<ReplyCountDeltaDTO> captor = ArgumentCaptor.forClass(ReplyCountDeltaDTO.class);
+    verify(usermailAdapter).addReplyCountDelta(captor.capture());
+    assertThat(captor.getValue()).extracting(ReplyCountDeltaDTO::getMsgid, ReplyCountDeltaDTO::getOwner,
+        ReplyCountDeltaDTO::getCount, ReplyCountDeltaDTO::getLastReplyMsgid)
+        .containsExactly("msgId", "owner", 1, "reply1");
+    verify(usermailMsgDB, never()).updateReplyCountAndLastReplyMsgid(anyString(), anyString(), Mockito.anyInt(),
+        anyString());
+  }
+
+  @Test
+  public void flushTakenDeltasInBatches() {
+    List<ReplyCountDeltaDTO> deltas = Arrays.asList(new ReplyCountDeltaDTO("msgId", "owner", 2, "reply2"),
+        new ReplyCountDeltaDTO("msgId2", "owner", 1, "reply3"));
+    when(usermailAdapter.takeReplyCountDeltas(Mockito.anyInt())).thenReturn(deltas, Collections.emptyList());
+
+    replyCountWriteBehind.flush();
+
+    verify(usermailMsgDB).batchUpdateReplyCountAndLastReplyMsgid(deltas);
+    verify(usermailAdapter, never()).restoreReplyCountDelta(any());
+  }
+
+  @Test
+  public void flushSingleMsgBeforeDependentUpdate() {
+    when(usermailAdapter.takeReplyCountDelta("msgId", "owner"))
+        .thenReturn(new ReplyCountDeltaDTO("msgId", "owner", 1, "reply1"));
+
+    replyCountWriteBehind.flush("msgId", "owner");
+    replyCountWriteBehind.flush("msgId3", "owner");
+
+    verify(usermailMsgDB).updateReplyCountAndLastReplyMsgid("msgId", "owner", 1, "reply1");
+    verify(usermailMsgDB, never()).updateReplyCountAndLastReplyMsgid(Mockito.eq("msgId3"), anyString(),
+        Mockito.anyInt(), anyString());
+  }
+
+  @Test
+  public void restoreDeltasWhenFlushFailed() {
+    ReplyCountDeltaDTO delta = new ReplyCountDeltaDTO("msgId", "owner", 1, "reply1");
+    when(usermailAdapter.takeReplyCountDeltas(Mockito.anyInt())).thenReturn(Collections.singletonList(delta));
+    doThrow(new IllegalStateException("db down")).when(usermailMsgDB).batchUpdateReplyCountAndLastReplyMsgid(anyList());
+
+    assertThatThrownBy(replyCountWriteBehind::flush).isInstanceOf(IllegalStateException.class);
+
+    verify(usermailAdapter).restoreReplyCountDelta(delta);
+  }
+}
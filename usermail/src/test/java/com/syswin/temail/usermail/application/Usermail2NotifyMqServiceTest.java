@@ -54,6 +54,7 @@ import com.syswin.temail.usermail.configuration.UsermailConfig;
 import com.syswin.temail.usermail.core.IMqAdapter;
 import com.syswin.temail.usermail.core.dto.CdtpHeaderDTO;
 import com.syswin.temail.usermail.dto.TrashMailDTO;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -86,9 +87,9 @@ public class Usermail2NotifyMqServiceTest {
     usermail2NotifyMqService
         .sendMqMsgSaveMail(headerInfo, from, to, from, msgid, toMsg, seqNo, eventType, attachmentSize, from, null, null);
 
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
     verify(mqAdapter).sendMessage(eq(usermailConfig.mqTopic), eq(from), messageCaptor.capture());
-    String value = messageCaptor.getValue();
+    String value = new String(messageCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser parser = new JsonParser();
     JsonObject jsonObj = parser.parse(value).getAsJsonObject();
     assertEquals(headerInfo.getCdtpHeader(), jsonObj.get(CDTP_HEADER).getAsString());
@@ -117,9 +118,9 @@ public class Usermail2NotifyMqServiceTest {
 
     usermail2NotifyMqService.sendMqAfterUpdateStatus(headerInfo, from, to, msgid, eventType);
 
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
     verify(mqAdapter).sendMessage(eq(usermailConfig.mqTopic), eq(from), messageCaptor.capture());
-    String value = messageCaptor.getValue();
+    String value = new String(messageCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser parser = new JsonParser();
     JsonObject jsonObj = parser.parse(value).getAsJsonObject();
     assertEquals(headerInfo.getCdtpHeader(), jsonObj.get(CDTP_HEADER).getAsString());
@@ -145,9 +146,9 @@ public class Usermail2NotifyMqServiceTest {
 
     usermail2NotifyMqService.sendMqUpdateMsg(xPacketId, cdtpHeader, from, to, owner, msgid, eventType);
 
-    ArgumentCaptor<String> mapCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> mapCaptor = ArgumentCaptor.forClass(byte[].class);
     verify(mqAdapter).sendMessage(eq(usermailConfig.mqTopic), eq(from), mapCaptor.capture());
-    String value = mapCaptor.getValue();
+    String value = new String(mapCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser parser = new JsonParser();
     JsonObject jsonObject = parser.parse(value).getAsJsonObject();
     assertEquals(cdtpHeader, jsonObject.get(CDTP_HEADER).getAsString());
@@ -170,9 +171,9 @@ public class Usermail2NotifyMqServiceTest {
 
     usermail2NotifyMqService.sendMqAfterDeleteSession(headerInfo, from, to, deleteAllMsg, eventType);
 
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
     verify(mqAdapter).sendMessage(eq(usermailConfig.mqTopic), eq(from), messageCaptor.capture());
-    String value = messageCaptor.getValue();
+    String value = new String(messageCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser parser = new JsonParser();
     JsonObject jsonObject = parser.parse(value).getAsJsonObject();
     assertEquals(headerInfo.getCdtpHeader(), jsonObject.get(CDTP_HEADER).getAsString());
@@ -200,10 +201,10 @@ public class Usermail2NotifyMqServiceTest {
         .sendMqSaveMsgReply(headerInfo, from, to, owner, msgId, toMsg, seqNo, attachmentSize, parentMsgId);
 
     ArgumentCaptor<String> topicCaptor = ArgumentCaptor.forClass(String.class);
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
     ArgumentCaptor<String> tagCaptor = ArgumentCaptor.forClass(String.class);
     verify(mqAdapter).sendMessage(topicCaptor.capture(), tagCaptor.capture(), messageCaptor.capture());
-    String value = messageCaptor.getValue();
+    String value = new String(messageCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser parser = new JsonParser();
     JsonObject jsonObject = parser.parse(value).getAsJsonObject();
     assertEquals(headerInfo.getCdtpHeader(), jsonObject.get(CDTP_HEADER).getAsString());
@@ -235,9 +236,9 @@ public class Usermail2NotifyMqServiceTest {
     usermail2NotifyMqService
         .sendMqAfterUpdateMsgReply(xPacketId, cdtpHeader, from, to, owner, msgId, eventType, parentMsgId);
 
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
     verify(mqAdapter).sendMessage(eq(usermailConfig.mqTopic), eq(from), messageCaptor.capture());
-    String value = messageCaptor.getValue();
+    String value = new String(messageCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser parser = new JsonParser();
     JsonObject jsonObject = parser.parse(value).getAsJsonObject();
     assertEquals(cdtpHeader, jsonObject.get(CDTP_HEADER).getAsString());
@@ -264,9 +265,9 @@ public class Usermail2NotifyMqServiceTest {
 
     usermail2NotifyMqService.sendMqAfterRemoveMsgReply(headerInfo, from, to, owner, msgIds, eventType, parentMsgId);
 
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
     verify(mqAdapter).sendMessage(eq(usermailConfig.mqTopic), eq(from), messageCaptor.capture());
-    String value = messageCaptor.getValue();
+    String value = new String(messageCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser parser = new JsonParser();
     JsonObject jsonObject = parser.parse(value).getAsJsonObject();
     assertEquals(headerInfo.getCdtpHeader(), jsonObject.get(CDTP_HEADER).getAsString());
@@ -288,9 +289,9 @@ public class Usermail2NotifyMqServiceTest {
 
     usermail2NotifyMqService.sendMqAfterUpdateArchiveStatus(headerInfo, from, to, eventType);
 
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
     verify(mqAdapter).sendMessage(eq(usermailConfig.mqTopic), eq(from), messageCaptor.capture());
-    String message = messageCaptor.getValue();
+    String message = new String(messageCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser parser = new JsonParser();
     JsonObject jsonObject = parser.parse(message).getAsJsonObject();
     assertEquals(headerInfo.getCdtpHeader(), jsonObject.get(CDTP_HEADER).getAsString());
@@ -312,9 +313,9 @@ public class Usermail2NotifyMqServiceTest {
 
     usermail2NotifyMqService.sendMqMoveTrashNotify(headerInfo, from, to, msgIds, eventType);
 
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
     verify(mqAdapter).sendMessage(eq(usermailConfig.mqTopic), eq(from), messageCaptor.capture());
-    String message = messageCaptor.getValue();
+    String message = new String(messageCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser parser = new JsonParser();
     JsonObject jsonObject = parser.parse(message).getAsJsonObject();
     assertEquals(headerInfo.getCdtpHeader(), jsonObject.get(CDTP_HEADER).getAsString());
@@ -337,9 +338,9 @@ public class Usermail2NotifyMqServiceTest {
 
     usermail2NotifyMqService.sendMqTrashMsgNotify(headerInfo, owner, trashMailDtos, eventType);
 
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
     verify(mqAdapter).sendMessage(eq(usermailConfig.mqTopic), eq(owner), messageCaptor.capture());
-    String message = messageCaptor.getValue();
+    String message = new String(messageCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser parser = new JsonParser();
     JsonObject jsonObject = parser.parse(message).getAsJsonObject();
     assertEquals(headerInfo.getCdtpHeader(), jsonObject.get(CDTP_HEADER).getAsString());
@@ -360,9 +361,9 @@ public class Usermail2NotifyMqServiceTest {
 
     usermail2NotifyMqService.sendMqUpdateSessionExtData(headerInfo, from, to, sessionExtData, eventType);
 
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
     verify(mqAdapter).sendMessage(eq(usermailConfig.mqTopic), eq(from), messageCaptor.capture());
-    String message = messageCaptor.getValue();
+    String message = new String(messageCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser parser = new JsonParser();
     JsonObject jsonObject = parser.parse(message).getAsJsonObject();
     assertEquals(headerInfo.getCdtpHeader(), jsonObject.get(CDTP_HEADER).getAsString());
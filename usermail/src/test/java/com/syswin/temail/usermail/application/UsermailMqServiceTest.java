@@ -30,6 +30,7 @@ import static com.syswin.temail.usermail.common.ParamsKey.SessionEventKey.OWNER;
 import static com.syswin.temail.usermail.common.ParamsKey.SessionEventKey.REPLY_MSG_PARENT_ID;
 import static com.syswin.temail.usermail.common.ParamsKey.SessionEventKey.SESSION_MESSAGE_TYPE;
 import static com.syswin.temail.usermail.common.ParamsKey.SessionEventKey.TEMAIL;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
@@ -40,7 +41,10 @@ import com.syswin.temail.usermail.common.Constants.UsermailAgentEventType;
 import com.syswin.temail.usermail.common.ParamsKey.SessionEventKey;
 import com.syswin.temail.usermail.configuration.UsermailConfig;
 import com.syswin.temail.usermail.core.IMqAdapter;
+import com.syswin.temail.usermail.core.codec.SessionEventCodec;
+import com.syswin.temail.usermail.core.dto.SessionEvent;
 import com.syswin.temail.usermail.dto.TrashMailDTO;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
@@ -67,9 +71,9 @@ public class UsermailMqServiceTest {
 
     ArgumentCaptor<String> topicCaptor = ArgumentCaptor.forClass(String.class);
     ArgumentCaptor<String> tagCaptor = ArgumentCaptor.forClass(String.class);
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
     verify(mqAdapter).sendMessage(topicCaptor.capture(), tagCaptor.capture(), messageCaptor.capture());
-    String message = messageCaptor.getValue();
+    String message = new String(messageCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser parser = new JsonParser();
     JsonObject object = parser.parse(message).getAsJsonObject();
     assertEquals(temail, tagCaptor.getValue());
@@ -88,9 +92,9 @@ public class UsermailMqServiceTest {
 
     ArgumentCaptor<String> topicCaptor = ArgumentCaptor.forClass(String.class);
     ArgumentCaptor<String> tagCaptor = ArgumentCaptor.forClass(String.class);
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
     verify(mqAdapter).sendMessage(topicCaptor.capture(), tagCaptor.capture(), messageCaptor.capture());
-    String message = messageCaptor.getValue();
+    String message = new String(messageCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser parser = new JsonParser();
     JsonObject object = parser.parse(message).getAsJsonObject();
     assertEquals(owner, tagCaptor.getValue());
@@ -110,9 +114,9 @@ public class UsermailMqServiceTest {
 
     ArgumentCaptor<String> topicCaptor = ArgumentCaptor.forClass(String.class);
     ArgumentCaptor<String> tagCaptor = ArgumentCaptor.forClass(String.class);
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
     verify(mqAdapter).sendMessage(topicCaptor.capture(), tagCaptor.capture(), messageCaptor.capture());
-    String message = messageCaptor.getValue();
+    String message = new String(messageCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser parser = new JsonParser();
     JsonObject object = parser.parse(message).getAsJsonObject();
     assertEquals(owner, tagCaptor.getValue());
@@ -134,9 +138,9 @@ public class UsermailMqServiceTest {
     usermailMqService.sendMqRevertReplyMsg(xPacketId, header, from, to, owner, parentMsgReplyId, msgId);
     ArgumentCaptor<String> topicCaptor = ArgumentCaptor.forClass(String.class);
     ArgumentCaptor<String> tagCaptor = ArgumentCaptor.forClass(String.class);
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
     verify(mqAdapter).sendMessage(topicCaptor.capture(), tagCaptor.capture(), messageCaptor.capture());
-    String message = messageCaptor.getValue();
+    String message = new String(messageCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser parser = new JsonParser();
     JsonObject object = parser.parse(message).getAsJsonObject();
     assertEquals(msgId, object.get(MSGID).getAsString());
@@ -157,9 +161,9 @@ public class UsermailMqServiceTest {
     usermailMqService.sendMqReplyMsgDestroyAfterRead(xPacketId, header, owner, to, owner, msgId, parentMsgReplyId);
     ArgumentCaptor<String> topicCaptor = ArgumentCaptor.forClass(String.class);
     ArgumentCaptor<String> tagCaptor = ArgumentCaptor.forClass(String.class);
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
     verify(mqAdapter).sendMessage(topicCaptor.capture(), tagCaptor.capture(), messageCaptor.capture());
-    String message = messageCaptor.getValue();
+    String message = new String(messageCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser parser = new JsonParser();
     JsonObject object = parser.parse(message).getAsJsonObject();
     assertEquals(msgId, object.get(MSGID).getAsString());
@@ -176,10 +180,10 @@ public class UsermailMqServiceTest {
 
     ArgumentCaptor<String> topicCaptor = ArgumentCaptor.forClass(String.class);
     ArgumentCaptor<String> groupTemailCaptor = ArgumentCaptor.forClass(String.class);
-    ArgumentCaptor<String> messageCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
     verify(mqAdapter)
         .sendMessage(topicCaptor.capture(), groupTemailCaptor.capture(), messageCaptor.capture());
-    String value = messageCaptor.getValue();
+    String value = new String(messageCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser parser = new JsonParser();
     JsonObject jsonObject = parser.parse(value).getAsJsonObject();
     assertEquals(groupTemail, groupTemailCaptor.getValue());
@@ -192,13 +196,42 @@ public class UsermailMqServiceTest {
     String domain = "domain";
     int eventType = UsermailAgentEventType.CLEAR_ALL_USERMAIL_7;
     usermailMqService.sendMqClearDomain(domain, eventType);
-    ArgumentCaptor<String> mapCaptor = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<byte[]> mapCaptor = ArgumentCaptor.forClass(byte[].class);
     verify(mqAdapter).sendMessage(eq(usermailConfig.mqUserMailAgentTopic), eq(domain), mapCaptor.capture());
-    String mapCaptorValue = mapCaptor.getValue();
+    String mapCaptorValue = new String(mapCaptor.getValue(), StandardCharsets.UTF_8);
     JsonParser jsonParser = new JsonParser();
     JsonObject jsonObject = jsonParser.parse(mapCaptorValue).getAsJsonObject();
     assertEquals(domain, jsonObject.get(SessionEventKey.TEMAIL_DOMAIN).getAsString());
     assertEquals(eventType, jsonObject.get(SessionEventKey.SESSION_MESSAGE_TYPE).getAsInt());
   }
 
-}
\ No newline at end of file
+
+  @Test
+  public void sendBinaryEventWhenAdapterSupportsIt() {
+    UsermailConfig binaryConfig = new UsermailConfig();
+    binaryConfig.agentEventBinary = true;
+    Mockito.when(mqAdapter.supportsBinaryMessage()).thenReturn(true);
+    UsermailMqService binaryMqService = new UsermailMqService(mqAdapter, binaryConfig);
+    String owner = "owner@msgseal.com";
+    binaryMqService.sendMqRevertMsg("xPacketId", "CDTP-header", owner, "to@t.email", owner, "1345");
+
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
+    verify(mqAdapter).sendMessage(eq(binaryConfig.mqUserMailAgentTopic), eq(owner), messageCaptor.capture());
+    SessionEvent event = SessionEventCodec.decode(messageCaptor.getValue());
+    assertEquals(UsermailAgentEventType.REVERT_MSG_3, event.getSessionMessageType().intValue());
+    assertEquals("1345", event.getMsgid());
+    assertEquals(owner, event.getOwner());
+  }
+
+  @Test
+  public void sendJsonEventWhenAdapterCanNotSendBinary() {
+    UsermailConfig binaryConfig = new UsermailConfig();
+    binaryConfig.agentEventBinary = true;
+    UsermailMqService binaryMqService = new UsermailMqService(mqAdapter, binaryConfig);
+    binaryMqService.sendMqClearDomain("t.email", UsermailAgentEventType.CLEAR_ALL_USERMAIL_7);
+
+    ArgumentCaptor<byte[]> messageCaptor = ArgumentCaptor.forClass(byte[].class);
+    verify(mqAdapter).sendMessage(eq(binaryConfig.mqUserMailAgentTopic), eq("t.email"), messageCaptor.capture());
+    assertThat(SessionEventCodec.isBinary(messageCaptor.getValue())).isFalse();
+  }
+}
@@ -41,6 +41,7 @@ import com.syswin.temail.usermail.common.ResultCodeEnum;
 import com.syswin.temail.usermail.common.SessionEventType;
 import com.syswin.temail.usermail.core.IUsermailAdapter;
 import com.syswin.temail.usermail.core.dto.CdtpHeaderDTO;
+import com.syswin.temail.usermail.core.dto.SeqNoAndPkID;
 import com.syswin.temail.usermail.core.exception.IllegalGmArgsException;
 import com.syswin.temail.usermail.core.util.MsgCompressor;
 import com.syswin.temail.usermail.domains.UsermailDO;
@@ -72,7 +73,7 @@ public class UsermailMsgReplyServiceTest {
   private final ConvertMsgService convertMsgService = Mockito.mock(ConvertMsgService.class);
   private final UsermailMsgReplyService usermailMsgReplyService = new UsermailMsgReplyService(usermailMsgDB,
       usermailAdapter, usermailMsgReplyDB, usermail2NotifyMqService, usermailSessionService, msgCompressor,
-      usermailMqService, convertMsgService);
+      usermailMqService, convertMsgService, new ReplyCountWriteBehind(usermailMsgDB, usermailAdapter));
 
 
   @Test(expected = IllegalGmArgsException.class)
@@ -117,7 +118,7 @@ public class UsermailMsgReplyServiceTest {
     parentMail.setStatus(TemailStatus.STATUS_NORMAL_0);
     when(usermailMsgDB.selectByMsgidAndOwner(parentMsgid, owner)).thenReturn(parentMail);
     when(usermailSessionService.getSessionID(from, to)).thenReturn(sessionid);
-    when(usermailAdapter.getMsgReplySeqNo(parentMsgid, owner)).thenReturn(seqNo);
+    when(usermailAdapter.getMsgReplySeqNoAndPkID(parentMsgid, owner)).thenReturn(new SeqNoAndPkID(seqNo, 1L));
 
     // invoke method
     usermailMsgReplyService
@@ -127,7 +128,7 @@ public class UsermailMsgReplyServiceTest {
     ArgumentCaptor<UsermailMsgReplyDO> msgReplyCaptor = ArgumentCaptor.forClass(UsermailMsgReplyDO.class);
     verify(usermailMsgReplyDB).insert(msgReplyCaptor.capture());
     UsermailMsgReplyDO msgReplyCaptorValue = msgReplyCaptor.getValue();
-    UsermailMsgReplyDO expectMsgReplyDo = new UsermailMsgReplyDO(usermailAdapter.getMsgReplyPkID(), parentMsgid,
+    UsermailMsgReplyDO expectMsgReplyDo = new UsermailMsgReplyDO(1L, parentMsgid,
         msgid, from, to, seqNo, "", TemailStatus.STATUS_NORMAL_0, type, owner, sessionid,
         msgCompressor.zipWithDecode(message));
     assertThat(msgReplyCaptorValue).isEqualToComparingOnlyGivenFields(expectMsgReplyDo);
@@ -26,12 +26,14 @@ package com.syswin.temail.usermail.application;
 
 import static com.syswin.temail.usermail.common.Constants.TemailType.TYPE_DESTROY_AFTER_READ_1;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.RETURNS_SMART_NULLS;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -46,6 +48,9 @@ import com.syswin.temail.usermail.common.SessionEventType;
 import com.syswin.temail.usermail.core.IUsermailAdapter;
 import com.syswin.temail.usermail.core.dto.CdtpHeaderDTO;
 import com.syswin.temail.usermail.core.dto.Meta;
+import com.syswin.temail.usermail.core.dto.ReplyCountDeltaDTO;
+import com.syswin.temail.usermail.core.dto.SeqIdRange;
+import com.syswin.temail.usermail.core.dto.SeqNoAndPkID;
 import com.syswin.temail.usermail.core.exception.IllegalGmArgsException;
 import com.syswin.temail.usermail.core.util.MsgCompressor;
 import com.syswin.temail.usermail.domains.UsermailBoxDO;
@@ -55,6 +60,8 @@ import com.syswin.temail.usermail.dto.DeleteMailBoxQueryDTO;
 import com.syswin.temail.usermail.dto.MailboxDTO;
 import com.syswin.temail.usermail.dto.QueryTrashDTO;
 import com.syswin.temail.usermail.dto.RevertMailDTO;
+import com.syswin.temail.usermail.dto.SyncCursorDTO;
+import com.syswin.temail.usermail.dto.SyncMailsDTO;
 import com.syswin.temail.usermail.dto.TrashMailDTO;
 import com.syswin.temail.usermail.dto.UmQueryDTO;
 import com.syswin.temail.usermail.dto.UpdateSessionExtDataDTO;
@@ -64,9 +71,11 @@ import com.syswin.temail.usermail.infrastructure.domain.IUsermailMsgReplyDB;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Supplier;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -85,10 +94,11 @@ public class UsermailServiceTest {
       .mock(Usermail2NotifyMqService.class, RETURNS_SMART_NULLS);
   private final UsermailMqService usermailMqService = Mockito.mock(UsermailMqService.class, RETURNS_SMART_NULLS);
   private final ConvertMsgService convertMsgService = Mockito.mock(ConvertMsgService.class);
+  private final ReplyCountWriteBehind replyCountWriteBehind = Mockito.mock(ReplyCountWriteBehind.class);
   private final UsermailService usermailService = new UsermailService(
       usermailMsgDB, usermailBoxDB, usermailMsgReplyDB, usermailAdapter, usermailSessionService,
       usermail2NotifyMqService,
-      usermailMqService, new MsgCompressor(), convertMsgService
+      usermailMqService, new MsgCompressor(), convertMsgService, replyCountWriteBehind
   );
 
   private CdtpHeaderDTO headerInfo = new CdtpHeaderDTO("{CDTP-header:value}",
@@ -97,6 +107,8 @@ public class UsermailServiceTest {
   @Before
   public void setUp() {
     ReflectionTestUtils.setField(usermailService, "topN", 50);
+    ReflectionTestUtils.setField(usermailService, "batchSyncMaxSessions", 50);
+    ReflectionTestUtils.setField(usermailService, "batchSendMaxMails", 100);
   }
 
   @Test
@@ -133,7 +145,7 @@ public class UsermailServiceTest {
 
     when(usermailAdapter.getPkID()).thenReturn(1L);
     when(usermailSessionService.getSessionID(from, to)).thenReturn("sessionid");
-    when(usermailAdapter.getMsgSeqNo(from, to, from)).thenReturn(1L);
+    when(usermailAdapter.getMsgSeqNoAndPkID(from, to, from)).thenReturn(new SeqNoAndPkID(1L, 2L));
 
     usermail2NotifyMqService
         .sendMqMsgSaveMail(headerInfo, from, to, from, msgid, msgData, 1L, eventType, attachmentSize, from, null, null);
@@ -154,6 +166,10 @@ public class UsermailServiceTest {
     assertEquals(msgid, usermail.getMsgid());
     //assertEquals(msgData, usermail.getMessage());
     assertEquals(type, usermail.getType());
+    assertEquals(2L, usermail.getId());
+    assertEquals(1L, usermail.getSeqNo());
+    verify(usermailBoxDB).updateLastMsg(owner, to, msgid, 1L);
+    verify(usermailAdapter).setLastMsgId(owner, to, msgid, 1L);
   }
 
   @Test
@@ -172,7 +188,7 @@ public class UsermailServiceTest {
 
     when(usermailAdapter.getPkID()).thenReturn(1L);
     when(usermailSessionService.getSessionID(from, to)).thenReturn("sessionid");
-    when(usermailAdapter.getMsgSeqNo(from, to, from)).thenReturn(1L);
+    when(usermailAdapter.getMsgSeqNoAndPkID(from, to, from)).thenReturn(new SeqNoAndPkID(1L, 2L));
 
     usermail2NotifyMqService
         .sendMqMsgSaveMail(headerInfo, from, to, from, msgid, msgData, 1L, eventType, attachmentSize, from, null, null);
@@ -212,7 +228,7 @@ public class UsermailServiceTest {
 
     when(usermailAdapter.getPkID()).thenReturn(1L);
     when(usermailSessionService.getSessionID(from, to)).thenReturn("sessionid");
-    when(usermailAdapter.getMsgSeqNo(from, to, from)).thenReturn(1L);
+    when(usermailAdapter.getMsgSeqNoAndPkID(from, to, from)).thenReturn(new SeqNoAndPkID(1L, 2L));
 
     usermail2NotifyMqService
         .sendMqMsgSaveMail(headerInfo, from, to, from, msgid, msgData, 1L, eventType, attachmentSize, from, null, null);
@@ -235,6 +251,83 @@ public class UsermailServiceTest {
     assertEquals(type, usermail.getType());
   }
 
+  @Test
+  public void sendMailsAndInsertCopiesOnce() {
+    String msgid = "msgId";
+    String from = "from@temail.com";
+    String to = "to@temail.com";
+    CreateUsermailDTO toCopy = new CreateUsermailDTO(msgid, from, to, 0, 1, "toData", 100);
+    toCopy.setSessionExtData("sessionExtData");
+    CreateUsermailDTO fromCopy = new CreateUsermailDTO(msgid, from, to, 0, 2, "fromData", 100);
+    fromCopy.setSessionExtData("sessionExtData");
+    when(usermailAdapter.getPkID()).thenReturn(1L, 2L);
+    when(usermailSessionService.getSessionID(from, to)).thenReturn("sessionid");
+    when(usermailAdapter.getMsgSeqNoAndPkID(from, to, to)).thenReturn(new SeqNoAndPkID(5L, 10L));
+    when(usermailAdapter.getMsgSeqNoAndPkID(from, to, from)).thenReturn(new SeqNoAndPkID(7L, 11L));
+
+    List<Map<String, Object>> results = usermailService.sendMails(headerInfo, Arrays.asList(toCopy, fromCopy));
+
+    ArgumentCaptor<List<UsermailDO>> captor = ArgumentCaptor.forClass(List.class);
+    verify(usermailMsgDB).batchInsertUsermails(captor.capture());
+    verify(usermailMsgDB, times(0)).insertUsermail(any());
+    List<UsermailDO> mails = captor.getValue();
+    assertThat(mails).extracting(UsermailDO::getOwner).containsExactly(to, from);
+    assertThat(mails).extracting(UsermailDO::getSeqNo).containsExactly(5L, 7L);
+    assertThat(mails).extracting(UsermailDO::getId).containsExactly(10L, 11L);
+    assertThat(fromCopy.getSessionExtData()).isEmpty();
+    assertThat(results).extracting(result -> result.get("seqId")).containsExactly(5L, 7L);
+    ArgumentCaptor<List<UsermailBoxDO>> boxCaptor = ArgumentCaptor.forClass(List.class);
+    verify(usermailBoxDB).batchSaveUsermailBox(boxCaptor.capture());
+    assertThat(boxCaptor.getValue()).extracting(UsermailBoxDO::getOwner, UsermailBoxDO::getMail2,
+        UsermailBoxDO::getId, UsermailBoxDO::getSessionExtData)
+        .containsExactly(tuple(to, from, 1L, "sessionExtData"), tuple(from, to, 2L, ""));
+    ArgumentCaptor<List<UsermailBoxDO>> lastMsgCaptor = ArgumentCaptor.forClass(List.class);
+    verify(usermailBoxDB).batchUpdateLastMsg(lastMsgCaptor.capture());
+    assertThat(lastMsgCaptor.getValue()).extracting(UsermailBoxDO::getOwner, UsermailBoxDO::getMail2,
+        UsermailBoxDO::getLastMsgid, UsermailBoxDO::getLastSeqNo)
+        .containsExactly(tuple(to, from, msgid, 5L), tuple(from, to, msgid, 7L));
+    verify(usermailBoxDB, never()).saveUsermailBox(any());
+    verify(usermailBoxDB, never()).updateLastMsg(anyString(), anyString(), anyString(), Mockito.anyLong());
+    verify(usermailAdapter).setLastMsgId(to, from, msgid, 5L);
+    verify(usermailAdapter).setLastMsgId(from, to, msgid, 7L);
+  }
+
+  @Test
+  public void sendMailsReuseExistingBoxAndKeepLatestMsg() {
+    String from = "from@temail.com";
+    String to = "to@temail.com";
+    CreateUsermailDTO first = new CreateUsermailDTO("msgId1", from, to, 0, 1, "data1", 100);
+    CreateUsermailDTO second = new CreateUsermailDTO("msgId2", from, to, 0, 1, "data2", 100);
+    UsermailBoxDO dbBox = new UsermailBoxDO(3L, "sessionid", from, to, "sessionExtData");
+    when(usermailBoxDB.listUsermailBoxsByOwnerAndMail2Pairs(any())).thenReturn(Collections.singletonList(dbBox));
+    when(usermailSessionService.getSessionID(from, to)).thenReturn("sessionid");
+    when(usermailAdapter.getMsgSeqNoAndPkID(from, to, to))
+        .thenReturn(new SeqNoAndPkID(5L, 10L), new SeqNoAndPkID(6L, 11L));
+
+    usermailService.sendMails(headerInfo, Arrays.asList(first, second));
+
+    verify(usermailAdapter, never()).getPkID();
+    verify(usermailBoxDB).batchSaveUsermailBox(Collections.emptyList());
+    ArgumentCaptor<List<UsermailBoxDO>> lastMsgCaptor = ArgumentCaptor.forClass(List.class);
+    verify(usermailBoxDB).batchUpdateLastMsg(lastMsgCaptor.capture());
+    assertThat(lastMsgCaptor.getValue()).extracting(UsermailBoxDO::getLastMsgid, UsermailBoxDO::getLastSeqNo)
+        .containsExactly(tuple("msgId2", 6L));
+  }
+
+  @Test(expected = IllegalGmArgsException.class)
+  public void sendMailsWhenStoreTypeIllegal() {
+    usermailService.sendMails(headerInfo, Collections.singletonList(
+        new CreateUsermailDTO("msgId", "from@temail.com", "to@temail.com", 0, 0, "msgData", 100)));
+  }
+
+  @Test(expected = IllegalGmArgsException.class)
+  public void sendMailsExceedLimit() {
+    ReflectionTestUtils.setField(usermailService, "batchSendMaxMails", 1);
+    CreateUsermailDTO usermail = new CreateUsermailDTO("msgId", "from@temail.com", "to@temail.com", 0, 1,
+        "msgData", 100);
+    usermailService.sendMails(headerInfo, Arrays.asList(usermail, usermail));
+  }
+
   @Test
   public void getMailsWhenFilterSeqIdsIsEmpty() {
     String from = "from@temail.com";
@@ -299,6 +392,64 @@ public class UsermailServiceTest {
     assertThat(list.get(0).getSeqNo()).isEqualTo(usermail_1.getSeqNo());
   }
 
+  @Test
+  public void getMailsWithSeqIdFilterPushdown() {
+    ReflectionTestUtils.setField(usermailService, "seqIdFilterPushdown", true);
+    String from = "from@temail.com";
+    String to = "to@temail.com";
+    when(usermailSessionService.getSessionID(from, to)).thenReturn("sessionid");
+    List<UsermailDO> usermails = Collections.singletonList(new UsermailDO());
+    when(usermailMsgDB.listUsermails(any())).thenReturn(usermails);
+    when(convertMsgService.convertMsg(usermails)).thenReturn(usermails);
+
+    List<UsermailDO> list = usermailService.getMails(from, to, 20L, 10, "18_15,10_-1", "before");
+
+    ArgumentCaptor<UmQueryDTO> queryCaptor = ArgumentCaptor.forClass(UmQueryDTO.class);
+    verify(usermailMsgDB).listUsermails(queryCaptor.capture());
+    assertThat(queryCaptor.getValue().getSeqIdRanges())
+        .containsExactly(new SeqIdRange(Long.MIN_VALUE, 9), new SeqIdRange(16, 17));
+    assertThat(list).isEqualTo(usermails);
+
+    assertThat(usermailService.getMails(from, to, 20L, 10, "18_17", "before")).isEmpty();
+    verify(usermailMsgDB, times(1)).listUsermails(any());
+  }
+
+  @Test
+  public void batchGetMailsAndConvertOnce() {
+    String from = "from@temail.com";
+    when(usermailSessionService.getSessionID(from, "to1@temail.com")).thenReturn("sessionid1");
+    when(usermailSessionService.getSessionID(from, "to2@temail.com")).thenReturn("sessionid2");
+    UsermailDO usermail1 = new UsermailDO();
+    usermail1.setSeqNo(3);
+    UsermailDO usermail2 = new UsermailDO();
+    usermail2.setSeqNo(2);
+    UsermailDO usermail3 = new UsermailDO();
+    usermail3.setSeqNo(5);
+    when(usermailMsgDB.listUsermails(any())).thenAnswer(invocation -> {
+      UmQueryDTO query = invocation.getArgument(0);
+      return "sessionid1".equals(query.getSessionid()) ? new ArrayList<>(Arrays.asList(usermail1, usermail2))
+          : new ArrayList<>(Collections.singletonList(usermail3));
+    });
+    SyncCursorDTO cursor1 = new SyncCursorDTO("to1@temail.com", 0, 20, "before");
+    cursor1.setFilterSeqIds("3_1");
+    SyncCursorDTO cursor2 = new SyncCursorDTO("to2@temail.com", 4, 20, "after");
+
+    List<SyncMailsDTO> result = usermailService.batchGetMails(from, Arrays.asList(cursor1, cursor2));
+
+    assertThat(result).hasSize(2);
+    assertThat(result.get(0).getTo()).isEqualTo("to1@temail.com");
+    assertThat(result.get(0).getMails()).containsExactly(usermail2);
+    assertThat(result.get(1).getMails()).containsExactly(usermail3);
+    verify(convertMsgService, times(1)).convertMsg(Arrays.asList(usermail2, usermail3));
+  }
+
+  @Test(expected = IllegalGmArgsException.class)
+  public void batchGetMailsExceedLimit() {
+    ReflectionTestUtils.setField(usermailService, "batchSyncMaxSessions", 1);
+    usermailService.batchGetMails("from@temail.com", Arrays.asList(
+        new SyncCursorDTO("to1@temail.com", 0, 20, "before"), new SyncCursorDTO("to2@temail.com", 0, 20, "before")));
+  }
+
   @Test
   public void revert() {
     String cdtpheader = "cdtpheader";
@@ -356,8 +507,8 @@ public class UsermailServiceTest {
     UsermailBoxDO box_1 = new UsermailBoxDO(1L, sessionid_1, to_1, from, sessionExtData_1);
     UsermailBoxDO box_2 = new UsermailBoxDO(2L, sessionod_2, to_2, from, sessionExtData_2);
     when(usermailBoxDB.listUsermailBoxsByOwner(from, archiveStatus)).thenReturn(Arrays.asList(box_1, box_2));
-    when(usermailAdapter.getLastMsgId(from, to_1)).thenReturn(localMsgid_1);
-    when(usermailAdapter.getLastMsgId(from, to_2)).thenReturn("msgid_other");
+    when(usermailAdapter.getLastMsgIds(from, Arrays.asList(to_1, to_2)))
+        .thenReturn(ImmutableMap.of(to_1, localMsgid_1, to_2, "msgid_other"));
     UsermailDO lastUsermail_to_2 = new UsermailDO(1L, "msgid_2_actualLast", sessionod_2, from, to_2,
         TemailStatus.STATUS_NORMAL_0, TemailType.TYPE_NORMAL_0, from, "", 3);
     when(convertMsgService.convertMsg(any())).thenReturn(Arrays.asList(lastUsermail_to_2));
@@ -387,13 +538,15 @@ public class UsermailServiceTest {
     usermailService.removeMsg(headerInfo, from, to, msgIds);
 
     verify(usermailMsgDB).deleteMsg(msgIds, from);
+    verify(usermailBoxDB).refreshLastMsg(from, to);
     verify(usermailMsgReplyDB).deleteMsgReplysByParentIds(from, msgIds);
     verify(usermail2NotifyMqService)
         .sendMqAfterUpdateStatus(eq(headerInfo), eq(from), eq(to), anyString(), eq(SessionEventType.EVENT_TYPE_4));
     verify(usermailSessionService).getSessionID(from, to);
     verify(usermailMsgDB).listLastUsermails(any(UmQueryDTO.class));
     verify(usermailAdapter).getLastMsgId(from, to);
-    verify(usermailAdapter).setLastMsgId(from, to, dbLastMsgid);
+    verify(usermailAdapter).deleteLastMsgId(from, to);
+    verify(usermailAdapter).setLastMsgId(from, to, dbLastMsgid, lastUsermail.getSeqNo());
   }
 
   @Test
@@ -408,6 +561,7 @@ public class UsermailServiceTest {
     usermailService.removeMsg(headerInfo, from, to, msgIds);
 
     verify(usermailMsgDB).deleteMsg(msgIds, from);
+    verify(usermailBoxDB).refreshLastMsg(from, to);
     verify(usermailMsgReplyDB).deleteMsgReplysByParentIds(from, msgIds);
     verify(usermail2NotifyMqService)
         .sendMqAfterUpdateStatus(eq(headerInfo), eq(from), eq(to), anyString(), eq(SessionEventType.EVENT_TYPE_4));
@@ -511,6 +665,24 @@ public class UsermailServiceTest {
     Assert.assertEquals(actualMailList, expectMailList);
   }
 
+  @Test
+  public void batchQueryMsgsReplyCountWithPendingDelta() {
+    String from = "from@systoontest.com";
+    UsermailDO mail = new UsermailDO();
+    mail.setMsgid("msgId");
+    mail.setOwner(from);
+    mail.setReplyCount(3);
+    mail.setLastReplyMsgId("reply3");
+    Mockito.when(usermailMsgDB.listUsermailsByFromToMsgIds(from, Collections.singletonList("msgId")))
+        .thenReturn(Collections.singletonList(mail));
+    Mockito.when(replyCountWriteBehind.getPending(from, Collections.singletonList("msgId")))
+        .thenReturn(Collections.singletonMap("msgId", new ReplyCountDeltaDTO("msgId", from, 2, "reply5")));
+
+    List<UsermailDO> mails = usermailService.batchQueryMsgsReplyCount(from, Collections.singletonList("msgId"));
+    assertThat(mails.get(0).getReplyCount()).isEqualTo(5);
+    assertThat(mails.get(0).getLastReplyMsgId()).isEqualTo("reply5");
+  }
+
   @Test
   public void deleteSession() {
     String from = "from@msgseal.com";
@@ -652,6 +824,7 @@ public class UsermailServiceTest {
     assertEquals(trashMailDtos, listArgumentCaptor.getValue());
     assertEquals(temail, temailCaptor.getValue());
     assertEquals(TemailStatus.STATUS_TRASH_4, status);
+    verify(usermailBoxDB).refreshLastMsg(temail, to);
 
     ArgumentCaptor<String> temailCaptor2 = ArgumentCaptor.forClass(String.class);
     ArgumentCaptor<List<String>> msgIdCaptor = ArgumentCaptor.forClass(List.class);
@@ -685,7 +858,10 @@ public class UsermailServiceTest {
   @Test
   public void clearMsgFromTrash() {
     String temail = "from@msgseal.com";
+    List<String> sessionids = Arrays.asList("session1", "session2");
+    when(usermailMsgDB.listSessionidsByStatus(temail, TemailStatus.STATUS_TRASH_4)).thenReturn(sessionids);
     usermailService.clearMsgFromTrash(temail);
+    verify(usermailBoxDB).refreshLastMsgBySessionids(temail, sessionids);
 
     ArgumentCaptor<List<TrashMailDTO>> listArgumentCaptor = ArgumentCaptor.forClass(List.class);
     ArgumentCaptor<String> temailCaptor = ArgumentCaptor.forClass(String.class);
@@ -797,11 +973,9 @@ public class UsermailServiceTest {
   public void getTopNMailBoxes() {
     String from = "from@t.email";
     int pageSize = 2;
-    List<UsermailBoxDO> usermailBoxDOes = Arrays.asList(new UsermailBoxDO(222l, "378784", "to1@t.email", from, ""),
-        new UsermailBoxDO(223l, "37338784", "to2@t.email", from, ""));
-    Mockito.when(usermailBoxDB.selectTopNByOwner(from, 0)).thenReturn(usermailBoxDOes);
-    UmQueryDTO umQueryDTO1 = new UmQueryDTO("378784", from);
-    UmQueryDTO umQueryDTO2 = new UmQueryDTO("37338784", from);
+    List<UsermailBoxDO> usermailBoxDOes = Arrays.asList(new UsermailBoxDO(223l, "37338784", "to2@t.email", from, ""),
+        new UsermailBoxDO(222l, "378784", "to1@t.email", from, ""));
+    Mockito.when(usermailBoxDB.selectTopNByOwner(from, 0, pageSize)).thenReturn(usermailBoxDOes);
     List<UsermailDO> usermails1 = Arrays.asList(
         new UsermailDO(24, "122", "378784", from, "to1@t.email", 0, 0,
             from, "test message", 2),
@@ -816,24 +990,83 @@ public class UsermailServiceTest {
     );
     usermails1.get(0).setCreateTime(new Timestamp(4444));
     usermails2.get(0).setCreateTime(new Timestamp(44477));
-    Mockito.when(usermailMsgDB.listLastUsermails(umQueryDTO1)).thenReturn(usermails1);
-    Mockito.when(usermailMsgDB.listLastUsermails(umQueryDTO2)).thenReturn(usermails2);
-    Mockito.when(convertMsgService.convertMsg(usermails1)).thenReturn(usermails1);
-    Mockito.when(convertMsgService.convertMsg(usermails2)).thenReturn(usermails2);
+    List<UsermailDO> lastUsermails = Arrays.asList(usermails1.get(0), usermails2.get(0));
+    Mockito.when(usermailMsgDB.listLastUsermailsBySessions(from, Arrays.asList("37338784", "378784")))
+        .thenReturn(lastUsermails);
+    Mockito.when(convertMsgService.convertMsg(lastUsermails)).thenReturn(lastUsermails);
     MailboxDTO mailboxDTO1 = new MailboxDTO();
     MailboxDTO mailboxDTO2 = new MailboxDTO();
     List<MailboxDTO> mailboxDTOS = new ArrayList<>(2);
     mailboxDTO1.setLastMsg(usermails1.get(0));
-    mailboxDTO1.setTo(usermailBoxDOes.get(0).getMail2());
+    mailboxDTO1.setTo(usermailBoxDOes.get(1).getMail2());
     mailboxDTO1.setArchiveStatus(0);
     mailboxDTO2.setLastMsg(usermails2.get(0));
     mailboxDTO2.setArchiveStatus(0);
-    mailboxDTO2.setTo(usermailBoxDOes.get(1).getMail2());
+    mailboxDTO2.setTo(usermailBoxDOes.get(0).getMail2());
     mailboxDTOS.add(mailboxDTO1);
     mailboxDTOS.add(mailboxDTO2);
     List<MailboxDTO> mailBoxes = usermailService.getMailBoxes(from, 0, pageSize);
     assertEquals(mailBoxes.size(), 2);
     assertEquals("to2@t.email", mailBoxes.get(0).getTo());
+    assertEquals("1444", mailBoxes.get(0).getLastMsg().getMsgid());
+    verify(convertMsgService, times(1)).convertMsg(any());
+
+  }
+
+  @Test
+  public void getTopNMailBoxesByRecency() {
+    ReflectionTestUtils.setField(usermailService, "sessionRecencyEnabled", true);
+    String from = "from@t.email";
+    int pageSize = 2;
+    UsermailBoxDO box1 = new UsermailBoxDO(222L, "378784", "to1@t.email", from, "");
+    UsermailBoxDO box2 = new UsermailBoxDO(223L, "37338784", "to2@t.email", from, "");
+    UsermailBoxDO archivedBox = new UsermailBoxDO(224L, "3733878", "to3@t.email", from, "");
+    archivedBox.setArchiveStatus(TemailArchiveStatus.STATUS_ARCHIVE_1);
+    when(usermailAdapter.listRecentSessions(from, 0, 1)).thenReturn(Arrays.asList("to3@t.email", "to2@t.email"));
+    when(usermailAdapter.listRecentSessions(from, 2, 3)).thenReturn(Arrays.asList("to1@t.email"));
+    when(usermailBoxDB.listUsermailBoxsByOwnerAndMail2s(from, Arrays.asList("to3@t.email", "to2@t.email")))
+        .thenReturn(Arrays.asList(box2, archivedBox));
+    when(usermailBoxDB.listUsermailBoxsByOwnerAndMail2s(from, Arrays.asList("to1@t.email")))
+        .thenReturn(Arrays.asList(box1));
+    when(usermailMsgDB.listLastUsermailsBySessions(any(), any())).thenReturn(new ArrayList<>());
+    when(convertMsgService.convertMsg(any())).thenReturn(new ArrayList<>());
+
+    List<MailboxDTO> mailBoxes = usermailService.getMailBoxes(from, TemailArchiveStatus.STATUS_NORMAL_0, pageSize);
+
+    assertThat(mailBoxes).extracting(MailboxDTO::getTo).containsExactly("to2@t.email", "to1@t.email");
+    verify(usermailBoxDB, times(0)).selectTopNByOwner(any(), Mockito.anyInt(), Mockito.anyInt());
+  }
+
+  @Test
+  public void getTopNMailBoxesRebuildRecency() {
+    ReflectionTestUtils.setField(usermailService, "sessionRecencyEnabled", true);
+    String from = "from@t.email";
+    UsermailBoxDO box1 = new UsermailBoxDO(222L, "378784", "to1@t.email", from, "");
+    box1.setLastMsgTime(new Timestamp(4444));
+    UsermailBoxDO box2 = new UsermailBoxDO(223L, "37338784", "to2@t.email", from, "");
+    when(usermailAdapter.listRecentSessions(from, 0, 19)).thenReturn(null);
+    when(usermailBoxDB.listUsermailBoxsByOwner(from, -1)).thenReturn(Arrays.asList(box1, box2));
+    when(usermailBoxDB.selectTopNByOwner(from, -1, 20)).thenReturn(Arrays.asList(box1, box2));
+    when(convertMsgService.convertMsg(any())).thenReturn(new ArrayList<>());
+
+    List<MailboxDTO> mailBoxes = usermailService.getMailBoxes(from, -1, 20);
+
+    assertThat(mailBoxes).extracting(MailboxDTO::getTo).containsExactly("to1@t.email", "to2@t.email");
+    ArgumentCaptor<Supplier<Map<String, Long>>> loader = ArgumentCaptor.forClass(Supplier.class);
+    verify(usermailAdapter).rebuildSessionRecency(eq(from), loader.capture());
+    assertThat(loader.getValue().get()).isEqualTo(ImmutableMap.of("to1@t.email", 4444L, "to2@t.email", 0L));
+  }
+
+  @Test
+  public void getTopNMailBoxesWithEmptyRecency() {
+    ReflectionTestUtils.setField(usermailService, "sessionRecencyEnabled", true);
+    String from = "from@t.email";
+    when(usermailAdapter.listRecentSessions(from, 0, 19)).thenReturn(new ArrayList<>());
+
+    List<MailboxDTO> mailBoxes = usermailService.getMailBoxes(from, -1, 20);
 
+    assertThat(mailBoxes).isEmpty();
+    verify(usermailAdapter, never()).rebuildSessionRecency(any(), any());
+    verify(usermailBoxDB, never()).selectTopNByOwner(any(), Mockito.anyInt(), Mockito.anyInt());
   }
-}
\ No newline at end of file
+}
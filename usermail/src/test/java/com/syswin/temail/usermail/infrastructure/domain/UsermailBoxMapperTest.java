@@ -159,8 +159,24 @@ public class UsermailBoxMapperTest {
     UsermailBoxDO usermailBoxDO2 = new UsermailBoxDO(this.generatePKid(), "4835378", "to2@t.email", from);
     usermailBoxMapper.saveUsermailBox(usermailBoxDO1);
     usermailBoxMapper.saveUsermailBox(usermailBoxDO2);
-    List<UsermailBoxDO> usermailBoxes = usermailBoxMapper.selectTopNByOwner(from, 0);
+    usermailBoxMapper.updateLastMsg(from, "to2@t.email", "msgid", 1L);
+    List<UsermailBoxDO> usermailBoxes = usermailBoxMapper.selectTopNByOwner(from, 0, 2);
     assertThat(usermailBoxes.size()).isEqualTo(2);
+    assertThat(usermailBoxes.get(0).getMail2()).isEqualTo("to2@t.email");
+    assertThat(usermailBoxes.get(0).getLastMsgid()).isEqualTo("msgid");
+    assertThat(usermailBoxMapper.selectTopNByOwner(from, 0, 1).size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testUpdateLastMsgOnlyMovesForward() {
+    String from = "from@t.email";
+    String mail2 = "to@t.email";
+    usermailBoxMapper.saveUsermailBox(new UsermailBoxDO(this.generatePKid(), "483578", mail2, from));
+    assertThat(usermailBoxMapper.updateLastMsg(from, mail2, "msgid2", 2L)).isEqualTo(1);
+    assertThat(usermailBoxMapper.updateLastMsg(from, mail2, "msgid1", 1L)).isEqualTo(0);
+    UsermailBoxDO dbBox = usermailBoxMapper.selectByOwnerAndMail2(from, mail2);
+    assertThat(dbBox.getLastMsgid()).isEqualTo("msgid2");
+    assertThat(dbBox.getLastSeqNo()).isEqualTo(2L);
   }
 
   private long generatePKid() {
@@ -112,6 +112,25 @@ public class UsermailMapperTest {
     Assert.assertEquals(0, usermails.size());
   }
 
+  @Test
+  public void listLastUsermailsBySessions() {
+    String owner = "last-owner@syswin.com";
+    for (int seqNo = 1; seqNo <= 3; seqNo++) {
+      UsermailDO userMail = new UsermailDO(this.generatePKid(), msgid + "-a" + seqNo, "last-session-a", owner,
+          "to-a@syswin.com", TemailStatus.STATUS_NORMAL_0, TemailType.TYPE_NORMAL_0, owner, "", seqNo);
+      usermailMapper.insertUsermail(userMail);
+    }
+    UsermailDO userMail = new UsermailDO(this.generatePKid(), msgid + "-b1", "last-session-b", owner,
+        "to-b@syswin.com", TemailStatus.STATUS_NORMAL_0, TemailType.TYPE_NORMAL_0, owner, "", 1);
+    usermailMapper.insertUsermail(userMail);
+
+    List<UsermailDO> usermails = usermailMapper
+        .listLastUsermailsBySessions(owner, Arrays.asList("last-session-a", "last-session-b", "last-session-c"));
+
+    assertThat(usermails).extracting(UsermailDO::getMsgid)
+        .containsExactlyInAnyOrder(msgid + "-a3", msgid + "-b1");
+  }
+
   @Test
   public void deleteMsg() {
     List<String> msgIds = new ArrayList<>();
@@ -25,11 +25,15 @@
 package com.syswin.temail.usermail.infrastructure.domain.impl;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import com.syswin.temail.usermail.domains.UsermailBoxDO;
 import com.syswin.temail.usermail.infrastructure.domain.mapper.UsermailBoxMapper;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -130,11 +134,55 @@ public class UsermailBoxDBImplTest {
   @Test
   public void testGetTopNMailboxes() {
     String from = "from@t.email";
-    usermailBoxDBImpl.selectTopNByOwner(from, 0);
+    usermailBoxDBImpl.selectTopNByOwner(from, 0, 20);
     ArgumentCaptor<String> fromCaptor = ArgumentCaptor.forClass(String.class);
     ArgumentCaptor<Integer> statusCaptor = ArgumentCaptor.forClass(Integer.class);
-    Mockito.verify(usermailBoxMapper).selectTopNByOwner(fromCaptor.capture(), statusCaptor.capture());
+    ArgumentCaptor<Integer> pageSizeCaptor = ArgumentCaptor.forClass(Integer.class);
+    Mockito.verify(usermailBoxMapper)
+        .selectTopNByOwner(fromCaptor.capture(), statusCaptor.capture(), pageSizeCaptor.capture());
     assertThat(fromCaptor.getValue()).isEqualTo(from);
+    assertThat(pageSizeCaptor.getValue()).isEqualTo(20);
+  }
+
+  @Test
+  public void listUsermailBoxsByOwnerAndMail2sTest() {
+    List<String> mail2s = Arrays.asList("mail2-1", "mail2-2");
+    usermailBoxDBImpl.listUsermailBoxsByOwnerAndMail2s("owner", mail2s);
+    Mockito.verify(usermailBoxMapper).listUsermailBoxsByOwnerAndMail2s("owner", mail2s);
+    assertThat(usermailBoxDBImpl.listUsermailBoxsByOwnerAndMail2s("owner", new ArrayList<>())).isEmpty();
+  }
+
+  @Test
+  public void updateLastMsgTest() {
+    usermailBoxDBImpl.updateLastMsg("owner", "mail2", "msgid", 3L);
+    Mockito.verify(usermailBoxMapper).updateLastMsg("owner", "mail2", "msgid", 3L);
+  }
+
+  @Test
+  public void refreshLastMsgTest() {
+    usermailBoxDBImpl.refreshLastMsg("owner", "mail2");
+    Mockito.verify(usermailBoxMapper).refreshLastMsg("owner", "mail2");
+  }
+
+  @Test
+  public void refreshLastMsgBySessionidsTest() {
+    List<String> sessionids = new ArrayList<>();
+    for (int i = 0; i < 250; i++) {
+      sessionids.add("session" + i);
+    }
+    when(usermailBoxMapper.refreshLastMsgBySessionids(eq("owner"), anyList())).thenReturn(200, 50);
+
+    int count = usermailBoxDBImpl.refreshLastMsgBySessionids("owner", sessionids);
+
+    assertThat(count).isEqualTo(250);
+    verify(usermailBoxMapper).refreshLastMsgBySessionids("owner", sessionids.subList(0, 200));
+    verify(usermailBoxMapper).refreshLastMsgBySessionids("owner", sessionids.subList(200, 250));
+  }
+
+  @Test
+  public void refreshLastMsgBySessionidsSkipsEmptyList() {
+    assertThat(usermailBoxDBImpl.refreshLastMsgBySessionids("owner", new ArrayList<>())).isZero();
+    verify(usermailBoxMapper, Mockito.never()).refreshLastMsgBySessionids(eq("owner"), anyList());
   }
 
   @Test
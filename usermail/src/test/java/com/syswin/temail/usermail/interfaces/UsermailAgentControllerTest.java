@@ -43,10 +43,14 @@ import com.syswin.temail.usermail.core.dto.CdtpHeaderDTO;
 import com.syswin.temail.usermail.core.dto.ResultDTO;
 import com.syswin.temail.usermail.core.exception.IllegalGmArgsException;
 import com.syswin.temail.usermail.domains.UsermailDO;
+import com.syswin.temail.usermail.dto.BatchCreateUsermailDTO;
+import com.syswin.temail.usermail.dto.BatchSyncMailsDTO;
 import com.syswin.temail.usermail.dto.CreateUsermailDTO;
 import com.syswin.temail.usermail.dto.DeleteMailBoxQueryDTO;
 import com.syswin.temail.usermail.dto.MailboxDTO;
 import com.syswin.temail.usermail.dto.MoveTrashMailDTO;
+import com.syswin.temail.usermail.dto.SyncCursorDTO;
+import com.syswin.temail.usermail.dto.SyncMailsDTO;
 import com.syswin.temail.usermail.dto.TrashMailDTO;
 import com.syswin.temail.usermail.dto.TrashMailsDTO;
 import com.syswin.temail.usermail.dto.UmDeleteMailDTO;
@@ -138,6 +142,7 @@ public class UsermailAgentControllerTest {
         "bob@temail.com", "alice@temail.com", 0, 0, "test_from_data", 100);
     Mockito.doNothing().when(mockUmBlacklistProxy)
         .checkInBlacklist("bob@temail.com", "alice@temail.com");
+    Mockito.doCallRealMethod().when(usermailService).resolveOwner(Mockito.any(CreateUsermailDTO.class));
     Map<String, Object> map = new HashMap<>();
     map.put("msgId", "syswin-87532219-9c8a-41d6-976d-eaa805a145c1-1533886884707");
     map.put("seqNo", new Random().nextInt());
@@ -195,6 +200,53 @@ public class UsermailAgentControllerTest {
         .andExpect(jsonPath("$.data").isArray());
   }
 
+  @Test
+  public void shouldGetPagesWhenBatchSync() throws Exception {
+    List<SyncCursorDTO> cursors = Arrays.asList(new SyncCursorDTO("alice@temail.com", 0, 20, "before"),
+        new SyncCursorDTO("carl@temail.com", 10, 20, "after"));
+    List<SyncMailsDTO> pages = Arrays.asList(new SyncMailsDTO("alice@temail.com", Arrays.asList(
+        new UsermailDO(1, "123213141", "4324234", "bob@temail.com", "alice@temail.com", 0, 0,
+            "bob@temail.com", "test message", 10))), new SyncMailsDTO("carl@temail.com", Arrays.asList()));
+    Mockito.doReturn(pages).when(usermailService).batchGetMails(Mockito.eq("bob@temail.com"), Mockito.anyList());
+    ObjectMapper mapper = new ObjectMapper();
+    mockMvc.perform(
+        post("/usermail/sync")
+            .contentType(MediaType.APPLICATION_JSON_UTF8)
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+            .content(mapper.writeValueAsString(new BatchSyncMailsDTO("bob@temail.com", cursors))))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.code").value(200))
+        .andExpect(jsonPath("$.data[0].to").value("alice@temail.com"))
+        .andExpect(jsonPath("$.data[0].mails[0].msgId").value("123213141"))
+        .andExpect(jsonPath("$.data[1].mails").isEmpty());
+  }
+
+  @Test
+  public void shouldSendCopiesWhenBatchSend() throws Exception {
+    List<CreateUsermailDTO> usermails = Arrays.asList(
+        new CreateUsermailDTO("syswin-87532219-9c8a-41d6-976d-eaa805a145c1-1533886884707",
+            "bob@temail.com", "alice@temail.com", 0, 1, "test_to_data", 100),
+        new CreateUsermailDTO("syswin-87532219-9c8a-41d6-976d-eaa805a145c1-1533886884707",
+            "bob@temail.com", "alice@temail.com", 0, 2, "test_from_data", 100));
+    Map<String, Object> map = new HashMap<>();
+    map.put("msgId", "syswin-87532219-9c8a-41d6-976d-eaa805a145c1-1533886884707");
+    map.put("seqId", 1L);
+    Mockito.doReturn(Arrays.asList(map, map)).when(usermailService)
+        .sendMails(Mockito.any(CdtpHeaderDTO.class), Mockito.anyList());
+    ObjectMapper mapper = new ObjectMapper();
+    mockMvc.perform(
+        post("/usermail/batch")
+            .contentType(MediaType.APPLICATION_JSON_UTF8)
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+            .header(ParamsKey.HttpHeaderKey.CDTP_HEADER, headerInfo.getCdtpHeader())
+            .header(ParamsKey.HttpHeaderKey.X_PACKET_ID, headerInfo.getxPacketId())
+            .content(mapper.writeValueAsString(new BatchCreateUsermailDTO(usermails))))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.code").value(200))
+        .andExpect(jsonPath("$.data[1].seqId").value(1));
+    Mockito.verify(mockUmBlacklistProxy, Mockito.times(2)).checkInBlacklist("bob@temail.com", "alice@temail.com");
+  }
+
   @Test
   public void shouldSuccessWhenRevert() throws Exception {
     UsermailDTO usermailDto = new UsermailDTO("123213123123", "bob@temail.com", "alice@temail.com",
@@ -24,20 +24,33 @@
 
 package com.syswin.temail.usermail.interfaces;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.syswin.temail.usermail.application.AgentEventDeduplicator;
 import com.syswin.temail.usermail.application.DomainClearService;
 import com.syswin.temail.usermail.application.UsermailMsgReplyService;
 import com.syswin.temail.usermail.application.UsermailService;
 import com.syswin.temail.usermail.common.Constants.UsermailAgentEventType;
 import com.syswin.temail.usermail.common.ParamsKey;
+import com.syswin.temail.usermail.core.IUsermailAdapter;
+import com.syswin.temail.usermail.core.codec.SessionEventCodec;
+import com.syswin.temail.usermail.core.dto.CdtpHeaderDTO;
+import com.syswin.temail.usermail.core.dto.SessionEvent;
 import com.syswin.temail.usermail.dto.TrashMailDTO;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
 
 //@RunWith(SpringRunner.class)
 //@SpringBootTest
@@ -49,8 +62,11 @@ public class UsermailMQConsumerTest {
   private UsermailMsgReplyService usermailMsgReplyService = Mockito.mock(UsermailMsgReplyService.class);
 
   private DomainClearService domainClearService = Mockito.mock(DomainClearService.class);
+  private IUsermailAdapter usermailAdapter = Mockito.mock(IUsermailAdapter.class);
+
+  private AgentEventDeduplicator agentEventDeduplicator = new AgentEventDeduplicator(usermailAdapter);
   private UsermailMQConsumer usermailMQConsumer = new UsermailMQConsumer(usermailService, usermailMsgReplyService,
-      domainClearService);
+      domainClearService, agentEventDeduplicator);
 
 //  @Autowired
 //  private UsermailService usermailService;
@@ -74,6 +90,12 @@ public class UsermailMQConsumerTest {
 
   private String owner = from;
 
+  @Before
+  public void setUp() {
+    ReflectionTestUtils.setField(agentEventDeduplicator, "localSize", 100);
+    agentEventDeduplicator.init();
+  }
+
   @Test
   public void consume0Test(){
 
@@ -141,6 +163,129 @@ public class UsermailMQConsumerTest {
     usermailMQConsumer.consumer(message);
   }
 
+  @Test
+  public void consumeJsonBytesTest() {
+    usermailMQConsumer.consumer(getTestMessage(UsermailAgentEventType.REVERT_MSG_3).getBytes());
+    Mockito.verify(usermailService).revertMqHandler(xPacketId, cdtpHeader, from, to, owner, msgId);
+  }
+
+  @Test
+  public void consumeBinaryTest() {
+    SessionEvent event = new SessionEvent(new CdtpHeaderDTO(cdtpHeader, xPacketId),
+        UsermailAgentEventType.REVERT_REPLY_MSG_4, from, to);
+    event.setOwner(owner);
+    event.setMsgid(msgId);
+    event.setReplyMsgParentId(parentMsgId);
+    usermailMQConsumer.consumer(SessionEventCodec.encode(event));
+    Mockito.verify(usermailMsgReplyService).revertMsgReply(xPacketId, cdtpHeader, from, to, owner, parentMsgId, msgId);
+  }
+
+  @Test
+  public void consumeBinaryTrashTest() {
+    TrashMailDTO trashMailDto = new TrashMailDTO(from, to, msgId);
+    SessionEvent event = new SessionEvent(null, UsermailAgentEventType.TRASH_REMOVE_0, from, null);
+    event.setTrashMsgInfo(new Gson().toJson(Collections.singletonList(trashMailDto)));
+    usermailMQConsumer.consumer(SessionEventCodec.encode(event));
+    Mockito.verify(usermailService).removeMsgFromTrash(from, Collections.singletonList(trashMailDto));
+
+    usermailMQConsumer.consumer(SessionEventCodec.encode(new SessionEvent(null, UsermailAgentEventType.TRASH_REMOVE_0,
+        from, null)));
+    Mockito.verify(usermailService).clearMsgFromTrash(from);
+  }
+
+  @Test
+  public void consumeBatchMergesTrashRemovesTest() {
+    TrashMailDTO first = new TrashMailDTO(from, to, "msg-1");
+    TrashMailDTO second = new TrashMailDTO(to, from, "msg-2");
+    List<byte[]> messages = Arrays.asList(trashRemove(first), getTestMessage(UsermailAgentEventType.REVERT_MSG_3)
+        .getBytes(), trashRemove(second));
+
+    boolean[] results = usermailMQConsumer.consumeBatch(messages);
+
+    assertThat(results).containsExactly(true, true, true);
+    Mockito.verify(usermailService).removeMsgFromTrash(from, Arrays.asList(first, second));
+    Mockito.verify(usermailService).revertMqHandler(xPacketId, cdtpHeader, from, to, owner, msgId);
+    Mockito.verifyNoMoreInteractions(usermailService);
+  }
+
+  @Test
+  public void consumeBatchFlushesTrashRemovesBeforeClearTest() {
+    TrashMailDTO trashMailDto = new TrashMailDTO(from, to, msgId);
+    byte[] clear = SessionEventCodec.encode(new SessionEvent(null, UsermailAgentEventType.TRASH_REMOVE_0, from, null));
+
+    boolean[] results = usermailMQConsumer.consumeBatch(Arrays.asList(trashRemove(trashMailDto), clear));
+
+    assertThat(results).containsExactly(true, true);
+    InOrder inOrder = Mockito.inOrder(usermailService);
+    inOrder.verify(usermailService).removeMsgFromTrash(from, Collections.singletonList(trashMailDto));
+    inOrder.verify(usermailService).clearMsgFromTrash(from);
+  }
+
+  @Test
+  public void consumeBatchOnlyFailsBadMessageTest() {
+    TrashMailDTO good = new TrashMailDTO(from, to, "msg-1");
+    TrashMailDTO bad = new TrashMailDTO(from, to, "msg-2");
+    Mockito.doThrow(new IllegalStateException("db error")).when(usermailService)
+        .removeMsgFromTrash(from, Arrays.asList(good, bad));
+    Mockito.doThrow(new IllegalStateException("db error")).when(usermailService)
+        .removeMsgFromTrash(from, Collections.singletonList(bad));
+
+    boolean[] results = usermailMQConsumer.consumeBatch(Arrays.asList(trashRemove(good), trashRemove(bad),
+        "{broken".getBytes()));
+
+    assertThat(results).containsExactly(true, false, false);
+    Mockito.verify(usermailService).removeMsgFromTrash(from, Collections.singletonList(good));
+  }
+
+  @Test
+  public void consumeDuplicatedEventOnceTest() {
+    String message = getTestMessage(UsermailAgentEventType.DESTROY_AFTER_READ_2);
+    usermailMQConsumer.consumer(message);
+    usermailMQConsumer.consumer(message);
+    Mockito.verify(usermailService, Mockito.times(1)).destroyAfterRead(xPacketId, cdtpHeader, from, to, owner, msgId);
+  }
+
+  @Test
+  public void failedEventIsNotMarkedConsumedTest() {
+    String message = getTestMessage(UsermailAgentEventType.REVERT_MSG_3);
+    Mockito.doThrow(new IllegalStateException("db error")).doNothing().when(usermailService)
+        .revertMqHandler(xPacketId, cdtpHeader, from, to, owner, msgId);
+    assertThat(usermailMQConsumer.consumeBatch(Collections.singletonList(message.getBytes()))).containsExactly(false);
+    assertThat(usermailMQConsumer.consumeBatch(Collections.singletonList(message.getBytes()))).containsExactly(true);
+    Mockito.verify(usermailService, Mockito.times(2)).revertMqHandler(xPacketId, cdtpHeader, from, to, owner, msgId);
+  }
+
+  @Test
+  public void parseJsonSkipsUnusedFieldsTest() {
+    SessionEvent event = UsermailMQConsumer.parseJson("{\"seqNo\":3,\"sessionExtData\":{\"a\":[1,{\"b\":null}]},"
+        + "\"owner\":null,\"from\":\"" + from + "\",\"toMsg\":\"x\",\"sessionMessageType\":3,\"msgid\":7}");
+    assertThat(event.getSessionMessageType()).isEqualTo(UsermailAgentEventType.REVERT_MSG_3);
+    assertThat(event.getFrom()).isEqualTo(from);
+    assertThat(event.getOwner()).isNull();
+    assertThat(event.getMsgid()).isEqualTo("7");
+    assertThat(event.getSeqNo()).isNull();
+  }
+
+  @Test(expected = JsonSyntaxException.class)
+  public void parseMalformedJsonTest() {
+    UsermailMQConsumer.parseJson("{\"sessionMessageType\":3,");
+  }
+
+  @Test
+  public void parseTrashMailsTest() {
+    List<TrashMailDTO> trashMails = UsermailMQConsumer.parseTrashMails(
+        "[{\"from\":\"a@t.email\",\"to\":\"b@t.email\",\"msgId\":\"m1\",\"extra\":[1]},{\"msgId\":\"m2\"}]");
+    assertThat(trashMails).containsExactly(new TrashMailDTO("a@t.email", "b@t.email", "m1"),
+        new TrashMailDTO(null, null, "m2"));
+    assertThat(UsermailMQConsumer.parseTrashMails("[]")).isEmpty();
+  }
+
+  private byte[] trashRemove(TrashMailDTO trashMailDto) {
+    SessionEvent event = new SessionEvent(null, UsermailAgentEventType.TRASH_REMOVE_0, from, null);
+    event.setTrashMsgInfo(new Gson().toJson(Collections.singletonList(trashMailDto)));
+    return SessionEventCodec.encode(event);
+  }
+
   private String getTestMessage(int type){
     Gson gson = new Gson();
     TrashMailDTO trashMailDto = new TrashMailDTO();